@@ -0,0 +1,218 @@
+package org.meandre.tools.client.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.meandre.tools.client.utils.JSONPullReader.Token;
+
+/**
+ * Tests for JSONPullReader. Most documents are also read through a Reader
+ * that hands out one character at a time, so every token ends up split
+ * across refills of the buffer.
+ */
+public class JSONPullReaderTest {
+
+    private static final String DOCUMENT =
+        "{\"status\": \"OK\", \"success\": {\"uris\": [{\"uri\": \"meandre://a\", \"n\": 1}, " +
+        "{\"n\": -2.5e3, \"uri\": \"meandre://b\"}], \"flags\": [true, false, null], " +
+        "\"empty\": {}, \"none\": []}, \"big\": 12345678901}";
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        for (Reader in : readers(DOCUMENT)) {
+            JSONPullReader reader = new JSONPullReader(in);
+            JSONObject read = (JSONObject) reader.nextValue();
+            assertEquals(Token.END_DOCUMENT, reader.peek());
+
+            assertEquals(new JSONObject(DOCUMENT).toString(), read.toString());
+            assertEquals(Long.valueOf(12345678901L), read.get("big"));
+            assertEquals(JSONObject.NULL, read.getJSONObject("success").getJSONArray("flags").get(2));
+        }
+    }
+
+    @Test
+    public void testTokens() throws Exception {
+        for (Reader in : readers(DOCUMENT)) {
+            JSONPullReader reader = new JSONPullReader(in);
+            reader.beginObject();
+            assertEquals("status", reader.nextName());
+            assertEquals("OK", reader.nextString());
+            assertEquals("success", reader.nextName());
+            reader.beginObject();
+            assertEquals("uris", reader.nextName());
+
+            List<String> uris = new ArrayList<String>();
+            reader.beginArray();
+            while (reader.hasNext()) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (reader.nextName().equals("uri"))
+                        uris.add(reader.nextString());
+                    else
+                        reader.skipValue();
+                }
+                reader.endObject();
+            }
+            reader.endArray();
+            assertEquals(2, uris.size());
+            assertEquals("meandre://a", uris.get(0));
+            assertEquals("meandre://b", uris.get(1));
+
+            // the rest of the payload, then the rest of the document
+            while (reader.hasNext()) {
+                reader.nextName();
+                reader.skipValue();
+            }
+            reader.endObject();
+            assertEquals("big", reader.nextName());
+            assertEquals("12345678901", reader.nextString());
+            reader.endObject();
+            assertFalse(reader.hasNext());
+            assertEquals(Token.END_DOCUMENT, reader.peek());
+        }
+    }
+
+    @Test
+    public void testEscapes() throws Exception {
+        String json = "[\"a\\\"b\\\\c\\/d\", \"\\b\\f\\n\\r\\t\", \"\\u00e9\\u4e2D\", \"\\ud83d\\ude00\", \"caf\u00e9 \ud83d\ude00\"]";
+        for (Reader in : readers(json)) {
+            JSONPullReader reader = new JSONPullReader(in);
+            reader.beginArray();
+            assertEquals("a\"b\\c/d", reader.nextString());
+            assertEquals("\b\f\n\r\t", reader.nextString());
+            assertEquals("\u00e9\u4e2d", reader.nextString());
+
+            // a surrogate pair escaped as two \\u escapes is one code point
+            String pair = reader.nextString();
+            assertEquals(2, pair.length());
+            assertEquals(1, pair.codePointCount(0, pair.length()));
+            assertEquals(0x1f600, pair.codePointAt(0));
+
+            assertEquals("caf\u00e9 \ud83d\ude00", reader.nextString());
+            reader.endArray();
+        }
+    }
+
+    @Test
+    public void testLongString() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20000; i++)
+            sb.append((char) ('a' + i % 26));
+        String value = sb.toString();
+
+        JSONPullReader reader = new JSONPullReader(new StringReader("{\"v\": \"" + value + "\\n\"}"));
+        reader.beginObject();
+        assertEquals("v", reader.nextName());
+        assertEquals(value + "\n", reader.nextString());
+        reader.endObject();
+    }
+
+    @Test
+    public void testMalformed() throws Exception {
+        String[] malformed = {
+            "",
+            "{\"a\" 1}",
+            "{\"a\": 1,}",
+            "{a: 1}",
+            "[1 2]",
+            "[1,]",
+            "{\"a\": 1} x",
+            "[\"tab\\x\"]",
+            "[\"\\u12g4\"]",
+            "[\"line\nbreak\"]",
+            "[undefined]",
+            "[1.2.3]",
+        };
+        for (String json : malformed)
+            assertMalformed(json);
+    }
+
+    @Test
+    public void testTruncated() throws Exception {
+        for (int i = 0; i < DOCUMENT.length(); i++)
+            assertMalformed(DOCUMENT.substring(0, i));
+    }
+
+    @Test
+    public void testWrongToken() throws Exception {
+        JSONPullReader reader = new JSONPullReader(new StringReader("{\"a\": [1]}"));
+        try {
+            reader.beginArray();
+            fail("read an object as an array");
+        }
+        catch (JSONException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Expected BEGIN_ARRAY but was BEGIN_OBJECT"));
+        }
+
+        reader.beginObject();
+        reader.nextName();
+        try {
+            reader.nextString();
+            fail("read an array as a string");
+        }
+        catch (JSONException e) {
+            // expected
+        }
+    }
+
+    /** reading the whole document must fail with a JSONException */
+    private static void assertMalformed(String json) throws IOException {
+        for (Reader in : readers(json)) {
+            JSONPullReader reader = new JSONPullReader(in);
+            try {
+                reader.nextValue();
+                reader.peek();
+                fail("read malformed JSON: " + json);
+            }
+            catch (JSONException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains(" at character "));
+            }
+        }
+    }
+
+    /** the document as a whole, and one character at a time */
+    private static List<Reader> readers(String json) {
+        List<Reader> readers = new ArrayList<Reader>();
+        readers.add(new StringReader(json));
+        readers.add(new TrickleReader(json));
+        return readers;
+    }
+
+    /**
+     * hands out one character per read, like a response arriving slowly
+     */
+    private static class TrickleReader extends Reader {
+        private final String _text;
+        private int _pos = 0;
+
+        TrickleReader(String text) {
+            _text = text;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) {
+            if (_pos == _text.length())
+                return -1;
+            if (len == 0)
+                return 0;
+
+            cbuf[off] = _text.charAt(_pos++);
+            return 1;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
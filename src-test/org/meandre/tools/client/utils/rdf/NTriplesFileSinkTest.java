@@ -0,0 +1,124 @@
+package org.meandre.tools.client.utils.rdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.AnonId;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+
+/**
+ * Tests that what NTriplesFileSink writes reads back as the same graph, with
+ * NTriplesParser and with Jena.
+ */
+public class NTriplesFileSinkTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Model model = createModel();
+
+        StringWriter out = new StringWriter();
+        NTriplesFileSink sink = new NTriplesFileSink(out);
+        for (Triple triple : model.getGraph().find(Node.ANY, Node.ANY, Node.ANY).toList())
+            sink.add(triple);
+        sink.close();
+        String nt = out.toString();
+
+        // plain ASCII
+        for (int i = 0; i < nt.length(); i++)
+            assertTrue("not ASCII at " + i + ": " + nt, nt.charAt(i) < 0x80);
+
+        ModelTripleSink parsed = new ModelTripleSink();
+        assertEquals(model.size(), new NTriplesParser(new StringReader(nt)).parse(parsed));
+        assertTrue(model.isIsomorphicWith(parsed.getModel()));
+
+        Model jena = ModelFactory.createDefaultModel();
+        jena.read(new StringReader(nt), null, "N-TRIPLE");
+        assertTrue(model.isIsomorphicWith(jena));
+    }
+
+    @Test
+    public void testFile() throws Exception {
+        Model model = createModel();
+
+        File file = File.createTempFile("NTriplesFileSinkTest", ".nt");
+        try {
+            NTriplesFileSink sink = new NTriplesFileSink(file);
+            for (Triple triple : model.getGraph().find(Node.ANY, Node.ANY, Node.ANY).toList())
+                sink.add(triple);
+            sink.close();
+
+            ModelTripleSink parsed = new ModelTripleSink();
+            Reader in = new InputStreamReader(new FileInputStream(file), "US-ASCII");
+            try {
+                new NTriplesParser(in).parse(parsed);
+            }
+            finally {
+                in.close();
+            }
+            assertTrue(model.isIsomorphicWith(parsed.getModel()));
+        }
+        finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testBlankNodeLabels() throws Exception {
+        // labels that only differ in characters that have to be escaped
+        String[] labels = { "a:b", "a-b", "ax3Ab", "ax003Ab", "a_b", "x" };
+
+        StringWriter out = new StringWriter();
+        NTriplesFileSink sink = new NTriplesFileSink(out);
+        Node p = Node.createURI("http://example.org/p");
+        for (String label : labels)
+            sink.add(Triple.create(Node.createAnon(new AnonId(label)), p, Node.createLiteral(label)));
+        sink.close();
+
+        ModelTripleSink parsed = new ModelTripleSink();
+        new NTriplesParser(new StringReader(out.toString())).parse(parsed);
+        assertEquals(labels.length, parsed.getModel().size());
+        assertEquals(labels.length, parsed.getModel().listSubjects().toList().size());
+    }
+
+    /** a model with the things that need escaping */
+    private static Model createModel() {
+        Model model = ModelFactory.createDefaultModel();
+        Node s = Node.createURI("http://example.org/caf\u00e9/s p");
+        Node p = Node.createURI("http://example.org/p>\\");
+        Node b1 = Node.createAnon(new AnonId("a:b-c"));
+        Node b2 = Node.createAnon();
+
+        String[] literals = {
+            "plain",
+            "quote \" backslash \\ tab \t newline \n return \r",
+            "control \u0001 \u007f",
+            "caf\u00e9 \u4e2d",
+            "smiley \ud83d\ude00",
+            "",
+        };
+        for (String literal : literals) {
+            model.getGraph().add(Triple.create(s, p, Node.createLiteral(literal)));
+            model.getGraph().add(Triple.create(b1, p, Node.createLiteral(literal, "en-GB", false)));
+        }
+        model.getGraph().add(Triple.create(s, p, Node.createLiteral("42", null, model.createTypedLiteral(42).getDatatype())));
+        model.getGraph().add(Triple.create(s, p, b1));
+        model.getGraph().add(Triple.create(b1, p, b2));
+        model.getGraph().add(Triple.create(b2, p, s));
+
+        assertFalse(model.isEmpty());
+        return model;
+    }
+}
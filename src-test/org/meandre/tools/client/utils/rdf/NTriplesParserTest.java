@@ -0,0 +1,157 @@
+package org.meandre.tools.client.utils.rdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+
+/**
+ * Tests for NTriplesParser: it must read what Jena's N-Triples reader reads,
+ * and refuse what isn't N-Triples.
+ */
+public class NTriplesParserTest {
+
+    private static final String DOCUMENT =
+        "# a comment\n" +
+        "<http://example.org/s> <http://example.org/p> <http://example.org/o> .\n" +
+        "\n" +
+        "  <http://example.org/s>\t<http://example.org/p> \"plain\" .  # trailing comment\n" +
+        "<http://example.org/s> <http://example.org/p> \"chat\"@fr .\n" +
+        "<http://example.org/s> <http://example.org/p> \"42\"^^<http://www.w3.org/2001/XMLSchema#int> .\n" +
+        "_:b1 <http://example.org/p> _:b2 .\n" +
+        "_:b2 <http://example.org/p> _:b1 .\n" +
+        "_:b1 <http://example.org/q> \"line\\nbreak \\\"quoted\\\" back\\\\slash\" .\n";
+
+    @Test
+    public void testSameAsJena() throws Exception {
+        ModelTripleSink sink = new ModelTripleSink();
+        long count = new NTriplesParser(new StringReader(DOCUMENT)).parse(sink);
+        assertEquals(7, count);
+
+        Model expected = ModelFactory.createDefaultModel();
+        expected.read(new StringReader(DOCUMENT), null, "N-TRIPLE");
+        assertTrue(expected.isIsomorphicWith(sink.getModel()));
+    }
+
+    @Test
+    public void testLiterals() throws Exception {
+        NTriplesParser parser = new NTriplesParser(new StringReader(DOCUMENT));
+        parser.next();
+
+        Node plain = parser.next().getObject();
+        assertEquals("plain", plain.getLiteralLexicalForm());
+        assertEquals("", plain.getLiteralLanguage());
+        assertNull(plain.getLiteralDatatypeURI());
+
+        Node lang = parser.next().getObject();
+        assertEquals("chat", lang.getLiteralLexicalForm());
+        assertEquals("fr", lang.getLiteralLanguage());
+
+        Node typed = parser.next().getObject();
+        assertEquals("http://www.w3.org/2001/XMLSchema#int", typed.getLiteralDatatypeURI());
+        assertEquals(Integer.valueOf(42), typed.getLiteralValue());
+    }
+
+    @Test
+    public void testEscapes() throws Exception {
+        String nt =
+            "<http://example.org/caf\\u00E9> <http://example.org/p> \"\\t\\b\\n\\r\\f\\\"\\'\\\\\" .\n" +
+            "<http://example.org/s> <http://example.org/p> \"\\u00e9\\u4E2D\" .\n" +
+            "<http://example.org/s> <http://example.org/p> \"\\U0001F600 \\U000000e9\" .\n" +
+            "<http://example.org/s> <http://example.org/p> \"\\uD83D\\uDE00\" .\n";
+        NTriplesParser parser = new NTriplesParser(new StringReader(nt));
+
+        Triple t = parser.next();
+        assertEquals("http://example.org/caf\u00e9", t.getSubject().getURI());
+        assertEquals("\t\b\n\r\f\"'\\", t.getObject().getLiteralLexicalForm());
+
+        assertEquals("\u00e9\u4e2d", parser.next().getObject().getLiteralLexicalForm());
+
+        // a code point beyond the BMP becomes a surrogate pair
+        String smiley = parser.next().getObject().getLiteralLexicalForm();
+        assertEquals("\ud83d\ude00 \u00e9", smiley);
+        assertEquals(0x1f600, smiley.codePointAt(0));
+
+        // and a surrogate pair written as two \\u escapes is the same
+        assertEquals("\ud83d\ude00", parser.next().getObject().getLiteralLexicalForm());
+        assertNull(parser.next());
+    }
+
+    @Test
+    public void testBlankNodes() throws Exception {
+        String nt = "_:a <http://example.org/p> _:b .\n_:b <http://example.org/p> _:a .\n";
+
+        // within a document a label is one node
+        ModelTripleSink sink = new ModelTripleSink();
+        NTriplesParser parser = new NTriplesParser(new StringReader(nt));
+        Triple t1 = parser.next();
+        Triple t2 = parser.next();
+        assertTrue(t1.getSubject().isBlank());
+        assertEquals(t1.getSubject(), t2.getObject());
+        assertEquals(t1.getObject(), t2.getSubject());
+        assertFalse(t1.getSubject().equals(t1.getObject()));
+
+        // across documents the same label is another node, like with Jena
+        new NTriplesParser(new StringReader(nt)).parse(sink);
+        new NTriplesParser(new StringReader(nt)).parse(sink);
+        assertEquals(4, sink.getModel().size());
+
+        Model expected = ModelFactory.createDefaultModel();
+        expected.read(new StringReader(nt), null, "N-TRIPLE");
+        expected.read(new StringReader(nt), null, "N-TRIPLE");
+        assertTrue(expected.isIsomorphicWith(sink.getModel()));
+    }
+
+    @Test
+    public void testMalformed() throws Exception {
+        String[] malformed = {
+            "<http://example.org/s> <http://example.org/p> <http://example.org/o>",
+            "<http://example.org/s> <http://example.org/p> <http://example.org/o> . junk",
+            "<http://example.org/s> <http://example.org/p .",
+            "<http://example.org/s> \"literal\" <http://example.org/o> .",
+            "\"literal\" <http://example.org/p> <http://example.org/o> .",
+            "_: <http://example.org/p> <http://example.org/o> .",
+            "<http://example.org/s> <http://example.org/p> _:b1 _:b2 .",
+            "<http://example.org/s> <http://example.org/p> \"unterminated .",
+            "<http://example.org/s> <http://example.org/p> \"bad \\q escape\" .",
+            "<http://example.org/s> <http://example.org/p> \"bad \\u12G4 escape\" .",
+            "<http://example.org/s> <http://example.org/p> \"beyond \\U00110000 unicode\" .",
+            "<http://example.org/s> <http://example.org/p> \"no language\"@ .",
+            "example.org/s <http://example.org/p> <http://example.org/o> .",
+        };
+        for (String nt : malformed)
+            assertMalformed("<http://example.org/s> <http://example.org/p> \"ok\" .\n" + nt + "\n", 2);
+    }
+
+    @Test
+    public void testTruncated() throws Exception {
+        String line = "<http://example.org/s> <http://example.org/p> \"caf\\u00E9\"@fr .";
+        for (int i = 1; i < line.length(); i++)
+            assertMalformed(line.substring(0, i), 1);
+
+        assertEquals(1, new NTriplesParser(new StringReader(line)).parse(new ModelTripleSink()));
+        assertEquals(0, new NTriplesParser(new StringReader("")).parse(new ModelTripleSink()));
+    }
+
+    /** reading the document must fail at the line */
+    private static void assertMalformed(String nt, int lineNumber) {
+        try {
+            new NTriplesParser(new StringReader(nt)).parse(new ModelTripleSink());
+            fail("read malformed N-Triples: " + nt);
+        }
+        catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("N-Triples syntax error at line " + lineNumber + ","));
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package org.meandre.tools.client.v2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.URI;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.json.JSONException;
+import org.junit.Test;
+import org.meandre.tools.client.exceptions.OperationFailedException;
+import org.meandre.tools.client.exceptions.TransmissionException;
+
+/**
+ * Tests that the calls read the responses of the server the same whichever
+ * order their members come in, without a server: the response handler and
+ * decode() of each call are given canned responses.
+ */
+public class CallsTest {
+
+    @Test
+    public void testUrisInAnyOrder() throws Exception {
+        Set<URI> expected = new HashSet<URI>();
+        expected.add(new URI("meandre://test/a"));
+        expected.add(new URI("meandre://test/b"));
+
+        String[] responses = {
+            "{\"status\": \"OK\", \"success\": {\"components\": [{\"uri\": \"meandre://test/a\"}, {\"uri\": \"meandre://test/b\"}]}}",
+            "{\"success\": {\"count\": 2, \"components\": [{\"name\": \"A\", \"uri\": \"meandre://test/a\"}, " +
+                "{\"uri\": \"meandre://test/b\", \"name\": \"B\"}], \"more\": {\"x\": [1, 2]}}, \"status\": \"OK\"}",
+        };
+        for (String response : responses)
+            assertEquals(expected, execute(Calls.retrieveComponentUris(), response, "application/json"));
+    }
+
+    @Test
+    public void testNamesInAnyOrder() throws Exception {
+        Set<String> expected = new HashSet<String>();
+        expected.add("text");
+        expected.add("image");
+
+        String response = "{\"success\": {\"tags\": {\"text\": [\"meandre://test/a\"], \"image\": {}}}, \"status\": \"OK\"}";
+        assertEquals(expected, execute(Calls.retrieveAllTags(), response, "application/json"));
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        String response = "{\"failure\": {\"reason\": \"no such flow\"}, \"message\": \"Failed\", \"status\": \"FAIL\"}";
+        try {
+            execute(Calls.retrieveFlowUris(), response, "application/json");
+            fail("a failure was read as a success");
+        }
+        catch (TransmissionException e) {
+            assertTrue(e.getCause() instanceof OperationFailedException);
+        }
+
+        // the calls that return false for a failure
+        assertEquals(Boolean.FALSE, execute(Calls.ping(), response, "application/json"));
+    }
+
+    @Test
+    public void testIncompleteResponse() throws Exception {
+        String[] responses = {
+            "{\"success\": {\"components\": []}}",
+            "{\"status\": \"OK\"}",
+            "{\"status\": \"FAIL\", \"failure\": {}}",
+            "{\"status\": \"MAYBE\", \"success\": {\"components\": []}}",
+        };
+        for (String response : responses) {
+            try {
+                execute(Calls.retrieveComponentUris(), response, "application/json");
+                fail("read an incomplete response: " + response);
+            }
+            catch (TransmissionException e) {
+                assertTrue(e.getCause() instanceof JSONException);
+            }
+        }
+    }
+
+    @Test
+    public void testCharset() throws Exception {
+        String response = "{\"status\": \"OK\", \"success\": {\"tags\": {\"caf\u00e9\": []}}}";
+        Set<String> expected = new HashSet<String>();
+        expected.add("caf\u00e9");
+
+        // UTF-8 unless the response says otherwise
+        assertEquals(expected, execute(Calls.retrieveAllTags(), response.getBytes("UTF-8"), null));
+        assertEquals(expected, execute(Calls.retrieveAllTags(), response.getBytes("UTF-8"), "application/json"));
+        assertEquals(expected, execute(Calls.retrieveAllTags(), response.getBytes("ISO-8859-1"), "application/json; charset=ISO-8859-1"));
+    }
+
+    @Test
+    public void testErrorStatus() throws Exception {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 404, "Not Found");
+        response.setEntity(new ByteArrayEntity("not here".getBytes("UTF-8")));
+        try {
+            Calls.retrieveComponentUris()._handler.handleResponse(response);
+            fail("read an error response");
+        }
+        catch (HttpResponseException e) {
+            assertEquals(404, e.getStatusCode());
+        }
+    }
+
+    private static <R, T> T execute(Call<R, T> call, String response, String contentType) throws Exception {
+        return execute(call, response.getBytes("UTF-8"), contentType);
+    }
+
+    /** what the call makes of a response with the body */
+    private static <R, T> T execute(Call<R, T> call, byte[] body, String contentType) throws Exception {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        ByteArrayEntity entity = new ByteArrayEntity(body);
+        entity.setContentType(contentType);
+        response.setEntity(entity);
+
+        return call.decode(call._handler.handleResponse(response));
+    }
+}
@@ -0,0 +1,280 @@
+package org.meandre.tools.components.installer.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.lang.annotation.Annotation;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.zip.CRC32;
+import java.util.zip.ZipException;
+
+import org.junit.Test;
+
+/**
+ * Tests ClassFileReader against reflection: every class reflection sees in the
+ * signatures and annotations of a class must be among the classes read from
+ * its class file, and the class annotations must be the same.
+ */
+public class ClassFileReaderTest {
+
+    @Retention(RetentionPolicy.RUNTIME)
+    @interface Marker {
+        int number() default 0;
+        String text() default "";
+        ElementType kind() default ElementType.TYPE;
+        Class<?> type() default Object.class;
+        Nested nested() default @Nested;
+        long[] numbers() default {};
+    }
+
+    @Retention(RetentionPolicy.RUNTIME)
+    @interface Nested {
+        String[] value() default {};
+    }
+
+    @Retention(RetentionPolicy.CLASS)
+    @interface NotAtRuntime {
+    }
+
+    /** every kind of annotation element comes before the last annotation */
+    @NotAtRuntime
+    @Marker(number = 1, text = "text", kind = ElementType.FIELD, type = List.class,
+            nested = @Nested({ "a", "b" }), numbers = { 1L, 2L })
+    @Deprecated
+    static class Fixture<K extends Comparable<K>> extends Thread implements Serializable, Callable<Map<K, Set<Integer>>> {
+
+        private static final long serialVersionUID = 1L;
+
+        @Nested
+        Map<String, List<? extends Number>>[] _maps;
+
+        Fixture() throws ZipException {
+        }
+
+        public Map<K, Set<Integer>> call() throws IOException {
+            // referenced from the code only, and only by name
+            CRC32 crc = new CRC32();
+            crc.update(1);
+            String name = "java.util.zip.Adler32 Ljava/util/zip/Inflater;";
+            return Collections.singletonMap(null, Collections.singleton(name.length()));
+        }
+
+        <T extends Runnable & Appendable> T[] convert(List<? super T> list, @Nested int i) {
+            return null;
+        }
+    }
+
+    static class Plain {
+    }
+
+    @Test
+    public void testFixture() throws Exception {
+        ClassFileReader reader = read(Fixture.class, true);
+        assertEquals(internalName(Fixture.class), reader.getClassName());
+        assertEquals("java/lang/Thread", reader.getSuperClassName());
+
+        Set<String> referenced = reader.getReferencedClassNames();
+        assertReferencesReflected(Fixture.class, referenced);
+        // code, annotation element values and exceptions
+        assertTrue(referenced.contains("java/util/zip/CRC32"));
+        assertTrue(referenced.contains("java/util/List"));
+        assertTrue(referenced.contains("java/lang/annotation/ElementType"));
+        assertTrue(referenced.contains(internalName(NotAtRuntime.class)));
+        assertTrue(referenced.contains("java/util/zip/ZipException"));
+        // string literals are not references
+        assertFalse(referenced.contains("java/util/zip/Adler32"));
+        assertFalse(referenced.contains("java/util/zip/Inflater"));
+
+        assertEquals(getReflectedAnnotations(Fixture.class), reader.getAnnotationClassNames());
+        assertFalse(reader.getAnnotationClassNames().contains(internalName(NotAtRuntime.class)));
+    }
+
+    @Test
+    public void testWithoutAnnotations() throws Exception {
+        ClassFileReader reader = read(Plain.class, true);
+        assertEquals(Collections.emptySet(), reader.getAnnotationClassNames());
+        assertReferencesReflected(Plain.class, reader.getReferencedClassNames());
+
+        assertNull(read(Fixture.class, false).getAnnotationClassNames());
+    }
+
+    @Test
+    public void testOtherClasses() throws Exception {
+        Class<?>[] classes = { RawZipWriter.class, JarUtil.class, ClassFileReader.class, String.class, java.util.HashMap.class,
+                Thread.class, Marker.class, ElementType.class, Object.class };
+        for (Class<?> c : classes) {
+            ClassFileReader reader = read(c, true);
+            assertEquals(internalName(c), reader.getClassName());
+            assertEquals(c.getName(), getSuperClassName(c), reader.getSuperClassName());
+            assertReferencesReflected(c, reader.getReferencedClassNames());
+            assertEquals(c.getName(), getReflectedAnnotations(c), reader.getAnnotationClassNames());
+        }
+    }
+
+    @Test
+    public void testCorrupt() throws Exception {
+        byte[] bytes = readClassFile(Fixture.class);
+        try {
+            new ClassFileReader(new ByteArrayInputStream(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 }));
+            fail("read a file that is not a class file");
+        }
+        catch (IOException e) {
+            // expected
+        }
+        // the class annotations come last, so cut anywhere the file is refused
+        for (int length = 0; length < bytes.length; length += 7) {
+            try {
+                new ClassFileReader(new ByteArrayInputStream(bytes, 0, length), true);
+                fail("read a truncated class file, " + length + " bytes");
+            }
+            catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    /** the classes reflection finds in the class are all referenced */
+    private static void assertReferencesReflected(Class<?> c, Set<String> referenced) {
+        Set<String> reflected = getReflectedReferences(c);
+        reflected.removeAll(referenced);
+        assertTrue(c.getName() + " does not reference " + reflected, reflected.isEmpty());
+    }
+
+    /**
+     * the classes named in the declarations of the class: its supertypes,
+     * fields, constructors and methods, their generic signatures and
+     * runtime annotations
+     */
+    private static Set<String> getReflectedReferences(Class<?> c) {
+        Set<String> names = new HashSet<String>();
+        names.add(internalName(c));
+        addTypes(c.getGenericSuperclass(), names);
+        addTypes(c.getGenericInterfaces(), names);
+        addTypes(c.getTypeParameters(), names);
+        addAnnotations(c.getDeclaredAnnotations(), names);
+        for (Field field : c.getDeclaredFields()) {
+            addTypes(field.getGenericType(), names);
+            addAnnotations(field.getDeclaredAnnotations(), names);
+        }
+        for (Constructor<?> constructor : c.getDeclaredConstructors()) {
+            addTypes(constructor.getParameterTypes(), names);
+            addTypes(constructor.getExceptionTypes(), names);
+            addAnnotations(constructor.getDeclaredAnnotations(), names);
+        }
+        for (Method method : c.getDeclaredMethods()) {
+            addTypes(method.getGenericReturnType(), names);
+            addTypes(method.getGenericParameterTypes(), names);
+            addTypes(method.getGenericExceptionTypes(), names);
+            addTypes(method.getTypeParameters(), names);
+            addAnnotations(method.getDeclaredAnnotations(), names);
+            for (Annotation[] parameterAnnotations : method.getParameterAnnotations()) {
+                addAnnotations(parameterAnnotations, names);
+            }
+        }
+        return names;
+    }
+
+    private static void addTypes(Type[] types, Set<String> names) {
+        for (Type type : types) {
+            addTypes(type, names);
+        }
+    }
+
+    private static void addTypes(Type type, Set<String> names) {
+        if (type instanceof Class<?>) {
+            Class<?> c = (Class<?>) type;
+            while (c.isArray()) {
+                c = c.getComponentType();
+            }
+            if (!c.isPrimitive()) {
+                names.add(internalName(c));
+            }
+        } else if (type instanceof ParameterizedType) {
+            addTypes(((ParameterizedType) type).getRawType(), names);
+            addTypes(((ParameterizedType) type).getActualTypeArguments(), names);
+        } else if (type instanceof GenericArrayType) {
+            addTypes(((GenericArrayType) type).getGenericComponentType(), names);
+        } else if (type instanceof WildcardType) {
+            addTypes(((WildcardType) type).getUpperBounds(), names);
+            addTypes(((WildcardType) type).getLowerBounds(), names);
+        } else if (type instanceof TypeVariable<?>) {
+            // only the bounds of the variables a declaration introduces,
+            // references to them are just names
+        }
+    }
+
+    private static void addTypes(TypeVariable<?>[] variables, Set<String> names) {
+        for (TypeVariable<?> variable : variables) {
+            addTypes(variable.getBounds(), names);
+        }
+    }
+
+    private static void addAnnotations(Annotation[] annotations, Set<String> names) {
+        for (Annotation annotation : annotations) {
+            names.add(internalName(annotation.annotationType()));
+        }
+    }
+
+    private static Set<String> getReflectedAnnotations(Class<?> c) {
+        Set<String> names = new HashSet<String>();
+        addAnnotations(c.getDeclaredAnnotations(), names);
+        return names;
+    }
+
+    /** interfaces have java/lang/Object as their superclass in the class file */
+    private static String getSuperClassName(Class<?> c) {
+        if (c.isInterface()) {
+            return "java/lang/Object";
+        }
+        return c.getSuperclass() == null ? null : internalName(c.getSuperclass());
+    }
+
+    private static String internalName(Class<?> c) {
+        return c.getName().replace('.', '/');
+    }
+
+    private static ClassFileReader read(Class<?> c, boolean readAnnotations) throws IOException {
+        return new ClassFileReader(new ByteArrayInputStream(readClassFile(c)), readAnnotations);
+    }
+
+    private static byte[] readClassFile(Class<?> c) throws IOException {
+        InputStream in = ClassLoader.getSystemResourceAsStream(internalName(c) + ".class");
+        assertTrue("no class file for " + c.getName(), in != null);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        }
+        finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package org.meandre.tools.components.installer.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests that ClassIndex names classes by their path under the class directory
+ * and ignores files outside it.
+ */
+public class ClassIndexTest {
+
+    @Test
+    public void testForClassFiles() {
+        File classDir = new File("build", "classes");
+        File a = new File(classDir, "org" + File.separator + "A.class");
+        File b = new File(classDir, "B.class");
+        File sibling = new File(new File("build", "classes2"), "org" + File.separator + "C.class");
+        File notClass = new File(classDir, "D.txt");
+
+        ClassIndex index = ClassIndex.forClassFiles(classDir, Arrays.asList(a, b, sibling, notClass));
+        assertEquals(2, index.size());
+        assertEquals(a, index.getOwner("org/A"));
+        assertEquals(b, index.getOwner("B"));
+        assertNull(index.getOwner("2/org/C"));
+        assertNull(index.getOwner("org/C"));
+
+        // the root directory's path already ends with the separator
+        File root = new File(File.separator);
+        File c = new File(new File(root, "org"), "C.class");
+        index = ClassIndex.forClassFiles(root, Arrays.asList(c));
+        assertEquals(c, index.getOwner("org/C"));
+    }
+}
@@ -0,0 +1,180 @@
+package org.meandre.tools.components.installer.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Tests DepMap and its FileNodeTable against a breadth first search of the
+ * same dependencies kept as sets of canonical files.
+ */
+public class DepMapTest {
+
+    private final File _root = new File(System.getProperty("java.io.tmpdir"), "DepMapTest").getAbsoluteFile();
+
+    @Test
+    public void testDeepDeps() throws Exception {
+        DepMap map = new DepMap(new FileNodeTable());
+        Map<File, Set<File>> deps = new HashMap<File, Set<File>>();
+
+        // a diamond, a cycle with a self loop, and a file that isn't a target
+        setDeps(map, deps, "a", "b", "c");
+        setDeps(map, deps, "b", "d");
+        setDeps(map, deps, "c", "d");
+        setDeps(map, deps, "d", "e");
+        setDeps(map, deps, "e", "f", "e");
+        setDeps(map, deps, "f", "d", "g");
+        assertDeps(map, deps);
+
+        // another path to the same file is the same node
+        File otherPath = new File(new File(_root, "x"), ".." + File.separator + "d");
+        assertEquals(map.getDeepDeps(file("d")), map.getDeepDeps(otherPath));
+        assertEquals(Collections.singleton(file("e")), map.getShallowDeps(otherPath));
+        map.setDeps(file("h"), new HashSet<File>(Arrays.asList(file("d"), otherPath)));
+        deps.put(file("h"), Collections.singleton(file("d")));
+        assertEquals(1, map.getShallowDeps(file("h")).size());
+        assertDeps(map, deps);
+
+        // changes after a deep query are seen by the next one
+        setDeps(map, deps, "g", "a");
+        assertDeps(map, deps);
+        setDeps(map, deps, "e");
+        assertDeps(map, deps);
+        setDeps(map, deps, "i", "a");
+        assertDeps(map, deps);
+        assertEquals(search(deps, Arrays.asList(file("c"), file("g"))),
+                map.getDeepDeps(new HashSet<File>(Arrays.asList(file("c"), file("g")))));
+    }
+
+    @Test
+    public void testRandomGraphs() throws Exception {
+        Random random = new Random(1);
+        for (int i = 0; i < 50; i++) {
+            DepMap map = new DepMap(new FileNodeTable());
+            Map<File, Set<File>> deps = new HashMap<File, Set<File>>();
+            int numFiles = 1 + random.nextInt(30);
+            // changing the dependencies of random targets between queries
+            for (int change = 0; change < 5; change++) {
+                for (int target = 0; target < numFiles; target++) {
+                    if (change == 0 || random.nextInt(5) == 0) {
+                        String[] names = new String[random.nextInt(4)];
+                        for (int d = 0; d < names.length; d++) {
+                            names[d] = "f" + random.nextInt(numFiles);
+                        }
+                        setDeps(map, deps, "f" + target, names);
+                    }
+                }
+                assertDeps(map, deps);
+            }
+        }
+    }
+
+    @Test
+    public void testLongChain() throws Exception {
+        DepMap map = new DepMap(new FileNodeTable());
+        int numFiles = 20000;
+        for (int i = 0; i < numFiles; i++) {
+            Set<File> dependsOn = new HashSet<File>();
+            if (i + 1 < numFiles) {
+                dependsOn.add(file("f" + (i + 1)));
+            }
+            map.setDeps(file("f" + i), dependsOn);
+        }
+        assertEquals(numFiles, map.getDeepDeps(file("f0")).size());
+        assertEquals(Collections.singleton(file("f" + (numFiles - 1))), map.getDeepDeps(file("f" + (numFiles - 1))));
+
+        // closing the chain into a cycle
+        map.setDeps(file("f" + (numFiles - 1)), Collections.singleton(file("f0")));
+        assertEquals(numFiles, map.getDeepDeps(file("f" + (numFiles / 2))).size());
+    }
+
+    @Test
+    public void testUnknownTarget() throws Exception {
+        FileNodeTable nodes = new FileNodeTable();
+        DepMap map = new DepMap(nodes);
+        map.setDeps(file("a"), Collections.singleton(file("b")));
+        for (File unknown : new File[] { file("b"), file("c") }) {
+            try {
+                map.getDeepDeps(unknown);
+                fail("got the dependencies of " + unknown);
+            }
+            catch (IllegalArgumentException e) {
+                // expected
+            }
+            try {
+                map.getShallowDeps(unknown);
+                fail("got the dependencies of " + unknown);
+            }
+            catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+
+        // files get ids in the order they are seen, whatever the path
+        assertEquals(0, nodes.findId(file("a")));
+        assertEquals(1, nodes.findId(new File(_root, "." + File.separator + "b")));
+        assertEquals(-1, nodes.findId(file("c")));
+        assertEquals(2, nodes.getId(file("c")));
+        assertEquals(file("c"), nodes.getFile(2));
+        assertEquals(3, nodes.size());
+    }
+
+    /** sets the dependencies in the map, and in the sets to check it against */
+    private void setDeps(DepMap map, Map<File, Set<File>> deps, String target, String... dependsOn) throws IOException {
+        Set<File> dependsOnFiles = new HashSet<File>();
+        for (String name : dependsOn) {
+            dependsOnFiles.add(file(name));
+        }
+        map.setDeps(file(target), dependsOnFiles);
+        deps.put(file(target), dependsOnFiles);
+    }
+
+    /** every target has the shallow and deep dependencies of the sets */
+    private static void assertDeps(DepMap map, Map<File, Set<File>> deps) throws IOException {
+        for (File target : deps.keySet()) {
+            assertEquals(target.toString(), deps.get(target), map.getShallowDeps(target));
+            assertEquals(target.toString(), search(deps, Collections.singleton(target)), map.getDeepDeps(target));
+        }
+    }
+
+    /** the files reachable from the targets, including them, by breadth first search */
+    private static Set<File> search(Map<File, Set<File>> deps, Iterable<File> targets) {
+        Set<File> seen = new HashSet<File>();
+        List<File> queue = new ArrayList<File>();
+        for (File target : targets) {
+            if (seen.add(target)) {
+                queue.add(target);
+            }
+        }
+        for (int i = 0; i < queue.size(); i++) {
+            Set<File> dependsOn = deps.get(queue.get(i));
+            if (dependsOn == null) {
+                continue;
+            }
+            for (File file : dependsOn) {
+                if (seen.add(file)) {
+                    queue.add(file);
+                }
+            }
+        }
+        return seen;
+    }
+
+    /** the canonical file, so it equals the files the map returns */
+    private File file(String name) throws IOException {
+        return new File(_root, name).getCanonicalFile();
+    }
+}
@@ -0,0 +1,171 @@
+package org.meandre.tools.components.installer.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests that DependencyCache keeps its entries across a save and load, keyed
+ * by canonical path, and that a corrupt cache file is ignored rather than
+ * failing the constructor.
+ */
+public class DependencyCacheTest {
+
+    private static final int MAGIC = 0x4D444550;
+    private static final int VERSION = 2;
+
+    @Rule
+    public TemporaryFolder _tmp = new TemporaryFolder();
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        File classFile = writeFile("A.class", 100);
+        File jarFile = writeFile("b.jar", 200);
+        Set<String> classNames = new HashSet<String>(Arrays.asList("x/B", "x/C"));
+        Set<String> definedClassNames = Collections.singleton("x/B");
+
+        File cacheFile = new File(_tmp.getRoot(), DependencyCache.CACHE_FILE_NAME);
+        DependencyCache cache = new DependencyCache(cacheFile);
+        cache.put(classFile, classNames);
+        cache.putDefinedClassNames(jarFile, definedClassNames);
+        cache.put(jarFile, classNames, FileUtil.md5(jarFile));
+        cache.save();
+
+        cache = new DependencyCache(cacheFile);
+        assertEquals(2, cache.size());
+        assertEquals(classNames, cache.get(classFile));
+        assertNull(cache.getDefinedClassNames(classFile));
+        assertEquals(classNames, cache.get(jarFile));
+        assertEquals(definedClassNames, cache.getDefinedClassNames(jarFile));
+
+        // another path to the same file is the same entry
+        File otherPath = new File(new File(_tmp.getRoot(), "."), "A.class");
+        assertEquals(classNames, cache.get(otherPath));
+        cache.put(otherPath, definedClassNames);
+        assertEquals(2, cache.size());
+        assertEquals(definedClassNames, cache.get(classFile));
+
+        // touched but not changed is still current, changed is not
+        classFile.setLastModified(classFile.lastModified() - 10000);
+        assertEquals(definedClassNames, cache.get(classFile));
+        writeFile("b.jar", 201);
+        assertNull(cache.get(jarFile));
+    }
+
+    @Test
+    public void testGarbage() throws Exception {
+        byte[] garbage = new byte[1000];
+        new Random(1).nextBytes(garbage);
+        assertIgnored(garbage);
+        assertIgnored(new byte[0]);
+
+        // a negative or huge name count
+        assertIgnored(header(-1));
+        assertIgnored(header(Integer.MAX_VALUE));
+
+        // a name id out of range
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(header(1));
+        out.writeUTF("x/A");
+        out.writeInt(1);
+        out.writeUTF(new File(_tmp.getRoot(), "A.class").getPath());
+        out.writeLong(100);
+        out.writeLong(0);
+        out.write(new byte[16]);
+        out.writeInt(1);
+        out.writeInt(5);
+        out.writeInt(-1);
+        out.close();
+        assertIgnored(bytes.toByteArray());
+    }
+
+    @Test
+    public void testTruncated() throws Exception {
+        File cacheFile = new File(_tmp.getRoot(), DependencyCache.CACHE_FILE_NAME);
+        DependencyCache cache = new DependencyCache(cacheFile);
+        for (int i = 0; i < 5; i++) {
+            cache.put(writeFile("C" + i + ".class", 10 * i), new HashSet<String>(Arrays.asList("x/B", "x/C" + i)));
+        }
+        cache.putDefinedClassNames(writeFile("d.jar", 50), Collections.singleton("x/D"));
+        cache.save();
+        byte[] bytes = readFile(cacheFile);
+
+        for (int length = 0; length < bytes.length; length++) {
+            byte[] truncated = new byte[length];
+            System.arraycopy(bytes, 0, truncated, 0, length);
+            assertIgnored(truncated);
+        }
+    }
+
+    /** the cache file is ignored, and replaced on save */
+    private void assertIgnored(byte[] cacheBytes) throws IOException {
+        File cacheFile = new File(_tmp.getRoot(), "corrupt.bin");
+        FileOutputStream out = new FileOutputStream(cacheFile);
+        try {
+            out.write(cacheBytes);
+        }
+        finally {
+            out.close();
+        }
+        DependencyCache cache = new DependencyCache(cacheFile);
+        assertEquals(0, cache.size());
+        assertNull(cache.get(new File(_tmp.getRoot(), "A.class")));
+
+        cache.save();
+        assertEquals(0, new DependencyCache(cacheFile).size());
+    }
+
+    /** the start of a cache file with the given name count */
+    private static byte[] header(int numNames) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(numNames);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private File writeFile(String name, int length) throws IOException {
+        File file = new File(_tmp.getRoot(), name);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[length]);
+        }
+        finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        FileInputStream in = new FileInputStream(file);
+        try {
+            int n = 0;
+            while (n < bytes.length) {
+                n += in.read(bytes, n, bytes.length - n);
+            }
+        }
+        finally {
+            in.close();
+        }
+        return bytes;
+    }
+}
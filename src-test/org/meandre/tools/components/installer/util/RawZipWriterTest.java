@@ -0,0 +1,267 @@
+package org.meandre.tools.components.installer.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests that the jars RawZipWriter writes read back with ZipFile and
+ * JarInputStream, whether their entries were copied from jars written by
+ * JarOutputStream (with data descriptors) or deflated by the writer.
+ */
+public class RawZipWriterTest {
+
+    private static final long TIME = 1262304000000L;
+
+    @Rule
+    public TemporaryFolder _tmp = new TemporaryFolder();
+
+    @Test
+    public void testCopyAndAdd() throws Exception {
+        Map<String, byte[]> sourceEntries = new LinkedHashMap<String, byte[]>();
+        sourceEntries.put("org/", new byte[0]);
+        sourceEntries.put("org/A.class", bytes(5000, 7));
+        sourceEntries.put("org/B.class", bytes(100, 0));
+        sourceEntries.put("org/empty.txt", new byte[0]);
+        sourceEntries.put("org/caf\u00e9.txt", "caf\u00e9".getBytes("UTF-8"));
+        sourceEntries.put("skipped.txt", bytes(10, 1));
+        File source = writeJar("source.jar", sourceEntries, "org/B.class", "a comment");
+        assertTrue("the copied entries must have data descriptors", hasDataDescriptor(source));
+
+        byte[] manifest = "Manifest-Version: 1.0\r\nCreated-By: test\r\n\r\n".getBytes("UTF-8");
+        byte[] large = bytes(300 * 1024, 3);
+        File largeFile = writeFile("large.bin", large);
+        byte[] small = bytes(2000, 5);
+        File smallFile = writeFile("small.bin", small);
+
+        File jar = new File(_tmp.getRoot(), "out.jar");
+        RawZipWriter out = new RawZipWriter(jar);
+        out.addEntry("META-INF/MANIFEST.MF", manifest, manifest.length, TIME);
+        out.copyEntries(source, Collections.singleton("skipped.txt"));
+        out.addEntry("large.bin", largeFile, TIME);
+        out.addEntry(RawZipWriter.deflate("small.bin", smallFile), TIME);
+        out.addEntry("empty.bin", new byte[0], 0, TIME);
+        out.close();
+
+        Map<String, byte[]> expected = new LinkedHashMap<String, byte[]>();
+        expected.put("META-INF/MANIFEST.MF", manifest);
+        expected.putAll(sourceEntries);
+        expected.remove("skipped.txt");
+        expected.put("large.bin", large);
+        expected.put("small.bin", small);
+        expected.put("empty.bin", new byte[0]);
+        assertJar(jar, expected);
+
+        // the copied jar is copied again the same
+        File copy = new File(_tmp.getRoot(), "copy.jar");
+        out = new RawZipWriter(copy);
+        out.copyEntries(jar, new HashSet<String>());
+        out.close();
+        assertJar(copy, expected);
+    }
+
+    @Test
+    public void testDuplicates() throws Exception {
+        Map<String, byte[]> sourceEntries = new LinkedHashMap<String, byte[]>();
+        sourceEntries.put("a.txt", bytes(100, 1));
+        sourceEntries.put("b.txt", bytes(100, 2));
+        File source = writeJar("source.jar", sourceEntries, null, null);
+
+        File jar = new File(_tmp.getRoot(), "out.jar");
+        RawZipWriter out = new RawZipWriter(jar);
+        byte[] b = bytes(10, 3);
+        out.addEntry("b.txt", b, b.length, TIME);
+        try {
+            out.copyEntries(source, new HashSet<String>());
+            fail("copied a duplicate entry");
+        }
+        catch (ZipException e) {
+            // expected
+        }
+        try {
+            out.addEntry("b.txt", b, b.length, TIME);
+            fail("added a duplicate entry");
+        }
+        catch (ZipException e) {
+            // expected
+        }
+        // nothing was written by the failed copy
+        out.copyEntries(source, Collections.singleton("b.txt"));
+        out.close();
+
+        Map<String, byte[]> expected = new LinkedHashMap<String, byte[]>();
+        expected.put("b.txt", b);
+        expected.put("a.txt", sourceEntries.get("a.txt"));
+        assertJar(jar, expected);
+    }
+
+    @Test
+    public void testNotZip() throws Exception {
+        File notZip = writeFile("not.jar", bytes(1000, 1));
+        File jar = new File(_tmp.getRoot(), "out.jar");
+        RawZipWriter out = new RawZipWriter(jar);
+        try {
+            out.copyEntries(notZip, new HashSet<String>());
+            fail("copied a file that is not a zip file");
+        }
+        catch (ZipException e) {
+            // expected
+        }
+        finally {
+            out.abort();
+        }
+    }
+
+    /** the jar has exactly the entries, in order, with ZipFile and JarInputStream */
+    private static void assertJar(File jar, Map<String, byte[]> expected) throws IOException {
+        ZipFile zip = new ZipFile(jar);
+        try {
+            assertEquals(expected.size(), zip.size());
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            for (Map.Entry<String, byte[]> nameData : expected.entrySet()) {
+                ZipEntry entry = entries.nextElement();
+                assertEquals(nameData.getKey(), entry.getName());
+                assertEquals(nameData.getValue().length, entry.getSize());
+                CRC32 crc = new CRC32();
+                crc.update(nameData.getValue());
+                assertEquals(crc.getValue(), entry.getCrc());
+
+                InputStream in = zip.getInputStream(entry);
+                try {
+                    assertArrayEquals(nameData.getKey(), nameData.getValue(), readAll(in));
+                }
+                finally {
+                    in.close();
+                }
+            }
+        }
+        finally {
+            zip.close();
+        }
+
+        // JarInputStream reads the local headers and data descriptors
+        JarInputStream in = new JarInputStream(new FileInputStream(jar));
+        try {
+            Set<String> seen = new HashSet<String>();
+            if (expected.containsKey("META-INF/MANIFEST.MF")) {
+                assertNotNull(in.getManifest());
+                seen.add("META-INF/MANIFEST.MF");
+            }
+            JarEntry entry;
+            while ((entry = in.getNextJarEntry()) != null) {
+                assertTrue(entry.getName(), seen.add(entry.getName()));
+                assertArrayEquals(entry.getName(), expected.get(entry.getName()), readAll(in));
+            }
+            assertEquals(expected.keySet(), seen);
+            assertNull(in.getNextJarEntry());
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * writes a jar with JarOutputStream, which puts the sizes of deflated
+     * entries in data descriptors. the entry named stored is not compressed.
+     */
+    private File writeJar(String name, Map<String, byte[]> entries, String stored, String comment) throws IOException {
+        File file = new File(_tmp.getRoot(), name);
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(file));
+        try {
+            for (Map.Entry<String, byte[]> nameData : entries.entrySet()) {
+                ZipEntry entry = new ZipEntry(nameData.getKey());
+                entry.setTime(TIME);
+                if (nameData.getKey().equals(stored)) {
+                    CRC32 crc = new CRC32();
+                    crc.update(nameData.getValue());
+                    entry.setMethod(ZipEntry.STORED);
+                    entry.setSize(nameData.getValue().length);
+                    entry.setCrc(crc.getValue());
+                }
+                out.putNextEntry(entry);
+                out.write(nameData.getValue());
+                out.closeEntry();
+            }
+            if (comment != null) {
+                out.setComment(comment);
+            }
+        }
+        finally {
+            out.close();
+        }
+        return file;
+    }
+
+    /** true if the first entry of the zip file has the data descriptor flag */
+    private static boolean hasDataDescriptor(File zipFile) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(zipFile, "r");
+        try {
+            file.seek(6);
+            return (file.read() & 0x08) != 0;
+        }
+        finally {
+            file.close();
+        }
+    }
+
+    private File writeFile(String name, byte[] data) throws IOException {
+        File file = new File(_tmp.getRoot(), name);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        }
+        finally {
+            out.close();
+        }
+        return file;
+    }
+
+    /** bytes that compress somewhat, but not to nothing */
+    private static byte[] bytes(int length, long seed) {
+        Random random = new Random(seed);
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) ('a' + random.nextInt(8));
+        }
+        return data;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            out.write(buf, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,131 @@
+package org.meandre.tools.components.installer.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests TransitiveClosure against a breadth first search of the same graph.
+ */
+public class TransitiveClosureTest {
+
+    @Test
+    public void testSmallGraphs() {
+        // no edges
+        assertClosure(new int[][] { {}, {}, {} });
+        // self loops
+        assertClosure(new int[][] { { 0 }, { 1, 2 }, {} });
+        // a diamond: 0 -> 1, 2 -> 3
+        assertClosure(new int[][] { { 1, 2 }, { 3 }, { 3 }, {} });
+        // a cycle with a tail, and a node pointing into it
+        assertClosure(new int[][] { { 1 }, { 2 }, { 0, 3 }, { 4 }, {}, { 1 } });
+        // two cycles joined by an edge, with duplicate edges
+        assertClosure(new int[][] { { 1, 1 }, { 0, 2 }, { 3 }, { 2, 2 } });
+        // diamonds of cycles
+        assertClosure(new int[][] { { 1, 3 }, { 2 }, { 1, 5 }, { 4 }, { 3, 5 }, { 6 }, { 5 } });
+    }
+
+    @Test
+    public void testRandomGraphs() {
+        Random random = new Random(1);
+        for (int i = 0; i < 200; i++) {
+            int numNodes = 1 + random.nextInt(40);
+            int numEdges = random.nextInt(numNodes * 3);
+            assertClosure(randomGraph(numNodes, numEdges, random));
+        }
+    }
+
+    @Test
+    public void testLongChains() {
+        int numNodes = 20000;
+
+        // 0 -> 1 -> ... -> n-1, visited from 0, so as deep as the graph
+        int[][] chain = new int[numNodes][];
+        for (int node = 0; node < numNodes; node++) {
+            chain[node] = node + 1 < numNodes ? new int[] { node + 1 } : new int[0];
+        }
+        TransitiveClosure closure = createClosure(chain);
+        for (int node : new int[] { numNodes - 1, numNodes / 2, 0 }) {
+            assertEquals(search(chain, node), closure.getReachable(node));
+        }
+        assertEquals(numNodes, closure.getReachable(0).cardinality());
+
+        // the same chain closed into one cycle
+        chain[numNodes - 1] = new int[] { 0 };
+        closure = createClosure(chain);
+        assertEquals(numNodes, closure.getReachable(numNodes / 2).cardinality());
+        assertEquals(search(chain, 0), closure.getReachable(0));
+
+        // n-1 -> n-2 -> ... -> 0
+        int[][] reversed = new int[numNodes][];
+        for (int node = 0; node < numNodes; node++) {
+            reversed[node] = node > 0 ? new int[] { node - 1 } : new int[0];
+        }
+        closure = createClosure(reversed);
+        assertEquals(search(reversed, numNodes - 1), closure.getReachable(numNodes - 1));
+    }
+
+    /** every node reaches what the search finds, before and after memoizing */
+    private static void assertClosure(int[][] graph) {
+        TransitiveClosure closure = createClosure(graph);
+        for (int pass = 0; pass < 2; pass++) {
+            for (int node = graph.length - 1; node >= 0; node--) {
+                assertEquals("node " + node, search(graph, node), closure.getReachable(node));
+            }
+        }
+    }
+
+    private static TransitiveClosure createClosure(int[][] graph) {
+        int numEdges = 0;
+        for (int[] successors : graph) {
+            numEdges += successors.length;
+        }
+        int[] offsets = new int[graph.length + 1];
+        int[] targets = new int[numEdges];
+        for (int node = 0; node < graph.length; node++) {
+            offsets[node + 1] = offsets[node] + graph[node].length;
+            System.arraycopy(graph[node], 0, targets, offsets[node], graph[node].length);
+        }
+        return new TransitiveClosure(offsets, targets);
+    }
+
+    /** the nodes reachable from start, including start, by breadth first search */
+    private static BitSet search(int[][] graph, int start) {
+        BitSet seen = new BitSet();
+        List<Integer> queue = new ArrayList<Integer>();
+        seen.set(start);
+        queue.add(start);
+        for (int i = 0; i < queue.size(); i++) {
+            for (int successor : graph[queue.get(i)]) {
+                if (!seen.get(successor)) {
+                    seen.set(successor);
+                    queue.add(successor);
+                }
+            }
+        }
+        return seen;
+    }
+
+    private static int[][] randomGraph(int numNodes, int numEdges, Random random) {
+        List<List<Integer>> successors = new ArrayList<List<Integer>>();
+        for (int node = 0; node < numNodes; node++) {
+            successors.add(new ArrayList<Integer>());
+        }
+        for (int e = 0; e < numEdges; e++) {
+            successors.get(random.nextInt(numNodes)).add(random.nextInt(numNodes));
+        }
+        int[][] graph = new int[numNodes][];
+        for (int node = 0; node < numNodes; node++) {
+            graph[node] = new int[successors.get(node).size()];
+            for (int i = 0; i < graph[node].length; i++) {
+                graph[node][i] = successors.get(node).get(i);
+            }
+        }
+        return graph;
+    }
+}
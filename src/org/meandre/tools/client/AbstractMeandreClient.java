@@ -17,6 +17,7 @@ import org.meandre.core.repository.FlowDescription;
 import org.meandre.core.repository.LocationBean;
 import org.meandre.core.repository.QueryableRepository;
 import org.meandre.tools.client.exceptions.TransmissionException;
+import org.meandre.tools.client.utils.rdf.TripleSink;
 import org.seasr.meandre.support.generic.io.IOUtils;
 
 import com.hp.hpl.jena.rdf.model.Model;
@@ -35,6 +36,15 @@ public abstract class AbstractMeandreClient {
 
     public abstract void close();
 
+    /**
+     * Whether the models sent to the server (by uploadModelBatch and the
+     * upload methods built on it) are gzipped. Off by default, since the
+     * server has to know to gunzip them.
+     */
+    public abstract void setGzipModelUploads(boolean gzip);
+
+    public abstract boolean isGzipModelUploads();
+
     /**
      * requests a list of assigned roles of the user (defined by the
      * credentials of this MeandreClient).
@@ -105,6 +115,20 @@ public abstract class AbstractMeandreClient {
      */
     public abstract QueryableRepository retrieveRepository() throws TransmissionException;
 
+    /**
+     * Streams the RDF of the repository into a sink as it is read, instead of
+     * building a Repository from all of it. With a sink that doesn't keep all
+     * the triples (e.g. NTriplesFileSink or a FilteringTripleSink) this takes
+     * constant memory, no matter how large the repository is.
+     *
+     *<p> calls:
+     * http://<meandre_host>:<meandre_port/services/repository/dump.nt
+     * @param sink Receives the triples of the repository
+     * @return The number of triples read
+     * @throws TransmissionException
+     */
+    public abstract long retrieveRepository(TripleSink sink) throws TransmissionException;
+
     /**
      * Tells the server to rebuild it's repository by (re-)querying all
      * of it's peers for information on available components and flows.
@@ -426,6 +450,18 @@ public abstract class AbstractMeandreClient {
      */
     public abstract QueryableRepository retrievePublicRepository() throws TransmissionException;
 
+    /**
+     * Streams the RDF of the public repository into a sink as it is read,
+     * see retrieveRepository(TripleSink). does not require authorization.
+     *
+     *<p> calls:
+     * http://<meandre_host>:<meandre_port>/public/services/repository.nt
+     * @param sink Receives the triples of the repository
+     * @return The number of triples read
+     * @throws TransmissionException
+     */
+    public abstract long retrievePublicRepository(TripleSink sink) throws TransmissionException;
+
     /**
      * retrieves the demo repository of published resources. does not
      * require authorization
@@ -0,0 +1,286 @@
+package org.meandre.tools.client.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.Header;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.NameValuePair;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.protocol.ClientContext;
+import org.apache.http.client.protocol.RequestAcceptEncoding;
+import org.apache.http.client.protocol.ResponseContentEncoding;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.mime.MultipartEntity;
+import org.apache.http.entity.mime.content.ContentBody;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.nio.client.DefaultHttpAsyncClient;
+import org.apache.http.impl.nio.conn.PoolingClientAsyncConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.entity.NByteArrayEntity;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.params.HttpProtocolParams;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.seasr.meandre.support.generic.Version;
+import org.seasr.meandre.support.generic.util.KeyValuePair;
+
+/**
+ * The non-blocking counterpart of GenericHttpClient. Requests return a
+ * Future right away and are carried out by a few I/O threads, so any number
+ * of them can be in flight without a thread waiting on each.
+ *
+ * <p>
+ * All the AsyncHttpClients share one engine: its I/O threads (one per
+ * processor) and its connection pool, which holds up to the largest
+ * pool sizes asked for by any of them, per host. The engine is shut down
+ * when the last client is closed.
+ *
+ * <p>
+ * Responses are read into memory as they come in and then handed to the
+ * ResponseHandler, on one of the I/O threads; handlers and callbacks must
+ * not block. Request bodies are also made in memory before they are sent.
+ * The settings that apply are the pool sizes, the connect, lease, socket and
+ * idle timeouts and TCP_NODELAY; the first client to start the engine
+ * decides its connect timeout, idle timeout and TCP_NODELAY.
+ */
+public class AsyncHttpClient {
+
+    private static DefaultHttpAsyncClient _engine;
+    private static int _engineRefCount = 0;
+
+    private final HttpHost _host;
+    private final HttpParams _requestParams;
+    private final CredentialsProvider _credentialsProvider = new BasicCredentialsProvider();
+    private boolean _closed = false;
+
+    public AsyncHttpClient(String host, int port) throws IOReactorException {
+        this(new HttpHost(host, port), new ConnectionPoolSettings());
+    }
+
+    /**
+     * A client of the host, whose requests are carried out by the shared
+     * engine. close() must be called when done.
+     *
+     * @throws IOReactorException If the engine could not be started
+     */
+    public AsyncHttpClient(HttpHost host, ConnectionPoolSettings settings) throws IOReactorException {
+        _host = host;
+
+        _requestParams = new BasicHttpParams();
+        HttpConnectionParams.setSoTimeout(_requestParams, settings.getSocketTimeout());
+        // the engine waits for a pooled connection, and for a new one to be
+        // connected, for up to the connection timeout of the request
+        long leaseTimeout = settings.getLeaseTimeout();
+        long connectTimeout = settings.getConnectTimeout();
+        if (leaseTimeout > 0 && connectTimeout > 0)
+            HttpConnectionParams.setConnectionTimeout(_requestParams, (int) Math.min(Integer.MAX_VALUE, leaseTimeout + connectTimeout));
+        else
+            HttpConnectionParams.setConnectionTimeout(_requestParams, 0);
+
+        acquireEngine(settings);
+    }
+
+    public HttpHost getHost() {
+        return _host;
+    }
+
+    public void setCredentials(String userName, String password) {
+        if (userName != null && password != null)
+            _credentialsProvider.setCredentials(new AuthScope(_host.getHostName(), _host.getPort()),
+                    new UsernamePasswordCredentials(userName, password));
+        else
+            _credentialsProvider.clear();
+    }
+
+    /**
+     * Sends a GET request
+     *
+     * @param reqPath The request path
+     * @param headers Extra request headers, or null
+     * @param handler Makes the result out of the response
+     * @param callback Told when the result is ready or the request failed, or null
+     * @param params The query parameters
+     * @return The future result
+     */
+    public <T> Future<T> doGET(String reqPath, List<Header> headers, ResponseHandler<T> handler,
+            FutureCallback<T> callback, NameValuePair... params) {
+        if (params.length > 0)
+            reqPath += "?" + URLEncodedUtils.format(Arrays.asList(params), "UTF-8");
+
+        HttpGet httpGet = new HttpGet(reqPath);
+        if (headers != null)
+            for (Header header : headers)
+                httpGet.addHeader(header);
+
+        return execute(httpGet, handler, callback);
+    }
+
+    /**
+     * Sends a multipart POST request, see GenericHttpClient.doPOST(). The
+     * parts are written out in memory before the request is sent.
+     *
+     * @param reqPath The request path
+     * @param headers Extra request headers, or null
+     * @param parts The parts that follow the parameters, or null
+     * @param handler Makes the result out of the response
+     * @param callback Told when the result is ready or the request failed, or null
+     * @param params The form parameters
+     * @return The future result
+     */
+    public <T> Future<T> doPOST(String reqPath, List<Header> headers, List<KeyValuePair<String, ContentBody>> parts,
+            ResponseHandler<T> handler, FutureCallback<T> callback, NameValuePair... params) {
+        HttpPost httpPost = new HttpPost(reqPath);
+        if (headers != null)
+            for (Header header : headers)
+                httpPost.addHeader(header);
+
+        try {
+            MultipartEntity entity = GenericHttpClient.createMultipartEntity(parts, params);
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            entity.writeTo(body);
+            httpPost.setEntity(new NByteArrayEntity(body.toByteArray(),
+                    ContentType.parse(entity.getContentType().getValue())));
+        }
+        catch (IOException e) {
+            ChainedFuture<T> future = new ChainedFuture<T>(callback);
+            future.failed(e);
+
+            return future;
+        }
+
+        return execute(httpPost, handler, callback);
+    }
+
+    private <T> Future<T> execute(HttpRequest request, final ResponseHandler<T> handler, FutureCallback<T> callback) {
+        final ChainedFuture<T> future = new ChainedFuture<T>(callback);
+
+        DefaultHttpAsyncClient engine;
+        synchronized (AsyncHttpClient.class) {
+            engine = _closed ? null : _engine;
+        }
+        if (engine == null) {
+            future.failed(new IllegalStateException("The client is closed"));
+            return future;
+        }
+
+        request.setParams(_requestParams);
+        HttpContext context = new BasicHttpContext();
+        context.setAttribute(ClientContext.CREDS_PROVIDER, _credentialsProvider);
+
+        future.setUpstream(engine.execute(_host, request, context, new FutureCallback<HttpResponse>() {
+            public void completed(HttpResponse response) {
+                T result;
+                try {
+                    result = handler.handleResponse(response);
+                }
+                catch (Exception e) {
+                    future.failed(e);
+                    return;
+                }
+
+                future.completed(result);
+            }
+
+            public void failed(Exception e) {
+                future.failed(e);
+            }
+
+            public void cancelled() {
+                future.cancel(true);
+            }
+        }));
+
+        return future;
+    }
+
+    /**
+     * Lets go of the engine. Requests still in flight are aborted if this
+     * was the last client.
+     */
+    public void close() {
+        synchronized (AsyncHttpClient.class) {
+            if (_closed)
+                return;
+
+            _closed = true;
+        }
+
+        releaseEngine();
+    }
+
+    private static synchronized void acquireEngine(ConnectionPoolSettings settings) throws IOReactorException {
+        if (_engine == null) {
+            IOReactorConfig config = new IOReactorConfig();
+            config.setIoThreadCount(Runtime.getRuntime().availableProcessors());
+            config.setConnectTimeout(settings.getConnectTimeout());
+            config.setTcpNoDelay(settings.isTcpNoDelay());
+
+            DefaultConnectingIOReactor ioReactor = new DefaultConnectingIOReactor(config, new ThreadFactory() {
+                private final AtomicInteger _count = new AtomicInteger();
+
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "AsyncHttpClient-io-" + _count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+            PoolingClientAsyncConnectionManager cm = new PoolingClientAsyncConnectionManager(ioReactor);
+            cm.setDefaultMaxPerRoute(settings.getMaxConnectionsPerRoute());
+            cm.setMaxTotal(settings.getMaxConnectionsTotal());
+
+            DefaultHttpAsyncClient engine = new DefaultHttpAsyncClient(cm);
+            HttpProtocolParams.setVersion(engine.getParams(), HttpVersion.HTTP_1_1);
+            HttpProtocolParams.setUserAgent(engine.getParams(), "HttpAsyncClient/" + Version.getFullVersion());
+            // Add as the very first interceptor in the protocol chain
+            engine.addRequestInterceptor(new PreemptiveAuthInterceptor(), 0);
+            // Ask for gzip/deflate responses and inflate them as they are read
+            engine.addRequestInterceptor(new RequestAcceptEncoding());
+            engine.addResponseInterceptor(new ResponseContentEncoding());
+            engine.setKeepAliveStrategy(new CappedKeepAliveStrategy(settings.getIdleTimeout()));
+            engine.start();
+
+            _engine = engine;
+        }
+        else {
+            PoolingClientAsyncConnectionManager cm = (PoolingClientAsyncConnectionManager) _engine.getConnectionManager();
+            cm.setDefaultMaxPerRoute(Math.max(cm.getDefaultMaxPerRoute(), settings.getMaxConnectionsPerRoute()));
+            cm.setMaxTotal(Math.max(cm.getMaxTotal(), settings.getMaxConnectionsTotal()));
+        }
+
+        _engineRefCount++;
+    }
+
+    private static synchronized void releaseEngine() {
+        if (--_engineRefCount > 0)
+            return;
+
+        try {
+            _engine.shutdown();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        _engine = null;
+    }
+}
@@ -0,0 +1,27 @@
+package org.meandre.tools.client.utils;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Keeps connections for as long as the server allows, but no longer than
+ * the idle timeout (0 for no limit).
+ */
+class CappedKeepAliveStrategy extends DefaultConnectionKeepAliveStrategy {
+
+    private final long _idleTimeout;
+
+    CappedKeepAliveStrategy(long idleTimeout) {
+        _idleTimeout = idleTimeout;
+    }
+
+    @Override
+    public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+        long duration = super.getKeepAliveDuration(response, context);
+        if (duration > 0 && (_idleTimeout <= 0 || duration < _idleTimeout))
+            return duration;
+
+        return _idleTimeout;
+    }
+}
@@ -0,0 +1,46 @@
+package org.meandre.tools.client.utils;
+
+import java.util.concurrent.Future;
+
+import org.apache.http.concurrent.BasicFuture;
+import org.apache.http.concurrent.FutureCallback;
+
+/**
+ * A future whose result is made from the result of another one, the
+ * upstream future. Cancelling it cancels the upstream future too, so the
+ * request behind it is aborted and its connection goes back to the pool.
+ */
+public class ChainedFuture<T> extends BasicFuture<T> {
+
+    private Future<?> _upstream;
+
+    public ChainedFuture(FutureCallback<T> callback) {
+        super(callback);
+    }
+
+    /**
+     * @param upstream The future this one waits for. Cancelled right away
+     *                 if this one already was.
+     */
+    public void setUpstream(Future<?> upstream) {
+        synchronized (this) {
+            _upstream = upstream;
+        }
+        if (isCancelled())
+            upstream.cancel(true);
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+
+        Future<?> upstream;
+        synchronized (this) {
+            upstream = _upstream;
+        }
+        if (cancelled && upstream != null)
+            upstream.cancel(true);
+
+        return cancelled;
+    }
+}
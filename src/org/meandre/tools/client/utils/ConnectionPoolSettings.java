@@ -0,0 +1,117 @@
+package org.meandre.tools.client.utils;
+
+/**
+ * The tunables of the connections of a GenericHttpClient and of the pool they
+ * are kept in (see ConnectionPools). All times are in milliseconds, 0 means
+ * no limit.
+ *
+ * <p>
+ * The pool of a host is shared by all the clients of the host, so its size is
+ * the largest asked for by any of them, and it limits the connections of all
+ * those clients together, not of each one. A client that finds all of them in
+ * use waits for one for up to the lease timeout. The other settings are per
+ * client.
+ */
+public class ConnectionPoolSettings {
+
+    private int _maxConnectionsPerRoute = 20;
+    private int _maxConnectionsTotal = 100;
+    private int _connectTimeout = 30000;
+    private long _leaseTimeout = 60000;
+    private int _socketTimeout = 0;
+    private long _idleTimeout = 60000;
+    private boolean _staleCheckingEnabled = true;
+    private boolean _tcpNoDelay = true;
+
+    /**
+     * how many connections the clients of a host may have open to it at once,
+     * all of them together. 20 by default.
+     */
+    public int getMaxConnectionsPerRoute() {
+        return _maxConnectionsPerRoute;
+    }
+
+    public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+        _maxConnectionsPerRoute = maxConnectionsPerRoute;
+    }
+
+    /** the most connections in the pool of a host, 100 by default */
+    public int getMaxConnectionsTotal() {
+        return _maxConnectionsTotal;
+    }
+
+    public void setMaxConnectionsTotal(int maxConnectionsTotal) {
+        _maxConnectionsTotal = maxConnectionsTotal;
+    }
+
+    /** how long to wait for a connection to be established, 30 s by default */
+    public int getConnectTimeout() {
+        return _connectTimeout;
+    }
+
+    public void setConnectTimeout(int connectTimeout) {
+        _connectTimeout = connectTimeout;
+    }
+
+    /**
+     * how long to wait for a connection from the pool when all of them are in
+     * use, e.g. by streams of flow output that weren't closed yet. 60 s by
+     * default.
+     */
+    public long getLeaseTimeout() {
+        return _leaseTimeout;
+    }
+
+    public void setLeaseTimeout(long leaseTimeout) {
+        _leaseTimeout = leaseTimeout;
+    }
+
+    /**
+     * how long to wait for data on an open connection. no limit by default,
+     * since the output of a running flow may not come for a long time.
+     */
+    public int getSocketTimeout() {
+        return _socketTimeout;
+    }
+
+    public void setSocketTimeout(int socketTimeout) {
+        _socketTimeout = socketTimeout;
+    }
+
+    /**
+     * how long a connection is kept open unused, at most, 60 s by default.
+     * servers may ask for less with a Keep-Alive header. a pool that no
+     * client uses anymore is shut down after the same time.
+     */
+    public long getIdleTimeout() {
+        return _idleTimeout;
+    }
+
+    public void setIdleTimeout(long idleTimeout) {
+        _idleTimeout = idleTimeout;
+    }
+
+    /**
+     * whether a pooled connection is checked before it is used, in case the
+     * server closed it in the meantime. on by default. the check blocks for
+     * up to a millisecond per request, so high-rate callers talking to a
+     * server that keeps connections open for longer than the idle timeout
+     * may want it off.
+     */
+    public boolean isStaleCheckingEnabled() {
+        return _staleCheckingEnabled;
+    }
+
+    public void setStaleCheckingEnabled(boolean staleCheckingEnabled) {
+        _staleCheckingEnabled = staleCheckingEnabled;
+    }
+
+    /** whether Nagle's algorithm is off, so small requests go out at once. on by default */
+    public boolean isTcpNoDelay() {
+        return _tcpNoDelay;
+    }
+
+    public void setTcpNoDelay(boolean tcpNoDelay) {
+        _tcpNoDelay = tcpNoDelay;
+    }
+}
@@ -0,0 +1,143 @@
+package org.meandre.tools.client.utils;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpHost;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+
+/**
+ * The connection pools of the GenericHttpClients, one per host. A pool is
+ * shared by all the clients of its host, so their connections, and the TCP
+ * and TLS setup that went into them, are reused from one client to the next,
+ * short lived ones included.
+ *
+ * <p>
+ * Clients acquire() the pool of their host when they are created and
+ * release() it when they are closed. A pool that no client holds anymore is
+ * kept for its idle timeout, in case another client of the host comes along,
+ * and then shut down. A daemon thread closes the connections that were idle
+ * for longer than the idle timeout, or past the time the server said it
+ * would keep them, and shuts down the pools; it stops when there are none
+ * left.
+ */
+class ConnectionPools {
+
+    /** how often idle connections and unused pools are looked for, in ms */
+    private static final long EVICTION_INTERVAL = 5000;
+
+    private static final Map<HttpHost, Pool> _pools = new HashMap<HttpHost, Pool>();
+    private static ScheduledExecutorService _evictor;
+
+    static class Pool {
+        private final PoolingClientConnectionManager _connectionManager;
+        private long _idleTimeout;
+        private int _refCount = 0;
+        private long _releaseTime;
+
+        private Pool(PoolingClientConnectionManager connectionManager, long idleTimeout) {
+            _connectionManager = connectionManager;
+            _idleTimeout = idleTimeout;
+        }
+
+        ClientConnectionManager getConnectionManager() {
+            return _connectionManager;
+        }
+    }
+
+    private ConnectionPools() { }
+
+    /**
+     * the pool of the host, created with the settings if there is none. an
+     * existing pool grows to the sizes in the settings if they are larger.
+     */
+    static synchronized Pool acquire(HttpHost host, ConnectionPoolSettings settings) {
+        Pool pool = _pools.get(host);
+        if (pool == null) {
+            SchemeRegistry schemeRegistry = new SchemeRegistry();
+            schemeRegistry.register(new Scheme("http", 80, PlainSocketFactory.getSocketFactory()));
+            schemeRegistry.register(new Scheme("https", 443, SSLSocketFactory.getSocketFactory()));
+
+            PoolingClientConnectionManager cm = new PoolingClientConnectionManager(schemeRegistry);
+            cm.setDefaultMaxPerRoute(settings.getMaxConnectionsPerRoute());
+            cm.setMaxTotal(settings.getMaxConnectionsTotal());
+
+            pool = new Pool(cm, settings.getIdleTimeout());
+            _pools.put(host, pool);
+
+            if (_evictor == null) {
+                _evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "GenericHttpClient-idle-evictor");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+                _evictor.scheduleWithFixedDelay(new Runnable() {
+                    public void run() {
+                        evict();
+                    }
+                }, EVICTION_INTERVAL, EVICTION_INTERVAL, TimeUnit.MILLISECONDS);
+            }
+        }
+        else {
+            PoolingClientConnectionManager cm = pool._connectionManager;
+            cm.setDefaultMaxPerRoute(Math.max(cm.getDefaultMaxPerRoute(), settings.getMaxConnectionsPerRoute()));
+            cm.setMaxTotal(Math.max(cm.getMaxTotal(), settings.getMaxConnectionsTotal()));
+            if (pool._idleTimeout > 0 && (settings.getIdleTimeout() <= 0 || settings.getIdleTimeout() > pool._idleTimeout))
+                pool._idleTimeout = settings.getIdleTimeout();
+        }
+
+        pool._refCount++;
+        return pool;
+    }
+
+    /**
+     * lets go of a pool acquired before. a pool without an idle timeout is
+     * shut down as soon as no client holds it.
+     */
+    static synchronized void release(Pool pool) {
+        if (--pool._refCount > 0)
+            return;
+
+        pool._releaseTime = System.currentTimeMillis();
+        if (pool._idleTimeout <= 0)
+            shutdown(pool);
+    }
+
+    private static synchronized void evict() {
+        long now = System.currentTimeMillis();
+        for (Iterator<Pool> it = _pools.values().iterator(); it.hasNext(); ) {
+            Pool pool = it.next();
+            if (pool._refCount == 0 && now - pool._releaseTime >= pool._idleTimeout) {
+                pool._connectionManager.shutdown();
+                it.remove();
+                continue;
+            }
+
+            pool._connectionManager.closeExpiredConnections();
+            if (pool._idleTimeout > 0)
+                pool._connectionManager.closeIdleConnections(pool._idleTimeout, TimeUnit.MILLISECONDS);
+        }
+
+        if (_pools.isEmpty()) {
+            _evictor.shutdown();
+            _evictor = null;
+        }
+    }
+
+    private static void shutdown(Pool pool) {
+        pool._connectionManager.shutdown();
+        _pools.values().remove(pool);
+    }
+}
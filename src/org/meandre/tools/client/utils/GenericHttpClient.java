@@ -1,7 +1,6 @@
 package org.meandre.tools.client.utils;
 
 import java.io.BufferedInputStream;
-import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.util.Arrays;
@@ -10,15 +9,11 @@ import java.util.logging.Logger;
 
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
-import org.apache.http.HttpException;
 import org.apache.http.HttpHost;
-import org.apache.http.HttpRequest;
-import org.apache.http.HttpRequestInterceptor;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpVersion;
 import org.apache.http.NameValuePair;
 import org.apache.http.auth.AuthScope;
-import org.apache.http.auth.AuthState;
 import org.apache.http.auth.Credentials;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.CredentialsProvider;
@@ -26,27 +21,19 @@ import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
-import org.apache.http.client.protocol.ClientContext;
+import org.apache.http.client.params.HttpClientParams;
+import org.apache.http.client.protocol.RequestAcceptEncoding;
+import org.apache.http.client.protocol.ResponseContentEncoding;
 import org.apache.http.client.utils.URLEncodedUtils;
-import org.apache.http.conn.ClientConnectionManager;
-import org.apache.http.conn.params.ConnManagerParams;
-import org.apache.http.conn.params.ConnPerRouteBean;
-import org.apache.http.conn.scheme.PlainSocketFactory;
-import org.apache.http.conn.scheme.Scheme;
-import org.apache.http.conn.scheme.SchemeRegistry;
-import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.apache.http.entity.mime.HttpMultipartMode;
 import org.apache.http.entity.mime.MultipartEntity;
 import org.apache.http.entity.mime.content.ContentBody;
 import org.apache.http.entity.mime.content.StringBody;
-import org.apache.http.impl.auth.BasicScheme;
 import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
 import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.params.HttpParams;
 import org.apache.http.params.HttpProtocolParams;
-import org.apache.http.protocol.ExecutionContext;
-import org.apache.http.protocol.HttpContext;
 import org.meandre.tools.client.exceptions.TransmissionException;
 import org.seasr.meandre.support.generic.Version;
 import org.seasr.meandre.support.generic.util.KeyValuePair;
@@ -60,6 +47,8 @@ public class GenericHttpClient {
     
     private final HttpHost _host;
     private Logger _logger;
+    private final ConnectionPools.Pool _pool;
+    private boolean _closed = false;
     protected final DefaultHttpClient _httpClient;
     
     
@@ -76,44 +65,38 @@ public class GenericHttpClient {
     }
     
     public GenericHttpClient(HttpHost host, Logger logger) {
+        this(host, logger, new ConnectionPoolSettings());
+    }
+    
+    /**
+     * A client of the host, whose connections come from the pool shared by
+     * all clients of the host (see ConnectionPools). close() must be called
+     * when done.
+     */
+    public GenericHttpClient(HttpHost host, Logger logger, ConnectionPoolSettings settings) {
         _host = host;
         _logger = logger;
 
-        HttpRequestInterceptor preemptiveAuth = new HttpRequestInterceptor() {
-            public void process(final HttpRequest request, final HttpContext context) throws HttpException, IOException {
-                AuthState authState = (AuthState) context.getAttribute(ClientContext.TARGET_AUTH_STATE);
-                CredentialsProvider credsProvider = (CredentialsProvider) context.getAttribute(ClientContext.CREDS_PROVIDER);
-                HttpHost targetHost = (HttpHost) context.getAttribute(ExecutionContext.HTTP_TARGET_HOST);
-
-                // If no auth scheme has been initialized yet
-                if (authState.getAuthScheme() == null) {
-                    AuthScope authScope = new AuthScope(targetHost.getHostName(), targetHost.getPort());
-                    // Obtain credentials matching the target host
-                    Credentials creds = credsProvider.getCredentials(authScope);
-                    // If found, generate BasicScheme preemptively
-                    if (creds != null) {
-                        authState.setAuthScheme(new BasicScheme());
-                        authState.setCredentials(creds);
-                    }
-                }
-            }
-        };
-
         HttpParams params = new BasicHttpParams();
-        ConnPerRouteBean connPerRoute = new ConnPerRouteBean(20);
-        ConnManagerParams.setMaxConnectionsPerRoute(params, connPerRoute);
-        ConnManagerParams.setMaxTotalConnections(params, 100);
         HttpProtocolParams.setVersion(params, HttpVersion.HTTP_1_1);
         HttpProtocolParams.setUserAgent(params, "HttpClient/" + Version.getFullVersion());
+        HttpConnectionParams.setConnectionTimeout(params, settings.getConnectTimeout());
+        HttpClientParams.setConnectionManagerTimeout(params, settings.getLeaseTimeout());
+        HttpConnectionParams.setSoTimeout(params, settings.getSocketTimeout());
+        HttpConnectionParams.setStaleCheckingEnabled(params, settings.isStaleCheckingEnabled());
+        HttpConnectionParams.setTcpNoDelay(params, settings.isTcpNoDelay());
 
-        SchemeRegistry schemeRegistry = new SchemeRegistry();
-        schemeRegistry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80)); 
-        schemeRegistry.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
-       
-        ClientConnectionManager cm = new ThreadSafeClientConnManager(params, schemeRegistry);
-        _httpClient = new DefaultHttpClient(cm, params);
+        _pool = ConnectionPools.acquire(host, settings);
+        _httpClient = new DefaultHttpClient(_pool.getConnectionManager(), params);
         // Add as the very first interceptor in the protocol chain
-        _httpClient.addRequestInterceptor(preemptiveAuth, 0);
+        _httpClient.addRequestInterceptor(new PreemptiveAuthInterceptor(), 0);
+        // Ask for gzip/deflate responses and inflate them as they are read
+        _httpClient.addRequestInterceptor(new RequestAcceptEncoding());
+        _httpClient.addResponseInterceptor(new ResponseContentEncoding());
+
+        // Keep connections for as long as the server allows, but no longer
+        // than the idle timeout
+        _httpClient.setKeepAliveStrategy(new CappedKeepAliveStrategy(settings.getIdleTimeout()));
     }
 
     public Logger getLogger() {
@@ -187,14 +170,7 @@ public class GenericHttpClient {
     
     public <T> T doPOST(String reqPath, List<Header> headers, List<KeyValuePair<String, ContentBody>> parts, 
                         ResponseHandler<T> handler, NameValuePair... params) throws TransmissionException, UnsupportedEncodingException {
-        MultipartEntity entity = new MultipartEntity(HttpMultipartMode.BROWSER_COMPATIBLE);
-
-        for (NameValuePair param : params)
-            entity.addPart(param.getName(), new StringBody(param.getValue()));
-
-        if (parts != null)
-            for (KeyValuePair<String, ContentBody> part : parts)
-                entity.addPart(part.getKey(), part.getValue());
+        MultipartEntity entity = createMultipartEntity(parts, params);
 
         HttpPost httpPost = new HttpPost(reqPath);
         if (headers != null)
@@ -211,6 +187,23 @@ public class GenericHttpClient {
         }
     }
     
+    /**
+     * the form of a POST request: the parameters, followed by the parts
+     */
+    static MultipartEntity createMultipartEntity(List<KeyValuePair<String, ContentBody>> parts, NameValuePair... params)
+            throws UnsupportedEncodingException {
+        MultipartEntity entity = new MultipartEntity(HttpMultipartMode.BROWSER_COMPATIBLE);
+
+        for (NameValuePair param : params)
+            entity.addPart(param.getName(), new StringBody(param.getValue()));
+
+        if (parts != null)
+            for (KeyValuePair<String, ContentBody> part : parts)
+                entity.addPart(part.getKey(), part.getValue());
+
+        return entity;
+    }
+
     public <T> T doDELETE(String reqPath, List<Header> headers, ResponseHandler<T> handler, NameValuePair... params) throws TransmissionException {
         if (params.length > 0)
             reqPath += "?" + URLEncodedUtils.format(Arrays.asList(params), "UTF-8");
@@ -228,7 +221,15 @@ public class GenericHttpClient {
         }
     }
     
-    public void close() {
-        _httpClient.getConnectionManager().shutdown();
+    /**
+     * Lets go of the connection pool. The pool is shut down once no client
+     * has used it for its idle timeout.
+     */
+    public synchronized void close() {
+        if (_closed)
+            return;
+
+        _closed = true;
+        ConnectionPools.release(_pool);
     }
 }
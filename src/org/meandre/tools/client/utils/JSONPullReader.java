@@ -0,0 +1,455 @@
+package org.meandre.tools.client.utils;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Reads a JSON document one token at a time as it streams in, the way a pull
+ * parser reads XML. Callers take the parts of a response they need and skip
+ * the rest, so a large response is never held in memory whole, neither as a
+ * String nor as a tree of JSONObjects.
+ *
+ * <p>
+ * A part that is needed whole can still be read as a JSONObject or JSONArray
+ * with nextValue().
+ *
+ * <p>
+ * Reads strict JSON. Not thread safe.
+ */
+public class JSONPullReader {
+
+    /** the kinds of tokens, see peek() */
+    public enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+    }
+
+    // what has been read so far at each level of nesting
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_ARRAY = 2;
+    private static final int NONEMPTY_ARRAY = 3;
+    private static final int EMPTY_OBJECT = 4;
+    private static final int DANGLING_NAME = 5;
+    private static final int NONEMPTY_OBJECT = 6;
+
+    private final Reader _in;
+    private final char[] _buffer = new char[8192];
+    private int _pos = 0;
+    private int _limit = 0;
+
+    /** the number of characters read before those in the buffer */
+    private long _offset = 0;
+
+    private int[] _stack = new int[32];
+    private int _depth = 0;
+
+    /** the next token, if peek() has read it already */
+    private Token _peeked;
+
+    /** the text of the peeked name or value */
+    private String _text;
+
+    public JSONPullReader(Reader in) {
+        _in = in;
+        push(EMPTY_DOCUMENT);
+    }
+
+    /**
+     * the kind of the next token, without consuming it.
+     *
+     * @throws JSONException
+     *             if the document isn't valid JSON
+     */
+    public Token peek() throws IOException, JSONException {
+        if (_peeked != null) {
+            return _peeked;
+        }
+
+        int c;
+        switch (_stack[_depth - 1]) {
+            case EMPTY_DOCUMENT:
+                _stack[_depth - 1] = NONEMPTY_DOCUMENT;
+                break;
+
+            case NONEMPTY_DOCUMENT:
+                if (nextClean() != -1) {
+                    throw syntaxError("Expected the end of the document");
+                }
+                return _peeked = Token.END_DOCUMENT;
+
+            case EMPTY_ARRAY:
+                _stack[_depth - 1] = NONEMPTY_ARRAY;
+                c = nextClean();
+                if (c == ']') {
+                    return _peeked = Token.END_ARRAY;
+                }
+                if (c != -1) {
+                    _pos--;
+                }
+                break;
+
+            case NONEMPTY_ARRAY:
+                c = nextClean();
+                if (c == ']') {
+                    return _peeked = Token.END_ARRAY;
+                }
+                if (c != ',') {
+                    throw syntaxError("Expected a ',' or ']'");
+                }
+                break;
+
+            case EMPTY_OBJECT:
+            case NONEMPTY_OBJECT:
+                boolean empty = _stack[_depth - 1] == EMPTY_OBJECT;
+                _stack[_depth - 1] = DANGLING_NAME;
+                c = nextClean();
+                if (c == '}') {
+                    return _peeked = Token.END_OBJECT;
+                }
+                if (!empty) {
+                    if (c != ',') {
+                        throw syntaxError("Expected a ',' or '}'");
+                    }
+                    c = nextClean();
+                }
+                if (c != '"') {
+                    throw syntaxError("Expected a name");
+                }
+                _text = readString();
+                return _peeked = Token.NAME;
+
+            case DANGLING_NAME:
+                _stack[_depth - 1] = NONEMPTY_OBJECT;
+                if (nextClean() != ':') {
+                    throw syntaxError("Expected a ':' after a name");
+                }
+                break;
+        }
+
+        // a value
+        c = nextClean();
+        switch (c) {
+            case -1:
+                throw syntaxError("Unexpected end of document");
+
+            case '{':
+                return _peeked = Token.BEGIN_OBJECT;
+
+            case '[':
+                return _peeked = Token.BEGIN_ARRAY;
+
+            case '"':
+                _text = readString();
+                return _peeked = Token.STRING;
+
+            default:
+                _pos--;
+                _text = readLiteral();
+                if (_text.length() == 0) {
+                    throw syntaxError("Expected a value");
+                }
+                if (_text.equals("true") || _text.equals("false")) {
+                    return _peeked = Token.BOOLEAN;
+                }
+                if (_text.equals("null")) {
+                    return _peeked = Token.NULL;
+                }
+                if (_text.charAt(0) == '-' || Character.isDigit(_text.charAt(0))) {
+                    return _peeked = Token.NUMBER;
+                }
+                throw syntaxError("Unexpected value '" + _text + "'");
+        }
+    }
+
+    /** true if the current array or object has another element */
+    public boolean hasNext() throws IOException, JSONException {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    public void beginObject() throws IOException, JSONException {
+        consume(Token.BEGIN_OBJECT);
+        push(EMPTY_OBJECT);
+    }
+
+    public void endObject() throws IOException, JSONException {
+        consume(Token.END_OBJECT);
+        _depth--;
+    }
+
+    public void beginArray() throws IOException, JSONException {
+        consume(Token.BEGIN_ARRAY);
+        push(EMPTY_ARRAY);
+    }
+
+    public void endArray() throws IOException, JSONException {
+        consume(Token.END_ARRAY);
+        _depth--;
+    }
+
+    /** the name of the next member of the current object */
+    public String nextName() throws IOException, JSONException {
+        consume(Token.NAME);
+        return _text;
+    }
+
+    /**
+     * the next value as a string. like JSONObject.getString(), numbers,
+     * booleans and null are returned as their text.
+     */
+    public String nextString() throws IOException, JSONException {
+        Token token = peek();
+        if (token != Token.STRING && token != Token.NUMBER && token != Token.BOOLEAN && token != Token.NULL) {
+            throw syntaxError("Expected a string but was " + token);
+        }
+        _peeked = null;
+        return _text;
+    }
+
+    /**
+     * reads the next value whole: a JSONObject, JSONArray, String, Boolean,
+     * Number or JSONObject.NULL. only meant for small parts of a document.
+     */
+    public Object nextValue() throws IOException, JSONException {
+        switch (peek()) {
+            case BEGIN_OBJECT:
+                JSONObject jo = new JSONObject();
+                beginObject();
+                while (hasNext()) {
+                    jo.put(nextName(), nextValue());
+                }
+                endObject();
+                return jo;
+
+            case BEGIN_ARRAY:
+                JSONArray ja = new JSONArray();
+                beginArray();
+                while (hasNext()) {
+                    ja.put(nextValue());
+                }
+                endArray();
+                return ja;
+
+            case STRING:
+                return nextString();
+
+            case BOOLEAN:
+                return Boolean.valueOf(nextString());
+
+            case NULL:
+                nextString();
+                return JSONObject.NULL;
+
+            case NUMBER:
+                return toNumber(nextString());
+
+            default:
+                throw syntaxError("Expected a value but was " + _peeked);
+        }
+    }
+
+    /** skips the next value, including everything in it */
+    public void skipValue() throws IOException, JSONException {
+        if (!hasNext()) {
+            throw syntaxError("Expected a value but was " + _peeked);
+        }
+        int depth = 0;
+        do {
+            switch (peek()) {
+                case BEGIN_OBJECT:
+                    beginObject();
+                    depth++;
+                    break;
+
+                case BEGIN_ARRAY:
+                    beginArray();
+                    depth++;
+                    break;
+
+                case END_OBJECT:
+                    endObject();
+                    depth--;
+                    break;
+
+                case END_ARRAY:
+                    endArray();
+                    depth--;
+                    break;
+
+                case END_DOCUMENT:
+                    throw syntaxError("Unexpected end of document");
+
+                default:
+                    // a name or a value
+                    _peeked = null;
+                    break;
+            }
+        } while (depth > 0);
+    }
+
+    public void close() throws IOException {
+        _in.close();
+    }
+
+    private void consume(Token expected) throws IOException, JSONException {
+        if (peek() != expected) {
+            throw syntaxError("Expected " + expected + " but was " + _peeked);
+        }
+        _peeked = null;
+    }
+
+    private void push(int state) {
+        if (_depth == _stack.length) {
+            int[] stack = new int[_depth * 2];
+            System.arraycopy(_stack, 0, stack, 0, _depth);
+            _stack = stack;
+        }
+        _stack[_depth++] = state;
+    }
+
+    private boolean fill() throws IOException {
+        _offset += _limit;
+        _pos = 0;
+        _limit = Math.max(0, _in.read(_buffer, 0, _buffer.length));
+        return _limit > 0;
+    }
+
+    /** the next character that isn't whitespace, or -1 at the end */
+    private int nextClean() throws IOException {
+        while (_pos < _limit || fill()) {
+            char c = _buffer[_pos++];
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    /** the rest of a string whose opening quote was read, unescaped */
+    private String readString() throws IOException, JSONException {
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            int start = _pos;
+            while (_pos < _limit) {
+                char c = _buffer[_pos++];
+                if (c == '"') {
+                    sb.append(_buffer, start, _pos - 1 - start);
+                    return sb.toString();
+                }
+                if (c == '\\') {
+                    sb.append(_buffer, start, _pos - 1 - start);
+                    sb.append(readEscape());
+                    start = _pos;
+                }
+                else if (c == '\n' || c == '\r') {
+                    throw syntaxError("Unterminated string");
+                }
+            }
+            sb.append(_buffer, start, _limit - start);
+            if (!fill()) {
+                throw syntaxError("Unterminated string");
+            }
+        }
+    }
+
+    private char readEscape() throws IOException, JSONException {
+        int c = read();
+        switch (c) {
+            case 'b':
+                return '\b';
+            case 't':
+                return '\t';
+            case 'n':
+                return '\n';
+            case 'f':
+                return '\f';
+            case 'r':
+                return '\r';
+            case '"':
+            case '\'':
+            case '\\':
+            case '/':
+                return (char) c;
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(read(), 16);
+                    if (digit == -1) {
+                        throw syntaxError("Illegal \\u escape");
+                    }
+                    value = (value << 4) | digit;
+                }
+                return (char) value;
+            default:
+                throw syntaxError("Illegal escape");
+        }
+    }
+
+    /** the characters up to the next delimiter: a number, true, false or null */
+    private String readLiteral() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            int start = _pos;
+            while (_pos < _limit) {
+                switch (_buffer[_pos]) {
+                    case ' ':
+                    case '\t':
+                    case '\n':
+                    case '\r':
+                    case ',':
+                    case ':':
+                    case '[':
+                    case ']':
+                    case '{':
+                    case '}':
+                    case '"':
+                        sb.append(_buffer, start, _pos - start);
+                        return sb.toString();
+                }
+                _pos++;
+            }
+            sb.append(_buffer, start, _limit - start);
+            if (!fill()) {
+                return sb.toString();
+            }
+        }
+    }
+
+    private int read() throws IOException {
+        if (_pos == _limit && !fill()) {
+            return -1;
+        }
+        return _buffer[_pos++];
+    }
+
+    /** the number the way org.json reads it: an Integer, Long or Double */
+    private Object toNumber(String text) throws JSONException {
+        try {
+            if (text.indexOf('.') == -1 && text.indexOf('e') == -1 && text.indexOf('E') == -1) {
+                try {
+                    return Integer.valueOf(text);
+                }
+                catch (NumberFormatException e) {
+                    return Long.valueOf(text);
+                }
+            }
+            return Double.valueOf(text);
+        }
+        catch (NumberFormatException e) {
+            try {
+                return Double.valueOf(text);
+            }
+            catch (NumberFormatException e2) {
+                throw syntaxError("Illegal number '" + text + "'");
+            }
+        }
+    }
+
+    private JSONException syntaxError(String message) {
+        return new JSONException(message + " at character " + (_offset + _pos));
+    }
+}
@@ -9,7 +9,8 @@ import org.apache.http.impl.client.BasicResponseHandler;
 import org.json.JSONTokener;
 
 /**
- * Response handler that returns a JSON tokener
+ * Response handler that returns a JSON tokener. The whole response is read
+ * into a String first; for large responses see JSONStreamResponseHandler.
  * 
  * @author Boris Capitanu
  */
@@ -0,0 +1,109 @@
+package org.meandre.tools.client.utils.handlers;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.Collection;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.StatusLine;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.entity.ContentType;
+import org.apache.http.util.EntityUtils;
+import org.json.JSONException;
+import org.meandre.tools.client.utils.JSONPullReader;
+
+/**
+ * Response handler that reads a JSON response as it streams in, instead of
+ * buffering all of it first like JSONResponseHandler does. Subclasses pull
+ * what they need out of the response in handleJSON().
+ *
+ * <p>
+ * Responses that aren't valid JSON fail with a ClientProtocolException
+ * caused by the JSONException.
+ */
+public abstract class JSONStreamResponseHandler<T> implements ResponseHandler<T> {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    public T handleResponse(HttpResponse response) throws ClientProtocolException, IOException {
+        StatusLine statusLine = response.getStatusLine();
+        HttpEntity entity = response.getEntity();
+
+        if (statusLine.getStatusCode() >= 300) {
+            EntityUtils.consume(entity);
+            throw new HttpResponseException(statusLine.getStatusCode(), statusLine.getReasonPhrase());
+        }
+
+        if (entity == null)
+            throw new ClientProtocolException("Response contains no content");
+
+        // JSON is UTF-8 unless the response says otherwise
+        ContentType contentType = ContentType.get(entity);
+        Charset charset = contentType != null ? contentType.getCharset() : null;
+        if (charset == null)
+            charset = UTF_8;
+
+        JSONPullReader reader = new JSONPullReader(new InputStreamReader(entity.getContent(), charset));
+        try {
+            return handleJSON(reader);
+        }
+        catch (JSONException e) {
+            throw new ClientProtocolException(e);
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * reads the response
+     *
+     * @param reader Positioned at the start of the response
+     */
+    protected abstract T handleJSON(JSONPullReader reader) throws IOException, JSONException;
+
+    /**
+     * Reads an array of objects, adding the value of the named member of each
+     * object to values and skipping everything else
+     *
+     * @throws JSONException If an object doesn't have the member
+     */
+    protected static void readMemberValues(JSONPullReader reader, String member, Collection<String> values)
+            throws IOException, JSONException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String value = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals(member))
+                    value = reader.nextString();
+                else
+                    reader.skipValue();
+            }
+            reader.endObject();
+
+            if (value == null)
+                throw new JSONException("JSONObject[\"" + member + "\"] not found.");
+
+            values.add(value);
+        }
+        reader.endArray();
+    }
+
+    /**
+     * Reads an object, adding the names of its members to names and skipping
+     * their values
+     */
+    protected static void readNames(JSONPullReader reader, Collection<String> names) throws IOException, JSONException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            names.add(reader.nextName());
+            reader.skipValue();
+        }
+        reader.endObject();
+    }
+}
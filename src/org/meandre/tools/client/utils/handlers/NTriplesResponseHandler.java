@@ -0,0 +1,65 @@
+package org.meandre.tools.client.utils.handlers;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.StatusLine;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.entity.ContentType;
+import org.apache.http.util.EntityUtils;
+import org.meandre.tools.client.utils.rdf.NTriplesParser;
+import org.meandre.tools.client.utils.rdf.TripleSink;
+
+/**
+ * Response handler that parses an N-Triples response as it streams in and
+ * hands each triple to a sink, instead of reading the whole response into a
+ * Model like RDFModelResponseHandler does. Returns the number of triples.
+ *
+ * @see NTriplesParser
+ */
+public class NTriplesResponseHandler implements ResponseHandler<Long> {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final TripleSink _sink;
+
+    /**
+     * @param sink Receives the triples of the response
+     */
+    public NTriplesResponseHandler(TripleSink sink) {
+        _sink = sink;
+    }
+
+    public Long handleResponse(HttpResponse response) throws ClientProtocolException, IOException {
+        StatusLine statusLine = response.getStatusLine();
+        HttpEntity entity = response.getEntity();
+
+        if (statusLine.getStatusCode() >= 300) {
+            EntityUtils.consume(entity);
+            throw new HttpResponseException(statusLine.getStatusCode(), statusLine.getReasonPhrase());
+        }
+
+        if (entity == null)
+            return 0L;
+
+        // N-Triples is UTF-8 unless the response says otherwise
+        ContentType contentType = ContentType.get(entity);
+        Charset charset = contentType != null ? contentType.getCharset() : null;
+        if (charset == null)
+            charset = UTF_8;
+
+        Reader in = new InputStreamReader(entity.getContent(), charset);
+        try {
+            return new NTriplesParser(in).parse(_sink);
+        }
+        finally {
+            in.close();
+        }
+    }
+}
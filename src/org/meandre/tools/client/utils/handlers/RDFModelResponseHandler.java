@@ -11,7 +11,8 @@ import org.seasr.meandre.support.generic.io.ModelUtils;
 import com.hp.hpl.jena.rdf.model.Model;
 
 /**
- * Response handler that returns an RDF JENA Model
+ * Response handler that returns an RDF JENA Model. The whole response is read
+ * into memory first; to stream N-Triples see NTriplesResponseHandler.
  * 
  * @author Boris Capitanu
  */
@@ -0,0 +1,32 @@
+package org.meandre.tools.client.utils.rdf;
+
+import java.io.IOException;
+
+import com.hp.hpl.jena.graph.Triple;
+
+/**
+ * Passes on the triples that accept() takes to another sink, and drops the
+ * rest, so only the part of a graph that is needed is ever kept.
+ */
+public abstract class FilteringTripleSink implements TripleSink {
+
+    private final TripleSink _sink;
+
+    /**
+     * @param sink The sink to pass accepted triples on to
+     */
+    public FilteringTripleSink(TripleSink sink) {
+        _sink = sink;
+    }
+
+    public void add(Triple triple) throws IOException {
+        if (accept(triple))
+            _sink.add(triple);
+    }
+
+    /**
+     * @param triple The triple
+     * @return True to pass the triple on, False to drop it
+     */
+    protected abstract boolean accept(Triple triple);
+}
@@ -0,0 +1,33 @@
+package org.meandre.tools.client.utils.rdf;
+
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+
+/**
+ * Adds the triples to a Jena Model: a new in-memory one, or any other, such
+ * as a database backed model.
+ */
+public class ModelTripleSink implements TripleSink {
+
+    private final Model _model;
+
+    /**
+     * Adds the triples to a new default (in-memory) model
+     */
+    public ModelTripleSink() {
+        this(ModelFactory.createDefaultModel());
+    }
+
+    public ModelTripleSink(Model model) {
+        _model = model;
+    }
+
+    public void add(Triple triple) {
+        _model.getGraph().add(triple);
+    }
+
+    public Model getModel() {
+        return _model;
+    }
+}
@@ -0,0 +1,122 @@
+package org.meandre.tools.client.utils.rdf;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+
+/**
+ * Writes the triples to a file (or any other Writer) as N-Triples, one line
+ * per triple as it comes in, so a graph of any size can be saved in constant
+ * memory. The file can be read back with NTriplesParser, or into a Model with
+ * model.read(in, null, "N-TRIPLE").
+ *
+ * <p>
+ * Everything outside of printable ASCII is escaped, so the output is plain
+ * ASCII. close() must be called when done.
+ */
+public class NTriplesFileSink implements TripleSink {
+
+    private final Writer _out;
+
+    public NTriplesFileSink(File file) throws IOException {
+        this(new OutputStreamWriter(new FileOutputStream(file), "US-ASCII"));
+    }
+
+    public NTriplesFileSink(Writer out) {
+        _out = (out instanceof BufferedWriter) ? out : new BufferedWriter(out);
+    }
+
+    public void add(Triple triple) throws IOException {
+        writeNode(triple.getSubject());
+        _out.write(' ');
+        writeNode(triple.getPredicate());
+        _out.write(' ');
+        writeNode(triple.getObject());
+        _out.write(" .\n");
+    }
+
+    /** writes out what is buffered, without closing the writer */
+    public void flush() throws IOException {
+        _out.flush();
+    }
+
+    public void close() throws IOException {
+        _out.close();
+    }
+
+    private void writeNode(Node node) throws IOException {
+        if (node.isURI())
+            writeURI(node.getURI());
+
+        else if (node.isBlank()) {
+            // labels may only have letters and digits, so everything else
+            // (and the escape character itself) is hex escaped
+            String label = node.getBlankNodeLabel();
+            _out.write("_:b");
+            for (int i = 0; i < label.length(); i++) {
+                char c = label.charAt(i);
+                if (c < 0x80 && Character.isLetterOrDigit(c) && c != 'x')
+                    _out.write(c);
+                else
+                    _out.write(String.format("x%04X", (int) c));
+            }
+        }
+
+        else if (node.isLiteral()) {
+            _out.write('"');
+            writeEscaped(node.getLiteralLexicalForm());
+            _out.write('"');
+
+            String lang = node.getLiteralLanguage();
+            String datatypeURI = node.getLiteralDatatypeURI();
+            if (lang != null && lang.length() > 0)
+                _out.write("@" + lang);
+            else if (datatypeURI != null) {
+                _out.write("^^");
+                writeURI(datatypeURI);
+            }
+        }
+
+        else
+            throw new IOException("Can't write node " + node + " as N-Triples");
+    }
+
+    private void writeURI(String uri) throws IOException {
+        // URIs can only have unicode escapes
+        _out.write('<');
+        for (int i = 0; i < uri.length(); i++) {
+            char c = uri.charAt(i);
+            if (c > 0x20 && c < 0x7f && c != '>' && c != '\\')
+                _out.write(c);
+            else
+                _out.write(String.format("\\u%04X", (int) c));
+        }
+        _out.write('>');
+    }
+
+    private void writeEscaped(String s) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '\\': _out.write("\\\\"); break;
+                case '"':  _out.write("\\\""); break;
+                case '\t': _out.write("\\t");  break;
+                case '\n': _out.write("\\n");  break;
+                case '\r': _out.write("\\r");  break;
+
+                default:
+                    // including each half of a surrogate pair
+                    if (c >= 0x20 && c < 0x7f)
+                        _out.write(c);
+                    else
+                        _out.write(String.format("\\u%04X", (int) c));
+            }
+        }
+    }
+}
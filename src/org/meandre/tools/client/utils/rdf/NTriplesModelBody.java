@@ -0,0 +1,90 @@
+package org.meandre.tools.client.utils.rdf;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.entity.mime.MIME;
+import org.apache.http.entity.mime.content.AbstractContentBody;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+
+/**
+ * A multipart body holding a model as N-Triples. The triples are written
+ * straight to the request as it is sent (see NTriplesFileSink), instead of
+ * being serialized into a String first like a StringBody of the model would.
+ *
+ * <p>
+ * The body can be gzipped, in which case it goes as an
+ * application/x-gzip file part named after the field. The server has to
+ * know to gunzip it.
+ */
+public class NTriplesModelBody extends AbstractContentBody {
+
+    private final Model _model;
+    private final String _filename;
+    private final boolean _gzip;
+
+    /**
+     * @param model The model to send
+     * @param gzip True to gzip the N-Triples, False to send them as text
+     */
+    public NTriplesModelBody(Model model, boolean gzip) {
+        this(model, gzip ? "repository.nt.gz" : null, gzip);
+    }
+
+    /**
+     * @param model The model to send
+     * @param filename The name of the file part, or null for a plain field
+     * @param gzip True to gzip the N-Triples, False to send them as text
+     */
+    public NTriplesModelBody(Model model, String filename, boolean gzip) {
+        super(gzip ? "application/x-gzip" : "text/plain");
+        _model = model;
+        _filename = filename;
+        _gzip = gzip;
+    }
+
+    public String getFilename() {
+        return _filename;
+    }
+
+    public String getCharset() {
+        return _gzip ? null : "US-ASCII";
+    }
+
+    public String getTransferEncoding() {
+        return _gzip ? MIME.ENC_BINARY : MIME.ENC_8BIT;
+    }
+
+    /** not known until the body is written */
+    public long getContentLength() {
+        return -1;
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        // the stream belongs to the multipart entity, so it is flushed
+        // (and the gzip trailer written) but not closed
+        GZIPOutputStream gzip = null;
+        if (_gzip)
+            out = gzip = new GZIPOutputStream(out, 8192);
+
+        NTriplesFileSink sink = new NTriplesFileSink(new OutputStreamWriter(out, "US-ASCII"));
+        ExtendedIterator<Triple> it = _model.getGraph().find(Node.ANY, Node.ANY, Node.ANY);
+        try {
+            while (it.hasNext())
+                sink.add(it.next());
+        }
+        finally {
+            it.close();
+        }
+        sink.flush();
+
+        if (gzip != null)
+            gzip.finish();
+    }
+}
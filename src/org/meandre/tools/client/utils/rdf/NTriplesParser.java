@@ -0,0 +1,236 @@
+package org.meandre.tools.client.utils.rdf;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+import com.hp.hpl.jena.datatypes.RDFDatatype;
+import com.hp.hpl.jena.datatypes.TypeMapper;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.AnonId;
+
+/**
+ * Reads an N-Triples document one line, and so one triple, at a time, and
+ * hands the triples to a TripleSink. Unlike reading the document into a
+ * Model, only the current line is held in memory, so how much memory a
+ * parse takes is up to the sink.
+ *
+ * <p>
+ * Blank nodes get ids that are unique to the document, so the blank nodes of
+ * two documents read into the same sink stay apart, the same as when they
+ * are read by Jena.
+ */
+public class NTriplesParser {
+
+    private final BufferedReader _in;
+
+    /** prefixed to the blank node labels of this document */
+    private final String _blankNodePrefix = AnonId.create().getLabelString() + ":";
+
+    private String _line;
+    private int _pos;
+    private int _lineNumber = 0;
+
+    public NTriplesParser(Reader in) {
+        _in = (in instanceof BufferedReader) ? (BufferedReader) in : new BufferedReader(in);
+    }
+
+    /**
+     * Reads all the triples of the document into the sink
+     *
+     * @param sink The sink
+     * @return The number of triples read
+     * @throws IOException If reading fails, or the document isn't valid
+     *             N-Triples
+     */
+    public long parse(TripleSink sink) throws IOException {
+        long count = 0;
+        for (Triple triple = next(); triple != null; triple = next()) {
+            sink.add(triple);
+            count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * Reads the next triple
+     *
+     * @return The triple, or null at the end of the document
+     * @throws IOException If reading fails, or the document isn't valid
+     *             N-Triples
+     */
+    public Triple next() throws IOException {
+        while ((_line = _in.readLine()) != null) {
+            _lineNumber++;
+            _pos = 0;
+
+            skipWhitespace();
+            if (_pos == _line.length() || _line.charAt(_pos) == '#')
+                continue;
+
+            Node subject = readSubject();
+            skipWhitespace();
+            Node predicate = readURI();
+            skipWhitespace();
+            Node object = readObject();
+            skipWhitespace();
+            expect('.');
+            skipWhitespace();
+            if (_pos < _line.length() && _line.charAt(_pos) != '#')
+                throw syntaxError("Expected the end of the line");
+
+            return Triple.create(subject, predicate, object);
+        }
+
+        return null;
+    }
+
+    private Node readSubject() throws IOException {
+        return (peek() == '_') ? readBlankNode() : readURI();
+    }
+
+    private Node readObject() throws IOException {
+        switch (peek()) {
+            case '_':
+                return readBlankNode();
+
+            case '"':
+                return readLiteral();
+
+            default:
+                return readURI();
+        }
+    }
+
+    private Node readURI() throws IOException {
+        expect('<');
+        return Node.createURI(readEscaped('>'));
+    }
+
+    private Node readBlankNode() throws IOException {
+        expect('_');
+        expect(':');
+
+        int start = _pos;
+        while (_pos < _line.length()) {
+            char c = _line.charAt(_pos);
+            if (!Character.isLetterOrDigit(c) && c != '_' && c != '-')
+                break;
+            _pos++;
+        }
+
+        if (_pos == start)
+            throw syntaxError("Expected a blank node label");
+
+        return Node.createAnon(AnonId.create(_blankNodePrefix + _line.substring(start, _pos)));
+    }
+
+    private Node readLiteral() throws IOException {
+        expect('"');
+        String lexicalForm = readEscaped('"');
+
+        String lang = "";
+        RDFDatatype datatype = null;
+
+        if (_pos < _line.length() && _line.charAt(_pos) == '@') {
+            _pos++;
+            int start = _pos;
+            while (_pos < _line.length() && (Character.isLetterOrDigit(_line.charAt(_pos)) || _line.charAt(_pos) == '-'))
+                _pos++;
+
+            if (_pos == start)
+                throw syntaxError("Expected a language tag");
+
+            lang = _line.substring(start, _pos);
+        }
+        else if (_line.startsWith("^^", _pos)) {
+            _pos += 2;
+            expect('<');
+            datatype = TypeMapper.getInstance().getSafeTypeByName(readEscaped('>'));
+        }
+
+        return Node.createLiteral(lexicalForm, lang, datatype);
+    }
+
+    /**
+     * Reads up to the end character, which is consumed, undoing the escapes
+     * along the way
+     */
+    private String readEscaped(char end) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            if (_pos == _line.length())
+                throw syntaxError("Expected '" + end + "'");
+
+            char c = _line.charAt(_pos++);
+            if (c == end)
+                return sb.toString();
+
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+
+            if (_pos == _line.length())
+                throw syntaxError("Bad escape");
+
+            c = _line.charAt(_pos++);
+            switch (c) {
+                case 't':  sb.append('\t'); break;
+                case 'b':  sb.append('\b'); break;
+                case 'n':  sb.append('\n'); break;
+                case 'r':  sb.append('\r'); break;
+                case 'f':  sb.append('\f'); break;
+                case '"':  sb.append('"');  break;
+                case '\'': sb.append('\''); break;
+                case '\\': sb.append('\\'); break;
+                case 'u':  sb.append((char) readHex(4)); break;
+                case 'U':
+                    int codePoint = readHex(8);
+                    if (!Character.isValidCodePoint(codePoint))
+                        throw syntaxError("Bad unicode escape");
+                    sb.appendCodePoint(codePoint);
+                    break;
+
+                default:
+                    throw syntaxError("Bad escape '\\" + c + "'");
+            }
+        }
+    }
+
+    private int readHex(int digits) throws IOException {
+        int value = 0;
+        for (int i = 0; i < digits; i++) {
+            int digit = (_pos < _line.length()) ? Character.digit(_line.charAt(_pos++), 16) : -1;
+            if (digit == -1)
+                throw syntaxError("Bad unicode escape");
+
+            value = (value << 4) | digit;
+        }
+
+        return value;
+    }
+
+    private void skipWhitespace() {
+        while (_pos < _line.length() && (_line.charAt(_pos) == ' ' || _line.charAt(_pos) == '\t'))
+            _pos++;
+    }
+
+    private int peek() {
+        return (_pos < _line.length()) ? _line.charAt(_pos) : -1;
+    }
+
+    private void expect(char c) throws IOException {
+        if (peek() != c)
+            throw syntaxError("Expected '" + c + "'");
+
+        _pos++;
+    }
+
+    private IOException syntaxError(String message) {
+        return new IOException(String.format("N-Triples syntax error at line %d, column %d: %s",
+                _lineNumber, _pos + 1, message));
+    }
+}
@@ -0,0 +1,22 @@
+package org.meandre.tools.client.utils.rdf;
+
+import java.io.IOException;
+
+import com.hp.hpl.jena.graph.Triple;
+
+/**
+ * Receives the triples of a graph one at a time, as NTriplesParser reads
+ * them. A sink decides what to keep: all of them in a Model
+ * (ModelTripleSink), all of them in a file (NTriplesFileSink), or only some
+ * of them (FilteringTripleSink).
+ */
+public interface TripleSink {
+
+    /**
+     * Receives the next triple
+     *
+     * @param triple The triple
+     * @throws IOException If the sink can't take the triple
+     */
+    public void add(Triple triple) throws IOException;
+}
@@ -6,6 +6,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -22,7 +23,6 @@ import java.util.logging.Logger;
 import org.apache.http.NameValuePair;
 import org.apache.http.entity.mime.content.ContentBody;
 import org.apache.http.entity.mime.content.FileBody;
-import org.apache.http.entity.mime.content.StringBody;
 import org.apache.http.message.BasicNameValuePair;
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -37,14 +37,18 @@ import org.meandre.tools.client.AbstractMeandreClient;
 import org.meandre.tools.client.exceptions.TransmissionException;
 import org.meandre.tools.client.utils.GenericHttpClient;
 import org.meandre.tools.client.utils.GenericLoggerFactory;
+import org.meandre.tools.client.utils.JSONPullReader;
 import org.meandre.tools.client.utils.handlers.JSONResponseHandler;
+import org.meandre.tools.client.utils.handlers.JSONStreamResponseHandler;
+import org.meandre.tools.client.utils.handlers.NTriplesResponseHandler;
 import org.meandre.tools.client.utils.handlers.RDFModelResponseHandler;
 import org.meandre.tools.client.utils.handlers.StringResponseHandler;
-import org.seasr.meandre.support.generic.io.ModelUtils;
+import org.meandre.tools.client.utils.rdf.ModelTripleSink;
+import org.meandre.tools.client.utils.rdf.NTriplesModelBody;
+import org.meandre.tools.client.utils.rdf.TripleSink;
 import org.seasr.meandre.support.generic.util.KeyValuePair;
 
 import com.hp.hpl.jena.rdf.model.Model;
-import com.hp.hpl.jena.rdf.model.ModelFactory;
 
 
 /**
@@ -88,6 +92,7 @@ import com.hp.hpl.jena.rdf.model.ModelFactory;
 public class MeandreClient extends AbstractMeandreClient {
 
     private final GenericHttpClient _httpClient;
+    private boolean _gzipModelUploads = false;
 
     /**
      * initialize to talk to a particular server. You need to call the
@@ -123,6 +128,16 @@ public class MeandreClient extends AbstractMeandreClient {
         _httpClient.close();
     }
 
+    @Override
+    public void setGzipModelUploads(boolean gzip) {
+        _gzipModelUploads = gzip;
+    }
+
+    @Override
+    public boolean isGzipModelUploads() {
+        return _gzipModelUploads;
+    }
+
     /////////
     //About
     /////////
@@ -258,10 +273,17 @@ public class MeandreClient extends AbstractMeandreClient {
 
     @Override
     public QueryableRepository retrieveRepository() throws TransmissionException {
+        ModelTripleSink sink = new ModelTripleSink();
+        retrieveRepository(sink);
+
+        return new RepositoryImpl(sink.getModel());
+    }
+
+    @Override
+    public long retrieveRepository(TripleSink sink) throws TransmissionException {
         String reqPath = "/services/repository/dump.nt";
-        Model model = _httpClient.doGET(reqPath, null, RDFModelResponseHandler.getInstance());
 
-        return new RepositoryImpl(model);
+        return _httpClient.doGET(reqPath, null, new NTriplesResponseHandler(sink));
     }
 
     @Override
@@ -283,136 +305,52 @@ public class MeandreClient extends AbstractMeandreClient {
     @Override
     public Set<URI> retrieveComponentUris() throws TransmissionException {
         String reqPath = "/services/repository/list_components.json";
-        JSONTokener jtRetrieved = _httpClient.doGET(reqPath, null, JSONResponseHandler.getInstance());
-
-        try {
-            JSONArray ja = new JSONArray(jtRetrieved);
 
-            Set<URI> setCompURIs = new HashSet<URI>();
-            for (int i = 0, iMax = ja.length(); i < iMax; i++)
-                setCompURIs.add(new URI(ja.getJSONObject(i).getString("meandre_uri")));
-
-            return setCompURIs;
-        }
-        catch (Exception e) {
-            throw new TransmissionException(e);
-        }
+        return retrieveUris(reqPath, "meandre_uri");
     }
 
     @Override
     public Set<URI> retrieveFlowUris() throws TransmissionException {
         String reqPath = "/services/repository/list_flows.json";
-        JSONTokener jtRetrieved = _httpClient.doGET(reqPath, null, JSONResponseHandler.getInstance());
 
-        try {
-            JSONArray ja = new JSONArray(jtRetrieved);
-
-            Set<URI> setCompURIs = new HashSet<URI>();
-            for (int i = 0, iMax = ja.length(); i < iMax; i++)
-                setCompURIs.add(new URI(ja.getJSONObject(i).getString("meandre_uri")));
-
-            return setCompURIs;
-        }
-        catch (Exception e) {
-            throw new TransmissionException(e);
-        }
+        return retrieveUris(reqPath, "meandre_uri");
     }
 
     @Override
     public Set<String> retrieveAllTags() throws TransmissionException {
         String reqPath = "/services/repository/tags.json";
-        JSONTokener jtRetrieved = _httpClient.doGET(reqPath, null, JSONResponseHandler.getInstance());
-
-        try {
-            JSONArray ja = new JSONArray(jtRetrieved);
-
-            Set<String> setTags = new HashSet<String>();
-            for (int i = 0, iMax = ja.length(); i < iMax; i++)
-                setTags.add(ja.getJSONObject(i).getString("meandre_tag"));
 
-            return setTags;
-        }
-        catch (JSONException e) {
-            throw new TransmissionException(e);
-        }
+        return retrieveMemberValues(reqPath, "meandre_tag");
     }
 
     @Override
     public Set<String> retrieveComponentTags() throws TransmissionException {
         String reqPath = "/services/repository/tags_components.json";
-        JSONTokener jtRetrieved = _httpClient.doGET(reqPath, null, JSONResponseHandler.getInstance());
 
-        try {
-            JSONArray ja = new JSONArray(jtRetrieved);
-
-            Set<String> setTags = new HashSet<String>();
-            for (int i = 0, iMax = ja.length(); i < iMax; i++)
-                setTags.add(ja.getJSONObject(i).getString("meandre_tag"));
-
-            return setTags;
-        }
-        catch (JSONException e) {
-            throw new TransmissionException(e);
-        }
+        return retrieveMemberValues(reqPath, "meandre_tag");
     }
 
     @Override
     public Set<String> retrieveFlowTags() throws TransmissionException {
         String reqPath = "/services/repository/tags_flows.json";
-        JSONTokener jtRetrieved = _httpClient.doGET(reqPath, null, JSONResponseHandler.getInstance());
-
-        try {
-            JSONArray ja = new JSONArray(jtRetrieved);
-
-            Set<String> setTags = new HashSet<String>();
-            for (int i = 0, iMax = ja.length(); i < iMax; i++)
-                setTags.add(ja.getJSONObject(i).getString("meandre_tag"));
 
-            return setTags;
-        }
-        catch (JSONException e) {
-            throw new TransmissionException(e);
-        }
+        return retrieveMemberValues(reqPath, "meandre_tag");
     }
 
     @Override
     public Set<URI> retrieveComponentsByTag(String tag) throws TransmissionException {
         String argPath = "/services/repository/components_by_tag.json";
         NameValuePair argTag = new BasicNameValuePair("tag", tag);
-        JSONTokener jtRetrieved = _httpClient.doGET(argPath, null, JSONResponseHandler.getInstance(), argTag);
-
-        try {
-            JSONArray ja = new JSONArray(jtRetrieved);
 
-            Set<URI> setURIs = new HashSet<URI>();
-            for (int i = 0, iMax = ja.length(); i < iMax; i++)
-                setURIs.add(new URI(ja.getJSONObject(i).getString("meandre_uri")));
-
-            return setURIs;
-        }
-        catch (Exception e) {
-            throw new TransmissionException(e);
-        }
+        return retrieveUris(argPath, "meandre_uri", argTag);
     }
 
     @Override
     public Set<URI> retrieveFlowsByTag(String tag) throws TransmissionException {
         String reqPath = "/services/repository/flows_by_tag.json";
         NameValuePair argTag = new BasicNameValuePair("tag", tag);
-        JSONTokener jtRetrieved = _httpClient.doGET(reqPath, null, JSONResponseHandler.getInstance(), argTag);
 
-        try {
-            JSONArray ja = new JSONArray(jtRetrieved);
-
-            Set<URI> setURIs = new HashSet<URI>();
-            for (int i = 0, iMax = ja.length(); i < iMax; i++)
-                setURIs.add(new URI(ja.getJSONObject(i).getString("meandre_uri")));
-
-            return setURIs;
-        }
-        catch (Exception e) {
-            throw new TransmissionException(e);
-        }
+        return retrieveUris(reqPath, "meandre_uri", argTag);
     }
 
     @Override
@@ -552,8 +490,8 @@ public class MeandreClient extends AbstractMeandreClient {
 
         try {
             for (Model modUpload : resModels) {
-                String sModel = ModelUtils.modelToDialect(modUpload, "N-TRIPLE");
-                parts.add(new KeyValuePair<String, ContentBody>("repository", new StringBody(sModel)));
+                parts.add(new KeyValuePair<String, ContentBody>("repository",
+                        new NTriplesModelBody(modUpload, _gzipModelUploads)));
             }
 
             if (jarFileContexts != null)
@@ -677,10 +615,10 @@ public class MeandreClient extends AbstractMeandreClient {
     public String runRepository(Model model) throws TransmissionException {
         String reqPath = "/services/execute/repository.txt";
         List<KeyValuePair<String, ContentBody>> parts = new ArrayList<KeyValuePair<String,ContentBody>>();
-        String sModel = ModelUtils.modelToDialect(model, "N-TRIPLE");
 
         try {
-            parts.add(new KeyValuePair<String, ContentBody>("repository", new StringBody(sModel)));
+            parts.add(new KeyValuePair<String, ContentBody>("repository",
+                    new NTriplesModelBody(model, _gzipModelUploads)));
             return _httpClient.doPOST(reqPath, null, parts, StringResponseHandler.getInstance());
         }
         catch (UnsupportedEncodingException e) {
@@ -859,24 +797,26 @@ public class MeandreClient extends AbstractMeandreClient {
 
     @Override
     public QueryableRepository retrievePublicRepository() throws TransmissionException {
-        String reqPath = "/public/services/repository.nt";
-        InputStream modelStream = _httpClient.doGET(reqPath, null);
+        ModelTripleSink sink = new ModelTripleSink();
+        retrievePublicRepository(sink);
 
-        Model model = ModelFactory.createDefaultModel();
-        model.read(modelStream, null, "N-TRIPLE");
+        return new RepositoryImpl(sink.getModel());
+    }
+
+    @Override
+    public long retrievePublicRepository(TripleSink sink) throws TransmissionException {
+        String reqPath = "/public/services/repository.nt";
 
-        return new RepositoryImpl(model);
+        return _httpClient.doGET(reqPath, null, new NTriplesResponseHandler(sink));
     }
 
     @Override
     public QueryableRepository retrieveDemoRepository() throws TransmissionException {
         String reqPath = "/public/services/demo_repository.nt";
-        InputStream modelStream = _httpClient.doGET(reqPath, null);
-
-        Model model = ModelFactory.createDefaultModel();
-        model.read(modelStream, null, "N-TRIPLE");
+        ModelTripleSink sink = new ModelTripleSink();
+        _httpClient.doGET(reqPath, null, new NTriplesResponseHandler(sink));
 
-        return new RepositoryImpl(model);
+        return new RepositoryImpl(sink.getModel());
     }
 
     ////////////////////////
@@ -989,4 +929,44 @@ public class MeandreClient extends AbstractMeandreClient {
     public int getPort() {
         return _httpClient.getHost().getPort();
     }
+
+    /**
+     * Retrieves a list of objects and returns the named member of each,
+     * taken from the response as it streams in
+     *
+     * @param reqPath The request path
+     * @param member The member to return
+     * @param params The request parameters
+     * @return The set of member values
+     * @throws TransmissionException
+     */
+    private Set<String> retrieveMemberValues(String reqPath, final String member, NameValuePair... params) throws TransmissionException {
+        return _httpClient.doGET(reqPath, null, new JSONStreamResponseHandler<Set<String>>() {
+            @Override
+            protected Set<String> handleJSON(JSONPullReader reader) throws IOException, JSONException {
+                Set<String> values = new HashSet<String>();
+                readMemberValues(reader, member, values);
+
+                return values;
+            }
+        }, params);
+    }
+
+    /**
+     * Same as retrieveMemberValues, for members that are URIs
+     */
+    private Set<URI> retrieveUris(String reqPath, String member, NameValuePair... params) throws TransmissionException {
+        Set<String> values = retrieveMemberValues(reqPath, member, params);
+
+        try {
+            Set<URI> setURIs = new HashSet<URI>(values.size() * 2);
+            for (String value : values)
+                setURIs.add(new URI(value));
+
+            return setURIs;
+        }
+        catch (URISyntaxException e) {
+            throw new TransmissionException(e);
+        }
+    }
 }
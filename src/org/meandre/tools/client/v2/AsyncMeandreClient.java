@@ -0,0 +1,304 @@
+package org.meandre.tools.client.v2;
+
+import java.io.File;
+import java.net.URI;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import org.apache.http.HttpHost;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.json.JSONObject;
+import org.meandre.core.repository.ExecutableComponentDescription;
+import org.meandre.core.repository.FlowDescription;
+import org.meandre.core.repository.LocationBean;
+import org.meandre.core.repository.QueryableRepository;
+import org.meandre.tools.client.exceptions.TransmissionException;
+import org.meandre.tools.client.utils.AsyncHttpClient;
+import org.meandre.tools.client.utils.ChainedFuture;
+import org.meandre.tools.client.utils.ConnectionPoolSettings;
+import org.meandre.tools.client.utils.GenericLoggerFactory;
+import org.meandre.tools.client.utils.rdf.TripleSink;
+
+import com.hp.hpl.jena.rdf.model.Model;
+
+/**
+ * Asynchronous interface to the Meandre server webservices API. Each method
+ * sends the request of the MeandreClient method of the same name and returns
+ * right away with a Future of its result; the requests are carried out by the
+ * few I/O threads of AsyncHttpClient, so thousands of them can be in flight
+ * at once.
+ *
+ * <p>
+ * The callback, if not null, is told when the result is ready or the call
+ * failed. A failure is always a TransmissionException, which Future.get()
+ * wraps in an ExecutionException. Callbacks are run on an I/O thread and must
+ * not block. Cancelling a Future aborts its request.
+ *
+ * <p>
+ * Responses are read whole before they are decoded, and TripleSinks are fed
+ * on an I/O thread. Calls to the web UI of a running flow and
+ * retrieveJobOutput() are only made by MeandreClient.
+ */
+public class AsyncMeandreClient {
+
+    private final AsyncHttpClient _httpClient;
+    private Logger _logger = GenericLoggerFactory.getLogger();
+    private boolean _gzipModelUploads = false;
+
+    /**
+     * @param serverHost just the hostname, e.g. "localhost", NOT "http://localhost"
+     * @param port the port on the serverHost that the server is listening on
+     * @throws IOReactorException If the I/O threads could not be started
+     */
+    public AsyncMeandreClient(String serverHost, int port) throws IOReactorException {
+        this(serverHost, port, new ConnectionPoolSettings());
+    }
+
+    public AsyncMeandreClient(String serverHost, int port, ConnectionPoolSettings settings) throws IOReactorException {
+        _httpClient = new AsyncHttpClient(new HttpHost(serverHost, port), settings);
+    }
+
+    public void setCredentials(String userName, String password) {
+        _httpClient.setCredentials(userName, password);
+    }
+
+    public void setLogger(Logger logger) {
+        _logger = logger;
+    }
+
+    public Logger getLogger() {
+        return _logger;
+    }
+
+    public String getHostName() {
+        return _httpClient.getHost().getHostName();
+    }
+
+    public int getPort() {
+        return _httpClient.getHost().getPort();
+    }
+
+    public void setGzipModelUploads(boolean gzip) {
+        _gzipModelUploads = gzip;
+    }
+
+    public boolean isGzipModelUploads() {
+        return _gzipModelUploads;
+    }
+
+    /**
+     * Aborts the calls still in flight if no other client is using the I/O
+     * threads.
+     */
+    public void close() {
+        _httpClient.close();
+    }
+
+    public Future<Set<String>> retrieveUserRoles(FutureCallback<Set<String>> callback) {
+        return submit(Calls.retrieveUserRoles(), callback);
+    }
+
+    public Future<Set<String>> retrieveValidRoles(FutureCallback<Set<String>> callback) {
+        return submit(Calls.retrieveValidRoles(), callback);
+    }
+
+    public Future<Set<LocationBean>> retrieveLocations(FutureCallback<Set<LocationBean>> callback) {
+        return submit(Calls.retrieveLocations(), callback);
+    }
+
+    public Future<Boolean> addLocation(String locationUrl, String description, FutureCallback<Boolean> callback) {
+        return submit(Calls.addLocation(locationUrl, description), callback);
+    }
+
+    public Future<Boolean> removeLocation(String locationUrl, FutureCallback<Boolean> callback) {
+        return submit(Calls.removeLocation(locationUrl), callback);
+    }
+
+    public Future<QueryableRepository> retrieveRepository(FutureCallback<QueryableRepository> callback) {
+        return submit(Calls.retrieveRepository(), callback);
+    }
+
+    public Future<Long> retrieveRepository(TripleSink sink, FutureCallback<Long> callback) {
+        return submit(Calls.retrieveRepository(sink), callback);
+    }
+
+    public Future<Boolean> regenerate(FutureCallback<Boolean> callback) {
+        return submit(Calls.regenerate(), callback);
+    }
+
+    public Future<Set<URI>> retrieveComponentUris(FutureCallback<Set<URI>> callback) {
+        return submit(Calls.retrieveComponentUris(), callback);
+    }
+
+    public Future<Set<URI>> retrieveFlowUris(FutureCallback<Set<URI>> callback) {
+        return submit(Calls.retrieveFlowUris(), callback);
+    }
+
+    public Future<Set<String>> retrieveAllTags(FutureCallback<Set<String>> callback) {
+        return submit(Calls.retrieveAllTags(), callback);
+    }
+
+    public Future<Set<String>> retrieveComponentTags(FutureCallback<Set<String>> callback) {
+        return submit(Calls.retrieveComponentTags(), callback);
+    }
+
+    public Future<Set<String>> retrieveFlowTags(FutureCallback<Set<String>> callback) {
+        return submit(Calls.retrieveFlowTags(), callback);
+    }
+
+    public Future<ExecutableComponentDescription> retrieveComponentDescriptor(String componentUri,
+            FutureCallback<ExecutableComponentDescription> callback) {
+        return submit(Calls.retrieveComponentDescriptor(componentUri), callback);
+    }
+
+    public Future<FlowDescription> retrieveFlowDescriptor(String flowUri, FutureCallback<FlowDescription> callback) {
+        return submit(Calls.retrieveFlowDescriptor(flowUri), callback);
+    }
+
+    public Future<String> retrieveComponentDescriptorAsString(String componentUri, FutureCallback<String> callback) {
+        return submit(Calls.retrieveComponentDescriptorAsString(componentUri), callback);
+    }
+
+    public Future<Boolean> uploadFlow(FlowDescription flow, boolean overwrite, FutureCallback<Boolean> callback) {
+        return uploadModel(flow.getModel(), null, overwrite, callback);
+    }
+
+    public Future<Boolean> uploadComponent(ExecutableComponentDescription component, Set<File> contexts,
+            boolean overwrite, FutureCallback<Boolean> callback) {
+        return uploadModel(component.getModel(), contexts, overwrite, callback);
+    }
+
+    public Future<Boolean> uploadComponentBatch(Set<ExecutableComponentDescription> components,
+            Set<File> jarFileContexts, boolean overwrite, FutureCallback<Boolean> callback) {
+        Set<Model> models = new HashSet<Model>(components.size());
+        for (ExecutableComponentDescription component : components)
+            models.add(component.getModel());
+
+        return uploadModelBatch(models, jarFileContexts, overwrite, callback);
+    }
+
+    public Future<Boolean> uploadRepository(QueryableRepository qr, Set<File> contexts, boolean overwrite,
+            FutureCallback<Boolean> callback) {
+        return uploadModel(qr.getModel(), contexts, overwrite, callback);
+    }
+
+    private Future<Boolean> uploadModel(Model model, Set<File> contexts, boolean overwrite, FutureCallback<Boolean> callback) {
+        HashSet<Model> modSet = new HashSet<Model>(1);
+        modSet.add(model);
+
+        return uploadModelBatch(modSet, contexts, overwrite, callback);
+    }
+
+    /**
+     * The models and contexts are written out in memory before the request
+     * is sent.
+     */
+    public Future<Boolean> uploadModelBatch(Set<Model> models, Set<File> contexts, boolean overwrite,
+            FutureCallback<Boolean> callback) {
+        Call<?, Boolean> call;
+        try {
+            call = Calls.uploadModelBatch(models, contexts, overwrite, _gzipModelUploads);
+        }
+        catch (TransmissionException e) {
+            ChainedFuture<Boolean> future = new ChainedFuture<Boolean>(callback);
+            future.failed(e);
+
+            return future;
+        }
+
+        return submit(call, callback);
+    }
+
+    public Future<Boolean> uploadFiles(Set<File> files, boolean overwrite, FutureCallback<Boolean> callback) {
+        return uploadModelBatch(new HashSet<Model>(0), files, overwrite, callback);
+    }
+
+    public Future<Boolean> removeResource(String resourceUri, FutureCallback<Boolean> callback) {
+        return submit(Calls.removeResource(resourceUri), callback);
+    }
+
+    public Future<Boolean> publish(String resourceUri, FutureCallback<Boolean> callback) {
+        return submit(Calls.publish(resourceUri), callback);
+    }
+
+    public Future<Boolean> unpublish(String resourceUri, FutureCallback<Boolean> callback) {
+        return submit(Calls.unpublish(resourceUri), callback);
+    }
+
+    public Future<String> submitJob(String flowUri, FutureCallback<String> callback) {
+        return submit(Calls.submitJob(flowUri), callback);
+    }
+
+    public Future<JSONObject> retrieveJobStatus(String jobID, FutureCallback<JSONObject> callback) {
+        return submit(Calls.retrieveJobStatus(jobID), callback);
+    }
+
+    public Future<Boolean> killJob(String jobID, FutureCallback<Boolean> callback) {
+        return submit(Calls.killJob(jobID), callback);
+    }
+
+    public Future<String> retrieveJobConsole(String jobID, FutureCallback<String> callback) {
+        return submit(Calls.retrieveJobConsole(jobID), callback);
+    }
+
+    public Future<QueryableRepository> retrievePublicRepository(FutureCallback<QueryableRepository> callback) {
+        return submit(Calls.retrievePublicRepository(), callback);
+    }
+
+    public Future<Long> retrievePublicRepository(TripleSink sink, FutureCallback<Long> callback) {
+        return submit(Calls.retrievePublicRepository(sink), callback);
+    }
+
+    public Future<QueryableRepository> retrieveDemoRepository(FutureCallback<QueryableRepository> callback) {
+        return submit(Calls.retrieveDemoRepository(), callback);
+    }
+
+    public Future<JSONObject> getServerVersion(FutureCallback<JSONObject> callback) {
+        return submit(Calls.getServerVersion(_logger), callback);
+    }
+
+    public Future<Boolean> ping(FutureCallback<Boolean> callback) {
+        return submit(Calls.ping(), callback);
+    }
+
+    /**
+     * Sends the request of the call, and decodes the response on the I/O
+     * thread that read it
+     */
+    private <R, T> Future<T> submit(final Call<R, T> call, FutureCallback<T> callback) {
+        final ChainedFuture<T> future = new ChainedFuture<T>(callback);
+
+        FutureCallback<R> decoder = new FutureCallback<R>() {
+            public void completed(R response) {
+                T result;
+                try {
+                    result = call.decode(response);
+                }
+                catch (Exception e) {
+                    failed(e);
+                    return;
+                }
+
+                future.completed(result);
+            }
+
+            public void failed(Exception e) {
+                future.failed(e instanceof TransmissionException ? e : new TransmissionException(e));
+            }
+
+            public void cancelled() {
+                future.cancel(true);
+            }
+        };
+
+        if (call._parts == null)
+            future.setUpstream(_httpClient.doGET(call._reqPath, null, call._handler, decoder, call._params));
+        else
+            future.setUpstream(_httpClient.doPOST(call._reqPath, null, call._parts, call._handler, decoder, call._params));
+
+        return future;
+    }
+}
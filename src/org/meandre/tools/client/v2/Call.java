@@ -0,0 +1,52 @@
+package org.meandre.tools.client.v2;
+
+import java.util.List;
+
+import org.apache.http.NameValuePair;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.entity.mime.content.ContentBody;
+import org.meandre.tools.client.exceptions.TransmissionException;
+import org.seasr.meandre.support.generic.util.KeyValuePair;
+
+/**
+ * One call of the webservices API: the request to send, the handler that
+ * reads the response, and how what it read becomes the result. MeandreClient
+ * makes the calls one at a time, AsyncMeandreClient without waiting for them.
+ * See Calls for all of them.
+ *
+ * @param <R> What the handler reads from the response
+ * @param <T> The result of the call
+ */
+abstract class Call<R, T> {
+
+    final String _reqPath;
+    final ResponseHandler<R> _handler;
+    final NameValuePair[] _params;
+
+    /** the parts of a POST request, or null for a GET request */
+    final List<KeyValuePair<String, ContentBody>> _parts;
+
+    /**
+     * a GET request
+     */
+    Call(String reqPath, ResponseHandler<R> handler, NameValuePair... params) {
+        this(reqPath, null, handler, params);
+    }
+
+    /**
+     * a POST request, if parts isn't null
+     */
+    Call(String reqPath, List<KeyValuePair<String, ContentBody>> parts, ResponseHandler<R> handler, NameValuePair... params) {
+        _reqPath = reqPath;
+        _parts = parts;
+        _handler = handler;
+        _params = params;
+    }
+
+    /**
+     * @param response What the handler read
+     * @return The result of the call
+     * @throws TransmissionException If the response is not what was expected
+     */
+    abstract T decode(R response) throws TransmissionException;
+}
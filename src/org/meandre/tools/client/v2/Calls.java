@@ -0,0 +1,722 @@
+package org.meandre.tools.client.v2;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.http.NameValuePair;
+import org.apache.http.entity.mime.content.ContentBody;
+import org.apache.http.entity.mime.content.FileBody;
+import org.apache.http.message.BasicNameValuePair;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.meandre.core.repository.ExecutableComponentDescription;
+import org.meandre.core.repository.FlowDescription;
+import org.meandre.core.repository.LocationBean;
+import org.meandre.core.repository.QueryableRepository;
+import org.meandre.core.repository.RepositoryImpl;
+import org.meandre.tools.client.exceptions.OperationFailedException;
+import org.meandre.tools.client.exceptions.TransmissionException;
+import org.meandre.tools.client.utils.JSONPullReader;
+import org.meandre.tools.client.utils.handlers.JSONResponseHandler;
+import org.meandre.tools.client.utils.handlers.JSONStreamResponseHandler;
+import org.meandre.tools.client.utils.handlers.NTriplesResponseHandler;
+import org.meandre.tools.client.utils.handlers.RDFModelResponseHandler;
+import org.meandre.tools.client.utils.handlers.StringResponseHandler;
+import org.meandre.tools.client.utils.rdf.ModelTripleSink;
+import org.meandre.tools.client.utils.rdf.NTriplesModelBody;
+import org.meandre.tools.client.utils.rdf.TripleSink;
+import org.seasr.meandre.support.generic.util.KeyValuePair;
+
+import com.hp.hpl.jena.rdf.model.Model;
+
+/**
+ * The calls of the webservices API that MeandreClient and AsyncMeandreClient
+ * make. See the MeandreClient method of the same name for what each does.
+ */
+final class Calls {
+
+    private Calls() { }
+
+    /////////
+    //About
+    /////////
+
+    static Call<JSONTokener, Set<String>> retrieveUserRoles() {
+        return new Call<JSONTokener, Set<String>>("/services/security/user.json", JSONResponseHandler.getInstance()) {
+            @Override
+            Set<String> decode(JSONTokener jtRoles) throws TransmissionException {
+                try {
+                    JSONObject joUser = getSuccessPayload(jtRoles).getJSONObject("user");
+                    JSONArray jaRoles = joUser.getJSONArray("roles");
+
+                    Set<String> roles = new HashSet<String>();
+                    for (int i = 0, iMax = jaRoles.length(); i < iMax; i++)
+                        roles.add(jaRoles.getString(i));
+
+                    return roles;
+                }
+                catch (JSONException e) {
+                    throw new TransmissionException(e);
+                }
+                catch (OperationFailedException e) {
+                    throw new TransmissionException(e);
+                }
+            }
+        };
+    }
+
+    static Call<JSONTokener, Set<String>> retrieveValidRoles() {
+        return new Call<JSONTokener, Set<String>>("/services/security/valid_roles.json", JSONResponseHandler.getInstance()) {
+            @Override
+            Set<String> decode(JSONTokener jtRoles) throws TransmissionException {
+                try {
+                    JSONArray jaRoles = getSuccessPayload(jtRoles).getJSONArray("roles");
+
+                    Set<String> roles = new HashSet<String>();
+                    for (int i = 0, iMax = jaRoles.length(); i < iMax; i++)
+                        roles.add(jaRoles.getString(i));
+
+                    return roles;
+                }
+                catch (JSONException e) {
+                    throw new TransmissionException(e);
+                }
+                catch (OperationFailedException e) {
+                    throw new TransmissionException(e);
+                }
+            }
+        };
+    }
+
+    static Call<JSONTokener, JSONObject> getServerVersion(final Logger logger) {
+        return new Call<JSONTokener, JSONObject>("/public/services/version.json", JSONResponseHandler.getInstance()) {
+            @Override
+            JSONObject decode(JSONTokener jtResponse) throws TransmissionException {
+                try {
+                    return getSuccessPayload(jtResponse);
+                }
+                catch (JSONException e) {
+                    throw new TransmissionException(e);
+                }
+                catch (OperationFailedException e) {
+                    logger.log(Level.WARNING, "Cannot obtain server version information", e);
+
+                    try {
+                        return new JSONObject().put("version", "unknown");
+                    } catch (JSONException e1) { return null; }
+                }
+            }
+        };
+    }
+
+    static Call<JSONTokener, Boolean> ping() {
+        return new Call<JSONTokener, Boolean>("/public/services/ping.json", JSONResponseHandler.getInstance()) {
+            @Override
+            Boolean decode(JSONTokener jtResponse) throws TransmissionException {
+                try {
+                    return getSuccessPayload(jtResponse).has("message");
+                }
+                catch (JSONException e) {
+                    throw new TransmissionException(e);
+                }
+                catch (OperationFailedException e) {
+                    return false;
+                }
+            }
+        };
+    }
+
+    /////////
+    //Locations
+    /////////
+
+    static Call<JSONTokener, Set<LocationBean>> retrieveLocations() {
+        return new Call<JSONTokener, Set<LocationBean>>("/services/locations/list.json", JSONResponseHandler.getInstance()) {
+            @Override
+            Set<LocationBean> decode(JSONTokener jtLocs) throws TransmissionException {
+                try {
+                    JSONArray jaLocations = getSuccessPayload(jtLocs).getJSONArray("locations");
+
+                    HashSet<LocationBean> locations = new HashSet<LocationBean>();
+                    for (int i = 0, iMax = jaLocations.length(); i < iMax; i++) {
+                        JSONObject joLocation = jaLocations.getJSONObject(i);
+                        locations.add(new LocationBean(joLocation.getString("location"), joLocation.getString("description")));
+                    }
+
+                    return locations;
+                }
+                catch (JSONException e) {
+                    throw new TransmissionException(e);
+                }
+                catch (OperationFailedException e) {
+                    throw new TransmissionException(e);
+                }
+            }
+        };
+    }
+
+    static Call<JSONTokener, Boolean> addLocation(String locationUrl, String description) {
+        NameValuePair[] nvps = new BasicNameValuePair[2];
+        nvps[0] = new BasicNameValuePair("location", locationUrl);
+        nvps[1] = new BasicNameValuePair("description", description);
+
+        return new Call<JSONTokener, Boolean>("/services/locations/add.json", JSONResponseHandler.getInstance(), nvps) {
+            @Override
+            Boolean decode(JSONTokener jtRetrieved) throws TransmissionException {
+                try {
+                    return getSuccessPayload(jtRetrieved).has("added_uris");
+                }
+                catch (JSONException e) {
+                    throw new TransmissionException(e);
+                }
+                catch (OperationFailedException e) {
+                    return false;
+                }
+            }
+        };
+    }
+
+    static Call<JSONTokener, Boolean> removeLocation(final String locationUrl) {
+        NameValuePair argLoc = new BasicNameValuePair("location", locationUrl);
+
+        return new Call<JSONTokener, Boolean>("/services/locations/remove.json", JSONResponseHandler.getInstance(), argLoc) {
+            @Override
+            Boolean decode(JSONTokener jtRetrieved) throws TransmissionException {
+                try {
+                    JSONArray jaRemoved = getSuccessPayload(jtRetrieved).getJSONArray("removed_locations");
+                    String location = jaRemoved.getString(0);
+
+                    return location.equals(locationUrl);
+                }
+                catch (JSONException e) {
+                    throw new TransmissionException(e);
+                }
+                catch (OperationFailedException e) {
+                    return false;
+                }
+            }
+        };
+    }
+
+    ////////////
+    //Repository
+    /////////////
+
+    static Call<Long, Long> retrieveRepository(TripleSink sink) {
+        return triples("/services/repository/describe.nt", sink);
+    }
+
+    static Call<Long, Long> retrievePublicRepository(TripleSink sink) {
+        return triples("/public/services/repository.nt", sink);
+    }
+
+    static Call<Long, QueryableRepository> retrieveRepository() {
+        return repository("/services/repository/describe.nt");
+    }
+
+    static Call<Long, QueryableRepository> retrievePublicRepository() {
+        return repository("/public/services/repository.nt");
+    }
+
+    static Call<Long, QueryableRepository> retrieveDemoRepository() {
+        return repository("/public/services/demo_repository.nt");
+    }
+
+    static Call<JSONTokener, Boolean> regenerate() {
+        return new Call<JSONTokener, Boolean>("/services/repository/regenerate.json", JSONResponseHandler.getInstance()) {
+            @Override
+            Boolean decode(JSONTokener jt) throws TransmissionException {
+                try {
+                    return getSuccessPayload(jt).has("added_uris");
+                }
+                catch (JSONException e) {
+                    throw new TransmissionException(e);
+                }
+                catch (OperationFailedException e) {
+                    return false;
+                }
+            }
+        };
+    }
+
+    static Call<SuccessPayload<Set<String>>, Set<URI>> retrieveComponentUris() {
+        return uris("/services/repository/list_components.json", "components", "uri");
+    }
+
+    static Call<SuccessPayload<Set<String>>, Set<URI>> retrieveFlowUris() {
+        return uris("/services/repository/list_flows.json", "flows", "uri");
+    }
+
+    static Call<SuccessPayload<Set<String>>, Set<String>> retrieveAllTags() {
+        return names("/services/repository/tags.json", "tags");
+    }
+
+    static Call<SuccessPayload<Set<String>>, Set<String>> retrieveComponentTags() {
+        return names("/services/repository/tags_components.json", "tags");
+    }
+
+    static Call<SuccessPayload<Set<String>>, Set<String>> retrieveFlowTags() {
+        return names("/services/repository/tags_flows.json", "tags");
+    }
+
+    static Call<Model, ExecutableComponentDescription> retrieveComponentDescriptor(String componentUri) {
+        NameValuePair argCompUri = new BasicNameValuePair("uri", componentUri);
+
+        return new Call<Model, ExecutableComponentDescription>("/services/repository/describe.nt",
+                RDFModelResponseHandler.getInstance(), argCompUri) {
+            @Override
+            ExecutableComponentDescription decode(Model compModel) throws TransmissionException {
+                QueryableRepository qr = new RepositoryImpl(compModel);
+                Set<ExecutableComponentDescription> repoComps = qr.getAvailableExecutableComponentDescriptions();
+                Iterator<ExecutableComponentDescription> iter = repoComps.iterator();
+                ExecutableComponentDescription comp = iter.next();
+
+                if (iter.hasNext())
+                    throw new TransmissionException("More than one component descriptor was returned by the server.");
+
+                return comp;
+            }
+        };
+    }
+
+    static Call<Model, FlowDescription> retrieveFlowDescriptor(String flowUri) {
+        NameValuePair argFlowUri = new BasicNameValuePair("uri", flowUri);
+
+        return new Call<Model, FlowDescription>("/services/repository/describe.nt",
+                RDFModelResponseHandler.getInstance(), argFlowUri) {
+            @Override
+            FlowDescription decode(Model flowModel) throws TransmissionException {
+                QueryableRepository qr = new RepositoryImpl(flowModel);
+                Set<FlowDescription> repoFlows = qr.getAvailableFlowDescriptions();
+                Iterator<FlowDescription> iter = repoFlows.iterator();
+                FlowDescription flow = iter.next();
+
+                if (iter.hasNext())
+                    throw new TransmissionException("More than one flow descriptor was returned by the server.");
+
+                return flow;
+            }
+        };
+    }
+
+    static Call<String, String> retrieveComponentDescriptorAsString(String componentUri) {
+        NameValuePair argCompUri = new BasicNameValuePair("uri", componentUri);
+
+        return text("/services/repository/describe.nt", argCompUri);
+    }
+
+    /**
+     * @throws TransmissionException If one of the contexts doesn't exist
+     */
+    static Call<JSONTokener, Boolean> uploadModelBatch(Set<Model> models, Set<File> contexts, boolean overwrite,
+            boolean gzip) throws TransmissionException {
+        NameValuePair argOverwrite = new BasicNameValuePair("overwrite", Boolean.toString(overwrite));
+        List<KeyValuePair<String, ContentBody>> parts = new ArrayList<KeyValuePair<String,ContentBody>>();
+
+        for (Model modUpload : models)
+            parts.add(new KeyValuePair<String, ContentBody>("repository", new NTriplesModelBody(modUpload, gzip)));
+
+        if (contexts != null)
+            for (File jarFile : contexts)
+                if (jarFile.exists())
+                    parts.add(new KeyValuePair<String, ContentBody>("context", new FileBody(jarFile)));
+                else
+                    throw new TransmissionException(new FileNotFoundException(jarFile.toString()));
+
+        return new Call<JSONTokener, Boolean>("/services/repository/add.json", parts, JSONResponseHandler.getInstance(), argOverwrite) {
+            @Override
+            Boolean decode(JSONTokener response) throws TransmissionException {
+                try {
+                    return getSuccessPayload(response).has("uris");
+                }
+                catch (JSONException e) {
+                    throw new TransmissionException(e);
+                }
+                catch (OperationFailedException e) {
+                    return false;
+                }
+            }
+        };
+    }
+
+    static Call<JSONTokener, Boolean> removeResource(final String resourceUri) {
+        NameValuePair argRes = new BasicNameValuePair("uri", resourceUri);
+
+        return new Call<JSONTokener, Boolean>("/services/repository/remove.json", JSONResponseHandler.getInstance(), argRes) {
+            @Override
+            Boolean decode(JSONTokener jtRetrieved) throws TransmissionException {
+                try {
+                    JSONArray jaRemoved = getSuccessPayload(jtRetrieved).getJSONArray("uris");
+
+                    return jaRemoved.length() == 1 && jaRemoved.getString(0).equals(resourceUri);
+                }
+                catch (JSONException e) {
+                    throw new TransmissionException(e);
+                }
+                catch (OperationFailedException e) {
+                    return false;
+                }
+            }
+        };
+    }
+
+    /////////
+    //Publish
+    /////////
+
+    static Call<JSONTokener, Boolean> publish(final String resourceUri) {
+        NameValuePair argRes = new BasicNameValuePair("uri", resourceUri);
+
+        return new Call<JSONTokener, Boolean>("/services/publish/publish.json", JSONResponseHandler.getInstance(), argRes) {
+            @Override
+            Boolean decode(JSONTokener jtRetrieved) throws TransmissionException {
+                try {
+                    JSONArray jaPublished = getSuccessPayload(jtRetrieved).getJSONArray("published");
+
+                    return jaPublished.length() == 1 && jaPublished.getJSONObject(0).getString("uri").equals(resourceUri);
+                }
+                catch (JSONException e) {
+                    throw new TransmissionException(e);
+                }
+                catch (OperationFailedException e) {
+                    return false;
+                }
+            }
+        };
+    }
+
+    static Call<JSONTokener, Boolean> unpublish(final String resourceUri) {
+        NameValuePair argRes = new BasicNameValuePair("uri", resourceUri);
+
+        return new Call<JSONTokener, Boolean>("/services/publish/unpublish.json", JSONResponseHandler.getInstance(), argRes) {
+            @Override
+            Boolean decode(JSONTokener jtRetrieved) throws TransmissionException {
+                try {
+                    JSONArray jaUnpublished = getSuccessPayload(jtRetrieved).getJSONArray("unpublished");
+
+                    return jaUnpublished.length() == 1 && jaUnpublished.getString(0).equals(resourceUri);
+                }
+                catch (JSONException e) {
+                    throw new TransmissionException(e);
+                }
+                catch (OperationFailedException e) {
+                    return false;
+                }
+            }
+        };
+    }
+
+    /////////
+    //Jobs
+    /////////
+
+    static Call<JSONTokener, String> submitJob(String flowUri) {
+        NameValuePair argFlowUri = new BasicNameValuePair("uri", flowUri);
+
+        return new Call<JSONTokener, String>("/services/jobs/submit.json", JSONResponseHandler.getInstance(), argFlowUri) {
+            @Override
+            String decode(JSONTokener jtResponse) throws TransmissionException {
+                try {
+                    JSONArray jaSubmitted = getSuccessPayload(jtResponse).getJSONArray("submitted");
+
+                    return jaSubmitted.getJSONObject(0).getString("jobID");
+                }
+                catch (JSONException e) {
+                    throw new TransmissionException(e);
+                }
+                catch (OperationFailedException e) {
+                    return null;
+                }
+            }
+        };
+    }
+
+    static Call<JSONTokener, JSONObject> retrieveJobStatus(String jobID) {
+        NameValuePair argJobId = new BasicNameValuePair("jobID", jobID);
+
+        return new Call<JSONTokener, JSONObject>("/services/jobs/list.json", JSONResponseHandler.getInstance(), argJobId) {
+            @Override
+            JSONObject decode(JSONTokener jtResponse) throws TransmissionException {
+                try {
+                    JSONArray jaJobs = getSuccessPayload(jtResponse).getJSONArray("jobs");
+
+                    return jaJobs.getJSONObject(0);
+                }
+                catch (JSONException e) {
+                    throw new TransmissionException(e);
+                }
+                catch (OperationFailedException e) {
+                    return null;
+                }
+            }
+        };
+    }
+
+    static Call<JSONTokener, Boolean> killJob(String jobID) {
+        NameValuePair argJobId = new BasicNameValuePair("jobID", jobID);
+
+        return new Call<JSONTokener, Boolean>("/services/jobs/kill.json", JSONResponseHandler.getInstance(), argJobId) {
+            @Override
+            Boolean decode(JSONTokener jtResponse) throws TransmissionException {
+                try {
+                    return getSuccessPayload(jtResponse).getJSONArray("kill").length() == 1;
+                }
+                catch (JSONException e) {
+                    throw new TransmissionException(e);
+                }
+                catch (OperationFailedException e) {
+                    return false;
+                }
+            }
+        };
+    }
+
+    static Call<String, String> retrieveJobConsole(String jobID) {
+        NameValuePair argJobID = new BasicNameValuePair("jobID", jobID);
+
+        return text("/services/jobs/console.txt", argJobID);
+    }
+
+    /////////
+    //Helpers
+    /////////
+
+    static JSONObject getSuccessPayload(JSONTokener response) throws JSONException, OperationFailedException {
+        JSONObject joResponse = new JSONObject(response);
+        String status = joResponse.getString("status");
+
+        if (status.equals("OK"))
+            return joResponse.getJSONObject("success");
+
+        if (status.equals("FAIL")) {
+            JSONObject joFailure = joResponse.getJSONObject("failure");
+            throw new OperationFailedException(joResponse.getString("message"), joFailure);
+        }
+
+        throw new JSONException("Invalid response status: " + status);
+    }
+
+    /**
+     * A call whose result is the text of the response
+     */
+    private static Call<String, String> text(String reqPath, NameValuePair... params) {
+        return new Call<String, String>(reqPath, StringResponseHandler.getInstance(), params) {
+            @Override
+            String decode(String response) {
+                return response;
+            }
+        };
+    }
+
+    /**
+     * A call that streams the N-Triples of the response into the sink and
+     * returns the number of triples
+     */
+    private static Call<Long, Long> triples(String reqPath, TripleSink sink) {
+        return new Call<Long, Long>(reqPath, new NTriplesResponseHandler(sink)) {
+            @Override
+            Long decode(Long numTriples) {
+                return numTriples;
+            }
+        };
+    }
+
+    /**
+     * A call that reads the N-Triples of the response into a repository
+     */
+    private static Call<Long, QueryableRepository> repository(String reqPath) {
+        final ModelTripleSink sink = new ModelTripleSink();
+
+        return new Call<Long, QueryableRepository>(reqPath, new NTriplesResponseHandler(sink)) {
+            @Override
+            QueryableRepository decode(Long numTriples) {
+                return new RepositoryImpl(sink.getModel());
+            }
+        };
+    }
+
+    /**
+     * Retrieves a list of objects from the success payload and returns the
+     * named member of each, taken from the response as it streams in
+     *
+     * @param reqPath The request path
+     * @param payloadMember The list in the success payload
+     * @param uriMember The member of each object to return
+     */
+    private static Call<SuccessPayload<Set<String>>, Set<URI>> uris(String reqPath, String payloadMember, final String uriMember) {
+        SuccessPayloadHandler<Set<String>> handler = new SuccessPayloadHandler<Set<String>>(payloadMember) {
+            @Override
+            protected Set<String> readPayload(JSONPullReader reader) throws IOException, JSONException {
+                Set<String> uris = new HashSet<String>();
+                readMemberValues(reader, uriMember, uris);
+
+                return uris;
+            }
+        };
+
+        return new Call<SuccessPayload<Set<String>>, Set<URI>>(reqPath, handler) {
+            @Override
+            Set<URI> decode(SuccessPayload<Set<String>> response) throws TransmissionException {
+                try {
+                    Set<String> uris = response.get();
+
+                    Set<URI> setURIs = new HashSet<URI>(uris.size() * 2);
+                    for (String uri : uris)
+                        setURIs.add(new URI(uri));
+
+                    return setURIs;
+                }
+                catch (URISyntaxException e) {
+                    throw new TransmissionException(e);
+                }
+                catch (JSONException e) {
+                    throw new TransmissionException(e);
+                }
+                catch (OperationFailedException e) {
+                    throw new TransmissionException(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Retrieves an object from the success payload and returns the names of
+     * its members, taken from the response as it streams in
+     *
+     * @param reqPath The request path
+     * @param payloadMember The object in the success payload
+     */
+    private static Call<SuccessPayload<Set<String>>, Set<String>> names(String reqPath, String payloadMember) {
+        SuccessPayloadHandler<Set<String>> handler = new SuccessPayloadHandler<Set<String>>(payloadMember) {
+            @Override
+            protected Set<String> readPayload(JSONPullReader reader) throws IOException, JSONException {
+                Set<String> names = new HashSet<String>();
+                readNames(reader, names);
+
+                return names;
+            }
+        };
+
+        return new Call<SuccessPayload<Set<String>>, Set<String>>(reqPath, handler) {
+            @Override
+            Set<String> decode(SuccessPayload<Set<String>> response) throws TransmissionException {
+                try {
+                    return response.get();
+                }
+                catch (JSONException e) {
+                    throw new TransmissionException(e);
+                }
+                catch (OperationFailedException e) {
+                    throw new TransmissionException(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * What SuccessPayloadHandler read from a response
+     */
+    static class SuccessPayload<T> {
+        private String _status;
+        private String _message;
+        private Object _failure;
+        private T _payload;
+        private boolean _hasPayload = false;
+
+        /**
+         * @return The payload, if the status is OK
+         * @throws OperationFailedException If the status is FAIL
+         * @throws JSONException If the response is missing something
+         */
+        public T get() throws JSONException, OperationFailedException {
+            if (_status == null)
+                throw new JSONException("JSONObject[\"status\"] not found.");
+
+            if (_status.equals("OK")) {
+                if (!_hasPayload)
+                    throw new JSONException("Success payload not found.");
+
+                return _payload;
+            }
+
+            if (_status.equals("FAIL")) {
+                if (!(_failure instanceof JSONObject))
+                    throw new JSONException("JSONObject[\"failure\"] is not a JSONObject.");
+                if (_message == null)
+                    throw new JSONException("JSONObject[\"message\"] not found.");
+
+                throw new OperationFailedException(_message, (JSONObject) _failure);
+            }
+
+            throw new JSONException("Invalid response status: " + _status);
+        }
+    }
+
+    /**
+     * Reads a response the same as getSuccessPayload() does, but as it
+     * streams in: the named member of the success payload is handed to
+     * readPayload() and the rest of the payload is skipped. Only the failure
+     * details are read whole. The members of the response may come in any
+     * order, so the status is checked by SuccessPayload.get() once the whole
+     * response was read.
+     */
+    static abstract class SuccessPayloadHandler<T> extends JSONStreamResponseHandler<SuccessPayload<T>> {
+        private final String _payloadMember;
+
+        public SuccessPayloadHandler(String payloadMember) {
+            _payloadMember = payloadMember;
+        }
+
+        protected abstract T readPayload(JSONPullReader reader) throws IOException, JSONException;
+
+        @Override
+        protected SuccessPayload<T> handleJSON(JSONPullReader reader) throws IOException, JSONException {
+            SuccessPayload<T> response = new SuccessPayload<T>();
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+
+                if (name.equals("status"))
+                    response._status = reader.nextString();
+
+                else if (name.equals("message"))
+                    response._message = reader.nextString();
+
+                else if (name.equals("failure"))
+                    response._failure = reader.nextValue();
+
+                else if (name.equals("success") && reader.peek() == JSONPullReader.Token.BEGIN_OBJECT) {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if (reader.nextName().equals(_payloadMember)) {
+                            response._payload = readPayload(reader);
+                            response._hasPayload = true;
+                        }
+                        else
+                            reader.skipValue();
+                    }
+                    reader.endObject();
+                }
+
+                else
+                    reader.skipValue();
+            }
+            reader.endObject();
+
+            return response;
+        }
+    }
+}
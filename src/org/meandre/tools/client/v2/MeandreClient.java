@@ -1,18 +1,15 @@
 package org.meandre.tools.client.v2;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStreamWriter;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
+import java.io.UnsupportedEncodingException;
 import java.net.URI;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
@@ -20,9 +17,6 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.apache.http.NameValuePair;
-import org.apache.http.entity.mime.content.ContentBody;
-import org.apache.http.entity.mime.content.FileBody;
-import org.apache.http.entity.mime.content.StringBody;
 import org.apache.http.message.BasicNameValuePair;
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -32,22 +26,17 @@ import org.meandre.core.repository.ExecutableComponentDescription;
 import org.meandre.core.repository.FlowDescription;
 import org.meandre.core.repository.LocationBean;
 import org.meandre.core.repository.QueryableRepository;
-import org.meandre.core.repository.RepositoryImpl;
 import org.meandre.tools.client.AbstractMeandreClient;
-import org.meandre.tools.client.exceptions.OperationFailedException;
 import org.meandre.tools.client.exceptions.TransmissionException;
 import org.meandre.tools.client.utils.GenericHttpClient;
 import org.meandre.tools.client.utils.GenericLoggerFactory;
 import org.meandre.tools.client.utils.handlers.JSONResponseHandler;
-import org.meandre.tools.client.utils.handlers.RDFModelResponseHandler;
 import org.meandre.tools.client.utils.handlers.StringResponseHandler;
-import org.seasr.meandre.support.generic.io.ModelUtils;
-import org.seasr.meandre.support.generic.util.KeyValuePair;
+import org.meandre.tools.client.utils.rdf.TripleSink;
 
 import sun.reflect.generics.reflectiveObjects.NotImplementedException;
 
 import com.hp.hpl.jena.rdf.model.Model;
-import com.hp.hpl.jena.rdf.model.ModelFactory;
 
 
 /**
@@ -88,6 +77,7 @@ import com.hp.hpl.jena.rdf.model.ModelFactory;
 public class MeandreClient extends AbstractMeandreClient {
 
     private final GenericHttpClient _httpClient;
+    private boolean _gzipModelUploads = false;
 
     /**
      * initialize to talk to a particular server. You need to call the
@@ -122,6 +112,16 @@ public class MeandreClient extends AbstractMeandreClient {
         _httpClient.close();
     }
 
+    @Override
+    public void setGzipModelUploads(boolean gzip) {
+        _gzipModelUploads = gzip;
+    }
+
+    @Override
+    public boolean isGzipModelUploads() {
+        return _gzipModelUploads;
+    }
+
     /**
      * /services/security/user.json
      *
@@ -130,25 +130,7 @@ public class MeandreClient extends AbstractMeandreClient {
      */
     @Override
     public Set<String> retrieveUserRoles() throws TransmissionException {
-        String reqPath = "/services/security/user.json";
-        JSONTokener jtRoles = _httpClient.doGET(reqPath, null, JSONResponseHandler.getInstance());
-
-        try {
-            JSONObject joUser = getSuccessPayload(jtRoles).getJSONObject("user");
-            JSONArray jaRoles = joUser.getJSONArray("roles");
-
-            Set<String> roles = new HashSet<String>();
-            for (int i = 0, iMax = jaRoles.length(); i < iMax; i++)
-                roles.add(jaRoles.getString(i));
-
-            return roles;
-        }
-        catch (JSONException e) {
-            throw new TransmissionException(e);
-        }
-        catch (OperationFailedException e) {
-            throw new TransmissionException(e);
-        }
+        return execute(Calls.retrieveUserRoles());
     }
 
     /**
@@ -159,24 +141,7 @@ public class MeandreClient extends AbstractMeandreClient {
      */
     @Override
     public Set<String> retrieveValidRoles() throws TransmissionException {
-        String reqPath = "/services/security/valid_roles.json";
-        JSONTokener jtRoles = _httpClient.doGET(reqPath, null, JSONResponseHandler.getInstance());
-
-        try {
-            JSONArray jaRoles = getSuccessPayload(jtRoles).getJSONArray("roles");
-
-            Set<String> roles = new HashSet<String>();
-            for (int i = 0, iMax = jaRoles.length(); i < iMax; i++)
-                roles.add(jaRoles.getString(i));
-
-            return roles;
-        }
-        catch (JSONException e) {
-            throw new TransmissionException(e);
-        }
-        catch (OperationFailedException e) {
-            throw new TransmissionException(e);
-        }
+        return execute(Calls.retrieveValidRoles());
     }
 
     /////////
@@ -191,26 +156,7 @@ public class MeandreClient extends AbstractMeandreClient {
      */
     @Override
     public Set<LocationBean> retrieveLocations() throws TransmissionException {
-        String reqPath = "/services/locations/list.json";
-        JSONTokener jtLocs = _httpClient.doGET(reqPath, null, JSONResponseHandler.getInstance());
-
-        try {
-            JSONArray jaLocations = getSuccessPayload(jtLocs).getJSONArray("locations");
-
-            HashSet<LocationBean> locations = new HashSet<LocationBean>();
-            for (int i = 0, iMax = jaLocations.length(); i < iMax; i++) {
-                JSONObject joLocation = jaLocations.getJSONObject(i);
-                locations.add(new LocationBean(joLocation.getString("location"), joLocation.getString("description")));
-            }
-
-            return locations;
-        }
-        catch (JSONException e) {
-            throw new TransmissionException(e);
-        }
-        catch (OperationFailedException e) {
-            throw new TransmissionException(e);
-        }
+        return execute(Calls.retrieveLocations());
     }
 
     /**
@@ -223,23 +169,7 @@ public class MeandreClient extends AbstractMeandreClient {
      */
     @Override
     public boolean addLocation(String locationUrl, String description) throws TransmissionException {
-        String reqPath = "/services/locations/add.json";
-
-        NameValuePair[] nvps = new BasicNameValuePair[2];
-        nvps[0] = new BasicNameValuePair("location", locationUrl);
-        nvps[1] = new BasicNameValuePair("description", description);
-
-        JSONTokener jtRetrieved = _httpClient.doGET(reqPath, null, JSONResponseHandler.getInstance(), nvps);
-
-        try {
-            return getSuccessPayload(jtRetrieved).has("added_uris");
-        }
-        catch (JSONException e) {
-            throw new TransmissionException(e);
-        }
-        catch (OperationFailedException e) {
-            return false;
-        }
+        return execute(Calls.addLocation(locationUrl, description));
     }
 
     /**
@@ -251,23 +181,7 @@ public class MeandreClient extends AbstractMeandreClient {
      */
     @Override
     public boolean removeLocation(String locationUrl) throws TransmissionException {
-        String reqPath = "/services/locations/remove.json";
-
-        NameValuePair argLoc = new BasicNameValuePair("location", locationUrl);
-        JSONTokener jtRetrieved = _httpClient.doGET(reqPath, null, JSONResponseHandler.getInstance(), argLoc);
-
-        try {
-            JSONArray jaRemoved = getSuccessPayload(jtRetrieved).getJSONArray("removed_locations");
-            String location = jaRemoved.getString(0);
-
-            return location.equals(locationUrl);
-        }
-        catch (JSONException e) {
-            throw new TransmissionException(e);
-        }
-        catch (OperationFailedException e) {
-            return false;
-        }
+        return execute(Calls.removeLocation(locationUrl));
     }
 
     ////////////
@@ -282,10 +196,19 @@ public class MeandreClient extends AbstractMeandreClient {
      */
     @Override
     public QueryableRepository retrieveRepository() throws TransmissionException {
-        String reqPath = "/services/repository/describe.nt";
-        Model model = _httpClient.doGET(reqPath, null, RDFModelResponseHandler.getInstance());
+        return execute(Calls.retrieveRepository());
+    }
 
-        return new RepositoryImpl(model);
+    /**
+     * /services/repository/describe.nt
+     *
+     * @param sink Receives the triples of the repository as they stream in
+     * @return The number of triples read
+     * @throws TransmissionException
+     */
+    @Override
+    public long retrieveRepository(TripleSink sink) throws TransmissionException {
+        return execute(Calls.retrieveRepository(sink));
     }
 
     /**
@@ -296,18 +219,7 @@ public class MeandreClient extends AbstractMeandreClient {
      */
     @Override
     public boolean regenerate() throws TransmissionException {
-        String reqPath = "/services/repository/regenerate.json";
-        JSONTokener jt = _httpClient.doGET(reqPath, null, JSONResponseHandler.getInstance());
-
-        try {
-            return getSuccessPayload(jt).has("added_uris");
-        }
-        catch (JSONException e) {
-            throw new TransmissionException(e);
-        }
-        catch (OperationFailedException e) {
-            return false;
-        }
+        return execute(Calls.regenerate());
     }
 
     /**
@@ -318,21 +230,7 @@ public class MeandreClient extends AbstractMeandreClient {
      */
     @Override
     public Set<URI> retrieveComponentUris() throws TransmissionException {
-        String reqPath = "/services/repository/list_components.json";
-        JSONTokener jtRetrieved = _httpClient.doGET(reqPath, null, JSONResponseHandler.getInstance());
-
-        try {
-            JSONArray jaComponents = getSuccessPayload(jtRetrieved).getJSONArray("components");
-
-            Set<URI> compURIs = new HashSet<URI>();
-            for (int i = 0, iMax = jaComponents.length(); i < iMax; i++)
-                compURIs.add(new URI(jaComponents.getJSONObject(i).getString("uri")));
-
-            return compURIs;
-        }
-        catch (Exception e) {
-            throw new TransmissionException(e);
-        }
+        return execute(Calls.retrieveComponentUris());
     }
 
     /**
@@ -343,21 +241,7 @@ public class MeandreClient extends AbstractMeandreClient {
      */
     @Override
     public Set<URI> retrieveFlowUris() throws TransmissionException {
-        String reqPath = "/services/repository/list_flows.json";
-        JSONTokener jtRetrieved = _httpClient.doGET(reqPath, null, JSONResponseHandler.getInstance());
-
-        try {
-            JSONArray jaComponents = getSuccessPayload(jtRetrieved).getJSONArray("flows");
-
-            Set<URI> flowURIs = new HashSet<URI>();
-            for (int i = 0, iMax = jaComponents.length(); i < iMax; i++)
-                flowURIs.add(new URI(jaComponents.getJSONObject(i).getString("uri")));
-
-            return flowURIs;
-        }
-        catch (Exception e) {
-            throw new TransmissionException(e);
-        }
+        return execute(Calls.retrieveFlowUris());
     }
 
     /**
@@ -368,26 +252,7 @@ public class MeandreClient extends AbstractMeandreClient {
      */
     @Override
     public Set<String> retrieveAllTags() throws TransmissionException {
-        String reqPath = "/services/repository/tags.json";
-        JSONTokener jtRetrieved = _httpClient.doGET(reqPath, null, JSONResponseHandler.getInstance());
-
-        try {
-            JSONObject joTags = getSuccessPayload(jtRetrieved).getJSONObject("tags");
-
-            Set<String> tags = new HashSet<String>();
-            @SuppressWarnings("unchecked")
-            Iterator<String> iter = joTags.keys();
-            while (iter.hasNext())
-                tags.add(iter.next());
-
-            return tags;
-        }
-        catch (JSONException e) {
-            throw new TransmissionException(e);
-        }
-        catch (OperationFailedException e) {
-            throw new TransmissionException(e);
-        }
+        return execute(Calls.retrieveAllTags());
     }
 
     /**
@@ -398,26 +263,7 @@ public class MeandreClient extends AbstractMeandreClient {
      */
     @Override
     public Set<String> retrieveComponentTags() throws TransmissionException {
-        String reqPath = "/services/repository/tags_components.json";
-        JSONTokener jtRetrieved = _httpClient.doGET(reqPath, null, JSONResponseHandler.getInstance());
-
-        try {
-            JSONObject joTags = getSuccessPayload(jtRetrieved).getJSONObject("tags");
-
-            Set<String> tags = new HashSet<String>();
-            @SuppressWarnings("unchecked")
-            Iterator<String> iter = joTags.keys();
-            while (iter.hasNext())
-                tags.add(iter.next());
-
-            return tags;
-        }
-        catch (JSONException e) {
-            throw new TransmissionException(e);
-        }
-        catch (OperationFailedException e) {
-            throw new TransmissionException(e);
-        }
+        return execute(Calls.retrieveComponentTags());
     }
 
     /**
@@ -428,26 +274,7 @@ public class MeandreClient extends AbstractMeandreClient {
      */
     @Override
     public Set<String> retrieveFlowTags() throws TransmissionException {
-        String reqPath = "/services/repository/tags_flows.json";
-        JSONTokener jtRetrieved = _httpClient.doGET(reqPath, null, JSONResponseHandler.getInstance());
-
-        try {
-            JSONObject joTags = getSuccessPayload(jtRetrieved).getJSONObject("tags");
-
-            Set<String> tags = new HashSet<String>();
-            @SuppressWarnings("unchecked")
-            Iterator<String> iter = joTags.keys();
-            while (iter.hasNext())
-                tags.add(iter.next());
-
-            return tags;
-        }
-        catch (JSONException e) {
-            throw new TransmissionException(e);
-        }
-        catch (OperationFailedException e) {
-            throw new TransmissionException(e);
-        }
+        return execute(Calls.retrieveFlowTags());
     }
 
     /**
@@ -474,19 +301,7 @@ public class MeandreClient extends AbstractMeandreClient {
      */
     @Override
     public ExecutableComponentDescription retrieveComponentDescriptor(String componentUri) throws TransmissionException {
-        String reqPath = "/services/repository/describe.nt";
-        NameValuePair argCompUri = new BasicNameValuePair("uri", componentUri);
-        Model compModel = _httpClient.doGET(reqPath, null, RDFModelResponseHandler.getInstance(), argCompUri);
-
-        QueryableRepository qr = new RepositoryImpl(compModel);
-        Set<ExecutableComponentDescription> repoComps = qr.getAvailableExecutableComponentDescriptions();
-        Iterator<ExecutableComponentDescription> iter = repoComps.iterator();
-        ExecutableComponentDescription comp = iter.next();
-
-        if (iter.hasNext())
-            throw new TransmissionException("More than one component descriptor was returned by the server.");
-
-        return comp;
+        return execute(Calls.retrieveComponentDescriptor(componentUri));
     }
 
     /**
@@ -497,19 +312,7 @@ public class MeandreClient extends AbstractMeandreClient {
      */
     @Override
     public FlowDescription retrieveFlowDescriptor(String flowUri) throws TransmissionException {
-        String reqPath = "/services/repository/describe.nt";
-        NameValuePair argFlowUri = new BasicNameValuePair("uri", flowUri);
-        Model flowModel = _httpClient.doGET(reqPath, null, RDFModelResponseHandler.getInstance(), argFlowUri);
-
-        QueryableRepository qr = new RepositoryImpl(flowModel);
-        Set<FlowDescription> repoFlows = qr.getAvailableFlowDescriptions();
-        Iterator<FlowDescription> iter = repoFlows.iterator();
-        FlowDescription flow = iter.next();
-
-        if (iter.hasNext())
-            throw new TransmissionException("More than one flow descriptor was returned by the server.");
-
-        return flow;
+        return execute(Calls.retrieveFlowDescriptor(flowUri));
     }
 
     /**
@@ -564,11 +367,21 @@ public class MeandreClient extends AbstractMeandreClient {
     }
 
     /**
-     * @throws NotImplementedException
+     * /services/repository/add.json
+     *
+     * @param components The components to upload in one request
+     * @param jarFileContexts The contexts of all the components
+     * @param overwrite True to overwrite existing components, False otherwise
+     * @return True if success, False otherwise
+     * @throws TransmissionException
      */
     @Override
     public boolean uploadComponentBatch(Set<ExecutableComponentDescription> components, Set<File> jarFileContexts, boolean overwrite) throws TransmissionException {
-        throw new NotImplementedException();
+        Set<Model> models = new HashSet<Model>(components.size());
+        for (ExecutableComponentDescription component : components)
+            models.add(component.getModel());
+
+        return uploadModelBatch(models, jarFileContexts, overwrite);
     }
 
     /**
@@ -612,33 +425,7 @@ public class MeandreClient extends AbstractMeandreClient {
      */
     @Override
     public boolean uploadModelBatch(Set<Model> models, Set<File> contexts, boolean overwrite) throws TransmissionException {
-        String reqPath = "/services/repository/add.json";
-
-        NameValuePair argOverwrite = new BasicNameValuePair("overwrite", Boolean.toString(overwrite));
-        List<KeyValuePair<String, ContentBody>> parts = new ArrayList<KeyValuePair<String,ContentBody>>();
-
-        try {
-            for (Model modUpload : models) {
-                String sModel = ModelUtils.modelToDialect(modUpload, "N-TRIPLE");
-                parts.add(new KeyValuePair<String, ContentBody>("repository", new StringBody(sModel)));
-            }
-
-            if (contexts != null)
-                for (File jarFile : contexts)
-                    if (jarFile.exists())
-                        parts.add(new KeyValuePair<String, ContentBody>("context", new FileBody(jarFile)));
-                    else
-                        throw new TransmissionException(new FileNotFoundException(jarFile.toString()));
-
-            JSONTokener response = _httpClient.doPOST(reqPath, null, parts, JSONResponseHandler.getInstance(), argOverwrite);
-            return getSuccessPayload(response).has("uris");
-        }
-        catch (OperationFailedException e) {
-            return false;
-        }
-        catch (Exception e) {
-            throw new TransmissionException(e);
-        }
+        return execute(Calls.uploadModelBatch(models, contexts, overwrite, _gzipModelUploads));
     }
 
     /**
@@ -666,21 +453,7 @@ public class MeandreClient extends AbstractMeandreClient {
      */
     @Override
     public boolean removeResource(String resourceUri) throws TransmissionException {
-        String reqPath = "/services/repository/remove.json";
-        NameValuePair argRes = new BasicNameValuePair("uri", resourceUri);
-        JSONTokener jtRetrieved = _httpClient.doGET(reqPath, null, JSONResponseHandler.getInstance(), argRes);
-
-        try{
-            JSONArray jaRemoved = getSuccessPayload(jtRetrieved).getJSONArray("uris");
-
-            return jaRemoved.length() == 1 && jaRemoved.getString(0).equals(resourceUri);
-        }
-        catch (JSONException e) {
-            throw new TransmissionException(e);
-        }
-        catch (OperationFailedException e) {
-            return false;
-        }
+        return execute(Calls.removeResource(resourceUri));
     }
 
     /////////
@@ -696,21 +469,7 @@ public class MeandreClient extends AbstractMeandreClient {
      */
     @Override
     public boolean publish(String resourceUri) throws TransmissionException {
-        String reqPath = "/services/publish/publish.json";
-        NameValuePair argRes = new BasicNameValuePair("uri", resourceUri);
-        JSONTokener jtRetrieved = _httpClient.doGET(reqPath, null, JSONResponseHandler.getInstance(), argRes);
-
-        try {
-            JSONArray jaPublished = getSuccessPayload(jtRetrieved).getJSONArray("published");
-
-            return jaPublished.length() == 1 && jaPublished.getJSONObject(0).getString("uri").equals(resourceUri);
-        }
-        catch (JSONException e) {
-            throw new TransmissionException(e);
-        }
-        catch (OperationFailedException e) {
-            return false;
-        }
+        return execute(Calls.publish(resourceUri));
     }
 
     /**
@@ -722,21 +481,7 @@ public class MeandreClient extends AbstractMeandreClient {
      */
     @Override
     public boolean unpublish(String resourceUri) throws TransmissionException {
-        String reqPath = "/services/publish/unpublish.json";
-        NameValuePair argRes = new BasicNameValuePair("uri", resourceUri);
-        JSONTokener jtRetrieved = _httpClient.doGET(reqPath, null, JSONResponseHandler.getInstance(), argRes);
-
-        try {
-            JSONArray jaUnpublished = getSuccessPayload(jtRetrieved).getJSONArray("unpublished");
-
-            return jaUnpublished.length() == 1 && jaUnpublished.getString(0).equals(resourceUri);
-        }
-        catch (JSONException e) {
-            throw new TransmissionException(e);
-        }
-        catch (OperationFailedException e) {
-            return false;
-        }
+        return execute(Calls.unpublish(resourceUri));
     }
 
     /////////
@@ -814,11 +559,11 @@ public class MeandreClient extends AbstractMeandreClient {
 
 					        NameValuePair argSinceLog = new BasicNameValuePair("since", Integer.toString(sinceLog));
 					        JSONTokener jtLog = _httpClient.doGET(reqPathLog, null, JSONResponseHandler.getInstance(), argJobID, argSinceLog);
-					        JSONArray jaLog = getSuccessPayload(jtLog).getJSONArray("log");
+					        JSONArray jaLog = Calls.getSuccessPayload(jtLog).getJSONArray("log");
 
 					        NameValuePair argSinceConsole = new BasicNameValuePair("since", Integer.toString(sinceConsole));
 					        JSONTokener jtConsole = _httpClient.doGET(reqPathConsole, null, JSONResponseHandler.getInstance(), argJobID, argSinceConsole);
-					        JSONArray jaConsole = getSuccessPayload(jtConsole).getJSONArray("console");
+					        JSONArray jaConsole = Calls.getSuccessPayload(jtConsole).getJSONArray("console");
 
 					        JSONObject joLog = null;
 					        long tsLog = Long.MAX_VALUE;
@@ -855,13 +600,13 @@ public class MeandreClient extends AbstractMeandreClient {
 					        		if (i == jaLog.length()) {
 					        			argSinceLog = new BasicNameValuePair("since", Integer.toString(sinceLog));
 					        			jtLog = _httpClient.doGET(reqPathLog, null, JSONResponseHandler.getInstance(), argJobID, argSinceLog);
-						        		jaLog = getSuccessPayload(jtLog).getJSONArray("log");
+						        		jaLog = Calls.getSuccessPayload(jtLog).getJSONArray("log");
 						        		i = 0;
 
 						        		if (joConsole == null) {
 						        			argSinceConsole = new BasicNameValuePair("since", Integer.toString(sinceConsole));
 						        			jtConsole = _httpClient.doGET(reqPathConsole, null, JSONResponseHandler.getInstance(), argJobID, argSinceConsole);
-						        			jaConsole = getSuccessPayload(jtConsole).getJSONArray("console");
+						        			jaConsole = Calls.getSuccessPayload(jtConsole).getJSONArray("console");
 						        			j = 0;
 
 						        			if (jaConsole.length() > 0) {
@@ -895,13 +640,13 @@ public class MeandreClient extends AbstractMeandreClient {
 					        		if (j == jaConsole.length()) {
 					        			argSinceConsole = new BasicNameValuePair("since", Integer.toString(sinceConsole));
 					        			jtConsole = _httpClient.doGET(reqPathConsole, null, JSONResponseHandler.getInstance(), argJobID, argSinceConsole);
-					        			jaConsole = getSuccessPayload(jtConsole).getJSONArray("console");
+					        			jaConsole = Calls.getSuccessPayload(jtConsole).getJSONArray("console");
 					        			j = 0;
 
 					        			if (joLog == null) {
 					        				argSinceLog = new BasicNameValuePair("since", Integer.toString(sinceLog));
 						        			jtLog = _httpClient.doGET(reqPathLog, null, JSONResponseHandler.getInstance(), argJobID, argSinceLog);
-							        		jaLog = getSuccessPayload(jtLog).getJSONArray("log");
+							        		jaLog = Calls.getSuccessPayload(jtLog).getJSONArray("log");
 							        		i = 0;
 
 							        		if (jaLog.length() > 0) {
@@ -959,22 +704,7 @@ public class MeandreClient extends AbstractMeandreClient {
      * @throws TransmissionException
      */
     public String submitJob(String flowUri) throws TransmissionException {
-        String reqPath = "/services/jobs/submit.json";
-
-        NameValuePair argFlowUri = new BasicNameValuePair("uri", flowUri);
-        JSONTokener jtResponse = _httpClient.doGET(reqPath, null, JSONResponseHandler.getInstance(), argFlowUri);
-
-        try {
-            JSONArray jaSubmitted = getSuccessPayload(jtResponse).getJSONArray("submitted");
-
-            return jaSubmitted.getJSONObject(0).getString("jobID");
-        }
-        catch (JSONException e) {
-            throw new TransmissionException(e);
-        }
-        catch (OperationFailedException e) {
-            return null;
-        }
+        return execute(Calls.submitJob(flowUri));
     }
 
     /**
@@ -985,22 +715,7 @@ public class MeandreClient extends AbstractMeandreClient {
      * @throws TransmissionException
      */
     public JSONObject retrieveJobStatus(String jobID) throws TransmissionException {
-        String reqPath = "/services/jobs/list.json";
-
-        NameValuePair argJobId = new BasicNameValuePair("jobID", jobID);
-        JSONTokener jtResponse = _httpClient.doGET(reqPath, null, JSONResponseHandler.getInstance(), argJobId);
-
-        try {
-            JSONArray jaJobs = getSuccessPayload(jtResponse).getJSONArray("jobs");
-
-            return jaJobs.getJSONObject(0);
-        }
-        catch (JSONException e) {
-            throw new TransmissionException(e);
-        }
-        catch (OperationFailedException e) {
-            return null;
-        }
+        return execute(Calls.retrieveJobStatus(jobID));
     }
 
     /**
@@ -1011,20 +726,7 @@ public class MeandreClient extends AbstractMeandreClient {
      * @throws TransmissionException
      */
     public boolean killJob(String jobID) throws TransmissionException {
-        String reqPath = "/services/jobs/kill.json";
-
-        NameValuePair argJobId = new BasicNameValuePair("jobID", jobID);
-        JSONTokener jtResponse = _httpClient.doGET(reqPath, null, JSONResponseHandler.getInstance(), argJobId);
-
-        try {
-            return getSuccessPayload(jtResponse).getJSONArray("kill").length() == 1;
-        }
-        catch (JSONException e) {
-            throw new TransmissionException(e);
-        }
-        catch (OperationFailedException e) {
-            return false;
-        }
+        return execute(Calls.killJob(jobID));
     }
 
     /**
@@ -1066,10 +768,7 @@ public class MeandreClient extends AbstractMeandreClient {
      */
     @Override
     public String retrieveJobConsole(String jobID) throws TransmissionException {
-        String reqPath = "/services/jobs/console.txt";
-
-        NameValuePair argJobID = new BasicNameValuePair("jobID", jobID);
-        return _httpClient.doGET(reqPath, null, StringResponseHandler.getInstance(), argJobID);
+        return execute(Calls.retrieveJobConsole(jobID));
     }
 
     ////////////
@@ -1084,13 +783,20 @@ public class MeandreClient extends AbstractMeandreClient {
      */
     @Override
     public QueryableRepository retrievePublicRepository() throws TransmissionException {
-        String reqPath = "/public/services/repository.nt";
-        InputStream modelStream = _httpClient.doGET(reqPath, null);
-
-        Model model = ModelFactory.createDefaultModel();
-        model.read(modelStream, null, "N-TRIPLE");
+        return execute(Calls.retrievePublicRepository());
+    }
 
-        return new RepositoryImpl(model);
+    /**
+     * /public/services/repository.nt
+     *
+     * @param sink Receives the triples of the public repository as they
+     *             stream in
+     * @return The number of triples read
+     * @throws TransmissionException
+     */
+    @Override
+    public long retrievePublicRepository(TripleSink sink) throws TransmissionException {
+        return execute(Calls.retrievePublicRepository(sink));
     }
 
     /**
@@ -1101,13 +807,7 @@ public class MeandreClient extends AbstractMeandreClient {
      */
     @Override
     public QueryableRepository retrieveDemoRepository() throws TransmissionException {
-        String reqPath = "/public/services/demo_repository.nt";
-        InputStream modelStream = _httpClient.doGET(reqPath, null);
-
-        Model model = ModelFactory.createDefaultModel();
-        model.read(modelStream, null, "N-TRIPLE");
-
-        return new RepositoryImpl(model);
+        return execute(Calls.retrieveDemoRepository());
     }
 
     ////////////////////////
@@ -1187,29 +887,12 @@ public class MeandreClient extends AbstractMeandreClient {
      * @throws TransmissionException
      */
     public String retrieveComponentDescriptorAsString(String componentUri) throws TransmissionException {
-        String reqPath = "/services/repository/describe.nt";
-        NameValuePair argCompUri = new BasicNameValuePair("uri", componentUri);
-
-        return _httpClient.doGET(reqPath, null, StringResponseHandler.getInstance(), argCompUri);
+        return execute(Calls.retrieveComponentDescriptorAsString(componentUri));
     }
 
     @Override
     public JSONObject getServerVersion() throws TransmissionException {
-        String reqPath = "/public/services/version.json";
-        JSONTokener jtResponse = _httpClient.doGET(reqPath, null, JSONResponseHandler.getInstance());
-        try {
-			return getSuccessPayload(jtResponse);
-		}
-        catch (JSONException e) {
-            throw new TransmissionException(e);
-		}
-        catch (OperationFailedException e) {
-        	getLogger().log(Level.WARNING, "Cannot obtain server version information", e);
-
-			try {
-				return new JSONObject().put("version", "unknown");
-			} catch (JSONException e1) { return null; }
-		}
+        return execute(Calls.getServerVersion(getLogger()));
     }
 
     /**
@@ -1234,33 +917,26 @@ public class MeandreClient extends AbstractMeandreClient {
      */
     @Override
     public boolean ping() throws TransmissionException {
-        String reqPath = "/public/services/ping.json";
-
-        JSONTokener jtResponse = _httpClient.doGET(reqPath, null, JSONResponseHandler.getInstance());
-        try {
-            return getSuccessPayload(jtResponse).has("message");
-        }
-        catch (JSONException e) {
-            throw new TransmissionException(e);
-        }
-        catch (OperationFailedException e) {
-            return false;
-        }
+        return execute(Calls.ping());
     }
 
-    private JSONObject getSuccessPayload(JSONTokener response) throws JSONException, OperationFailedException {
-        JSONObject joResponse = new JSONObject(response);
-        String status = joResponse.getString("status");
-
-        if (status.equals("OK"))
-            return joResponse.getJSONObject("success");
+    /**
+     * Sends the request of the call and waits for its result
+     */
+    private <R, T> T execute(Call<R, T> call) throws TransmissionException {
+        R response;
 
-        if (status.equals("FAIL")) {
-            JSONObject joFailure = joResponse.getJSONObject("failure");
-            throw new OperationFailedException(joResponse.getString("message"), joFailure);
-        }
+        if (call._parts == null)
+            response = _httpClient.doGET(call._reqPath, null, call._handler, call._params);
+        else
+            try {
+                response = _httpClient.doPOST(call._reqPath, null, call._parts, call._handler, call._params);
+            }
+            catch (UnsupportedEncodingException e) {
+                throw new TransmissionException(e);
+            }
 
-        throw new JSONException("Invalid response status: " + status);
+        return call.decode(response);
     }
 
     private boolean isJobDone(JSONObject jobStatus) throws JSONException {
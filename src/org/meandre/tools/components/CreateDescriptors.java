@@ -44,13 +44,26 @@ package org.meandre.tools.components;
 
 import java.io.File;
 import java.io.FileFilter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-import org.meandre.annotations.CreateComponentDescriptor;
+import org.meandre.annotations.AnnotationReader;
+import org.meandre.annotations.GenerateComponentDescriptorRdf;
+import org.meandre.tools.components.installer.util.ComponentClassScanner;
+import org.meandre.tools.components.installer.util.DescriptorCache;
+import org.meandre.tools.components.installer.util.FileUtil;
 import org.seasr.meandre.support.generic.io.FileUtils;
 
 /**
@@ -92,8 +105,8 @@ public class CreateDescriptors {
      * @param args
      */
     public static void main(String[] args) throws Exception {
-        if (args.length != 3) {
-            System.out.println(String.format("Usage: %s <dotclass_folder> <lib_folder> <descriptors_folder>", CreateDescriptors.class.getSimpleName()));
+        if (args.length != 3 && args.length != 4) {
+            System.out.println(String.format("Usage: %s <dotclass_folder> <lib_folder> <descriptors_folder> [threads]", CreateDescriptors.class.getSimpleName()));
             System.exit(-1);
         }
 
@@ -112,6 +125,10 @@ public class CreateDescriptors {
                 throw new IllegalArgumentException(descriptorDir.toString());
         }
 
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        if (args.length == 4)
+            numThreads = Integer.parseInt(args[3]);
+
         List<File> classFiles = new ArrayList<File>();
         FileUtils.findFiles(classesDir, CLASS_FILTER, true, classFiles);
 
@@ -124,33 +141,71 @@ public class CreateDescriptors {
             classPathUrls[i] = jarFiles.get(i-1).toURI().toURL();
 
         URLClassLoader classLoader = new URLClassLoader(classPathUrls);
-        CreateComponentDescriptor.setClassLoader(classLoader);
 
-        CreateComponentDescriptor.setMakeSubs(true);
+        // only the classes with a @Component annotation are loaded
+        int numClassFiles = classFiles.size();
+        classFiles = ComponentClassScanner.findComponentClassFiles(classFiles, numThreads);
 
-        System.out.println(String.format("Processing %d files...", classFiles.size()));
+        System.out.println(String.format("Processing %d of %d files using %d threads...", classFiles.size(), numClassFiles, numThreads));
 
-        int n = 0;
-        for (int i = 0, iMax = classFiles.size(); i < iMax; i++) {
-            File f = classFiles.get(i);
+        // what each descriptor was generated from, so unchanged classes are
+        // skipped and their descriptors left alone
+        DescriptorCache cache = new DescriptorCache(descriptorDir, DescriptorCache.getVersionOf(AnnotationReader.class));
 
-            try {
-                CreateComponentDescriptor ccd = new CreateComponentDescriptor();
-                ccd.setComponentClassName(getClassName(classesDir, f));
-                ccd.setComponentDescriptorFolderName(descriptorDir.getAbsolutePath());
-                ccd.setComponentDescriptorFile(descriptorDir);
-                ccd.processComponentDescriptor();
-                n++;
+        // CreateComponentDescriptor keeps its settings in static fields, so
+        // each class gets its own DescriptorGenerator instead
+        // descriptors are named after the simple class name, so classes that
+        // share one would write the same file. none of them is generated.
+        Map<String, List<String>> classNamesByDescriptor = new HashMap<String, List<String>>();
+        for (File f : classFiles) {
+            String className = getClassName(classesDir, f);
+            String descriptorName = getDescriptorName(className);
+            List<String> classNames = classNamesByDescriptor.get(descriptorName);
+            if (classNames == null) {
+                classNames = new ArrayList<String>(1);
+                classNamesByDescriptor.put(descriptorName, classNames);
             }
-            catch (Exception e) {
+            classNames.add(className);
+        }
+
+        int n = 0, nUpToDate = 0, nFailed = 0;
+
+        ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, numThreads));
+        List<Future<Result>> results = new ArrayList<Future<Result>>(classFiles.size());
+        for (File f : classFiles) {
+            String className = getClassName(classesDir, f);
+            List<String> classNames = classNamesByDescriptor.get(getDescriptorName(className));
+            if (classNames.size() > 1) {
+                nFailed++;
+                System.err.println(String.format("FAILED: %s: %s would be the descriptor of all of %s", className,
+                        getDescriptorName(className), classNames));
+                continue;
             }
+            results.add(workers.submit(new DescriptorGenerator(className, descriptorDir, classLoader, cache)));
+        }
+        workers.shutdown();
 
-//            float percentComplete = ((i+1) / (float)iMax) * 100f;
-//            System.out.print(String.format("\rProcessing files... [%d/%d], %d components found, %3.0f%% complete", (i+1), iMax, n, percentComplete));
-//            System.out.flush();
+        for (Future<Result> future : results) {
+            Result result = future.get();
+            if (result.failure != null) {
+                nFailed++;
+                System.err.println(String.format("FAILED: %s (%d ms): %s", result.className, result.millis, result.failure));
+            }
+            else if (result.upToDate) {
+                nUpToDate++;
+                System.out.println(String.format("Up to date: %s", result.className));
+            }
+            else {
+                n++;
+                System.out.println(String.format("Created: %s (%d ms)", result.className, result.millis));
+            }
         }
 
-        System.out.println(String.format("%d components processed successfully, descriptors created at %s", n, descriptorDir));
+        cache.save();
+
+        System.out.println(String.format("%d components processed successfully, %d up to date, %d failed, descriptors created at %s", n, nUpToDate, nFailed, descriptorDir));
+        if (nFailed > 0)
+            System.exit(1);
     }
 
     private static String getClassName(File srcDir, File f) throws IOException {
@@ -168,4 +223,91 @@ public class CreateDescriptors {
         return sFile;
     }
 
+    /**
+     * The name of the descriptor of a class: SimpleClassName.rdf
+     */
+    private static String getDescriptorName(String className) {
+        return className.substring(className.lastIndexOf('.') + 1) + ".rdf";
+    }
+
+    /**
+     * The outcome for one class
+     */
+    private static class Result {
+        final String className;
+        final boolean upToDate;
+        final long millis;
+        final Throwable failure;
+
+        Result(String className, boolean upToDate, long millis, Throwable failure) {
+            this.className = className;
+            this.upToDate = upToDate;
+            this.millis = millis;
+            this.failure = failure;
+        }
+    }
+
+    /**
+     * Writes the descriptor of one component class, the same as
+     * CreateComponentDescriptor with makeSubs set does: to
+     * descriptor_folder/SimpleClassName.rdf. Skips classes whose descriptor
+     * the cache has as current. Each generator must have a descriptor of its
+     * own, see main().
+     */
+    private static class DescriptorGenerator implements Callable<Result> {
+        private final String className;
+        private final File rdfFile;
+        private final ClassLoader classLoader;
+        private final DescriptorCache cache;
+
+        DescriptorGenerator(String className, File descriptorDir, ClassLoader classLoader, DescriptorCache cache) {
+            this.className = className;
+            this.rdfFile = new File(descriptorDir, getDescriptorName(className));
+            this.classLoader = classLoader;
+            this.cache = cache;
+        }
+
+        public Result call() {
+            long start = System.currentTimeMillis();
+            try {
+                // the descriptor has the fields of the superclasses too
+                String classHash = DescriptorCache.hashClass(className, classLoader);
+                if (cache.isCurrent(rdfFile, classHash))
+                    return new Result(className, true, System.currentTimeMillis() - start, null);
+
+                AnnotationReader ar = new AnnotationReader();
+                ar.findAnnotations(className, classLoader);
+
+                GenerateComponentDescriptorRdf comDescRdf = new GenerateComponentDescriptorRdf();
+                comDescRdf.setComponentInputKeyValues(ar.getComponentInputKeyValues());
+                comDescRdf.setComponentOutputKeyValues(ar.getComponentOutputKeyValues());
+                comDescRdf.setComponentPropertyKeyValues(ar.getComponentPropertyKeyValues());
+                comDescRdf.setComponentKeyValues(ar.getComponentKeyValues());
+
+                writeDescriptor(comDescRdf.getRdfDescriptor());
+                cache.put(rdfFile, classHash);
+                return new Result(className, false, System.currentTimeMillis() - start, null);
+            }
+            catch (Throwable t) {
+                return new Result(className, false, System.currentTimeMillis() - start, t);
+            }
+        }
+
+        /**
+         * Writes to a temp file first, so a failed write doesn't leave a
+         * descriptor that looks up to date
+         */
+        private void writeDescriptor(String rdf) throws IOException {
+            File tmpFile = new File(rdfFile.getPath() + ".tmp");
+            Writer out = new OutputStreamWriter(new FileOutputStream(tmpFile), "UTF-8");
+            try {
+                out.write(rdf);
+            }
+            finally {
+                out.close();
+            }
+            FileUtil.renameOver(tmpFile, rdfFile);
+        }
+    }
+
 }
@@ -6,6 +6,7 @@ package org.meandre.tools.components.installer;
 import java.io.File;
 import java.io.IOException;
 import java.util.Set;
+import java.util.jar.Manifest;
 
 import org.meandre.tools.components.installer.util.DependencyAnalyzer;
 import org.meandre.tools.components.installer.util.JarUtil;
@@ -46,7 +47,8 @@ public class AppletJarBuilder {
     /**
      * creates a jar file (on disk) for the component described by the
      * input descriptor. The name of the file will be the value of
-     * getJarFileLocator(compDescriptor.getClassName()).
+     * getJarFileLocator(compDescriptor.getClassName()). If the jar file was
+     * already built from the same files, it is left as it is.
      * 
      * @param appletClassName the canonical name of the the applet class
      * @param resourceFiles a set of files to include in the jar that are not
@@ -69,15 +71,11 @@ public class AppletJarBuilder {
         
         //build the jar file
         File jarFile = getJarFileLocator(appletClassName);
-        try{
-            JarUtil.createJarFile(jarFile);
-            JarUtil.addFilesToJarFile(jarFile, includeFiles, _classDir);
-        }catch(IOException e){
-            //in case of a problem, delete the jar file so that a half done
-            //jar isn't left behind
-            jarFile.delete();
-            throw e;
-        }
+        //written in one pass to a tmp file, which only replaces the jar
+        //file once it is complete. a jar built from the same files before
+        //is kept as it is
+        JarUtil.updateJarFile(jarFile, new Manifest(), includeFiles, 
+                _classDir);
         return jarFile;
     }
 }
@@ -1,28 +1,36 @@
 package org.meandre.tools.components.installer;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.meandre.core.repository.CorruptedDescriptionException;
 import org.meandre.core.repository.ExecutableComponentDescription;
 import org.meandre.tools.client.AbstractMeandreClient;
 import org.meandre.tools.client.exceptions.TransmissionException;
+import org.meandre.tools.components.installer.UploadPlanner.UploadPlan;
 import org.meandre.tools.components.installer.util.CachingDependencyAnalyzer;
+import org.meandre.tools.components.installer.util.ComponentClassScanner;
 import org.meandre.tools.components.installer.util.DependencyAnalyzer;
-import org.meandre.tools.components.installer.util.FileTreeIterator;
+import org.meandre.tools.components.installer.util.JarIndex;
+import org.meandre.tools.components.installer.util.FileTree;
 import org.meandre.tools.components.installer.util.FileUtil;
 import org.meandre.tools.components.installer.util.SourceUtil;
-import org.seasr.meandre.support.generic.io.FileUtils;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
 
 /**
  * ComponentInstaller performs all necessary steps to upload a working Meandre
@@ -38,6 +46,9 @@ public class ComponentInstaller {
 
     DependencyAnalyzer _depFinder;
 
+    /** the classes in the jars of _jarLibDir, shared by everything here */
+    JarIndex _jarIndex;
+
     File _jarLibDir;
 
     File _classDir;
@@ -56,6 +67,33 @@ public class ComponentInstaller {
     
     static boolean _verbose = false;
 
+    /** the default number of components uploaded at the same time */
+    public static final int DEFAULT_UPLOAD_THREADS = 2;
+
+    /** threads for each of the cpu bound steps of installAllComponents */
+    int _numThreads;
+
+    /** threads uploading components at the same time in installAllComponents */
+    int _numUploadThreads = DEFAULT_UPLOAD_THREADS;
+
+    /**
+     * the most bytes of descriptions and jars installAllComponents sends in
+     * one upload. 0 uploads each component by itself.
+     */
+    long _maxBatchBytes = 0;
+
+    /** what was uploaded by earlier runs, kept in the working dir */
+    UploadLedger _uploadLedger;
+
+    /** upload components even if the ledger says they are unchanged */
+    boolean _forceUpload = false;
+
+    /** keeps track of the jars sent to the server by this installer */
+    final UploadPlanner _uploadPlanner = new UploadPlanner();
+
+    /** the applet jars built so far, by applet class name */
+    final Map<String, BuiltAppletJar> _appletJars = new HashMap<String, BuiltAppletJar>();
+
     /**
      * creates an installer ready to analyze dependencies, create rdf
      * descriptors, and upload to a MeandreServer.
@@ -87,10 +125,28 @@ public class ComponentInstaller {
      *             classesDir and jarLibDir.
      */
     public ComponentInstaller(File workingDir, File classesDir, File jarLibDir, AbstractMeandreClient uploadClient, boolean verbose) throws IOException {
+        this(workingDir, classesDir, jarLibDir, uploadClient, verbose, 1);
+    }
+
+    /**
+     * same as the other constructor, but analyzes the dependencies of the
+     * .class and .jar files using the given number of threads.
+     * 
+     * @param numThreads
+     *            how many threads the dependency analyzer may use. 1 analyzes
+     *            every file on the calling thread. installAllComponents also
+     *            uses this many threads to read components and to build
+     *            their jars.
+     */
+    public ComponentInstaller(File workingDir, File classesDir, File jarLibDir, AbstractMeandreClient uploadClient, boolean verbose, int numThreads)
+            throws IOException {
 
         _verbose = verbose;
+        _numThreads = numThreads;
         
-        _depFinder = new CachingDependencyAnalyzer(jarLibDir, classesDir, workingDir);
+        _depFinder = new CachingDependencyAnalyzer(jarLibDir, classesDir, workingDir, numThreads);
+        // reuse the analyzer's listing of the lib jars for the class loader
+        _jarIndex = _depFinder.getJarIndex(jarLibDir);
         _jarLibDir = jarLibDir;
         _classDir = classesDir;
 
@@ -99,6 +155,7 @@ public class ComponentInstaller {
         _workingDir = workingDir;
         _jarOutputDir = new File(_workingDir, "component-jars");
         _jarOutputDir.mkdirs();
+        _uploadLedger = new UploadLedger(new File(_workingDir, UploadLedger.LEDGER_FILE_NAME));
 
         // setupWorkingDir();
         _compJarBuilder = new ComponentJarBuilder(_classDir, _jarOutputDir, _depFinder);
@@ -106,11 +163,7 @@ public class ComponentInstaller {
         
         List<File> classPath = new ArrayList<File>();
         classPath.add(classesDir);
-        FileUtils.findFiles(jarLibDir, new FilenameFilter() {
-            public boolean accept(File dir, String name) {
-                return name.endsWith(".jar") || name.endsWith(".JAR");
-            }
-        }, true, classPath);
+        classPath.addAll(_jarIndex.getJars());
         
         URL[] classUrls = new URL[classPath.size()];
         for (int i = 0, iMax = classPath.size(); i < iMax; i++)
@@ -123,30 +176,34 @@ public class ComponentInstaller {
     public void installComponent(String componentClassName) throws IOException, ClassNotFoundException, CorruptedDescriptionException,
             TransmissionException {
 
-        System.out.print("Installing: " + componentClassName);
-        System.out.flush();
-        
+        PendingInstall install = new PendingInstall(componentClassName);
+        analyzeComponent(install);
+        buildJars(install);
+        uploadComponent(install);
+    }
+
+    /**
+     * the first step of installComponent: reads the component's annotations
+     * and finds the jars in the lib dir that it (and its applets) depend on.
+     * nothing is written to disk.
+     */
+    void analyzeComponent(PendingInstall install) throws IOException, ClassNotFoundException, CorruptedDescriptionException {
+
+        String componentClassName = install._className;
         File compClassFile = SourceUtil.classNameToClassFile(componentClassName, _classDir);
 
-        // make rdf descriptor, write it to file
+        // make rdf descriptor
         //
-        logInfo("\tReading Annotations");
+        logInfo("\tReading Annotations: " + componentClassName);
         Class<?> componentKlass = SourceUtil.classNameToClass(componentClassName, loader);
         ComponentSourceDescriptor compDescriptor = new ComponentSourceDescriptor(componentKlass);
         // for now, don't write the file out as we aren't doing caching yet
         // TODO: write the rdf to file to cache between installer runs.
         // File rdfFile = compDescriptor.writeRDFToDir(_rdfOutputDir);
+        install._descriptor = compDescriptor;
+        install._description = compDescriptor.toExecutableComponentDescription();
 
-        // start aggregating the jar files to upload for this component to work
-        Set<File> jarFilesToUpload = new HashSet<File>();
-
-        logInfo("\tBuilding Component Jar File");
-        // make jar file of component's .class file and any class dependencies
-        ComponentJarBuilder compJarBuilder = new ComponentJarBuilder(_classDir, _jarOutputDir, _depFinder);
-        File compJarFile = compJarBuilder.writeJar(compDescriptor);
-        jarFilesToUpload.add(compJarFile);
-
-        logInfo("\tLooking up Dependencies");
+        logInfo("\tLooking up Dependencies: " + componentClassName);
         // find it's jar dependencies, including dependencies of other .class
         // files it needs
         Set<File> classDeps = _depFinder.getDeepClassDeps(compClassFile);
@@ -155,32 +212,164 @@ public class ComponentInstaller {
         for (File jarFile : libJarDeps) {
             String jarName = jarFile.getName().toLowerCase();
             if (jarName.startsWith("meandre-") || jarName.startsWith("gwt-dev")) continue;
-            jarFilesToUpload.add(jarFile);
+            install._jarFiles.add(jarFile);
         }
         
         // include any jars specified explicitly in the component annotations
         // that may not have been picked up by the DependencyAnalyzer
         Set<String> jarFileBaseNames = compDescriptor.getDeclaredJarDependencies();
         Set<File> explicitJarFiles = FileUtil.findFilesInDirectory(jarFileBaseNames, _jarLibDir);
-        jarFilesToUpload.addAll(explicitJarFiles);
+        install._jarFiles.addAll(explicitJarFiles);
 
-        // handle applet uploading, if necessary
+        // the lib jars needed by the applets, if any. the applet jars
+        // themselves are made by buildJars
         if (compDescriptor.hasApplet()) {
-            Set<File> appletJarFiles = getAllAppletJarDependencies(compDescriptor);
-            jarFilesToUpload.addAll(appletJarFiles);
+            install._jarFiles.addAll(getAppletLibJarDependencies(compDescriptor));
         }
-        
-        logInfo("\tUploading Model and Jars");
+    }
+
+    /**
+     * the second step of installComponent: writes the jar of the component's
+     * .class file and the classes it depends on, and the jars of its applets,
+     * and adds them to the jars to upload.
+     */
+    void buildJars(PendingInstall install) throws IOException {
+
+        logInfo("\tBuilding Component Jar File: " + install._className);
+        // make jar file of component's .class file and any class dependencies
+        File compJarFile = _compJarBuilder.writeJar(install._descriptor);
+        install._jarFiles.add(compJarFile);
+
+        // handle applet uploading, if necessary
+        if (install._descriptor.hasApplet()) {
+            install._jarFiles.addAll(buildAppletJars(install._descriptor));
+        }
+    }
+
+    /**
+     * the last step of installComponent: uploads the component's description
+     * and jars to the server, overwriting any existing component with the
+     * same uri. jars this installer already sent with another component are
+     * not sent again; the component refers to them by uri instead (see
+     * UploadPlanner).
+     * 
+     * @throws TransmissionException
+     *             if the upload failed or the server did not accept it
+     * @throws IOException
+     *             if a jar can't be read
+     */
+    void uploadComponent(PendingInstall install) throws TransmissionException, IOException {
+        logInfo("\tUploading Model and Jars: " + install._className);
+        upload(Collections.singletonList(install));
+    }
+
+    /**
+     * same as uploadComponent, but uploads several components in one request,
+     * with the union of their jars.
+     */
+    void uploadComponents(List<PendingInstall> installs) throws TransmissionException, IOException {
+        logInfo("\tUploading Models and Jars of " + installs.size() + " components");
+        upload(installs);
+    }
+
+    /**
+     * uploads the components, except the ones that were uploaded to the
+     * server with the same description and jars before (see UploadLedger).
+     */
+    private void upload(List<PendingInstall> allInstalls) throws TransmissionException, IOException {
         // always overwrite any existing component with this one
         boolean bOverwrite = true;
-        
-        StringBuilder sb = new StringBuilder();
-        for (File f : jarFilesToUpload)
-            sb.append(", ").append(f.getName());
-        System.out.println(String.format("\t(%s)", sb.substring(2)));
-        
-        ExecutableComponentDescription ecd = compDescriptor.toExecutableComponentDescription();
-        _mClient.uploadComponent(ecd, jarFilesToUpload, bOverwrite);
+
+        List<PendingInstall> installs = new ArrayList<PendingInstall>();
+        for (PendingInstall install : allInstalls) {
+            Map<String, byte[]> jarHashes = new HashMap<String, byte[]>();
+            for (File jarFile : install._jarFiles) {
+                jarHashes.put(jarFile.getName(), _uploadPlanner.getHash(jarFile));
+            }
+            install._uploadDigest = UploadLedger.getUploadDigest(install._description, jarHashes);
+            if (!_forceUpload && _uploadLedger.isUploaded(getLedgerKey(install), install._uploadDigest)) {
+                install._unchanged = true;
+                logInfo("\tUnchanged since the last upload: " + install._className);
+            } else {
+                installs.add(install);
+            }
+        }
+        if (installs.isEmpty()) {
+            return;
+        }
+
+        StringBuilder sbNames = new StringBuilder();
+        for (PendingInstall install : installs)
+            sbNames.append(", ").append(install._className);
+        String what = installs.size() == 1 ? sbNames.substring(2) : installs.size() + " components [" + sbNames.substring(2) + "]";
+
+        Set<File> jarFiles = new HashSet<File>();
+        for (PendingInstall install : installs) {
+            jarFiles.addAll(install._jarFiles);
+        }
+
+        UploadPlan plan;
+        try {
+            plan = _uploadPlanner.plan(jarFiles);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for another upload of the jars of " + what);
+        }
+
+        boolean uploaded = false;
+        try {
+            Model model = ModelFactory.createDefaultModel();
+            for (PendingInstall install : installs) {
+                for (File jarFile : plan.getFilesToReference()) {
+                    if (install._jarFiles.contains(jarFile)) {
+                        install._description.getContext().add(model.createResource(UploadPlanner.getContextUri(jarFile)));
+                    }
+                }
+            }
+
+            StringBuilder sb = new StringBuilder();
+            for (File f : plan.getFilesToSend())
+                sb.append(", ").append(f.getName());
+            String alreadySent = plan.getFilesToReference().isEmpty() ? "" : " + " + plan.getFilesToReference().size() + " already uploaded";
+            // one println, so lines of concurrent uploads don't get mixed up
+            System.out.println("Installing: " + what + String.format("\t(%s%s)", sb.length() == 0 ? "" : sb.substring(2), alreadySent));
+
+            Set<File> filesToSend = new HashSet<File>(plan.getFilesToSend());
+            if (installs.size() == 1) {
+                uploaded = _mClient.uploadComponent(installs.get(0)._description, filesToSend, bOverwrite);
+            } else {
+                Set<ExecutableComponentDescription> descriptions = new HashSet<ExecutableComponentDescription>();
+                for (PendingInstall install : installs) {
+                    descriptions.add(install._description);
+                }
+                uploaded = _mClient.uploadComponentBatch(descriptions, filesToSend, bOverwrite);
+            }
+        }
+        finally {
+            _uploadPlanner.finished(plan, uploaded);
+        }
+        if (!uploaded) {
+            throw new TransmissionException("The server did not accept the upload of " + what);
+        }
+        for (PendingInstall install : installs) {
+            _uploadLedger.setUploaded(getLedgerKey(install), install._uploadDigest);
+        }
+    }
+
+    /** the key of a component in the upload ledger: the server and class */
+    private String getLedgerKey(PendingInstall install) {
+        return _mClient.getHostName() + ":" + _mClient.getPort() + "/" + install._className;
+    }
+
+    /**
+     * the size of a component's description as it is sent to the server, for
+     * sizing batches of uploads.
+     */
+    static long getDescriptionSize(PendingInstall install) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        install._description.getModel().write(out, "N-TRIPLE");
+        return out.size();
     }
 
     /**
@@ -201,34 +390,22 @@ public class ComponentInstaller {
     }
 
     /**
-     * finds all jars necessary for an applet from a component to run. this
-     * includes making a jar file with the applet's class file and any
-     * dependencies in the classes directory.
+     * finds the jars in the lib dir that the applets of a component need to
+     * run, including jars depended on by other classes in the classDir that
+     * the applets depend on.
      * 
      * @throws IOException
      *             if problem resolving class or jar dependencies
      */
-    private Set<File> getAllAppletJarDependencies(ComponentSourceDescriptor compDescriptor) throws IOException {
+    private Set<File> getAppletLibJarDependencies(ComponentSourceDescriptor compDescriptor) throws IOException {
 
         // accumulate all jars needed in this set
         Set<File> appletJars = new HashSet<File>();
 
-        Set<String> appletClassNames = compDescriptor.getAppletClassNames();
-
-        for (String appletClassName : appletClassNames) {
+        for (String appletClassName : compDescriptor.getAppletClassNames()) {
             File appletClassFile = SourceUtil.classNameToClassFile(appletClassName, _classDir);
 
-            // make the jar file with classes in the .class dir it depends on
-            AppletJarBuilder appletJarBuilder = new AppletJarBuilder(_classDir, _jarOutputDir, _depFinder);
-            Set<String> ssResourceFiles = compDescriptor.getDeclaredAppletFileDependencies(appletClassName);
-            Set<File> resourceFiles = FileUtil.findFilesInDirectory(ssResourceFiles, _classDir);
-
-            File appletJarFile = appletJarBuilder.writeJar(appletClassName, resourceFiles);
-            appletJars.add(appletJarFile);
-
             // find jar files the applet depends on via DependencyAnalyzer
-            // include jars depended on by other classes in the classDir that
-            // the applet depends on
             Set<File> appletClassDeps = _depFinder.getDeepClassDeps(appletClassFile);
             Set<File> appletLibJarDeps = _depFinder.getDeepJarDeps(appletClassDeps);
             appletJars.addAll(appletLibJarDeps);
@@ -243,6 +420,49 @@ public class ComponentInstaller {
         return appletJars;
     }
 
+    /**
+     * makes a jar file for each applet of a component, with the applet's
+     * class file and any dependencies in the classes directory.
+     * 
+     * @throws IOException
+     *             if problem resolving class dependencies or writing a jar
+     */
+    private Set<File> buildAppletJars(ComponentSourceDescriptor compDescriptor) throws IOException {
+
+        Set<File> appletJars = new HashSet<File>();
+        for (String appletClassName : compDescriptor.getAppletClassNames()) {
+            Set<String> ssResourceFiles = compDescriptor.getDeclaredAppletFileDependencies(appletClassName);
+            Set<File> resourceFiles = FileUtil.findFilesInDirectory(ssResourceFiles, _classDir);
+            appletJars.add(buildAppletJar(appletClassName, resourceFiles));
+        }
+        return appletJars;
+    }
+
+    /**
+     * several components can share an applet, and so the applet's jar file.
+     * the jar is only written by one thread at a time, and only once per
+     * installer unless a component asks for different resource files in it
+     * than the last one did.
+     */
+    private File buildAppletJar(String appletClassName, Set<File> resourceFiles) throws IOException {
+        BuiltAppletJar builtJar;
+        synchronized (_appletJars) {
+            builtJar = _appletJars.get(appletClassName);
+            if (builtJar == null) {
+                builtJar = new BuiltAppletJar();
+                _appletJars.put(appletClassName, builtJar);
+            }
+        }
+        synchronized (builtJar) {
+            if (builtJar._jarFile == null || !resourceFiles.equals(builtJar._resourceFiles)) {
+                builtJar._jarFile = null;
+                builtJar._jarFile = _appletJarBuilder.writeJar(appletClassName, resourceFiles);
+                builtJar._resourceFiles = resourceFiles;
+            }
+            return builtJar._jarFile;
+        }
+    }
+
     @SuppressWarnings("unused")
     private static void logWarn(String str) {
         System.out.println(str);
@@ -267,21 +487,33 @@ public class ComponentInstaller {
 
     /**
      * finds all components in this installer's class directory and installs
-     * them via installComponent(componentClassName).
+     * them. the steps of installComponent run as a pipeline, each step with
+     * its own threads, so jars of some components are built while others are
+     * being uploaded (see InstallPipeline). a component that fails to install
+     * doesn't stop the others.
      * 
+     * @return the outcome of each component, in order of class name
      * @throws IOException
-     * @throws ClassNotFoundException
-     * @throws TransmissionException
-     * @throws CorruptedDescriptionException
+     *             if the class directory can't be searched for components
      * 
      **/
-    public void installAllComponents() throws IOException, ClassNotFoundException, CorruptedDescriptionException, TransmissionException {
-
-        Set<String> componentClassNames = getAllComponentClassNames();
-        for (String compClassName : componentClassNames) {
-            logInfo("InstallingComponent: " + compClassName);
-            installComponent(compClassName);
+    public List<InstallResult> installAllComponents() throws IOException {
+
+        InstallPipeline pipeline = new InstallPipeline(this, _numThreads, _numThreads, _numUploadThreads, _maxBatchBytes);
+        List<InstallResult> results = pipeline.run();
+
+        int numFailed = 0;
+        int numUnchanged = 0;
+        for (InstallResult result : results) {
+            if (!result.isInstalled()) {
+                numFailed++;
+            } else if (result.isUnchanged()) {
+                numUnchanged++;
+            }
         }
+        System.out.println("Installed " + (results.size() - numFailed) + " of " + results.size() + " components"
+                + (numUnchanged == 0 ? "" : " (" + numUnchanged + " unchanged)") + (numFailed == 0 ? "" : ", " + numFailed + " failed"));
+        return results;
     }
 
     public void uninstallAllComponents() throws IOException, ClassNotFoundException, CorruptedDescriptionException, TransmissionException,
@@ -309,20 +541,63 @@ public class ComponentInstaller {
 
         Set<String> compClassNames = new HashSet<String>(50);
 
-        Iterator<File> classesDirIter = new FileTreeIterator(_classDir);
-        while (classesDirIter.hasNext()) {
-            File nextFile = classesDirIter.next();
-            if (nextFile.toString().endsWith(".class")) {
-                String className = SourceUtil.classFileToClassName(nextFile, _classDir);
-                Class<?> klass = SourceUtil.classNameToClass(className, loader);
-                if (klass == null) System.err.println("WARNING: " + className + " from " + nextFile + " not resolvable with current classpath");
-                if (ComponentSourceDescriptor.isClassAComponent(klass)) {
-                    compClassNames.add(className);
-                }
+        for (File classFile : findComponentClassFiles()) {
+            String className = getComponentClassName(classFile);
+            if (className != null) {
+                compClassNames.add(className);
             }
         }
         return compClassNames;
     }
+
+    /**
+     * the .class files in the classes directory that have a @Component
+     * annotation, found by reading the class files (on _numThreads threads)
+     * without loading them.
+     */
+    List<File> findComponentClassFiles() throws IOException {
+        return ComponentClassScanner.findComponentClassFiles(FileTree.get(_classDir).getFiles(".class"), _numThreads);
+    }
+
+    /**
+     * the class name of a .class file in the classes directory if it is a
+     * Component, otherwise null. loads the class, so only call it for the
+     * files from findComponentClassFiles.
+     */
+    String getComponentClassName(File file) throws IOException, ClassNotFoundException {
+        String className = SourceUtil.classFileToClassName(file, _classDir);
+        Class<?> klass = SourceUtil.classNameToClass(className, loader);
+        if (klass == null) System.err.println("WARNING: " + className + " from " + file + " not resolvable with current classpath");
+        if (ComponentSourceDescriptor.isClassAComponent(klass)) {
+            return className;
+        }
+        return null;
+    }
+
+    /**
+     * sets how many components installAllComponents uploads to the server at
+     * the same time. defaults to DEFAULT_UPLOAD_THREADS.
+     */
+    public void setNumUploadThreads(int numUploadThreads) {
+        _numUploadThreads = numUploadThreads;
+    }
+
+    /**
+     * if true, components are uploaded even if the same description and jars
+     * were uploaded to the server by an earlier run. defaults to false.
+     */
+    public void setForceUpload(boolean forceUpload) {
+        _forceUpload = forceUpload;
+    }
+
+    /**
+     * makes installAllComponents upload several components in each request,
+     * as many as fit in the given number of bytes of descriptions and jars.
+     * 0 (the default) uploads each component by itself.
+     */
+    public void setMaxBatchBytes(long maxBatchBytes) {
+        _maxBatchBytes = maxBatchBytes;
+    }
     
     public static void setVerbose(boolean verbose) {
         _verbose = verbose;
@@ -331,4 +606,108 @@ public class ComponentInstaller {
     public static boolean getVerbose() {
         return _verbose;
     }
+
+    /**
+     * what the steps of installComponent know about a component so far.
+     */
+    static class PendingInstall {
+
+        final String _className;
+
+        /** set by analyzeComponent */
+        ComponentSourceDescriptor _descriptor;
+        ExecutableComponentDescription _description;
+
+        /** the jars to upload with the component */
+        final Set<File> _jarFiles = new HashSet<File>();
+
+        /** when installAllComponents found the component */
+        long _startTime;
+
+        /** digest of the description and jars, for the upload ledger */
+        String _uploadDigest;
+
+        /** true if the upload was skipped because nothing changed */
+        boolean _unchanged = false;
+
+        PendingInstall(String className) {
+            _className = className;
+        }
+    }
+
+    /** an applet jar, and the resource files it was built with */
+    private static class BuiltAppletJar {
+        File _jarFile;
+        Set<File> _resourceFiles;
+    }
+
+    /**
+     * the outcome of installing one component with installAllComponents.
+     */
+    public static class InstallResult {
+
+        final String _className;
+        final String _failedStep;
+        final Throwable _failure;
+        final int _numJars;
+        final long _millis;
+        final boolean _unchanged;
+
+        InstallResult(String className, String failedStep, Throwable failure, int numJars, long millis, boolean unchanged) {
+            _className = className;
+            _failedStep = failedStep;
+            _failure = failure;
+            _numJars = numJars;
+            _millis = millis;
+            _unchanged = unchanged;
+        }
+
+        public String getClassName() {
+            return _className;
+        }
+
+        /** true if the component was uploaded */
+        public boolean isInstalled() {
+            return _failure == null;
+        }
+
+        /**
+         * true if the component was not uploaded because it was already on
+         * the server with the same description and jars
+         */
+        public boolean isUnchanged() {
+            return _unchanged;
+        }
+
+        /** the step that failed (e.g. "upload"), or null if installed */
+        public String getFailedStep() {
+            return _failedStep;
+        }
+
+        /** why the component wasn't installed, or null if it was */
+        public Throwable getFailure() {
+            return _failure;
+        }
+
+        /** the number of jars uploaded with the component */
+        public int getNumJars() {
+            return _numJars;
+        }
+
+        /** time from the component being found to it being done */
+        public long getMillis() {
+            return _millis;
+        }
+
+        @Override
+        public String toString() {
+            if (_unchanged) {
+                return "Unchanged: " + _className + " (" + _millis + " ms)";
+            }
+            if (isInstalled()) {
+                return "Installed: " + _className + " (" + _numJars + " jars, " + _millis + " ms)";
+            }
+            return "FAILED: " + _className + " (" + _failedStep + "): " + _failure;
+        }
+    }
 }
@@ -41,7 +41,8 @@ public class ComponentJarBuilder {
     /**
      * creates a jar file (on disk) for the component described by the
      * input descriptor. The name of the file will be the value of
-     * getJarFileLocator(compDescriptor.getClassName()).
+     * getJarFileLocator(compDescriptor.getClassName()). If the jar file was
+     * already built from the same files, it is left as it is.
      * 
      * @param compDescriptor
      * @return the File that was written to disk. 
@@ -65,16 +66,11 @@ public class ComponentJarBuilder {
         
         //build the jar file
         File jarFile = getJarFileLocator(className);
-        try{
-            JarUtil.createJarFile(jarFile);
-            JarUtil.setManifest(jarFile, getDefaultManifest());
-            JarUtil.addFilesToJarFile(jarFile, includeFiles, _classDir);
-        }catch(IOException e){
-            //in case of a problem, delete the jar file so that a half done
-            //jar isn't left behind
-            jarFile.delete();
-            throw e;
-        }
+        //written in one pass to a tmp file, which only replaces the jar
+        //file once it is complete. a jar built from the same files before
+        //is kept as it is
+        JarUtil.updateJarFile(jarFile, getDefaultManifest(), includeFiles, 
+                _classDir);
         
         return jarFile;
     }
@@ -33,6 +33,8 @@ import org.meandre.core.repository.DataPortDescription;
 import org.meandre.core.repository.ExecutableComponentDescription;
 import org.meandre.core.repository.PropertiesDescriptionDefinition;
 import org.meandre.core.repository.TagsDescription;
+import org.meandre.tools.components.installer.util.DescriptorCache;
+import org.meandre.tools.components.installer.util.FileUtil;
 import org.meandre.tools.components.installer.util.SourceUtil;
 
 import com.hp.hpl.jena.rdf.model.Model;
@@ -50,6 +52,9 @@ import com.hp.hpl.jena.rdf.model.Resource;
 
 public class ComponentSourceDescriptor {
 
+    /** see getGeneratorVersion() */
+    private static String _generatorVersion;
+
     /** the Class of the component. */
     final Class<?> _klass;
     final ClassLoader loader;
@@ -443,7 +448,8 @@ public class ComponentSourceDescriptor {
 
     /**
      * writes the rdf to disk and returns the file that is written to in the
-     * outputDir.
+     * outputDir. an rdf file that was generated from the same class files
+     * before is left as it is, see DescriptorCache.
      * 
      * @throws IOException
      *             if the destination file can't be written.
@@ -451,14 +457,65 @@ public class ComponentSourceDescriptor {
      * @throws ClassNotFoundException
      */
     public File writeRDFToDir(File outputDir) throws IOException, CorruptedDescriptionException, ClassNotFoundException {
+        DescriptorCache cache = new DescriptorCache(outputDir, getGeneratorVersion());
+        File outputFile = writeRDFToDir(outputDir, cache);
+        cache.save();
+        return outputFile;
+    }
+
+    /**
+     * same as writeRDFToDir(outputDir), but leaves the rdf file alone if the
+     * cache has it as generated from the same class files. for writing many
+     * descriptors to a directory with one cache, which the caller saves.
+     * create the cache with getGeneratorVersion().
+     */
+    public File writeRDFToDir(File outputDir, DescriptorCache cache) throws IOException, CorruptedDescriptionException, ClassNotFoundException {
         File outputFile = this.getRdfDestinationForDir(outputDir);
-        FileOutputStream fos = new FileOutputStream(outputFile);
+        String classHash = getClassFileHash();
+        if (cache.isCurrent(outputFile, classHash)) {
+            return outputFile;
+        }
         ExecutableComponentDescription ecd = this.toExecutableComponentDescription();
-        ecd.getModel().write(fos);
-        fos.close();
+
+        // written to a temp file first, like CreateDescriptors, so a failed
+        // write doesn't leave a descriptor that looks up to date
+        File tmpFile = new File(outputFile.getPath() + ".tmp");
+        FileOutputStream fos = new FileOutputStream(tmpFile);
+        try {
+            ecd.getModel().write(fos);
+        }
+        finally {
+            fos.close();
+        }
+        FileUtil.renameOver(tmpFile, outputFile);
+        cache.put(outputFile, classHash);
         return outputFile;
     }
 
+    /**
+     * the version of the code that generates the descriptors, for
+     * DescriptorCache. it is the hash of the jar this class was loaded from,
+     * so it is computed once and kept.
+     */
+    public static synchronized String getGeneratorVersion() throws IOException {
+        if (_generatorVersion == null) {
+            _generatorVersion = DescriptorCache.getVersionOf(ComponentSourceDescriptor.class);
+        }
+        return _generatorVersion;
+    }
+
+    /**
+     * the hash of the class files of the component and its superclasses, see
+     * DescriptorCache
+     */
+    private String getClassFileHash() throws IOException {
+        ClassLoader classLoader = _klass.getClassLoader();
+        if (classLoader == null) {
+            classLoader = ClassLoader.getSystemClassLoader();
+        }
+        return DescriptorCache.hashClass(_klass.getName(), classLoader);
+    }
+
     /**
      * gets all instances of annotations on fields (of the class) that have a
      * name ending in annotationNameSuffix.
@@ -3,6 +3,7 @@ package org.meandre.tools.components.installer;
 import java.io.File;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.List;
 
 import org.meandre.tools.client.AbstractMeandreClient;
 
@@ -47,14 +48,34 @@ public class InstallComponentsCMD {
     
     static boolean _verbose;
 
+    /** number of threads used to analyze class and jar dependencies */
+    static int _numThreads;
+
+    /** number of components uploaded to the server at the same time */
+    static int _numUploadThreads;
+
+    /** most kilobytes sent in one upload; 0 uploads each component alone */
+    static int _batchKB;
+
+    /** upload even the components that haven't changed since the last run */
+    static boolean _force;
+
     public static void main(String[] args) throws Exception {
 
         // populate this class's static variables with the arg values
         parseArgs(args);
 
         AbstractMeandreClient mClient = AbstractMeandreClient.getClientForServer(_serverHost, _serverPort, _serverUsername, _serverPassword);
-        ComponentInstaller installer = new ComponentInstaller(_workingDir, _classDir, _jarLibDir, mClient, _verbose);
-        installer.installAllComponents();
+        ComponentInstaller installer = new ComponentInstaller(_workingDir, _classDir, _jarLibDir, mClient, _verbose, _numThreads);
+        installer.setNumUploadThreads(_numUploadThreads);
+        installer.setMaxBatchBytes(_batchKB * 1024L);
+        installer.setForceUpload(_force);
+        List<ComponentInstaller.InstallResult> results = installer.installAllComponents();
+        for (ComponentInstaller.InstallResult result : results) {
+            if (!result.isInstalled()) {
+                System.exit(1);
+            }
+        }
     }
 
     /**
@@ -81,6 +102,10 @@ public class InstallComponentsCMD {
         _serverUsername = config.getString("meandreUsername");
         _serverPassword = config.getString("meandrePassword");
         _verbose = config.getBoolean("verbose");
+        _numThreads = config.getInt("numThreads");
+        _numUploadThreads = config.getInt("numUploadThreads");
+        _batchKB = config.getInt("batchKB");
+        _force = config.getBoolean("force");
     }
 
     private static JSAP makeCommandLineParser() throws JSAPException, UnknownHostException {
@@ -169,9 +194,45 @@ public class InstallComponentsCMD {
                 + " Defaults to 'admin' if unspecified.");
         jsap.registerParameter(meandrePasswordOpt);
         
+        // threads used by the dependency analyzer
+        FlaggedOption numThreadsOpt = new FlaggedOption("numThreads");
+        numThreadsOpt.setShortFlag('j');
+        numThreadsOpt.setLongFlag("threads");
+        numThreadsOpt.setStringParser(JSAP.INTEGER_PARSER);
+        numThreadsOpt.setRequired(false);
+        numThreadsOpt.setDefault(String.valueOf(Runtime.getRuntime().availableProcessors()));
+        numThreadsOpt.setHelp("The number of threads used to analyze the dependencies of the"
+                + " .class and .jar files, and to read and build the jars of the components."
+                + " Defaults to the number of available processors.");
+        jsap.registerParameter(numThreadsOpt);
+
+        // components uploaded at the same time
+        FlaggedOption numUploadThreadsOpt = new FlaggedOption("numUploadThreads");
+        numUploadThreadsOpt.setLongFlag("upload-threads");
+        numUploadThreadsOpt.setStringParser(JSAP.INTEGER_PARSER);
+        numUploadThreadsOpt.setRequired(false);
+        numUploadThreadsOpt.setDefault(String.valueOf(ComponentInstaller.DEFAULT_UPLOAD_THREADS));
+        numUploadThreadsOpt.setHelp("The number of components uploaded to the server at the same time."
+                + " Defaults to " + ComponentInstaller.DEFAULT_UPLOAD_THREADS + ".");
+        jsap.registerParameter(numUploadThreadsOpt);
+
+        // upload several components per request
+        FlaggedOption batchKBOpt = new FlaggedOption("batchKB");
+        batchKBOpt.setLongFlag("batch-kb");
+        batchKBOpt.setStringParser(JSAP.INTEGER_PARSER);
+        batchKBOpt.setRequired(false);
+        batchKBOpt.setDefault("0");
+        batchKBOpt.setHelp("Upload several components in each request, up to this many kilobytes"
+                + " of descriptions and jars per request. Defaults to 0, which uploads each component by itself.");
+        jsap.registerParameter(batchKBOpt);
+
         Switch verbose = new Switch("verbose", 'v', "verbose", "Enable verbose output");
         jsap.registerParameter(verbose);
 
+        Switch force = new Switch("force", 'f', "force", "Upload all components, even the ones"
+                + " that haven't changed since they were last uploaded from this tmpDir");
+        jsap.registerParameter(force);
+
         return jsap;
     }
 
@@ -0,0 +1,417 @@
+package org.meandre.tools.components.installer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.meandre.tools.components.installer.ComponentInstaller.InstallResult;
+import org.meandre.tools.components.installer.ComponentInstaller.PendingInstall;
+
+/**
+ * Installs all the components in the class directory of a ComponentInstaller
+ * as a pipeline of four stages, one for each step of installComponent:
+ *
+ * <ol>
+ * <li>discover: find the component classes in the class directory (on the
+ * thread that calls run(), see ComponentClassScanner)
+ * <li>analyze: read the annotations and look up the jar dependencies
+ * (ComponentInstaller.analyzeComponent)
+ * <li>build: write the component and applet jars (buildJars)
+ * <li>upload: send it all to the server (uploadComponent)
+ * </ol>
+ *
+ * <p>
+ * Each stage has its own worker threads, and hands components to the next
+ * stage through a bounded queue. So the cpu bound stages work on the next
+ * components while earlier ones are being uploaded, and when the uploads
+ * can't keep up the other stages wait instead of piling up built jars.
+ *
+ * <p>
+ * The upload stage can also collect components into batches that are
+ * uploaded in one request each, see BatchUploadStage.
+ *
+ * <p>
+ * A component that fails a step is reported and dropped from the pipeline;
+ * the other components carry on. One pipeline runs once.
+ */
+class InstallPipeline {
+
+    /** how many components may wait between two stages */
+    static final int QUEUE_CAPACITY = 8;
+
+    /** queued after the last component, to stop the workers of a stage */
+    private static final PendingInstall END = new PendingInstall(null);
+
+    private final ComponentInstaller _installer;
+
+    private final Stage _analyzeStage;
+    private final Stage _buildStage;
+    private final Stage _uploadStage;
+
+    /** the outcome of every component, in the order they finished */
+    private final List<InstallResult> _results = Collections.synchronizedList(new ArrayList<InstallResult>());
+
+    /**
+     * @param maxBatchBytes
+     *            if more than 0, components are uploaded in batches of up to
+     *            this many bytes of descriptions and jars (see
+     *            BatchUploadStage). otherwise each is uploaded by itself.
+     */
+    InstallPipeline(ComponentInstaller installer, int numAnalyzeThreads, int numBuildThreads, int numUploadThreads, long maxBatchBytes) {
+        _installer = installer;
+        if (maxBatchBytes > 0) {
+            _uploadStage = new BatchUploadStage(numUploadThreads, maxBatchBytes);
+        } else {
+            _uploadStage = new StepStage("upload", numUploadThreads, null) {
+                @Override
+                void process(PendingInstall install) throws Exception {
+                    _installer.uploadComponent(install);
+                }
+            };
+        }
+        _buildStage = new StepStage("build", numBuildThreads, _uploadStage) {
+            @Override
+            void process(PendingInstall install) throws Exception {
+                _installer.buildJars(install);
+            }
+        };
+        _analyzeStage = new StepStage("analyze", numAnalyzeThreads, _buildStage) {
+            @Override
+            void process(PendingInstall install) throws Exception {
+                _installer.analyzeComponent(install);
+            }
+        };
+    }
+
+    /**
+     * installs every component found in the installer's class directory and
+     * waits for all of them to finish.
+     *
+     * @return the outcome of each component, in order of class name
+     * @throws IOException
+     *             if the class directory can't be read
+     */
+    List<InstallResult> run() throws IOException {
+        _analyzeStage.start();
+        _buildStage.start();
+        _uploadStage.start();
+        try {
+            try {
+                discover();
+            }
+            finally {
+                _analyzeStage.end();
+            }
+            _analyzeStage.awaitTermination();
+            _buildStage.awaitTermination();
+            _uploadStage.awaitTermination();
+        }
+        catch (InterruptedException e) {
+            _analyzeStage._workers.shutdownNow();
+            _buildStage._workers.shutdownNow();
+            _uploadStage._workers.shutdownNow();
+            throw new InterruptedIOException("Interrupted while installing components");
+        }
+
+        List<InstallResult> results = new ArrayList<InstallResult>(_results);
+        Collections.sort(results, new Comparator<InstallResult>() {
+            public int compare(InstallResult r1, InstallResult r2) {
+                return r1.getClassName().compareTo(r2.getClassName());
+            }
+        });
+        return results;
+    }
+
+    /**
+     * the discover stage. finds the class files with a @Component annotation
+     * (without loading any classes), and queues each one that loads as a
+     * component for the analyze stage.
+     */
+    private void discover() throws IOException, InterruptedException {
+        for (File file : _installer.findComponentClassFiles()) {
+            PendingInstall install = new PendingInstall(file.toString());
+            try {
+                String className = _installer.getComponentClassName(file);
+                if (className == null) {
+                    continue;
+                }
+                install = new PendingInstall(className);
+            }
+            catch (Exception e) {
+                fail(install, "discover", e);
+                continue;
+            }
+            catch (LinkageError e) {
+                fail(install, "discover", e);
+                continue;
+            }
+            install._startTime = System.currentTimeMillis();
+            _analyzeStage._queue.put(install);
+        }
+    }
+
+    private void succeed(PendingInstall install) {
+        InstallResult result = new InstallResult(install._className, null, null, install._jarFiles.size(), System.currentTimeMillis()
+                - install._startTime, install._unchanged);
+        _results.add(result);
+        System.out.println(result);
+    }
+
+    private void fail(PendingInstall install, String step, Throwable failure) {
+        long millis = install._startTime == 0 ? 0 : System.currentTimeMillis() - install._startTime;
+        InstallResult result = new InstallResult(install._className, step, failure, 0, millis, false);
+        _results.add(result);
+        System.err.println(result);
+        if (ComponentInstaller.getVerbose()) {
+            failure.printStackTrace();
+        }
+    }
+
+    /**
+     * one stage of the pipeline: a fixed number of workers that take
+     * components from the stage's queue and handle them. when the END marker
+     * comes through, the workers stop, and the last one to stop finishes the
+     * stage and passes END on to the next stage.
+     */
+    private abstract class Stage implements Runnable {
+
+        final String _name;
+        final int _numWorkers;
+        final Stage _nextStage;
+
+        final BlockingQueue<PendingInstall> _queue = new ArrayBlockingQueue<PendingInstall>(QUEUE_CAPACITY);
+        final ExecutorService _workers;
+        final AtomicInteger _numRunning;
+
+        Stage(String name, int numWorkers, Stage nextStage) {
+            _name = name;
+            _numWorkers = Math.max(1, numWorkers);
+            _nextStage = nextStage;
+            _workers = Executors.newFixedThreadPool(_numWorkers);
+            _numRunning = new AtomicInteger(_numWorkers);
+        }
+
+        /**
+         * the work of this stage for one component. reports the component
+         * if it failed or is done, otherwise passes it to the next stage.
+         */
+        abstract void handle(PendingInstall install) throws InterruptedException;
+
+        /** called once, after the last component was handled */
+        void finish() throws InterruptedException {
+        }
+
+        void start() {
+            for (int i = 0; i < _numWorkers; i++) {
+                _workers.execute(this);
+            }
+            _workers.shutdown();
+        }
+
+        /** tells the workers that no more components are coming */
+        void end() throws InterruptedException {
+            _queue.put(END);
+        }
+
+        void awaitTermination() throws InterruptedException {
+            _workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+
+        public void run() {
+            try {
+                while (true) {
+                    PendingInstall install = _queue.take();
+                    if (install == END) {
+                        // leave it for the other workers of this stage
+                        _queue.put(END);
+                        break;
+                    }
+                    try {
+                        handle(install);
+                    }
+                    catch (RuntimeException e) {
+                        fail(install, _name, e);
+                    }
+                    catch (Error e) {
+                        // e.g. out of memory while building the jars of a
+                        // large component. drop the component and go on, a
+                        // worker that died here would hang the pipeline
+                        fail(install, _name, e);
+                    }
+                }
+            }
+            catch (InterruptedException e) {
+                // run() is shutting the pipeline down
+                Thread.currentThread().interrupt();
+            }
+            finally {
+                if (_numRunning.decrementAndGet() == 0 && !Thread.currentThread().isInterrupted()) {
+                    finishStage();
+                }
+            }
+        }
+
+        /** finishes the stage and passes END on, even if finish() fails */
+        private void finishStage() {
+            try {
+                try {
+                    finish();
+                }
+                finally {
+                    if (_nextStage != null) {
+                        _nextStage.end();
+                    }
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * a stage that runs one step of installComponent on each component.
+     */
+    private abstract class StepStage extends Stage {
+
+        StepStage(String name, int numWorkers, Stage nextStage) {
+            super(name, numWorkers, nextStage);
+        }
+
+        /** the step of installComponent this stage runs */
+        abstract void process(PendingInstall install) throws Exception;
+
+        @Override
+        void handle(PendingInstall install) throws InterruptedException {
+            try {
+                process(install);
+            }
+            catch (Exception e) {
+                fail(install, _name, e);
+                return;
+            }
+            catch (LinkageError e) {
+                fail(install, _name, e);
+                return;
+            }
+            if (_nextStage != null) {
+                _nextStage._queue.put(install);
+            } else {
+                succeed(install);
+            }
+        }
+    }
+
+    /**
+     * the upload stage when uploads are batched. collects components until
+     * their descriptions and distinct jars add up to more than the batch
+     * size, and then uploads them in one request. a component that is larger
+     * than the batch size by itself is uploaded alone.
+     */
+    private class BatchUploadStage extends Stage {
+
+        final long _maxBatchBytes;
+
+        /** the batch being collected, and its jars and size so far */
+        List<PendingInstall> _batch = new ArrayList<PendingInstall>();
+        Set<File> _batchJars = new HashSet<File>();
+        long _batchBytes = 0;
+
+        BatchUploadStage(int numWorkers, long maxBatchBytes) {
+            super("upload", numWorkers, null);
+            _maxBatchBytes = maxBatchBytes;
+        }
+
+        @Override
+        void handle(PendingInstall install) throws InterruptedException {
+            long descriptionBytes;
+            try {
+                descriptionBytes = ComponentInstaller.getDescriptionSize(install);
+            }
+            catch (Exception e) {
+                fail(install, _name, e);
+                return;
+            }
+            List<PendingInstall> fullBatch = null;
+            synchronized (this) {
+                long addedBytes = descriptionBytes + getNewJarBytes(install);
+                if (!_batch.isEmpty() && _batchBytes + addedBytes > _maxBatchBytes) {
+                    fullBatch = takeBatch();
+                    addedBytes = descriptionBytes + getNewJarBytes(install);
+                }
+                _batchBytes += addedBytes;
+                _batchJars.addAll(install._jarFiles);
+                _batch.add(install);
+            }
+            // upload outside the lock, so the other workers can start the
+            // next batch meanwhile
+            if (fullBatch != null) {
+                upload(fullBatch);
+            }
+        }
+
+        @Override
+        void finish() {
+            List<PendingInstall> lastBatch;
+            synchronized (this) {
+                lastBatch = takeBatch();
+            }
+            if (!lastBatch.isEmpty()) {
+                upload(lastBatch);
+            }
+        }
+
+        /** the size of the jars of the component that aren't in the batch */
+        private long getNewJarBytes(PendingInstall install) {
+            long numBytes = 0;
+            for (File jarFile : install._jarFiles) {
+                if (!_batchJars.contains(jarFile)) {
+                    numBytes += jarFile.length();
+                }
+            }
+            return numBytes;
+        }
+
+        /** the batch collected so far, replaced by an empty one */
+        private List<PendingInstall> takeBatch() {
+            List<PendingInstall> batch = _batch;
+            _batch = new ArrayList<PendingInstall>();
+            _batchJars = new HashSet<File>();
+            _batchBytes = 0;
+            return batch;
+        }
+
+        private void upload(List<PendingInstall> batch) {
+            try {
+                _installer.uploadComponents(batch);
+            }
+            catch (Exception e) {
+                for (PendingInstall install : batch) {
+                    fail(install, _name, e);
+                }
+                return;
+            }
+            catch (Error e) {
+                for (PendingInstall install : batch) {
+                    fail(install, _name, e);
+                }
+                return;
+            }
+            for (PendingInstall install : batch) {
+                succeed(install);
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package org.meandre.tools.components.installer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.meandre.core.repository.ExecutableComponentDescription;
+import org.meandre.tools.components.installer.util.FileUtil;
+
+/**
+ * Remembers, between install runs, what was last uploaded for each component,
+ * so a component whose description and jars haven't changed since is not
+ * uploaded again. Kept as a properties file in the installer's working
+ * directory, with a digest of the upload for each server and component.
+ *
+ * <p>
+ * The ledger only knows what this installer sent. If a component was removed
+ * from the server some other way, the ledger still has it; installing with
+ * the ledger ignored (ComponentInstaller.setForceUpload) sends everything
+ * again. All methods are safe to call from multiple threads.
+ */
+public class UploadLedger {
+
+    /** name of the ledger file within the working directory */
+    public static final String LEDGER_FILE_NAME = "upload-ledger.properties";
+
+    /** the dc:date of a description, which is the time it was generated */
+    private static final String DATE_PREDICATE = "<http://purl.org/dc/elements/1.1/date>";
+
+    private final File _ledgerFile;
+
+    /** server and component to the digest of its last upload */
+    private final Properties _uploads = new Properties();
+
+    /**
+     * loads the ledger from the file if it exists. a file that can't be read
+     * is ignored, so everything is uploaded again.
+     */
+    public UploadLedger(File ledgerFile) {
+        _ledgerFile = ledgerFile;
+        if (ledgerFile.exists()) {
+            try {
+                InputStream in = new FileInputStream(ledgerFile);
+                try {
+                    _uploads.load(in);
+                }
+                finally {
+                    in.close();
+                }
+            }
+            catch (IOException e) {
+                System.err.println("WARNING: ignoring unreadable upload ledger " + ledgerFile + ": " + e.getMessage());
+                _uploads.clear();
+            }
+        }
+    }
+
+    /**
+     * true if the last upload recorded for the key had the given digest.
+     */
+    public synchronized boolean isUploaded(String key, String uploadDigest) {
+        return uploadDigest.equals(_uploads.getProperty(key));
+    }
+
+    /**
+     * records an upload and writes the ledger back to its file.
+     */
+    public synchronized void setUploaded(String key, String uploadDigest) throws IOException {
+        _uploads.setProperty(key, uploadDigest);
+        File tmpFile = new File(_ledgerFile.getPath() + ".tmp");
+        OutputStream out = new FileOutputStream(tmpFile);
+        try {
+            _uploads.store(out, "what ComponentInstaller last uploaded, by server and component");
+        }
+        finally {
+            out.close();
+        }
+        FileUtil.renameOver(tmpFile, _ledgerFile);
+    }
+
+    /**
+     * a hex digest of a component upload: the description (without the
+     * generation date, and in a fixed order) and the names and hashes of the
+     * jars.
+     */
+    public static String getUploadDigest(ExecutableComponentDescription description, Map<String, byte[]> jarHashes) throws IOException {
+        MessageDigest digest = FileUtil.createMD5Digest();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        description.getModel().write(out, "N-TRIPLE");
+        List<String> triples = new ArrayList<String>();
+        for (String triple : out.toString("UTF-8").split("\n")) {
+            if (!triple.contains(DATE_PREDICATE)) {
+                triples.add(triple);
+            }
+        }
+        Collections.sort(triples);
+        for (String triple : triples) {
+            digest.update(triple.getBytes("UTF-8"));
+            digest.update((byte) '\n');
+        }
+
+        SortedMap<String, byte[]> sortedJarHashes = new TreeMap<String, byte[]>(jarHashes);
+        for (Map.Entry<String, byte[]> jarHash : sortedJarHashes.entrySet()) {
+            digest.update(jarHash.getKey().getBytes("UTF-8"));
+            digest.update((byte) 0);
+            digest.update(jarHash.getValue());
+        }
+
+        return FileUtil.toHex(digest.digest());
+    }
+}
@@ -0,0 +1,194 @@
+package org.meandre.tools.components.installer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.meandre.tools.components.installer.util.FileUtil;
+
+/**
+ * Decides which context jars have to go to the server with a component, so a
+ * jar that is needed by many components (jena, lucene, ...) is only sent once
+ * per install run.
+ *
+ * <p>
+ * The server keeps the jars uploaded with a component under their file name
+ * (see getContextUri), and the server has no way to ask it which jars it
+ * already has. So the planner remembers which version of each jar name (by
+ * the MD5 hash of its contents) it has sent since it was created. A jar whose
+ * name and hash were already sent is left out of later uploads, and the
+ * component refers to it by its context uri instead. A jar with a known name
+ * but different contents (e.g. an applet jar rebuilt with other resources) is
+ * sent again. Each file is only hashed once unless it changes on disk.
+ *
+ * <p>
+ * Uploads can run at the same time. A component that needs a jar that is
+ * still being sent with another component waits for that upload to finish,
+ * and if it failed sends the jar itself.
+ *
+ * <p>
+ * Usage: plan() the upload, send the plan's getFilesToSend() and reference
+ * getFilesToReference(), then call finished() with whether the upload worked.
+ */
+public class UploadPlanner {
+
+    /** the uri the server gives to a jar that was uploaded with a component */
+    public static final String CONTEXT_URI_PREFIX = "context://localhost/java/";
+
+    /** jar name to the version of it sent (or being sent) this session */
+    private final Map<String, SentJar> _sentJars = new HashMap<String, SentJar>();
+
+    /** hashes of files, so each is only read once */
+    private final Map<String, FileHash> _hashes = new HashMap<String, FileHash>();
+
+    /**
+     * splits the jars a component needs into the ones to send with it and
+     * the ones the server already has. the jars to send are claimed by the
+     * plan until finished() is called with it. waits if another upload is
+     * sending one of the jars.
+     *
+     * @throws IOException
+     *             if a jar can't be read to hash it
+     * @throws InterruptedException
+     *             if interrupted waiting for another upload
+     */
+    public UploadPlan plan(Set<File> contextFiles) throws IOException, InterruptedException {
+        // hash outside the lock, the other uploads don't need to wait for it
+        Map<File, byte[]> hashes = new HashMap<File, byte[]>();
+        for (File contextFile : contextFiles) {
+            hashes.put(contextFile, getHash(contextFile));
+        }
+
+        synchronized (this) {
+            while (isSending(hashes)) {
+                wait();
+            }
+            UploadPlan plan = new UploadPlan();
+            for (Map.Entry<File, byte[]> fileHash : hashes.entrySet()) {
+                File contextFile = fileHash.getKey();
+                SentJar sentJar = _sentJars.get(contextFile.getName());
+                if (sentJar != null && Arrays.equals(sentJar._md5, fileHash.getValue())) {
+                    plan._filesToReference.add(contextFile);
+                } else {
+                    _sentJars.put(contextFile.getName(), new SentJar(fileHash.getValue(), plan));
+                    plan._filesToSend.add(contextFile);
+                }
+            }
+            return plan;
+        }
+    }
+
+    /**
+     * records the outcome of a planned upload. if it failed, the jars it was
+     * to send are sent by the next upload that needs them.
+     */
+    public synchronized void finished(UploadPlan plan, boolean succeeded) {
+        for (File sentFile : plan._filesToSend) {
+            SentJar sentJar = _sentJars.get(sentFile.getName());
+            // a later plan may have claimed a newer version of the jar
+            if (sentJar == null || sentJar._plan != plan) {
+                continue;
+            }
+            if (succeeded) {
+                sentJar._done = true;
+            } else {
+                _sentJars.remove(sentFile.getName());
+            }
+        }
+        notifyAll();
+    }
+
+    /**
+     * true if one of the files (with the same contents) is being sent by an
+     * upload that hasn't finished. must hold the lock.
+     */
+    private boolean isSending(Map<File, byte[]> hashes) {
+        for (Map.Entry<File, byte[]> fileHash : hashes.entrySet()) {
+            SentJar sentJar = _sentJars.get(fileHash.getKey().getName());
+            if (sentJar != null && !sentJar._done && Arrays.equals(sentJar._md5, fileHash.getValue())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** the MD5 hash of a file, only read again if the file changed */
+    byte[] getHash(File file) throws IOException {
+        String path = file.getPath();
+        long size = file.length();
+        long lastModified = file.lastModified();
+        synchronized (this) {
+            FileHash hash = _hashes.get(path);
+            if (hash != null && hash._size == size && hash._lastModified == lastModified) {
+                return hash._md5;
+            }
+        }
+        byte[] md5 = FileUtil.md5(file);
+        synchronized (this) {
+            _hashes.put(path, new FileHash(size, lastModified, md5));
+        }
+        return md5;
+    }
+
+    /**
+     * the uri a component uses to refer to a jar that was uploaded to the
+     * server with another component.
+     */
+    public static String getContextUri(File contextFile) {
+        return CONTEXT_URI_PREFIX + contextFile.getName();
+    }
+
+    /**
+     * the jars to send with one component, and the ones it should only refer
+     * to because they were sent with another.
+     */
+    public static class UploadPlan {
+
+        final List<File> _filesToSend = new ArrayList<File>();
+        final List<File> _filesToReference = new ArrayList<File>();
+
+        public List<File> getFilesToSend() {
+            return Collections.unmodifiableList(_filesToSend);
+        }
+
+        public List<File> getFilesToReference() {
+            return Collections.unmodifiableList(_filesToReference);
+        }
+    }
+
+    /** a version of a jar that was sent, or is being sent */
+    private static class SentJar {
+
+        final byte[] _md5;
+
+        /** the plan that sends it */
+        final UploadPlan _plan;
+
+        /** true once the upload that sent it succeeded */
+        boolean _done = false;
+
+        SentJar(byte[] md5, UploadPlan plan) {
+            _md5 = md5;
+            _plan = plan;
+        }
+    }
+
+    private static class FileHash {
+
+        final long _size;
+        final long _lastModified;
+        final byte[] _md5;
+
+        FileHash(long size, long lastModified, byte[] md5) {
+            _size = size;
+            _lastModified = lastModified;
+            _md5 = md5;
+        }
+    }
+}
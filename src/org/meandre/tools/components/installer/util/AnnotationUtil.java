@@ -1,7 +1,9 @@
 package org.meandre.tools.components.installer.util;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.annotation.Annotation;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -22,7 +24,9 @@ public class AnnotationUtil{
 
     /**
      * searches a source directory for any .java files containing
-     * a class with an @Component annotation
+     * a class with an @Component annotation. only the classes that
+     * have one are loaded, the others are checked by reading their
+     * class files (see ComponentClassScanner).
      *
      * @return the set of .java files in the srcDir that have @Component tags
      */
@@ -49,6 +53,25 @@ public class AnnotationUtil{
         if(!SourceUtil.isSourceFile(srcFile)){
             return false;
         }
+        // read the compiled class first, so only components get loaded
+        // (and initialized)
+        String className = SourceUtil.sourceFileToClassName(srcFile, srcDir);
+        InputStream classBytes = loader.getResourceAsStream(
+        		className.replace('.', '/') + ".class");
+        if(classBytes != null){
+            try{
+                if(!ComponentClassScanner.isComponentClass(
+                		new BufferedInputStream(classBytes))){
+                    return false;
+                }
+            }catch(IOException e){
+                // can't tell from the class file, loading the class will
+            }catch(RuntimeException e){
+                // a corrupt class file can make the reader trip, same thing
+            }finally{
+                classBytes.close();
+            }
+        }
         Class<?> klass = SourceUtil.sourceFileToClass(srcFile, srcDir, loader);
         boolean hasTag = classHasComponentTag(klass);
         return hasTag;
@@ -0,0 +1,256 @@
+package org.meandre.tools.components.installer.util;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Finds the direct dependencies of .class and .jar files by reading their
+ * constant pools (see ClassFileReader) and looking the referenced classes up
+ * in a prebuilt ClassIndex of the classes directory and JarIndex of the jar
+ * directory.
+ *
+ * <p>
+ * Each class file is read exactly once, and its class-to-class and
+ * class-to-jar dependencies both come out of that one read. This replaces the
+ * per-class DepFind runs of JarJarWrapper, which re-scan the whole classpath
+ * for every class.
+ *
+ * <p>
+ * Instances are immutable and safe to use from multiple threads.
+ */
+public class BytecodeDependencyExtractor {
+
+    /** the classes in the classes directory, may be null */
+    private final ClassIndex _classIndex;
+
+    /** the classes in the jars of the jar directory, may be null */
+    private final JarIndex _jarIndex;
+
+    /**
+     * @param classIndex
+     *            index of the classes directory. if null, no class-to-class
+     *            dependencies will be found.
+     * @param jarIndex
+     *            index of the jar directory. if null, no class-to-jar or
+     *            jar-to-jar dependencies will be found.
+     */
+    public BytecodeDependencyExtractor(ClassIndex classIndex, JarIndex jarIndex) {
+        _classIndex = classIndex;
+        _jarIndex = jarIndex;
+    }
+
+    public ClassIndex getClassIndex() {
+        return _classIndex;
+    }
+
+    public JarIndex getJarIndex() {
+        return _jarIndex;
+    }
+
+    /**
+     * reads a class file and finds both the .class files (in the classes
+     * directory) and the .jar files (in the jar directory) it directly depends
+     * on. as with JarJarWrapper, the class file itself is among its class
+     * dependencies.
+     */
+    public ClassDependencies extractClassDeps(File classFile) throws IOException {
+        return resolveClassDeps(readClassReferences(classFile));
+    }
+
+    /**
+     * finds the .jar files in the jar directory that the classes of a jar file
+     * depend on directly. the returned set includes the jar itself.
+     */
+    public Set<File> extractJarDeps(File jarFile) throws IOException {
+        return resolveJarDeps(jarFile, readJarReferences(jarFile));
+    }
+
+    /**
+     * the dependencies of a class file, given the names of the classes it
+     * references (see readClassReferences).
+     */
+    public ClassDependencies resolveClassDeps(Set<String> classNames) {
+        return new ClassDependencies(resolveClasses(classNames), resolveJars(classNames));
+    }
+
+    /**
+     * the jar dependencies of a jar file, given the names of the classes its
+     * classes reference (see readJarReferences). includes the jar itself.
+     */
+    public Set<File> resolveJarDeps(File jarFile, Set<String> classNames) {
+        Set<File> jarDeps = resolveJars(classNames);
+        jarDeps.add(jarFile);
+        return jarDeps;
+    }
+
+    /**
+     * the names of all classes a class file refers to. the result doesn't
+     * depend on what is in the classes or jar directories, so it can be
+     * cached and resolved again later.
+     */
+    public static Set<String> readClassReferences(File classFile) throws IOException {
+        return ClassFileReader.getReferencedClassNames(classFile);
+    }
+
+    /**
+     * same as readClassReferences(classFile), but the whole file is read
+     * through the digest, so the hash of the file comes from the same read
+     * (see DependencyCache).
+     */
+    public static Set<String> readClassReferences(File classFile, MessageDigest digest) throws IOException {
+        InputStream in = new DigestInputStream(new BufferedInputStream(new FileInputStream(classFile)), digest);
+        try {
+            Set<String> classNames = new ClassFileReader(in).getReferencedClassNames();
+            // the reader stops after the constant pool
+            readToEnd(in);
+            return classNames;
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * the names of all classes referred to by any class in a jar file.
+     */
+    public static Set<String> readJarReferences(File jarFile) throws IOException {
+        Set<String> classNames = new HashSet<String>(1000);
+        JarFile jar = new JarFile(jarFile);
+        try {
+            Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                String entryName = entry.getName();
+                if (!entryName.endsWith(".class") || entryName.startsWith("META-INF/")) {
+                    continue;
+                }
+                InputStream in = new BufferedInputStream(jar.getInputStream(entry));
+                try {
+                    classNames.addAll(new ClassFileReader(in).getReferencedClassNames());
+                }
+                catch (IOException e) {
+                    // a damaged entry shouldn't hide the rest of the jar's
+                    // dependencies
+                    System.err.println("Could not read " + entryName + " in " + jarFile + ": " + e.getMessage());
+                }
+                finally {
+                    in.close();
+                }
+            }
+        }
+        finally {
+            jar.close();
+        }
+        return classNames;
+    }
+
+    /**
+     * same as readJarReferences(jarFile), but the jar is read once from start
+     * to end through the digest, so the hash of the file comes from the same
+     * read (see DependencyCache).
+     */
+    public static Set<String> readJarReferences(File jarFile, MessageDigest digest) throws IOException {
+        Set<String> classNames = new HashSet<String>(1000);
+        InputStream in = new DigestInputStream(new BufferedInputStream(new FileInputStream(jarFile), 64 * 1024), digest);
+        try {
+            ZipInputStream zipIn = new ZipInputStream(in);
+            ZipEntry entry;
+            while ((entry = zipIn.getNextEntry()) != null) {
+                String entryName = entry.getName();
+                if (!entryName.endsWith(".class") || entryName.startsWith("META-INF/")) {
+                    continue;
+                }
+                try {
+                    classNames.addAll(new ClassFileReader(zipIn).getReferencedClassNames());
+                }
+                catch (ZipException e) {
+                    // the jar, not the class, is damaged
+                    throw e;
+                }
+                catch (IOException e) {
+                    System.err.println("Could not read " + entryName + " in " + jarFile + ": " + e.getMessage());
+                }
+            }
+            // the central directory
+            readToEnd(in);
+            return classNames;
+        }
+        catch (ZipException e) {
+            // JarFile reads some jars ZipInputStream can't, e.g. ones with
+            // stored entries followed by a data descriptor. read those the
+            // usual way and hash them separately
+            classNames = readJarReferences(jarFile);
+            digest.reset();
+            InputStream fileIn = new DigestInputStream(new FileInputStream(jarFile), digest);
+            try {
+                readToEnd(fileIn);
+            }
+            finally {
+                fileIn.close();
+            }
+            return classNames;
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    private static void readToEnd(InputStream in) throws IOException {
+        byte[] buf = new byte[16 * 1024];
+        while (in.read(buf) != -1) {
+            // just reading
+        }
+    }
+
+    private Set<File> resolveClasses(Set<String> classNames) {
+        if (_classIndex == null) {
+            return new HashSet<File>();
+        }
+        return _classIndex.getOwners(classNames);
+    }
+
+    private Set<File> resolveJars(Set<String> classNames) {
+        if (_jarIndex == null) {
+            return new HashSet<File>();
+        }
+        return _jarIndex.getJars(classNames);
+    }
+
+    /**
+     * the direct dependencies of one class file: the .class files and the .jar
+     * files it references.
+     */
+    public static class ClassDependencies {
+
+        private final Set<File> _classDeps;
+        private final Set<File> _jarDeps;
+
+        public ClassDependencies(Set<File> classDeps, Set<File> jarDeps) {
+            _classDeps = classDeps;
+            _jarDeps = jarDeps;
+        }
+
+        /** .class files in the classes directory */
+        public Set<File> getClassDeps() {
+            return _classDeps;
+        }
+
+        /** .jar files in the jar directory */
+        public Set<File> getJarDeps() {
+            return _jarDeps;
+        }
+    }
+}
@@ -1,42 +1,75 @@
 package org.meandre.tools.components.installer.util;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
+import org.meandre.tools.components.installer.util.BytecodeDependencyExtractor.ClassDependencies;
+
+/**
+ * A DependencyAnalyzer that remembers what each .class and .jar file refers to
+ * between runs, in a DependencyCache file under the cache directory. The
+ * analysis is incremental: only files that are new or have changed since the
+ * last run are read, and files that were deleted are dropped from the cache.
+ * The references of all other files come from the cache and are resolved
+ * against the current contents of the class and jar directories, so the result
+ * is the same as a full analysis.
+ *
+ * <p>
+ * The cache also holds the list of classes in each jar, so the JarIndex of the
+ * jar directory is rebuilt without opening the jars that haven't changed.
+ */
 public class CachingDependencyAnalyzer extends DependencyAnalyzer {
 
     public static final String DEPENDENCY_CACHE = "dependencies-cache";
-    public static final String CLASS_TO_CLASS = "class-to-class";
-    public static final String CLASS_TO_JAR = "class-to-jar";
-    public static final String JAR_TO_JAR = "jar-to-jar";
 
     /** toplevel dir for cached artifacts */
     File _cacheDir;
 
-    File _classClassDir;
-    File _classJarDir;
-    File _jarJarDir;
+    /** the references of every file seen, persisted in _cacheDir */
+    DependencyCache _cache;
 
     /**
-     * save a running tally of dep files that have been written b/c the cached
-     * copy was not found or was found but stale. for testing
+     * save a running tally of files that had to be read b/c no cached entry
+     * was found or it was found but stale. for testing
      */
-    Set<File> _depFilesWritten;
+    Set<File> _filesRead;
 
     /**
-     * a running tally of dep files that were useable when one of the finde*Dep
-     * methods was run. for testing
+     * a running tally of files whose cached entry was useable when one of the
+     * find*Deps methods was run. for testing
      */
-    Set<File> _depFilesFoundUseable;
+    Set<File> _filesFoundInCache;
 
     public CachingDependencyAnalyzer(File jarDir, File classDir, File cacheDir) throws IOException {
+        this(jarDir, classDir, cacheDir, 1);
+    }
+
+    /**
+     * same as CachingDependencyAnalyzer(jarDir, classDir, cacheDir), but
+     * analyzes files that are not already cached using the given number of
+     * threads.
+     */
+    public CachingDependencyAnalyzer(File jarDir, File classDir, File cacheDir, int parallelism) throws IOException {
+        this(jarDir, classDir, cacheDir, parallelism, null);
+    }
+
+    /**
+     * same as CachingDependencyAnalyzer(jarDir, classDir, cacheDir,
+     * parallelism), but resolves classes to jars with an already built index
+     * of the jarDir. if jarIndex is null, the analyzer builds its own.
+     */
+    public CachingDependencyAnalyzer(File jarDir, File classDir, File cacheDir, int parallelism, JarIndex jarIndex) throws IOException {
         super();
+        setParallelism(parallelism);
+        if (jarIndex != null) {
+            setJarIndex(jarIndex);
+        }
 
         if (!(cacheDir.exists() && cacheDir.isDirectory())) {
             throw new FileNotFoundException("Dependency cache directory " + "either did not exist or is not a directory: " + cacheDir.toString());
@@ -45,195 +78,108 @@ public class CachingDependencyAnalyzer extends DependencyAnalyzer {
         // were given
         _cacheDir = new File(cacheDir, DEPENDENCY_CACHE);
         _cacheDir.mkdir();
+        _cache = new DependencyCache(new File(_cacheDir, DependencyCache.CACHE_FILE_NAME));
 
-        // the subdirectories for the different kind of directories
-        _classClassDir = new File(_cacheDir, CLASS_TO_CLASS);
-        _classClassDir.mkdir();
-        _classJarDir = new File(_cacheDir, CLASS_TO_JAR);
-        _classJarDir.mkdir();
-        _jarJarDir = new File(_cacheDir, JAR_TO_JAR);
-        _jarJarDir.mkdir();
-
-        _depFilesFoundUseable = new HashSet<File>();
-        _depFilesWritten = new HashSet<File>();
+        // the find*Deps methods may be called from several threads at once
+        _filesFoundInCache = Collections.synchronizedSet(new HashSet<File>());
+        _filesRead = Collections.synchronizedSet(new HashSet<File>());
 
         // delegate back to the superclass to populate the in memory
         // dependencies sets. these methods will call the find*Deps methods
         // overridden by this class
-        super.addClassToClassDeps(classDir);
-        super.addClassToJarDeps(classDir, jarDir);
+        super.addClassDeps(classDir, jarDir);
         super.addJarToJarDeps(jarDir);
+        saveCache();
+        log("DepAnalyzer: " + _cache.getSummary());
     }
 
-    @Override
-    protected Set<File> findClassClassDeps(File classFile, File classDir) throws IOException {
-
-        String className = SourceUtil.classFileToClassName(classFile, classDir);
-
-        File cacheFile = getCacheFile(className, _classClassDir);
-        Set<File> deps = null;
-
-        // if the cache file exists, has valid contents, and is not
-        // stale relative to the classFile
-        if (isValidCacheFile(cacheFile) && !isStale(cacheFile, classFile)) {
-            // use the contents of the cache file for dependencies
-            deps = parseCacheFile(cacheFile);
-            _depFilesFoundUseable.add(cacheFile);
-        } else {
-            // find the dependencies in the way our superclass does and generate
-            // a new cachefile using those files
-            deps = super.findClassClassDeps(classFile, classDir);
-            writeCacheFile(cacheFile, deps);
-            _depFilesWritten.add(cacheFile);
-        }
-        return deps;
+    /**
+     * writes any new or changed entries to the cache file. called by the
+     * constructor; call it again after using the add*Deps methods to keep
+     * what they found for the next run.
+     */
+    public void saveCache() throws IOException {
+        _cache.save();
     }
 
+    /**
+     * builds the index from the cached class lists of unchanged jars, only
+     * opening jars that are new or changed.
+     */
     @Override
-    protected Set<File> findClassJarDeps(File classFile, File classDir, File jarDir) throws IOException {
-
-        String className = SourceUtil.classFileToClassName(classFile, classDir);
-
-        File cacheFile = getCacheFile(className, _classJarDir);
-        Set<File> deps = null;
-
-        // if the cache file exists, has valid contents, and is not
-        // stale relative to the classFile
-        if (isValidCacheFile(cacheFile) && !isStale(cacheFile, classFile)) {
-            // use the contents of the cache file for dependencies
-            deps = parseCacheFile(cacheFile);
-            // _depFilesFoundUseable.add(cacheFile);
-        } else {
-            // find the dependencies in the way our superclass does and generate
-            // a new cachefile using those files
-            deps = super.findClassJarDeps(classFile, classDir, jarDir);
-            writeCacheFile(cacheFile, deps);
-            // _depFilesWritten.add(cacheFile);
-        }
-        return deps;
-
+    protected JarIndex buildJarIndex(File jarDir) throws IOException {
+        return JarIndex.build(jarDir, new JarIndex.ClassLister() {
+            public Collection<String> listClasses(File jarFile) throws IOException {
+                Set<String> classNames = _cache.getDefinedClassNames(jarFile);
+                if (classNames == null) {
+                    classNames = JarIndex.listJarClasses(jarFile);
+                    _cache.putDefinedClassNames(jarFile, classNames);
+                }
+                return classNames;
+            }
+        });
     }
 
     @Override
-    protected Set<File> findJarJarDeps(File jarFile, File jarDir) throws IOException {
-
-        String baseName = jarFile.getName();
-
-        File cacheFile = getCacheFile(baseName, _jarJarDir);
-        Set<File> deps = null;
-
-        // if the cache file exists, has valid contents, and is not
-        // stale relative to the classFile
-        if (isValidCacheFile(cacheFile) && !isStale(cacheFile, jarFile)) {
-            // use the contents of the cache file for dependencies
-            deps = parseCacheFile(cacheFile);
-            // _depFilesFoundUseable.add(cacheFile);
-        } else {
-            // find the dependencies in the way our superclass does and generate
-            // a new cachefile using those files
-            deps = super.findJarJarDeps(jarFile, jarDir);
-            writeCacheFile(cacheFile, deps);
-            // _depFilesWritten.add(cacheFile);
-        }
-        return deps;
+    protected ClassDependencies findClassDeps(File classFile, File classDir, File jarDir) throws IOException {
+        return getExtractor(classDir, jarDir).resolveClassDeps(getClassReferences(classFile));
     }
 
-    /**
-     * a listing of all .dep files written by this caching dependency analyzer
-     * since it was instantiated. used for testing.
-     */
-    protected Set<File> getClassClassDepFilesWritten() {
-        return _depFilesWritten;
+    @Override
+    protected Set<File> findClassClassDeps(File classFile, File classDir) throws IOException {
+        return getExtractor(classDir, null).resolveClassDeps(getClassReferences(classFile)).getClassDeps();
     }
 
-    /**
-     * a listing of all .dep files found by this caching dep analyzer since it
-     * was instantiated. used for testing.
-     */
-    protected Set<File> getClassClassDepFilesFoundUseable() {
-        return _depFilesFoundUseable;
+    @Override
+    protected Set<File> findClassJarDeps(File classFile, File classDir, File jarDir) throws IOException {
+        return getExtractor(null, jarDir).resolveClassDeps(getClassReferences(classFile)).getJarDeps();
     }
 
-    /**
-     * writes the filenames, one per line, into the file. will overwrite the
-     * file if it exists.
-     * 
-     * @param cacheFile
-     * @param contents
-     * @throws FileNotFoundException
-     *             if the directory doesn't exist?
-     */
-    private void writeCacheFile(File cacheFile, Set<File> contents) throws FileNotFoundException {
-
-        PrintWriter writer = new PrintWriter(cacheFile);
-        for (File depFile : contents) {
-            writer.println(depFile.toString());
+    @Override
+    protected Set<File> findJarJarDeps(File jarFile, File jarDir) throws IOException {
+        Set<String> classNames = _cache.get(jarFile);
+        if (classNames != null) {
+            _filesFoundInCache.add(jarFile);
+        } else {
+            MessageDigest digest = FileUtil.createMD5Digest();
+            classNames = BytecodeDependencyExtractor.readJarReferences(jarFile, digest);
+            _cache.put(jarFile, classNames, digest.digest());
+            _filesRead.add(jarFile);
         }
-        writer.close();
+        return getExtractor(null, jarDir).resolveJarDeps(jarFile, classNames);
     }
 
     /**
-     * reads the filenames out of a cacheFile and returns them as a set of
-     * files.
-     * 
-     * @param cacheFile
-     * @return the list of files in the cacheFile (which are the dependencies)
-     * @throws IOException
+     * the names of the classes a class file references, from the cache if it
+     * has a current entry for the file, otherwise read from the file (and
+     * then cached).
      */
-    private Set<File> parseCacheFile(File cacheFile) throws IOException {
-        BufferedReader reader = new BufferedReader(new FileReader(cacheFile));
-        Set<File> depFiles = new HashSet<File>();
-        while (reader.ready()) {
-            String line = reader.readLine();
-            File dep = new File(line);
-            if (!dep.exists())
-                throw new FileNotFoundException(dep.toString());
-            depFiles.add(dep);
-        }
-        reader.close();
-        return depFiles;
-    }
-
-    private boolean isStale(File generatedFile, File referenceFile) throws FileNotFoundException {
-
-        boolean isStale = FileUtil.isFileStale(generatedFile, referenceFile);
-        if (isStale) {
-            log("Stale .dep file: " + generatedFile);
+    private Set<String> getClassReferences(File classFile) throws IOException {
+        Set<String> classNames = _cache.get(classFile);
+        if (classNames != null) {
+            _filesFoundInCache.add(classFile);
+        } else {
+            MessageDigest digest = FileUtil.createMD5Digest();
+            classNames = BytecodeDependencyExtractor.readClassReferences(classFile, digest);
+            _cache.put(classFile, classNames, digest.digest());
+            _filesRead.add(classFile);
         }
-        return isStale;
+        return classNames;
     }
 
     /**
-     * tests if a file is a valid cache file to use. it is valid if the file
-     * exists and can be parsed by our parser.
+     * a listing of all .class and .jar files that had to be read by this
+     * caching dependency analyzer since it was instantiated. used for testing.
      */
-    private boolean isValidCacheFile(File cacheFile) {
-        // if it exists
-        if (!cacheFile.exists()) {
-            return false;
-        }
-        // and it is parseable
-        try {
-            parseCacheFile(cacheFile);
-        }
-        catch (Exception e) {
-            return false;
-        }
-        // then it is valid
-        return true;
+    protected Set<File> getFilesRead() {
+        return _filesRead;
     }
 
     /**
-     * generates a filename following a consistent naming scheme given a source
-     * basename and the name of the directory the cacheFile will be written to.
-     * 
-     * @param baseName
-     * @param cacheDir
-     * @return
+     * a listing of all .class and .jar files whose references were found in
+     * the cache since it was instantiated. used for testing.
      */
-    private File getCacheFile(String baseName, File cacheDir) {
-        String fileName = baseName + ".dep";
-        File cacheFile = new File(cacheDir, fileName);
-        return cacheFile;
+    protected Set<File> getFilesFoundInCache() {
+        return _filesFoundInCache;
     }
 }
@@ -0,0 +1,396 @@
+package org.meandre.tools.components.installer.util;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Reads the names of all classes a compiled .class file refers to, straight
+ * from the constant pool of the class file. Nothing is loaded or linked, so
+ * this works on classes whose own dependencies are missing.
+ *
+ * <p>
+ * A class is considered referenced if it is named by a CONSTANT_Class entry or
+ * appears as an object type ("Lpkg/Name;") in any descriptor, signature or
+ * annotation value in the pool. String literals are ignored. This is the same
+ * set of classes JarJar's DepFind reports.
+ *
+ * <p>
+ * Optionally, the rest of the class file is read too, for the annotations of
+ * the class itself (its RuntimeVisibleAnnotations attribute). That tells
+ * whether a class is e.g. a Component without loading it, see
+ * ComponentClassScanner.
+ *
+ * <p>
+ * All class names are in the internal (slash separated) form, e.g.
+ * "org/meandre/core/ComponentContext".
+ */
+public class ClassFileReader {
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    // constant pool tags
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    private static final String RUNTIME_VISIBLE_ANNOTATIONS = "RuntimeVisibleAnnotations";
+
+    /** the name of the class defined by the class file */
+    private String _className;
+
+    /** the name of its superclass, null for java/lang/Object */
+    private String _superClassName;
+
+    /** every class the class file refers to, including itself */
+    private Set<String> _referencedClassNames;
+
+    /** the runtime visible annotations of the class, if they were read */
+    private Set<String> _annotationClassNames;
+
+    /**
+     * parses the class file at the current position of the input stream. the
+     * stream is read up to the end of the constant pool and the this_class
+     * and super_class indexes, and is not closed.
+     */
+    public ClassFileReader(InputStream classBytes) throws IOException {
+        this(classBytes, false);
+    }
+
+    /**
+     * same as ClassFileReader(classBytes), but if readAnnotations is true
+     * reads on to the end of the class file for the annotations of the class.
+     */
+    public ClassFileReader(InputStream classBytes, boolean readAnnotations) throws IOException {
+        DataInputStream in = new DataInputStream(classBytes);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a class file (bad magic number)");
+        }
+        // minor and major version
+        in.readUnsignedShort();
+        in.readUnsignedShort();
+
+        int poolSize = in.readUnsignedShort();
+        String[] utf8s = new String[poolSize];
+        // for each CONSTANT_Class entry, the index of the utf8 holding its name
+        int[] classNameIndexes = new int[poolSize];
+        // utf8 entries that are string literals (or module/package names)
+        // rather than names or descriptors
+        boolean[] notDescriptor = new boolean[poolSize];
+
+        for (int i = 1; i < poolSize; i++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+            case CONSTANT_UTF8:
+                utf8s[i] = in.readUTF();
+                break;
+            case CONSTANT_CLASS:
+                classNameIndexes[i] = in.readUnsignedShort();
+                break;
+            case CONSTANT_STRING:
+            case CONSTANT_MODULE:
+            case CONSTANT_PACKAGE:
+                notDescriptor[in.readUnsignedShort()] = true;
+                break;
+            case CONSTANT_METHOD_TYPE:
+                in.readUnsignedShort();
+                break;
+            case CONSTANT_METHOD_HANDLE:
+                in.readUnsignedByte();
+                in.readUnsignedShort();
+                break;
+            case CONSTANT_INTEGER:
+            case CONSTANT_FLOAT:
+            case CONSTANT_FIELDREF:
+            case CONSTANT_METHODREF:
+            case CONSTANT_INTERFACE_METHODREF:
+            case CONSTANT_NAME_AND_TYPE:
+            case CONSTANT_DYNAMIC:
+            case CONSTANT_INVOKE_DYNAMIC:
+                in.readInt();
+                break;
+            case CONSTANT_LONG:
+            case CONSTANT_DOUBLE:
+                in.readLong();
+                // 8 byte constants take up two slots in the pool
+                i++;
+                break;
+            default:
+                throw new IOException("Corrupt class file: unknown constant pool tag " + tag + " at index " + i);
+            }
+        }
+
+        // access flags
+        in.readUnsignedShort();
+        int thisClass = in.readUnsignedShort();
+        int superClass = in.readUnsignedShort();
+
+        _referencedClassNames = new HashSet<String>();
+        boolean[] isClassName = new boolean[poolSize];
+        for (int i = 1; i < poolSize; i++) {
+            int nameIndex = classNameIndexes[i];
+            if (nameIndex == 0) {
+                continue;
+            }
+            isClassName[nameIndex] = true;
+            String name = utf8s[nameIndex];
+            if (name.startsWith("[")) {
+                // an array class, named by its descriptor
+                addDescriptorClassNames(name, _referencedClassNames);
+            } else {
+                _referencedClassNames.add(name);
+            }
+        }
+        for (int i = 1; i < poolSize; i++) {
+            String utf8 = utf8s[i];
+            if (utf8 != null && !isClassName[i] && !notDescriptor[i] && utf8.indexOf(';') >= 0) {
+                addDescriptorClassNames(utf8, _referencedClassNames);
+            }
+        }
+
+        if (thisClass <= 0 || thisClass >= poolSize || classNameIndexes[thisClass] == 0) {
+            throw new IOException("Corrupt class file: bad this_class index " + thisClass);
+        }
+        _className = utf8s[classNameIndexes[thisClass]];
+        if (superClass != 0) {
+            if (superClass >= poolSize || classNameIndexes[superClass] == 0) {
+                throw new IOException("Corrupt class file: bad super_class index " + superClass);
+            }
+            _superClassName = utf8s[classNameIndexes[superClass]];
+        }
+
+        if (readAnnotations) {
+            _annotationClassNames = readAnnotationClassNames(in, utf8s);
+        }
+    }
+
+    /**
+     * reads the class file from after super_class to the class attributes, and
+     * returns the types of the annotations in its RuntimeVisibleAnnotations
+     * attribute.
+     */
+    private static Set<String> readAnnotationClassNames(DataInputStream in, String[] utf8s) throws IOException {
+        // the interfaces
+        skipFully(in, 2 * in.readUnsignedShort());
+        // fields, then methods
+        for (int i = 0; i < 2; i++) {
+            int numMembers = in.readUnsignedShort();
+            for (int j = 0; j < numMembers; j++) {
+                // access flags, name and descriptor
+                skipFully(in, 6);
+                skipAttributes(in);
+            }
+        }
+
+        Set<String> annotationClassNames = new HashSet<String>();
+        int numAttributes = in.readUnsignedShort();
+        for (int i = 0; i < numAttributes; i++) {
+            String name = getUtf8(utf8s, in.readUnsignedShort());
+            int length = in.readInt();
+            if (!RUNTIME_VISIBLE_ANNOTATIONS.equals(name)) {
+                skipFully(in, length);
+                continue;
+            }
+            int numAnnotations = in.readUnsignedShort();
+            for (int j = 0; j < numAnnotations; j++) {
+                String type = getUtf8(utf8s, in.readUnsignedShort());
+                if (type.startsWith("L") && type.endsWith(";")) {
+                    annotationClassNames.add(type.substring(1, type.length() - 1));
+                }
+                skipElementValuePairs(in);
+            }
+        }
+        return annotationClassNames;
+    }
+
+    private static void skipAttributes(DataInputStream in) throws IOException {
+        int numAttributes = in.readUnsignedShort();
+        for (int i = 0; i < numAttributes; i++) {
+            in.readUnsignedShort();
+            skipFully(in, in.readInt());
+        }
+    }
+
+    /** skips the element-value pairs of an annotation */
+    private static void skipElementValuePairs(DataInputStream in) throws IOException {
+        int numPairs = in.readUnsignedShort();
+        for (int i = 0; i < numPairs; i++) {
+            in.readUnsignedShort();
+            skipElementValue(in);
+        }
+    }
+
+    private static void skipElementValue(DataInputStream in) throws IOException {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+        case 'e':
+            // enum type and constant name
+            skipFully(in, 4);
+            break;
+        case '@':
+            in.readUnsignedShort();
+            skipElementValuePairs(in);
+            break;
+        case '[':
+            int numValues = in.readUnsignedShort();
+            for (int i = 0; i < numValues; i++) {
+                skipElementValue(in);
+            }
+            break;
+        case 'B':
+        case 'C':
+        case 'D':
+        case 'F':
+        case 'I':
+        case 'J':
+        case 'S':
+        case 'Z':
+        case 's':
+        case 'c':
+            // a constant pool index
+            skipFully(in, 2);
+            break;
+        default:
+            throw new IOException("Corrupt class file: unknown annotation element tag " + tag);
+        }
+    }
+
+    private static void skipFully(DataInputStream in, int numBytes) throws IOException {
+        while (numBytes > 0) {
+            int skipped = in.skipBytes(numBytes);
+            if (skipped <= 0) {
+                // skipBytes may give up early; read() tells if it's the end
+                if (in.read() < 0) {
+                    throw new EOFException("Corrupt class file: truncated");
+                }
+                skipped = 1;
+            }
+            numBytes -= skipped;
+        }
+    }
+
+    private static String getUtf8(String[] utf8s, int index) throws IOException {
+        if (index <= 0 || index >= utf8s.length || utf8s[index] == null) {
+            throw new IOException("Corrupt class file: bad utf8 index " + index);
+        }
+        return utf8s[index];
+    }
+
+    /** the name of the class defined by the class file */
+    public String getClassName() {
+        return _className;
+    }
+
+    /** the name of the superclass, or null if the class is java/lang/Object */
+    public String getSuperClassName() {
+        return _superClassName;
+    }
+
+    /**
+     * all classes referenced by the class file, including the class itself, in
+     * internal (slash separated) form.
+     */
+    public Set<String> getReferencedClassNames() {
+        return _referencedClassNames;
+    }
+
+    /**
+     * the classes of the runtime visible annotations of the class itself (not
+     * of its fields or methods), or null if they were not read.
+     */
+    public Set<String> getAnnotationClassNames() {
+        return _annotationClassNames;
+    }
+
+    /**
+     * convenience method that reads the annotation class names of a .class
+     * file on disk.
+     */
+    public static Set<String> getAnnotationClassNames(File classFile) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(classFile));
+        try {
+            return new ClassFileReader(in, true).getAnnotationClassNames();
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * convenience method that reads the referenced class names of a .class
+     * file on disk.
+     */
+    public static Set<String> getReferencedClassNames(File classFile) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(classFile));
+        try {
+            return new ClassFileReader(in).getReferencedClassNames();
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * adds the name of every object type ("Lpkg/Name;") in a field or method
+     * descriptor or a generic signature to the set. A type variable such as
+     * "TLoader;" can produce a bogus name ("oader"); callers only keep names
+     * that resolve to a known class, so these do no harm.
+     */
+    static void addDescriptorClassNames(String descriptor, Set<String> classNames) {
+        int length = descriptor.length();
+        int i = 0;
+        while (i < length) {
+            if (descriptor.charAt(i) != 'L') {
+                i++;
+                continue;
+            }
+            int end = i + 1;
+            while (end < length && isClassNameChar(descriptor.charAt(end))) {
+                end++;
+            }
+            if (end > i + 1 && end < length && (descriptor.charAt(end) == ';' || descriptor.charAt(end) == '<')) {
+                classNames.add(descriptor.substring(i + 1, end));
+                i = end + 1;
+            } else {
+                i++;
+            }
+        }
+    }
+
+    private static boolean isClassNameChar(char c) {
+        switch (c) {
+        case ';':
+        case '<':
+        case '>':
+        case '(':
+        case ')':
+        case '[':
+        case '.':
+        case ':':
+        case ' ':
+            return false;
+        default:
+            return true;
+        }
+    }
+}
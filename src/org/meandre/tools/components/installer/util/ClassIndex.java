@@ -0,0 +1,99 @@
+package org.meandre.tools.components.installer.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A lookup table from class names to the .class files in a directory of
+ * compiled classes. Built once, so that resolving a referenced class is a
+ * single hash lookup instead of a search of the classpath. JarIndex does the
+ * same for a directory of jars.
+ *
+ * <p>
+ * Class names are in internal (slash separated) form.
+ *
+ * <p>
+ * An index is not modified after it is built and may be shared between
+ * threads.
+ */
+public class ClassIndex {
+
+    /** the directory that was indexed */
+    private final File _dir;
+
+    /** internal class name to its .class file */
+    private final Map<String, File> _owners;
+
+    private ClassIndex(File dir, Map<String, File> owners) {
+        _dir = dir;
+        _owners = owners;
+    }
+
+    /**
+     * indexes every .class file in a directory tree of compiled classes. the
+     * class names are deduced from the paths relative to the classDir.
+     */
+    public static ClassIndex forClassDir(File classDir) throws IOException {
+        return forClassFiles(classDir, FileTree.get(classDir).getFiles());
+    }
+
+    /**
+     * indexes the given .class files, found by a caller that already walked
+     * the classDir. files not under the classDir are ignored.
+     */
+    public static ClassIndex forClassFiles(File classDir, Collection<File> classFiles) {
+        Map<String, File> owners = new HashMap<String, File>(classFiles.size() * 2);
+        // with the separator, so a sibling such as classes2/ doesn't match
+        String rootPath = classDir.getPath();
+        if (!rootPath.endsWith(File.separator)) {
+            rootPath += File.separator;
+        }
+        for (File classFile : classFiles) {
+            String path = classFile.getPath();
+            if (path.endsWith(".class") && path.startsWith(rootPath)) {
+                String className = path.substring(rootPath.length(), path.length() - ".class".length());
+                owners.put(className.replace(File.separatorChar, '/'), classFile);
+            }
+        }
+        return new ClassIndex(classDir, owners);
+    }
+
+    /** the directory this index was built from */
+    public File getDir() {
+        return _dir;
+    }
+
+    /**
+     * the .class file of a class, or null if the class is not in the indexed
+     * directory.
+     */
+    public File getOwner(String className) {
+        return _owners.get(className);
+    }
+
+    /**
+     * the owners of all of the input classes that are in the indexed
+     * directory. classes that aren't in it are ignored.
+     */
+    public Set<File> getOwners(Collection<String> classNames) {
+        Set<File> owners = new HashSet<File>();
+        for (String className : classNames) {
+            File owner = _owners.get(className);
+            if (owner != null) {
+                owners.add(owner);
+            }
+        }
+        return owners;
+    }
+
+    /** the number of classes in the index */
+    public int size() {
+        return _owners.size();
+    }
+}
@@ -0,0 +1,124 @@
+package org.meandre.tools.components.installer.util;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Tells which compiled classes are Components by reading their class files
+ * for the @Component annotation (see ClassFileReader), instead of loading
+ * every class and asking it. Classes that aren't components are never loaded,
+ * so their static initializers don't run and they don't fill up the class
+ * loader.
+ *
+ * <p>
+ * The annotation is not @Inherited, so a class is a component exactly if its
+ * own class file has it. Callers still load the components themselves, and a
+ * class file that can't be parsed is treated as a possible component so that
+ * loading it decides.
+ */
+public class ComponentClassScanner {
+
+    /** the Component annotation, in internal form */
+    public static final String COMPONENT_ANNOTATION = "org/meandre/annotations/Component";
+
+    /** true if the class file has a @Component annotation */
+    public static boolean isComponentClassFile(File classFile) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(classFile));
+        try {
+            return isComponentClass(in);
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * true if the class file at the current position of the stream has a
+     * @Component annotation. the stream is not closed.
+     */
+    public static boolean isComponentClass(InputStream classBytes) throws IOException {
+        return new ClassFileReader(classBytes, true).getAnnotationClassNames().contains(COMPONENT_ANNOTATION);
+    }
+
+    /**
+     * the files among classFiles that may be components: those with a
+     * @Component annotation, and those that could not be parsed. in the same
+     * order as classFiles. the files are read on a pool of numThreads threads,
+     * or on the calling thread if numThreads is 1 or less.
+     */
+    public static List<File> findComponentClassFiles(List<File> classFiles, int numThreads) throws IOException {
+        List<File> componentFiles = new ArrayList<File>();
+        numThreads = Math.min(numThreads, classFiles.size());
+        if (numThreads <= 1) {
+            for (File classFile : classFiles) {
+                if (mayBeComponent(classFile)) {
+                    componentFiles.add(classFile);
+                }
+            }
+            return componentFiles;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>(classFiles.size());
+            for (final File classFile : classFiles) {
+                results.add(pool.submit(new Callable<Boolean>() {
+                    public Boolean call() {
+                        return mayBeComponent(classFile);
+                    }
+                }));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                if (waitFor(results.get(i))) {
+                    componentFiles.add(classFiles.get(i));
+                }
+            }
+        }
+        finally {
+            pool.shutdownNow();
+        }
+        return componentFiles;
+    }
+
+    private static boolean mayBeComponent(File classFile) {
+        try {
+            return isComponentClassFile(classFile);
+        }
+        catch (IOException e) {
+            // let loading the class decide
+            return true;
+        }
+        catch (RuntimeException e) {
+            // a corrupt class file can make the reader trip, same thing
+            return true;
+        }
+    }
+
+    private static boolean waitFor(Future<Boolean> result) throws IOException {
+        try {
+            return result.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while looking for components");
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new RuntimeException(cause);
+        }
+    }
+}
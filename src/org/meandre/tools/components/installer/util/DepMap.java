@@ -0,0 +1,218 @@
+package org.meandre.tools.components.installer.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * holds dependency graph information on a set of files and can traverse the
+ * graph to find all dependencies of a particular file. Used by
+ * DependencyAnalyzer, once for each kind of dependency.
+ *
+ * <p>
+ * Files are stored as ids from a FileNodeTable that is shared between the
+ * DepMaps of an analyzer, and the direct dependencies of each target as a
+ * sorted array of ids. When the map is queried for deep dependencies, the
+ * arrays are packed into compressed sparse row form (one array of offsets,
+ * one of all the targets) and a TransitiveClosure is built over it. The packed
+ * form is thrown away if the map is changed afterwards.
+ *
+ * <p>
+ * A target's dependencies are set all at once, and there is no removing a
+ * dependency after it has been added. All methods are safe to call from
+ * multiple threads at once. File names are turned into ids before the map is
+ * locked, so threads only contend for the map itself.
+ */
+class DepMap {
+
+    private static final int[] NO_DEPS = new int[0];
+
+    /** ids for all files, shared with the other maps of the analyzer */
+    private final FileNodeTable _nodes;
+
+    /**
+     * the sorted ids of the direct dependencies of each target, indexed by the
+     * target's id. null for files that aren't targets of this map.
+     */
+    private int[][] _deps = new int[64][];
+
+    /**
+     * the closure of the graph in _deps, built on the first deep query since
+     * the map last changed. null if not built yet.
+     */
+    private TransitiveClosure _closure;
+
+    DepMap(FileNodeTable nodes) {
+        _nodes = nodes;
+    }
+
+    /**
+     * declares the target file and sets its dependencies to the input set,
+     * replacing any dependencies previously set for it. a target with no
+     * dependencies should be declared with an empty set, so it can still be
+     * queried.
+     *
+     * @throws IOException
+     */
+    void setDeps(File targetFile, Set<File> dependsOnFiles) throws IOException {
+        int target = _nodes.getId(targetFile);
+        int[] deps = NO_DEPS;
+        if (!dependsOnFiles.isEmpty()) {
+            deps = new int[dependsOnFiles.size()];
+            int numDeps = 0;
+            for (File dependsOnFile : dependsOnFiles) {
+                deps[numDeps++] = _nodes.getId(dependsOnFile);
+            }
+            // different paths can name the same file
+            Arrays.sort(deps);
+            int numUnique = 0;
+            for (int i = 0; i < numDeps; i++) {
+                if (numUnique == 0 || deps[numUnique - 1] != deps[i]) {
+                    deps[numUnique++] = deps[i];
+                }
+            }
+            if (numUnique < numDeps) {
+                int[] uniqueDeps = new int[numUnique];
+                System.arraycopy(deps, 0, uniqueDeps, 0, numUnique);
+                deps = uniqueDeps;
+            }
+        }
+        synchronized (this) {
+            if (target >= _deps.length) {
+                int[][] newDeps = new int[Math.max(target + 1, _deps.length * 2)][];
+                System.arraycopy(_deps, 0, newDeps, 0, _deps.length);
+                _deps = newDeps;
+            }
+            _deps[target] = deps;
+            _closure = null;
+        }
+    }
+
+    /**
+     * get the set of files a target file depends directly on
+     *
+     * @throws IOException
+     */
+    Set<File> getShallowDeps(File targetFile) throws IOException {
+        int target = _nodes.findId(targetFile);
+        synchronized (this) {
+            return toFileSet(getTargetDeps(target, targetFile));
+        }
+    }
+
+    /**
+     * get the aggregated set of files depended on by a set of target files.
+     *
+     * @throws IOException
+     */
+    Set<File> getShallowDeps(Set<File> targetFiles) throws IOException {
+        Set<File> allShallowDeps = new HashSet<File>(20);
+        for (File targetFile : targetFiles) {
+            allShallowDeps.addAll(getShallowDeps(targetFile));
+        }
+        return allShallowDeps;
+    }
+
+    /**
+     * find all dependencies, and all dependencies of dependencies, of a
+     * target file. the result includes the target itself.
+     *
+     * @throws IOException
+     */
+    Set<File> getDeepDeps(File targetFile) throws IOException {
+        int target = _nodes.findId(targetFile);
+        synchronized (this) {
+            return toFileSet(getReachable(target, targetFile));
+        }
+    }
+
+    /**
+     * aggregate the deep dependencies found by getDeepDeps(File) for a set of
+     * target files.
+     *
+     * @throws IOException
+     */
+    Set<File> getDeepDeps(Set<File> targetFiles) throws IOException {
+        int[] targets = new int[targetFiles.size()];
+        File[] files = targetFiles.toArray(new File[targets.length]);
+        for (int i = 0; i < targets.length; i++) {
+            targets[i] = _nodes.findId(files[i]);
+        }
+        synchronized (this) {
+            // union the memoized sets, and only then turn them into files
+            BitSet allDeepDeps = new BitSet();
+            for (int i = 0; i < targets.length; i++) {
+                allDeepDeps.or(getReachable(targets[i], files[i]));
+            }
+            return toFileSet(allDeepDeps);
+        }
+    }
+
+    /** the direct dependency ids of a target. must hold the lock */
+    private int[] getTargetDeps(int target, File targetFile) {
+        if (target < 0 || target >= _deps.length || _deps[target] == null) {
+            throw new IllegalArgumentException("Requesting dependencies for" + " an unknown target. This DependencyAnalyzer does not have "
+                    + "dependencies for : " + targetFile.toString());
+        }
+        return _deps[target];
+    }
+
+    /**
+     * the ids of all files reachable from a target, including the target
+     * itself. the returned set belongs to the closure and must not be
+     * modified. must hold the lock.
+     */
+    private BitSet getReachable(int target, File targetFile) {
+        getTargetDeps(target, targetFile);
+        if (_closure == null) {
+            buildClosure();
+        }
+        return _closure.getReachable(target);
+    }
+
+    /**
+     * packs the dependency arrays into CSR form over all ids in the node
+     * table and builds the closure over it. files that aren't targets of this
+     * map have no edges.
+     */
+    private void buildClosure() {
+        int numNodes = _nodes.size();
+        int numEdges = 0;
+        for (int[] deps : _deps) {
+            if (deps != null) {
+                numEdges += deps.length;
+            }
+        }
+        int[] offsets = new int[numNodes + 1];
+        int[] targets = new int[numEdges];
+        int numTargets = 0;
+        for (int node = 0; node < numNodes; node++) {
+            offsets[node] = numTargets;
+            if (node < _deps.length && _deps[node] != null) {
+                System.arraycopy(_deps[node], 0, targets, numTargets, _deps[node].length);
+                numTargets += _deps[node].length;
+            }
+        }
+        offsets[numNodes] = numTargets;
+        _closure = new TransitiveClosure(offsets, targets);
+    }
+
+    private Set<File> toFileSet(int[] ids) {
+        Set<File> files = new HashSet<File>(ids.length * 2);
+        for (int id : ids) {
+            files.add(_nodes.getFile(id));
+        }
+        return files;
+    }
+
+    private Set<File> toFileSet(BitSet ids) {
+        Set<File> files = new HashSet<File>(ids.cardinality() * 2);
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            files.add(_nodes.getFile(id));
+        }
+        return files;
+    }
+}
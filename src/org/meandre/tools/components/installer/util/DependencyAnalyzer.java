@@ -3,13 +3,18 @@ package org.meandre.tools.components.installer.util;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.meandre.tools.components.installer.ComponentInstaller;
+import org.meandre.tools.components.installer.util.BytecodeDependencyExtractor.ClassDependencies;
 
 /**
  * Detects and stores the dependencies between all class files and jar files in
@@ -21,9 +26,22 @@ import org.meandre.tools.components.installer.ComponentInstaller;
  * .jar files.
  * 
  * <p>
- * All dependencies are deduced at initialization and stored internally in a set
- * of HashMaps. Calls to the get* methods are therefore very fast, while
- * constructing a new analyzer is very slow.
+ * All dependencies are deduced at initialization and stored internally as
+ * graphs over integer file ids (see DepMap). Calls to the get* methods are
+ * therefore very fast, while constructing a new analyzer is slower.
+ * 
+ * <p>
+ * To speed up construction, the analyzer can scan files on several threads at
+ * once (see setParallelism()). Each .class or .jar file is analyzed
+ * independently, so the resulting dependency graph is the same no matter how
+ * many threads are used.
+ * 
+ * <p>
+ * Dependencies are read straight from the constant pools of the class files
+ * and resolved against an index of the classes directory and the jar
+ * directory that is built once (see BytecodeDependencyExtractor). The
+ * class-to-class and class-to-jar dependencies of a class come from a single
+ * read of its class file.
  * 
  * @author pgroves
  */
@@ -45,17 +63,46 @@ public class DependencyAnalyzer {
      * dependency map from .jar files to .jar files in the jarDir
      */
     DepMap _jarJarDeps;
+
+    /**
+     * the ids of all files in the three dependency maps. each path is only
+     * canonicalized the first time the table sees it.
+     */
+    FileNodeTable _nodeTable;
     
     private boolean _verbose = false;
 
+    /**
+     * the number of threads used to scan files when populating the dependency
+     * maps. a value of 1 scans all files on the calling thread.
+     */
+    private int _parallelism = 1;
+
+    /** index of the classes directory, built the first time it is needed */
+    private ClassIndex _classIndex;
+
+    /**
+     * the .class files of the classes directory, listed the first time they
+     * are needed and shared by every pass over that directory
+     */
+    private List<File> _classFiles;
+    private File _classFilesDir;
+
+    /**
+     * index of the jar directory. built the first time it is needed unless one
+     * was given with setJarIndex()
+     */
+    private JarIndex _jarIndex;
+
     /**
      * constructor that only initializes internal fields. use add*Deps methods
      * to populate.
      */
     public DependencyAnalyzer() {
-        _classClassDeps = new DepMap();
-        _classJarDeps = new DepMap();
-        _jarJarDeps = new DepMap();
+        _nodeTable = new FileNodeTable();
+        _classClassDeps = new DepMap(_nodeTable);
+        _classJarDeps = new DepMap(_nodeTable);
+        _jarJarDeps = new DepMap(_nodeTable);
         
         _verbose = ComponentInstaller.getVerbose();
     }
@@ -80,7 +127,21 @@ public class DependencyAnalyzer {
      * @throws IOException
      */
     public DependencyAnalyzer(File jarDir, File classDir) throws IOException {
+        this(jarDir, classDir, 1);
+    }
+
+    /**
+     * Same as DependencyAnalyzer(jarDir, classDir), but scans the .class and
+     * .jar files using the given number of threads.
+     * 
+     * @param parallelism
+     *            the number of threads to analyze files with. see
+     *            setParallelism().
+     * @throws IOException
+     */
+    public DependencyAnalyzer(File jarDir, File classDir, int parallelism) throws IOException {
         this();
+        setParallelism(parallelism);
         
         if (!jarDir.exists())
             throw new FileNotFoundException(jarDir.toString());
@@ -88,12 +149,25 @@ public class DependencyAnalyzer {
         if (!classDir.exists())
             throw new FileNotFoundException(classDir.toString());
         
-        addClassToClassDeps(classDir);
-        addClassToJarDeps(classDir, jarDir);
+        addClassDeps(classDir, jarDir);
         addJarToJarDeps(jarDir);
 
     }
 
+    /**
+     * populates both the class-to-class and class-to-jar dependencies, reading
+     * each class file in the classDir only once. Equivalent to calling
+     * addClassToClassDeps(classDir) and addClassToJarDeps(classDir, jarDir).
+     */
+    public void addClassDeps(File classDir, File jarDir) throws IOException {
+        if (jarDir == null) {
+            addClassToClassDeps(classDir);
+        } else if (classDir != null) {
+            log("DepAnalyzer: populating class-to-class and class-to-jar deps");
+            populateClassDeps(classDir, jarDir);
+        }
+    }
+
     public void addClassToClassDeps(File classDir) throws IOException {
         if (classDir != null) {
             log("DepAnalyzer: populating class-to-class deps");
@@ -118,6 +192,60 @@ public class DependencyAnalyzer {
     public void setVerbose(boolean verbose) {
         _verbose = verbose;
     }
+
+    /**
+     * sets the number of threads the add*Deps methods use to analyze files.
+     * values less than 1 are treated as 1 (analyze everything on the calling
+     * thread). Must be called before the add*Deps methods to have an effect.
+     */
+    public void setParallelism(int parallelism) {
+        _parallelism = Math.max(1, parallelism);
+    }
+
+    public int getParallelism() {
+        return _parallelism;
+    }
+
+    /**
+     * makes the analyzer use an existing index of the jar directory instead
+     * of building its own. only used for the jar directory the index was
+     * built from.
+     */
+    public synchronized void setJarIndex(JarIndex jarIndex) {
+        _jarIndex = jarIndex;
+    }
+
+    /**
+     * the index of the jar directory, building it if this analyzer hasn't
+     * already got one for that directory.
+     */
+    public synchronized JarIndex getJarIndex(File jarDir) throws IOException {
+        if (_jarIndex == null || !_jarIndex.getJarDir().equals(jarDir)) {
+            if (_verbose) log("getJarIndex: indexing jars in " + jarDir);
+            _jarIndex = buildJarIndex(jarDir);
+        }
+        return _jarIndex;
+    }
+
+    /**
+     * builds a new index of the jars in jarDir. subclasses can override this
+     * to supply the contents of jars they already know about.
+     */
+    protected JarIndex buildJarIndex(File jarDir) throws IOException {
+        return JarIndex.build(jarDir);
+    }
+
+    /**
+     * the .class files in a classes directory. the directory is only walked
+     * once; later calls for the same directory return the same list.
+     */
+    protected synchronized List<File> listClassFiles(File classDir) throws FileNotFoundException {
+        if (_classFiles == null || !_classFilesDir.equals(classDir)) {
+            _classFiles = Collections.unmodifiableList(listFiles(classDir, ".class"));
+            _classFilesDir = classDir;
+        }
+        return _classFiles;
+    }
     
     /**
      * For a .class file in this analyzer's classDir, retrieve all .class files
@@ -236,25 +364,46 @@ public class DependencyAnalyzer {
      * 
      * @throws IOException
      */
-    private void populateClassClassDeps(DepMap depMap, File classDir) throws IOException {
+    private void populateClassClassDeps(final DepMap depMap, final File classDir) throws IOException {
         // Set<File> set = findClassClassDeps(classDir, classDir);
         // log(set.toString());
         if (_verbose) log("populateClassClassDeps: Begin");
-        Iterator<File> allClassFilesIter = new FileTreeIterator(classDir);
-        while (allClassFilesIter.hasNext()) {
-            File nextFile = allClassFilesIter.next();
-            if (_verbose) log("populateClassClassDeps: analyzing file:" + nextFile.toString());
-            if (nextFile.toString().endsWith(".class")) {
-                Set<File> localDeps = findClassClassDeps(nextFile, classDir);
-                depMap.declareTarget(nextFile);
-                for (File depFile : localDeps) {
-                    depMap.add(nextFile, depFile);
-                }
+        List<File> classFiles = listClassFiles(classDir);
+        populate(classFiles, new DepScanner() {
+            public void scan(File classFile) throws IOException {
+                if (_verbose) log("populateClassClassDeps: analyzing file:" + classFile.toString());
+                depMap.setDeps(classFile, findClassClassDeps(classFile, classDir));
             }
-        }
+        });
         if (_verbose) log("populateClassClassDeps: End");
     }
 
+    /**
+     * populates the class-to-class and class-to-jar maps together, using
+     * findClassDeps() so each class file is analyzed once.
+     */
+    private void populateClassDeps(final File classDir, final File jarDir) throws IOException {
+        List<File> classFiles = listClassFiles(classDir);
+        populate(classFiles, new DepScanner() {
+            public void scan(File classFile) throws IOException {
+                if (_verbose) log("populateClassDeps: analyzing file:" + classFile.toString());
+                ClassDependencies deps = findClassDeps(classFile, classDir, jarDir);
+                _classClassDeps.setDeps(classFile, deps.getClassDeps());
+                _classJarDeps.setDeps(classFile, deps.getJarDeps());
+            }
+        });
+    }
+
+    /**
+     * for a class file, find both the other classes in the classDir and the
+     * jars in the jarDir that it depends on directly.
+     * 
+     * @throws IOException
+     */
+    protected ClassDependencies findClassDeps(File classFile, File classDir, File jarDir) throws IOException {
+        return getExtractor(classDir, jarDir).extractClassDeps(classFile);
+    }
+
     /**
      * for a class file, find the other classes in the classDir that it depends
      * on.
@@ -266,7 +415,7 @@ public class DependencyAnalyzer {
      */
     protected Set<File> findClassClassDeps(File classFile, File classDir) throws IOException {
 
-        Set<File> localDeps = JarJarWrapper.directClassToClassDependencies(classFile, classDir);
+        Set<File> localDeps = getExtractor(classDir, null).extractClassDeps(classFile).getClassDeps();
         return localDeps;
     }
 
@@ -276,19 +425,14 @@ public class DependencyAnalyzer {
      * 
      * @throws IOException
      */
-    private void populateClassJarDeps(DepMap depMap, File classDir, File jarDir) throws IOException {
-
-        Iterator<File> allClassFilesIter = new FileTreeIterator(classDir);
-        while (allClassFilesIter.hasNext()) {
-            File nextFile = allClassFilesIter.next();
-            if (nextFile.toString().endsWith(".class")) {
-                Set<File> localDeps = findClassJarDeps(nextFile, classDir, jarDir);
-                depMap.declareTarget(nextFile);
-                for (File depFile : localDeps) {
-                    depMap.add(nextFile, depFile);
-                }
+    private void populateClassJarDeps(final DepMap depMap, final File classDir, final File jarDir) throws IOException {
+
+        List<File> classFiles = listClassFiles(classDir);
+        populate(classFiles, new DepScanner() {
+            public void scan(File classFile) throws IOException {
+                depMap.setDeps(classFile, findClassJarDeps(classFile, classDir, jarDir));
             }
-        }
+        });
         return;
     }
 
@@ -303,7 +447,7 @@ public class DependencyAnalyzer {
      */
     protected Set<File> findClassJarDeps(File classFile, File classDir, File jarDir) throws IOException {
 
-        Set<File> localDeps = JarJarWrapper.directClassToJarDependencies(classFile, jarDir);
+        Set<File> localDeps = getExtractor(null, jarDir).extractClassDeps(classFile).getJarDeps();
         return localDeps;
     }
 
@@ -314,19 +458,16 @@ public class DependencyAnalyzer {
      * @throws IOException
      */
 
-    private void populateJarJarDeps(DepMap depMap, File jarDir) throws IOException {
+    private void populateJarJarDeps(final DepMap depMap, final File jarDir) throws IOException {
 
-        Iterator<File> allJarFilesIter = new FileTreeIterator(jarDir);
-        while (allJarFilesIter.hasNext()) {
-            File nextFile = allJarFilesIter.next();
-            if (nextFile.toString().endsWith(".jar")) {
-                Set<File> localDeps = findJarJarDeps(nextFile, jarDir);
-                depMap.declareTarget(nextFile);
-                for (File depFile : localDeps) {
-                    depMap.add(nextFile, depFile);
-                }
+        // use the jars of the index so that every jar a class can resolve to
+        // also has its own dependencies
+        List<File> jarFiles = getJarIndex(jarDir).getJars();
+        populate(jarFiles, new DepScanner() {
+            public void scan(File jarFile) throws IOException {
+                depMap.setDeps(jarFile, findJarJarDeps(jarFile, jarDir));
             }
-        }
+        });
         return;
     }
 
@@ -340,164 +481,109 @@ public class DependencyAnalyzer {
      */
     protected Set<File> findJarJarDeps(File jarFile, File jarDir) throws IOException {
 
-        Set<File> localDeps = JarJarWrapper.directJarToJarDependencies(jarFile, jarDir);
+        Set<File> localDeps = getExtractor(null, jarDir).extractJarDeps(jarFile);
         return localDeps;
     }
 
-    protected static void log(String msg) {
-        System.out.println("DependencyAnalyzer." + msg);
-    }
-
     /**
-     * holds dependency graph information on a set of files and can traverse the
-     * graph to find all dependencies of a particular file.
-     * 
-     * Note the DepMap can only have dependencies added to it, there is no
-     * removing a dependency after it has been added. Adding a dependency more
-     * than once has no ill effect.
+     * an extractor that resolves references against the given directories
+     * (either may be null). the index of each directory is built the first
+     * time it is asked for and reused after that.
      */
-    private class DepMap {
-
-        HashMap<File, Set<File>> _deps;
-
-        public DepMap() {
-            _deps = new HashMap<File, Set<File>>(100);
+    protected synchronized BytecodeDependencyExtractor getExtractor(File classDir, File jarDir) throws IOException {
+        ClassIndex classIndex = null;
+        if (classDir != null) {
+            if (_classIndex == null || !_classIndex.getDir().equals(classDir)) {
+                if (_verbose) log("getExtractor: indexing classes in " + classDir);
+                _classIndex = ClassIndex.forClassFiles(classDir, listClassFiles(classDir));
+            }
+            classIndex = _classIndex;
         }
-
-        /**
-         * creates an empty set of dependencies for the input target file. this
-         * should be called before calls to 'add()' that use targetFile as a
-         * target. this is especially necessary to handle situations where this
-         * DepMap is responsible for the dependencies of targetFile, but
-         * targetFile has no dependencies so it's dependencies should be an
-         * empty set and not null.
-         * 
-         * @param targetFile
-         * @throws IOException
-         */
-        public void declareTarget(File targetFile) throws IOException {
-            targetFile = targetFile.getCanonicalFile();
-            // log("DepMap.declareTarget:\n  " + targetFile.toString());
-            _deps.put(targetFile, new HashSet<File>(10));
+        JarIndex jarIndex = null;
+        if (jarDir != null) {
+            jarIndex = getJarIndex(jarDir);
         }
+        return new BytecodeDependencyExtractor(classIndex, jarIndex);
+    }
 
-        /**
-         * adds a dependency link from a target file to a file it "depends on"
-         * 
-         * @throws IOException
-         */
-        public void add(File targetFile, File dependsOnFile) throws IOException {
-            targetFile = targetFile.getCanonicalFile();
-            dependsOnFile = dependsOnFile.getCanonicalFile();
-
-            if (_deps.containsKey(targetFile)) {
-                // log("DepMap.add: \n  target   =" + targetFile.toString() +
-                // "\n  dependsOn=" + dependsOnFile.toString());
-                _deps.get(targetFile).add(dependsOnFile);
-            } else {
-                _deps.put(targetFile, new HashSet<File>(10));
-                // recurse to get back to the 'if' above
-                this.add(targetFile, dependsOnFile);
+    /**
+     * collects all regular files in a directory tree whose names end with the
+     * given suffix, from the shared snapshot of the tree.
+     */
+    private static List<File> listFiles(File dir, String suffix) throws FileNotFoundException {
+        return FileTree.get(dir).getFiles(suffix);
+    }
+
+    /**
+     * runs the scanner on every target file. If this analyzer's parallelism is
+     * greater than one, the targets are scanned on a pool of that many
+     * threads, otherwise they are scanned one at a time on the calling thread.
+     */
+    private void populate(List<File> targetFiles, final DepScanner scanner) throws IOException {
+        int numThreads = Math.min(_parallelism, targetFiles.size());
+        if (numThreads <= 1) {
+            for (File targetFile : targetFiles) {
+                scanner.scan(targetFile);
             }
             return;
         }
 
-        /**
-         * get the set of files a target file depends directly on
-         * 
-         * @throws IOException
-         */
-        public Set<File> getShallowDeps(File targetFile) throws IOException {
-            targetFile = targetFile.getCanonicalFile();
-            if (!_deps.containsKey(targetFile)) {
-                throw new IllegalArgumentException("Requesting dependencies for" + " an unknown target. This DependencyAnalyzer does not have "
-                        + "dependencies for : " + targetFile.toString());
+        if (_verbose) log("populate: analyzing " + targetFiles.size() + " files using " + numThreads + " threads");
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<Void>> results = new ArrayList<Future<Void>>(targetFiles.size());
+            for (final File targetFile : targetFiles) {
+                results.add(pool.submit(new Callable<Void>() {
+                    public Void call() throws IOException {
+                        scanner.scan(targetFile);
+                        return null;
+                    }
+                }));
             }
-            Set<File> shallowDeps = _deps.get(targetFile);
-            return shallowDeps;
-        }
-
-        /**
-         * get the aggregated set of files depended on by a set of target files.
-         * 
-         * @throws IOException
-         */
-        public Set<File> getShallowDeps(Set<File> targetFiles) throws IOException {
-            targetFiles = fileSetToAbsoluteFiles(targetFiles);
-            HashSet<File> allShallowDeps = new HashSet<File>(20);
-            for (File currentFile : targetFiles) {
-                Set<File> localDeps = getShallowDeps(currentFile);
-                allShallowDeps.addAll(localDeps);
+            for (Future<Void> result : results) {
+                waitFor(result);
             }
-            return allShallowDeps;
         }
-
-        /**
-         * find all dependencies, and all dependencies of dependencies, of a
-         * target file.
-         * 
-         * @throws IOException
-         */
-        public Set<File> getDeepDeps(File targetFile) throws IOException {
-            targetFile = targetFile.getCanonicalFile();
-            // this will be a queue to hold files whose dependencies need
-            // to be found
-            LinkedList<File> pendingQueue = new LinkedList<File>();
-            // add the target to start the dependency search
-            pendingQueue.addFirst(targetFile);
-
-            // this will hold files that have already been visited (the
-            // list of dependency files)
-            Set<File> acceptedSet = new HashSet<File>();
-            acceptedSet.add(targetFile);
-
-            while (!pendingQueue.isEmpty()) {
-                File nextFile = pendingQueue.removeLast();
-                // log("DependencyAnalyzer.getDeepDeps: processing " +
-                // nextFile.toString());
-                Set<File> localDeps = _deps.get(nextFile);
-                for (File currentDep : localDeps) {
-                    if (!acceptedSet.contains(currentDep)) {
-                        acceptedSet.add(currentDep);
-                        pendingQueue.addFirst(currentDep);
-                    }
-                }
-            }
-            return acceptedSet;
+        finally {
+            // stops any remaining work if one of the files failed
+            pool.shutdownNow();
         }
+    }
 
-        /**
-         * aggregate the deep dependencies found by getDeepDeps(File) for a set
-         * of target files.
-         * 
-         * @throws IOException
-         */
-        public Set<File> getDeepDeps(Set<File> targetFiles) throws IOException {
-            targetFiles = fileSetToAbsoluteFiles(targetFiles);
-            HashSet<File> allDeepDeps = new HashSet<File>(50);
-            for (File currentFile : targetFiles) {
-                Set<File> localDeps = getDeepDeps(currentFile);
-                allDeepDeps.addAll(localDeps);
-            }
-            return allDeepDeps;
+    /**
+     * waits for a populate task to finish, rethrowing whatever exception the
+     * task failed with.
+     */
+    private static void waitFor(Future<Void> result) throws IOException {
+        try {
+            result.get();
         }
-
-        /**
-         * returns a new Set<File>, where all the input files in relativeFiles
-         * are replaced by their absolutePath files.
-         * 
-         * @param relativeFiles
-         * @return
-         * @throws IOException
-         */
-        private Set<File> fileSetToAbsoluteFiles(Set<File> relativeFiles) throws IOException {
-            Set<File> absFiles = new HashSet<File>();
-            for (File relFile : relativeFiles) {
-                absFiles.add(relFile.getCanonicalFile());
-            }
-            return absFiles;
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while analyzing dependencies");
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new RuntimeException(cause);
         }
+    }
 
+    protected static void log(String msg) {
+        System.out.println("DependencyAnalyzer." + msg);
     }
 
+    /**
+     * finds the direct dependencies of a single .class or .jar file and
+     * records them. used by populate() so the same scheduling code serves all
+     * kinds of scans.
+     */
+    private interface DepScanner {
+        public void scan(File targetFile) throws IOException;
+    }
 }
@@ -0,0 +1,424 @@
+package org.meandre.tools.components.installer.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.meandre.tools.components.installer.ComponentInstaller;
+
+/**
+ * A persistent cache of the class names referenced by .class and .jar files,
+ * and of the classes each .jar file contains, kept in a single binary file.
+ * Used by CachingDependencyAnalyzer so unchanged files don't have to be read
+ * (or, for jars, even opened) again on the next run.
+ *
+ * <p>
+ * Each entry is keyed by the file's canonical path, so a file reached through
+ * different paths has one entry. It is fingerprinted by the file's size, last
+ * modified time and the MD5 hash of its contents. An entry is used if the size
+ * and time still match. If only the time changed (e.g. the class was
+ * recompiled to the same bytes) the contents are hashed, and the entry is
+ * still used if the hash matches. The hash is best passed in by the caller,
+ * computed while it read the file for the class names; entries stored
+ * without one have their files hashed when the cache is saved.
+ *
+ * <p>
+ * The cache stores the referenced class names rather than the files they
+ * resolve to, so the entries stay correct when other classes or jars are
+ * added or removed. Class names are written once to a string table and
+ * shared by all entries that reference them.
+ *
+ * <p>
+ * The whole file is read in one go when the cache is created, and is only
+ * rewritten by save() if something changed. Entries for files that were not
+ * looked up since the cache was loaded (i.e. files that were deleted) are
+ * dropped when it is saved. All methods are safe to call from multiple
+ * threads.
+ */
+public class DependencyCache {
+
+    /** name of the cache file within the cache directory */
+    public static final String CACHE_FILE_NAME = "dependencies.bin";
+
+    /** identifies the file format. bump the version when it changes */
+    private static final int MAGIC = 0x4D444550;
+    private static final int VERSION = 2;
+
+    /** where the cache is persisted */
+    private final File _cacheFile;
+
+    /** canonical path to entry */
+    private final Map<String, Entry> _entries;
+
+    /** paths that were looked up or stored since the cache was loaded */
+    private final Set<String> _usedPaths;
+
+    /** true if the entries differ from what is in the cache file */
+    private boolean _dirty = false;
+
+    /**
+     * paths stored since the cache was loaded, each counted once however many
+     * of its sets were stored. for reporting
+     */
+    private final Set<String> _storedPaths;
+
+    /** for reporting: entries that were current or dropped */
+    private int _numHits = 0;
+    private int _numDropped = 0;
+
+    /**
+     * loads the cache from the file if it exists. a cache file that can't be
+     * read (corrupt, or an older format) is ignored and will be overwritten
+     * on the next save.
+     */
+    public DependencyCache(File cacheFile) {
+        _cacheFile = cacheFile;
+        _entries = new HashMap<String, Entry>();
+        _usedPaths = new HashSet<String>();
+        _storedPaths = new HashSet<String>();
+        if (cacheFile.exists()) {
+            try {
+                load();
+            }
+            catch (IOException e) {
+                log("Ignoring unreadable dependency cache " + cacheFile + ": " + e.getMessage());
+                _entries.clear();
+                _dirty = true;
+            }
+        }
+    }
+
+    /**
+     * the cached class names referenced by the file, or null if there is no
+     * entry for it, the file changed since the entry was stored, or only the
+     * file's own classes were stored.
+     */
+    public Set<String> get(File file) throws IOException {
+        Entry entry = getCurrentEntry(file);
+        return entry == null ? null : countHit(entry._classNames);
+    }
+
+    /**
+     * the cached names of the classes contained in a jar file, or null if
+     * they aren't known for the jar's current contents.
+     */
+    public Set<String> getDefinedClassNames(File file) throws IOException {
+        Entry entry = getCurrentEntry(file);
+        return entry == null ? null : countHit(entry._definedClassNames);
+    }
+
+    /**
+     * stores the class names referenced by the file, fingerprinted by the
+     * file's current size and time. the contents are hashed when the cache
+     * is saved.
+     */
+    public void put(File file, Set<String> classNames) throws IOException {
+        update(file, classNames, null, null);
+    }
+
+    /**
+     * stores the class names referenced by the file, with the MD5 hash of the
+     * contents they were read from, so the file isn't read again to hash it.
+     */
+    public void put(File file, Set<String> classNames, byte[] md5) throws IOException {
+        update(file, classNames, null, md5);
+    }
+
+    /**
+     * stores the names of the classes contained in a jar file. they only take
+     * reading the jar's central directory, so the contents are hashed by a
+     * later put() of the jar's references, or else when the cache is saved.
+     */
+    public void putDefinedClassNames(File file, Set<String> definedClassNames) throws IOException {
+        update(file, null, definedClassNames, null);
+    }
+
+    /**
+     * the entry of the file if it still matches the file on disk. an entry
+     * whose time changed but whose contents didn't is updated to the new
+     * time.
+     */
+    private Entry getCurrentEntry(File file) throws IOException {
+        String path = file.getCanonicalPath();
+        Entry entry;
+        synchronized (this) {
+            entry = _entries.get(path);
+            _usedPaths.add(path);
+        }
+        if (entry == null) {
+            return null;
+        }
+        long size = file.length();
+        long lastModified = file.lastModified();
+        if (size != entry._size) {
+            return null;
+        }
+        if (lastModified != entry._lastModified) {
+            // touched, but maybe not changed
+            if (entry._md5 == null || !Arrays.equals(entry._md5, FileUtil.md5(file))) {
+                return null;
+            }
+            Entry touched = new Entry(size, lastModified, entry._md5, entry._classNames, entry._definedClassNames);
+            synchronized (this) {
+                if (_entries.get(path) == entry) {
+                    _entries.put(path, touched);
+                    _dirty = true;
+                }
+            }
+            entry = touched;
+        }
+        return entry;
+    }
+
+    /** counts a lookup answered from the cache, if the names were there */
+    private synchronized Set<String> countHit(Set<String> classNames) {
+        if (classNames != null) {
+            _numHits++;
+        }
+        return classNames;
+    }
+
+    /**
+     * stores whichever of the two sets is not null. the other set, and the
+     * hash if md5 is null, are kept if the existing entry is for the same
+     * version of the file.
+     */
+    private void update(File file, Set<String> classNames, Set<String> definedClassNames, byte[] md5) throws IOException {
+        String path = file.getCanonicalPath();
+        long size = file.length();
+        long lastModified = file.lastModified();
+        synchronized (this) {
+            Entry old = _entries.get(path);
+            if (old != null && old._size == size && old._lastModified == lastModified) {
+                if (md5 == null) {
+                    md5 = old._md5;
+                }
+                if (classNames == null) {
+                    classNames = old._classNames;
+                }
+                if (definedClassNames == null) {
+                    definedClassNames = old._definedClassNames;
+                }
+            }
+            _entries.put(path, new Entry(size, lastModified, md5, classNames, definedClassNames));
+            _usedPaths.add(path);
+            _storedPaths.add(path);
+            _dirty = true;
+        }
+    }
+
+    /** the number of entries currently in the cache */
+    public synchronized int size() {
+        return _entries.size();
+    }
+
+    /**
+     * writes the cache back to its file if it changed. the file is written
+     * under a temporary name and then renamed over the old one, so an
+     * interrupted save leaves the previous cache intact.
+     */
+    public synchronized void save() throws IOException {
+        int numEntries = _entries.size();
+        if (_entries.keySet().retainAll(_usedPaths)) {
+            _numDropped += numEntries - _entries.size();
+            _dirty = true;
+        }
+        if (!_dirty) {
+            return;
+        }
+        hashUnhashedEntries();
+
+        // give every class name an id, in the order they're first seen
+        Map<String, Integer> nameIds = new HashMap<String, Integer>();
+        for (Entry entry : _entries.values()) {
+            addNameIds(entry._classNames, nameIds);
+            addNameIds(entry._definedClassNames, nameIds);
+        }
+        String[] names = new String[nameIds.size()];
+        for (Map.Entry<String, Integer> nameId : nameIds.entrySet()) {
+            names[nameId.getValue()] = nameId.getKey();
+        }
+
+        File tmpFile = new File(_cacheFile.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 64 * 1024));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(names.length);
+            for (String name : names) {
+                out.writeUTF(name);
+            }
+            out.writeInt(_entries.size());
+            for (Map.Entry<String, Entry> pathEntry : _entries.entrySet()) {
+                Entry entry = pathEntry.getValue();
+                out.writeUTF(pathEntry.getKey());
+                out.writeLong(entry._size);
+                out.writeLong(entry._lastModified);
+                out.write(entry._md5);
+                writeNames(out, entry._classNames, nameIds);
+                writeNames(out, entry._definedClassNames, nameIds);
+            }
+        }
+        finally {
+            out.close();
+        }
+        FileUtil.renameOver(tmpFile, _cacheFile);
+        _dirty = false;
+    }
+
+    /**
+     * hashes the files of the entries that were stored without a hash. an
+     * entry whose file changed or went away since is dropped, to be read
+     * again next time.
+     */
+    private void hashUnhashedEntries() throws IOException {
+        Iterator<Map.Entry<String, Entry>> pathEntries = _entries.entrySet().iterator();
+        while (pathEntries.hasNext()) {
+            Map.Entry<String, Entry> pathEntry = pathEntries.next();
+            Entry entry = pathEntry.getValue();
+            if (entry._md5 != null) {
+                continue;
+            }
+            File file = new File(pathEntry.getKey());
+            if (!file.isFile() || file.length() != entry._size || file.lastModified() != entry._lastModified) {
+                pathEntries.remove();
+                continue;
+            }
+            pathEntry.setValue(new Entry(entry._size, entry._lastModified, FileUtil.md5(file), entry._classNames, entry._definedClassNames));
+        }
+    }
+
+    /**
+     * reads the whole cache file with a single read and parses it. counts and
+     * name ids are checked, so a corrupt file fails with an IOException.
+     */
+    private void load() throws IOException {
+        byte[] bytes = new byte[(int) _cacheFile.length()];
+        DataInputStream fileIn = new DataInputStream(new FileInputStream(_cacheFile));
+        try {
+            fileIn.readFully(bytes);
+        }
+        finally {
+            fileIn.close();
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("not a dependency cache, or an old version of one");
+        }
+        // every name takes at least two bytes
+        int numNames = in.readInt();
+        if (numNames < 0 || numNames > in.available() / 2) {
+            throw new IOException("corrupt dependency cache: bad name count " + numNames);
+        }
+        String[] names = new String[numNames];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = in.readUTF();
+        }
+        int numEntries = in.readInt();
+        if (numEntries < 0) {
+            throw new IOException("corrupt dependency cache: bad entry count " + numEntries);
+        }
+        for (int i = 0; i < numEntries; i++) {
+            String path = in.readUTF();
+            long size = in.readLong();
+            long lastModified = in.readLong();
+            byte[] md5 = new byte[16];
+            in.readFully(md5);
+            Set<String> classNames = readNames(in, names);
+            Set<String> definedClassNames = readNames(in, names);
+            _entries.put(path, new Entry(size, lastModified, md5, classNames, definedClassNames));
+        }
+    }
+
+    /**
+     * a one line summary of how much of the cache was used since it was
+     * loaded, e.g. for the installer's log
+     */
+    public synchronized String getSummary() {
+        return _numHits + " lookups answered from the cache, " + _storedPaths.size() + " files (re)read, " + _numDropped + " deleted files removed";
+    }
+
+    private static void addNameIds(Set<String> classNames, Map<String, Integer> nameIds) {
+        if (classNames == null) {
+            return;
+        }
+        for (String className : classNames) {
+            if (!nameIds.containsKey(className)) {
+                nameIds.put(className, nameIds.size());
+            }
+        }
+    }
+
+    /** writes a set of names as ids. a null set is written as -1 */
+    private static void writeNames(DataOutputStream out, Set<String> classNames, Map<String, Integer> nameIds) throws IOException {
+        if (classNames == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(classNames.size());
+        for (String className : classNames) {
+            out.writeInt(nameIds.get(className));
+        }
+    }
+
+    private static Set<String> readNames(DataInputStream in, String[] names) throws IOException {
+        int numNames = in.readInt();
+        if (numNames == -1) {
+            return null;
+        }
+        // every id takes four bytes
+        if (numNames < 0 || numNames > in.available() / 4) {
+            throw new IOException("corrupt dependency cache: bad name count " + numNames);
+        }
+        Set<String> classNames = new HashSet<String>(numNames * 2);
+        for (int j = 0; j < numNames; j++) {
+            int id = in.readInt();
+            if (id < 0 || id >= names.length) {
+                throw new IOException("corrupt dependency cache: bad name id " + id);
+            }
+            classNames.add(names[id]);
+        }
+        return classNames;
+    }
+
+    private static void log(String msg) {
+        if (ComponentInstaller.getVerbose())
+            System.out.println("DependencyCache." + msg);
+    }
+
+    /**
+     * what is known about one file. either set of names may be null if it
+     * hasn't been stored for this version of the file.
+     */
+    private static class Entry {
+
+        final long _size;
+        final long _lastModified;
+        /** null until the file is hashed */
+        final byte[] _md5;
+        /** classes referenced by the file */
+        final Set<String> _classNames;
+        /** classes contained in the file, for jars */
+        final Set<String> _definedClassNames;
+
+        Entry(long size, long lastModified, byte[] md5, Set<String> classNames, Set<String> definedClassNames) {
+            _size = size;
+            _lastModified = lastModified;
+            _md5 = md5;
+            _classNames = classNames;
+            _definedClassNames = definedClassNames;
+        }
+    }
+}
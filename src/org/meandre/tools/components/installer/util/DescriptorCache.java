@@ -0,0 +1,189 @@
+package org.meandre.tools.components.installer.util;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.security.CodeSource;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.Properties;
+
+/**
+ * Remembers, for each RDF descriptor in a directory, the class file it was
+ * generated from, so a descriptor is only generated again if the class
+ * changed. Kept as a properties file in the descriptor directory. For each
+ * descriptor it records the MD5 hash of the class file and those of its
+ * superclasses (see hashClass), the version of the generator, and the size
+ * and time of the descriptor as it was written.
+ *
+ * <p>
+ * A descriptor is current if the class has the same hash, the generator has
+ * the same version (see getVersionOf), and the descriptor file still has the
+ * same size and time, i.e. nobody changed or deleted it since. Current
+ * descriptors are not written again, so their times only change when their
+ * contents do.
+ *
+ * <p>
+ * All methods are safe to call from multiple threads.
+ */
+public class DescriptorCache {
+
+    /** name of the cache file within the descriptor directory */
+    public static final String CACHE_FILE_NAME = "descriptor-cache.properties";
+
+    private final File _cacheFile;
+    private final String _generatorVersion;
+
+    /** descriptor file name to "class hash generator size time" */
+    private final Properties _entries = new Properties();
+
+    private boolean _dirty = false;
+
+    /**
+     * loads the cache of a descriptor directory if it has one. a cache file
+     * that can't be read is ignored, so every descriptor is generated again.
+     *
+     * @param generatorVersion
+     *            identifies the code that generates the descriptors, see
+     *            getVersionOf
+     */
+    public DescriptorCache(File descriptorDir, String generatorVersion) {
+        _cacheFile = new File(descriptorDir, CACHE_FILE_NAME);
+        _generatorVersion = generatorVersion;
+        if (_cacheFile.exists()) {
+            try {
+                InputStream in = new FileInputStream(_cacheFile);
+                try {
+                    _entries.load(in);
+                }
+                finally {
+                    in.close();
+                }
+            }
+            catch (IOException e) {
+                System.err.println("WARNING: ignoring unreadable descriptor cache " + _cacheFile + ": " + e.getMessage());
+                _entries.clear();
+            }
+        }
+    }
+
+    /**
+     * true if the descriptor file was generated from a class with the given
+     * hash by this version of the generator, and hasn't changed since.
+     */
+    public synchronized boolean isCurrent(File rdfFile, String classHash) {
+        return getEntry(rdfFile, classHash).equals(_entries.getProperty(rdfFile.getName()));
+    }
+
+    /**
+     * records that the descriptor file was just generated from a class with
+     * the given hash.
+     */
+    public synchronized void put(File rdfFile, String classHash) {
+        _entries.setProperty(rdfFile.getName(), getEntry(rdfFile, classHash));
+        _dirty = true;
+    }
+
+    private String getEntry(File rdfFile, String classHash) {
+        return classHash + " " + _generatorVersion + " " + rdfFile.length() + " " + rdfFile.lastModified();
+    }
+
+    /** writes the cache back to its file, if anything was put */
+    public synchronized void save() throws IOException {
+        if (!_dirty) {
+            return;
+        }
+        File tmpFile = new File(_cacheFile.getPath() + ".tmp");
+        OutputStream out = new FileOutputStream(tmpFile);
+        try {
+            _entries.store(out, "the class each descriptor was generated from, see " + DescriptorCache.class.getName());
+        }
+        finally {
+            out.close();
+        }
+        FileUtil.renameOver(tmpFile, _cacheFile);
+        _dirty = false;
+    }
+
+    /**
+     * the hex MD5 hash of the class file of a class and the class files of its
+     * superclasses, which the descriptor gets inherited fields from. they are
+     * read with the class loader, so a superclass in a jar counts too. the
+     * JDK classes (java.*) are left out, they have no component fields.
+     */
+    public static String hashClass(String className, ClassLoader classLoader) throws IOException {
+        MessageDigest digest = FileUtil.createMD5Digest();
+        byte[] buffer = new byte[16 * 1024];
+        String name = className.replace('.', '/');
+        while (name != null && !name.startsWith("java/")) {
+            InputStream in = classLoader.getResourceAsStream(name + ".class");
+            if (in == null) {
+                throw new IOException("Could not find the class file of " + name.replace('/', '.'));
+            }
+            try {
+                DigestInputStream digestIn = new DigestInputStream(new BufferedInputStream(in), digest);
+                name = new ClassFileReader(digestIn).getSuperClassName();
+                // the rest of the class file
+                while (digestIn.read(buffer) != -1) {
+                }
+            }
+            finally {
+                in.close();
+            }
+        }
+        return FileUtil.toHex(digest.digest());
+    }
+
+    /** the hex MD5 hash of a class file, or any other file */
+    public static String hash(File file) throws IOException {
+        return FileUtil.toHex(FileUtil.md5(file));
+    }
+
+    /** the hex MD5 hash of the rest of a stream. the stream is not closed */
+    public static String hash(InputStream in) throws IOException {
+        MessageDigest digest = FileUtil.createMD5Digest();
+        byte[] buffer = new byte[16 * 1024];
+        int numRead;
+        while ((numRead = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, numRead);
+        }
+        return FileUtil.toHex(digest.digest());
+    }
+
+    /**
+     * a version for the code of a class: the hash of the jar it was loaded
+     * from, so any change to the library changes it, or, if it wasn't loaded
+     * from a jar, the hash of its own class file.
+     */
+    public static String getVersionOf(Class<?> klass) throws IOException {
+        CodeSource codeSource = klass.getProtectionDomain().getCodeSource();
+        if (codeSource != null && codeSource.getLocation() != null) {
+            URL location = codeSource.getLocation();
+            if ("file".equals(location.getProtocol()) && location.getPath().endsWith(".jar")) {
+                try {
+                    return hash(new File(location.toURI()));
+                }
+                catch (URISyntaxException e) {
+                    // hash the class file instead
+                }
+            }
+        }
+        String className = klass.getName();
+        InputStream in = klass.getResourceAsStream(className.substring(className.lastIndexOf('.') + 1) + ".class");
+        if (in == null) {
+            throw new IOException("Could not find the class file of " + className);
+        }
+        try {
+            return hash(in);
+        }
+        finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package org.meandre.tools.components.installer.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gives every file in a dependency graph a small integer id, so the graph can
+ * be stored as arrays of ints (see DepMap) instead of sets of Files.
+ *
+ * <p>
+ * Files are identified by their canonical path, but getCanonicalFile() goes to
+ * the filesystem, so each distinct path is only canonicalized the first time
+ * it is seen. After that its id is found with a hash lookup on the path
+ * string. One table is shared by all the DepMaps of a DependencyAnalyzer.
+ *
+ * <p>
+ * Ids are handed out in order from 0 and never change. Safe to use from
+ * multiple threads.
+ */
+class FileNodeTable {
+
+    /** the canonical file of each id */
+    private final List<File> _files = new ArrayList<File>(1000);
+
+    /** canonical file to id */
+    private final Map<File, Integer> _canonicalIds = new HashMap<File, Integer>(2000);
+
+    /** every path (canonical or not) seen so far, to id */
+    private final Map<String, Integer> _pathIds = new HashMap<String, Integer>(2000);
+
+    /**
+     * the id of a file, adding it to the table if it's new.
+     */
+    int getId(File file) throws IOException {
+        String path = file.getPath();
+        synchronized (this) {
+            Integer id = _pathIds.get(path);
+            if (id != null) {
+                return id;
+            }
+        }
+        // canonicalize outside the lock, it's the slow part
+        File canonicalFile = file.getCanonicalFile();
+        synchronized (this) {
+            Integer id = _canonicalIds.get(canonicalFile);
+            if (id == null) {
+                id = _files.size();
+                _files.add(canonicalFile);
+                _canonicalIds.put(canonicalFile, id);
+                _pathIds.put(canonicalFile.getPath(), id);
+            }
+            _pathIds.put(path, id);
+            return id;
+        }
+    }
+
+    /**
+     * the id of a file, or -1 if it isn't in the table.
+     */
+    int findId(File file) throws IOException {
+        String path = file.getPath();
+        synchronized (this) {
+            Integer id = _pathIds.get(path);
+            if (id != null) {
+                return id;
+            }
+        }
+        File canonicalFile = file.getCanonicalFile();
+        synchronized (this) {
+            Integer id = _canonicalIds.get(canonicalFile);
+            if (id == null) {
+                return -1;
+            }
+            _pathIds.put(path, id);
+            return id;
+        }
+    }
+
+    /** the canonical file with the given id */
+    synchronized File getFile(int id) {
+        return _files.get(id);
+    }
+
+    /** the number of files in the table, one more than the highest id */
+    synchronized int size() {
+        return _files.size();
+    }
+}
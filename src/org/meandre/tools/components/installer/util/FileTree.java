@@ -0,0 +1,199 @@
+package org.meandre.tools.components.installer.util;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A snapshot of the files and directories in a directory tree, taken with a
+ * single walk (see FileTreeIterator). The files are in the same breadth first
+ * order that FileTreeIterator returns them in.
+ *
+ * <p>
+ * The installer, the dependency analyzer and FileUtil all need the contents
+ * of the same class and jar directories, several times per run. get() shares
+ * one snapshot of each directory between them, and walks the directory again
+ * only if it changed: adding, removing or renaming a file changes the last
+ * modified time of its directory, so a snapshot is reused as long as the
+ * times of all its directories are the same as when it was taken. Changes to
+ * the contents of the files don't matter to a snapshot.
+ *
+ * <p>
+ * Snapshots are immutable (findFile builds its index once) and all methods
+ * are safe to call from multiple threads.
+ */
+public class FileTree {
+
+    /**
+     * directories changed this recently (in ms) before a snapshot was taken
+     * may change again within the same tick of a coarse filesystem clock, so
+     * their snapshot is not reused.
+     */
+    private static final long CLOCK_GRANULARITY = 2000;
+
+    /** the shared snapshots, by absolute path of their root */
+    private static final Map<String, FileTree> _shared = new HashMap<String, FileTree>();
+
+    private final File _root;
+    private final List<File> _files;
+    private final List<File> _dirs;
+
+    /** the last modified time of each of the _dirs */
+    private final long[] _dirTimes;
+
+    /** when the snapshot was taken */
+    private final long _walkTime;
+
+    /** file name to the files with that name, breadth first. see findFile */
+    private Map<String, List<File>> _nameIndex;
+
+    private FileTree(File root, List<File> files, List<File> dirs, long[] dirTimes, long walkTime) {
+        _root = root;
+        _files = Collections.unmodifiableList(files);
+        _dirs = Collections.unmodifiableList(dirs);
+        _dirTimes = dirTimes;
+        _walkTime = walkTime;
+    }
+
+    /**
+     * a new snapshot of a directory tree, not shared.
+     *
+     * @throws FileNotFoundException
+     *             if the directory doesn't exist
+     */
+    public static FileTree walk(File dir) throws FileNotFoundException {
+        if (!dir.exists()) {
+            throw new FileNotFoundException("Could not traverse directory, it" + " does not exist :: " + dir.toString());
+        }
+        long walkTime = System.currentTimeMillis();
+        List<File> files = new ArrayList<File>();
+        List<File> dirs = new ArrayList<File>();
+        LinkedList<File> dirsToVisit = new LinkedList<File>();
+        LinkedList<File> dirFiles = new LinkedList<File>();
+        dirsToVisit.add(dir);
+        while (!dirsToVisit.isEmpty()) {
+            File visitDir = dirsToVisit.removeFirst();
+            dirs.add(visitDir);
+            FileTreeIterator.listDir(visitDir, null, dirFiles, dirsToVisit);
+            files.addAll(dirFiles);
+            dirFiles.clear();
+        }
+        long[] dirTimes = new long[dirs.size()];
+        for (int i = 0; i < dirTimes.length; i++) {
+            dirTimes[i] = dirs.get(i).lastModified();
+        }
+        return new FileTree(dir, files, dirs, dirTimes, walkTime);
+    }
+
+    /**
+     * the shared snapshot of a directory tree, walked again if the tree
+     * changed since the last call.
+     *
+     * @throws FileNotFoundException
+     *             if the directory doesn't exist
+     */
+    public static FileTree get(File dir) throws FileNotFoundException {
+        String key = dir.getAbsolutePath();
+        FileTree tree;
+        synchronized (_shared) {
+            tree = _shared.get(key);
+        }
+        if (tree != null && tree.isCurrent()) {
+            return tree;
+        }
+        tree = walk(dir);
+        synchronized (_shared) {
+            _shared.put(key, tree);
+        }
+        return tree;
+    }
+
+    /**
+     * true if no directory of the tree was modified since the snapshot was
+     * taken (so no file was added or removed).
+     */
+    public boolean isCurrent() {
+        for (int i = 0; i < _dirTimes.length; i++) {
+            long lastModified = _dirs.get(i).lastModified();
+            if (lastModified != _dirTimes[i] || lastModified > _walkTime - CLOCK_GRANULARITY) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** the directory the snapshot is of */
+    public File getRoot() {
+        return _root;
+    }
+
+    /** all regular files in the tree, breadth first */
+    public List<File> getFiles() {
+        return _files;
+    }
+
+    /** the files in the tree whose names end with the suffix, breadth first */
+    public List<File> getFiles(String suffix) {
+        List<File> files = new ArrayList<File>();
+        for (File file : _files) {
+            if (file.getName().endsWith(suffix)) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * the first file, breadth first, whose path ends with the base name,
+     * e.g. "jena.jar" or "images/logo.png". null if there is none.
+     *
+     * <p>
+     * files are looked up by their name (the last part of the base name) in
+     * an index of the snapshot, built on the first call, so a lookup doesn't
+     * go through all the files. a base name that is not the whole name of a
+     * file (e.g. "ena.jar") is looked for the slow way.
+     */
+    public File findFile(String baseName) {
+        String name = baseName.substring(Math.max(baseName.lastIndexOf('/'), baseName.lastIndexOf(File.separatorChar)) + 1);
+        List<File> namedFiles = getNameIndex().get(name);
+        if (namedFiles != null) {
+            for (File file : namedFiles) {
+                if (file.toString().endsWith(baseName)) {
+                    return file;
+                }
+            }
+        }
+        for (File file : _files) {
+            if (file.toString().endsWith(baseName)) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    private synchronized Map<String, List<File>> getNameIndex() {
+        if (_nameIndex == null) {
+            Map<String, List<File>> nameIndex = new HashMap<String, List<File>>(_files.size() * 2);
+            for (File file : _files) {
+                List<File> namedFiles = nameIndex.get(file.getName());
+                if (namedFiles == null) {
+                    namedFiles = new ArrayList<File>(1);
+                    nameIndex.put(file.getName(), namedFiles);
+                }
+                namedFiles.add(file);
+            }
+            _nameIndex = nameIndex;
+        }
+        return _nameIndex;
+    }
+
+    /** all directories in the tree, starting with the root, breadth first */
+    public List<File> getDirectories() {
+        return _dirs;
+    }
+}
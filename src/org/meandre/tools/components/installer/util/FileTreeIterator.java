@@ -1,6 +1,7 @@
 package org.meandre.tools.components.installer.util;
 
 import java.io.File;
+import java.io.FileFilter;
 import java.io.FileNotFoundException;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -9,17 +10,23 @@ import java.util.LinkedList;
  * Breadth first search over all files in a directory and it's subdirectories.
  * therefore returns all files with depth 'n' before returning those with depth
  * 'n+1'.
- * 
+ *
  * Only returns regular files: will never give a File representing a directory
  * as a result from the next() method.
- * 
+ *
+ * <p>
+ * The walk is lazy: a directory is only listed when the files before it have
+ * been returned, and each directory is listed once, with one stat per entry
+ * to tell files from directories. For a walk that is needed more than once,
+ * see FileTree.
+ *
  * @author Peter Groves
  */
 
 public class FileTreeIterator implements Iterator<File> {
 
-    /** used to navigate the directory structure */
-    DirectoryTreeIterator _dirIterator;
+    /** directories found but not listed yet, in the order to list them */
+    LinkedList<File> _dirsToVisit;
 
     /**
      * contains the regular files in the directory currently being visited.
@@ -27,6 +34,9 @@ public class FileTreeIterator implements Iterator<File> {
      */
     LinkedList<File> _currentDirContents;
 
+    /** only files whose names end with this are returned, if not null */
+    String _suffix;
+
     /**
      * to support hasNext() on a set of unknown size, this iterator must
      * internally store the File to be returned on the following call. This
@@ -38,26 +48,29 @@ public class FileTreeIterator implements Iterator<File> {
     /**
      * create an iterator over all files in the subdirectory of the input
      * directory treeDir.
-     * 
+     *
      * @throws FileNotFoundException
      */
     public FileTreeIterator(File treeDir) throws FileNotFoundException {
-        _dirIterator = new DirectoryTreeIterator(treeDir);
-        _currentDirContents = new LinkedList<File>();
-        _lookahead = null;
-
-        // advance to the first dir in the tree that has at least one regular
-        // file
-        while ((_currentDirContents.size() == 0) && (_dirIterator.hasNext())) {
-            populateDirContents(_dirIterator.next());
-        }
+        this(treeDir, null);
+    }
 
-        if (_currentDirContents.size() == 0) {
-            // leaving lookahead null indicates there are no files
-            return;
+    /**
+     * create an iterator over the files in the tree whose names end with the
+     * suffix (e.g. ".class"). the other files are passed over as their
+     * directory is listed.
+     *
+     * @throws FileNotFoundException
+     */
+    public FileTreeIterator(File treeDir, String suffix) throws FileNotFoundException {
+        if (!treeDir.exists()) {
+            throw new FileNotFoundException("Could not traverse directory, it" + " does not exist :: " + treeDir.toString());
         }
-
-        _lookahead = _currentDirContents.removeFirst();
+        _dirsToVisit = new LinkedList<File>();
+        _dirsToVisit.add(treeDir);
+        _currentDirContents = new LinkedList<File>();
+        _suffix = suffix;
+        _lookahead = advance();
     }
 
     public boolean hasNext() {
@@ -66,17 +79,7 @@ public class FileTreeIterator implements Iterator<File> {
 
     public File next() {
         File retFile = _lookahead;
-        _lookahead = null;
-
-        // advance to the next dir in the tree that has at least one regular
-        // file
-        while ((_currentDirContents.size() == 0) && (_dirIterator.hasNext())) {
-            populateDirContents(_dirIterator.next());
-        }
-
-        if (_currentDirContents.size() > 0) {
-            _lookahead = _currentDirContents.removeFirst();
-        }
+        _lookahead = advance();
         return retFile;
     }
 
@@ -89,18 +92,35 @@ public class FileTreeIterator implements Iterator<File> {
     }
 
     /**
-     * for the input directory, add any regular files (not directories) to this
-     * class instance's _currentDirContents.
+     * the next file, listing directories until one has a file to return.
+     * null if there are no more.
      */
-    private void populateDirContents(File dirFile) {
-        assert (dirFile.isDirectory());
-        File[] contents = dirFile.listFiles();
-        for (int i = 0; i < contents.length; i++) {
-            if (contents[i].isFile()) {
-                _currentDirContents.addLast(contents[i]);
-            }
+    private File advance() {
+        while (_currentDirContents.isEmpty() && !_dirsToVisit.isEmpty()) {
+            listDir(_dirsToVisit.removeFirst(), _suffix, _currentDirContents, _dirsToVisit);
         }
-        return;
+        return _currentDirContents.isEmpty() ? null : _currentDirContents.removeFirst();
+    }
+
+    /**
+     * lists a directory in a single pass, adding its regular files (those
+     * ending with the suffix, if it isn't null) to files and its
+     * subdirectories to dirs.
+     */
+    static void listDir(File dir, final String suffix, final LinkedList<File> files, final LinkedList<File> dirs) {
+        // the filter sorts the entries as they are listed, so each is only
+        // stat'ed once (twice for a directory with the suffix in its name)
+        dir.listFiles(new FileFilter() {
+            public boolean accept(File entry) {
+                boolean hasSuffix = suffix == null || entry.getName().endsWith(suffix);
+                if (hasSuffix && entry.isFile()) {
+                    files.addLast(entry);
+                } else if (entry.isDirectory()) {
+                    dirs.addLast(entry);
+                }
+                return false;
+            }
+        });
     }
 
 }
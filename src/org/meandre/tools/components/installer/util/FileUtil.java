@@ -6,27 +6,58 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class FileUtil {
 
+    /**
+     * copies a file, keeping its last modified time. the bytes are moved by
+     * the filesystem (FileChannel.transferTo) where it can, without passing
+     * through a buffer here.
+     * 
+     * @throws IOException
+     *             if the source can't be read or the destination written
+     */
     public static void copy(File source, File destination) throws IOException {
 
-        InputStream in = new FileInputStream(source);
-        OutputStream out = new FileOutputStream(destination);
-
-        byte[] buf = new byte[1024];
-        int len;
-        while ((len = in.read(buf)) > 0) {
-            out.write(buf, 0, len);
+        FileInputStream in = new FileInputStream(source);
+        try {
+            FileOutputStream out = new FileOutputStream(destination);
+            try {
+                FileChannel inChannel = in.getChannel();
+                FileChannel outChannel = out.getChannel();
+                long size = inChannel.size();
+                long position = 0;
+                while (position < size) {
+                    long numCopied = inChannel.transferTo(position, size - position, outChannel);
+                    if (numCopied <= 0) {
+                        // the source was truncated while it was copied
+                        break;
+                    }
+                    position += numCopied;
+                }
+            }
+            finally {
+                out.close();
+            }
         }
-        in.close();
-        out.close();
-
+        finally {
+            in.close();
+        }
+        destination.setLastModified(source.lastModified());
     }
 
     /**
@@ -51,62 +82,114 @@ public class FileUtil {
 
     }
 
+    /**
+     * copies a directory, with everything in it, into destinationDir (so the
+     * copy is destinationDir/dir.getName()). files and directories keep their
+     * last modified times.
+     */
     public static void copyRecursive(File dir, File destinationDir) throws IOException {
+        copyRecursive(dir, destinationDir, 1);
+    }
+
+    /**
+     * same as copyRecursive(dir, destinationDir), but copies the files with
+     * the given number of threads. the tree is walked once, on the calling
+     * thread, and each directory is made before the files in it are copied.
+     * 
+     * @throws IOException
+     *             the first failure, once all the other files are copied
+     */
+    public static void copyRecursive(File dir, File destinationDir, int numThreads) throws IOException {
 
         assert (dir.exists());
         assert (dir.isDirectory());
         assert (destinationDir.exists());
         assert (destinationDir.isDirectory());
 
-        // we want the file copies to include (start with) the name
-        // of the source directory, so we need to be able to make
-        // relative paths vs. the source directory's parent
-        File sourceParentDir = dir.getParentFile();
-
-        // copy the directory tree structure. the iterator is top to
-        // bottom, so higher level dirs will be made before attempting
-        // their children
-        Iterator<File> sourceDirIter = new DirectoryTreeIterator(dir);
-        while (sourceDirIter.hasNext()) {
-            File nextSrcDir = sourceDirIter.next();
-            String relPath = toRelativePath(nextSrcDir, sourceParentDir);
-            File destDir = new File(destinationDir, relPath);
-            destDir.mkdir();
-        }
-
-        // with the directory tree copied, the regular files can be
-        // folded in
-        Iterator<File> sourceFileIter = new FileTreeIterator(dir);
-        while (sourceFileIter.hasNext()) {
-            File nextSrcFile = sourceFileIter.next();
-            String relPath = toRelativePath(nextSrcFile, sourceParentDir);
-            File destFile = new File(destinationDir, relPath);
-            copy(nextSrcFile, destFile);
-        }
-        return;
+        ExecutorService copiers = null;
+        List<Future<?>> copies = new ArrayList<Future<?>>();
+        if (numThreads > 1) {
+            copiers = Executors.newFixedThreadPool(numThreads);
+        }
+        // source and copy of every directory, top to bottom
+        List<File[]> dirCopies = new ArrayList<File[]>();
+        IOException failure = null;
+        try {
+            LinkedList<File[]> toWalk = new LinkedList<File[]>();
+            toWalk.add(new File[] { dir, new File(destinationDir, dir.getName()) });
+            while (!toWalk.isEmpty()) {
+                File[] dirCopy = toWalk.removeFirst();
+                dirCopy[1].mkdir();
+                dirCopies.add(dirCopy);
+                File[] children = dirCopy[0].listFiles();
+                if (children == null) {
+                    throw new IOException("Could not list directory " + dirCopy[0]);
+                }
+                for (final File child : children) {
+                    final File childCopy = new File(dirCopy[1], child.getName());
+                    if (child.isDirectory()) {
+                        toWalk.add(new File[] { child, childCopy });
+                    } else if (copiers == null) {
+                        copy(child, childCopy);
+                    } else {
+                        copies.add(copiers.submit(new Callable<Object>() {
+                            public Object call() throws IOException {
+                                copy(child, childCopy);
+                                return null;
+                            }
+                        }));
+                    }
+                }
+            }
+        }
+        catch (IOException e) {
+            failure = e;
+        }
+        finally {
+            if (copiers != null) {
+                copiers.shutdown();
+            }
+        }
 
+        for (Future<?> copy : copies) {
+            try {
+                copy.get();
+            }
+            catch (InterruptedException e) {
+                copiers.shutdownNow();
+                throw new InterruptedIOException("Interrupted while copying " + dir);
+            }
+            catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException("Could not copy " + dir + ": "
+                            + e.getCause());
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+
+        // copying into the directories changed their times, so set them
+        // last, bottom to top
+        for (int i = dirCopies.size() - 1; i >= 0; i--) {
+            File[] dirCopy = dirCopies.get(i);
+            dirCopy[1].setLastModified(dirCopy[0].lastModified());
+        }
     }
 
     /** rm -rf */
     public static void deleteDirRecursive(File dir) throws IOException {
+        FileTree tree = FileTree.walk(dir);
         // get rid of the regular files
-        Iterator<File> regFilesIter = new FileTreeIterator(dir);
-        while (regFilesIter.hasNext()) {
-            regFilesIter.next().delete();
+        for (File file : tree.getFiles()) {
+            file.delete();
         }
-
-        // collect the directories, the iterator returns them from top
-        // to bottom, we'll have to delete them bottum to top (only empty
-        // directories can be deleted)
-        Iterator<File> dirIter = new DirectoryTreeIterator(dir);
-        LinkedList<File> dirStack = new LinkedList<File>();
-        while (dirIter.hasNext()) {
-            dirStack.addFirst(dirIter.next());
-        }
-        // now delete in order of the list
-        while (dirStack.size() > 0) {
-            File nextFile = dirStack.removeFirst();
-            nextFile.delete();
+        // the directories are listed from top to bottom, delete them bottom
+        // to top (only empty directories can be deleted)
+        List<File> dirs = tree.getDirectories();
+        for (int i = dirs.size() - 1; i >= 0; i--) {
+            dirs.get(i).delete();
         }
     }
 
@@ -122,16 +205,7 @@ public class FileUtil {
      * @throws FileNotFoundException
      */
     public static File findFileInDirectory(String baseFileName, File searchDir) throws FileNotFoundException {
-
-        Iterator<File> fileIter = new FileTreeIterator(searchDir);
-        while (fileIter.hasNext()) {
-            File testFile = fileIter.next();
-            if (testFile.toString().endsWith(baseFileName)) {
-                return testFile;
-            }
-        }
-        // wasn't found, return nothing
-        return null;
+        return FileTree.get(searchDir).findFile(baseFileName);
     }
 
     /**
@@ -142,12 +216,17 @@ public class FileUtil {
      * eg, searchDir will be something like: new File("./meandre/lib"), and a
      * basename will be something like: new String("jena.jar");
      * 
+     * <p>
+     * the files are looked up in the shared FileTree of the searchDir, so the
+     * directory is only walked again if files were added or removed.
+     * 
      * @throws FileNotFoundException
      */
     public static Set<File> findFilesInDirectory(Set<String> fileBaseNames, File searchDir) throws FileNotFoundException {
         Set<File> foundFiles = new HashSet<File>();
+        FileTree tree = FileTree.get(searchDir);
         for (String baseName : fileBaseNames) {
-            File foundFile = findFileInDirectory(baseName, searchDir);
+            File foundFile = tree.findFile(baseName);
             if (foundFile == null) {
                 throw new FileNotFoundException("did not find file with basename=\'" + baseName + "\'" + " in directory \'" + searchDir.toString()
                         + "\'");
@@ -187,6 +266,69 @@ public class FileUtil {
         return isStale;
     }
 
+    /**
+     * the MD5 hash of a file's contents.
+     * 
+     * @throws IOException
+     *             if the file can't be read
+     */
+    public static byte[] md5(File file) throws IOException {
+        MessageDigest digest = createMD5Digest();
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[16 * 1024];
+            int numRead;
+            while ((numRead = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, numRead);
+            }
+        }
+        finally {
+            in.close();
+        }
+        return digest.digest();
+    }
+
+    /**
+     * moves a file that was written under a temporary name over the file it
+     * replaces, so a failed write never leaves a partial file under the real
+     * name.
+     *
+     * @throws IOException
+     *             if the file can't be replaced
+     */
+    public static void renameOver(File tmpFile, File file) throws IOException {
+        if (!tmpFile.renameTo(file)) {
+            // windows won't rename over an existing file
+            file.delete();
+            if (!tmpFile.renameTo(file)) {
+                throw new IOException("Could not write " + file);
+            }
+        }
+    }
+
+    /**
+     * a new MD5 digest, for hashing contents as they are read for something
+     * else.
+     */
+    public static MessageDigest createMD5Digest() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        }
+        catch (NoSuchAlgorithmException e) {
+            // every JRE has MD5
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** a hash in lower case hex, two digits per byte */
+    public static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(Integer.toHexString((b & 0xff) | 0x100).substring(1));
+        }
+        return hex.toString();
+    }
+
     @SuppressWarnings("unused")
     private static void logWarn(String msg) {
         System.out.println(msg);
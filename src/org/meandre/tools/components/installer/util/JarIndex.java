@@ -0,0 +1,238 @@
+package org.meandre.tools.components.installer.util;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An index from class names to the jar files in a lib directory that contain
+ * them. Every jar is listed exactly once (using JarUtil.getJarEntryNames, which
+ * only reads the jar's central directory) when the index is built. After that,
+ * finding the jar of a class is one hash lookup on its package plus a binary
+ * search within that package.
+ *
+ * <p>
+ * Lib directories can hold hundreds of thousands of classes, so the index is
+ * kept compact: each package name is stored once, and the classes of a package
+ * are held in a sorted array of simple names with a parallel array of jar
+ * numbers, rather than as one map entry per class.
+ *
+ * <p>
+ * Class names are in internal (slash separated) form. If several jars contain
+ * the same class, the jar that sorts first by path owns it. An index is not
+ * modified after it is built, so one instance can be shared by everything that
+ * needs to look into the lib directory (see ComponentInstaller).
+ */
+public class JarIndex {
+
+    /** the directory that was indexed */
+    private final File _jarDir;
+
+    /** all jars in the directory, sorted by path */
+    private final File[] _jars;
+
+    /** package name ("org/meandre/core", or "" for the default package) */
+    private final Map<String, PackageEntries> _packages;
+
+    /** the total number of indexed classes */
+    private final int _numClasses;
+
+    private JarIndex(File jarDir, File[] jars, Map<String, PackageEntries> packages, int numClasses) {
+        _jarDir = jarDir;
+        _jars = jars;
+        _packages = packages;
+        _numClasses = numClasses;
+    }
+
+    /**
+     * indexes the classes of every .jar file in a directory tree.
+     */
+    public static JarIndex build(File jarDir) throws IOException {
+        return build(jarDir, new ClassLister() {
+            public Collection<String> listClasses(File jarFile) throws IOException {
+                return listJarClasses(jarFile);
+            }
+        });
+    }
+
+    /**
+     * indexes the classes of every .jar file in a directory tree, getting the
+     * classes in each jar from the lister. lets a caller that remembers the
+     * contents of unchanged jars (see CachingDependencyAnalyzer) avoid
+     * opening them.
+     */
+    public static JarIndex build(File jarDir, ClassLister lister) throws IOException {
+        List<File> jarList = listJars(jarDir);
+        File[] jars = jarList.toArray(new File[jarList.size()]);
+
+        // first collect the classes of each package, then freeze each
+        // package's list into sorted arrays
+        Map<String, List<ClassEntry>> packageLists = new HashMap<String, List<ClassEntry>>();
+        for (int jarNum = 0; jarNum < jars.length; jarNum++) {
+            for (String className : lister.listClasses(jars[jarNum])) {
+                int slash = className.lastIndexOf('/');
+                String packageName = slash < 0 ? "" : className.substring(0, slash);
+                List<ClassEntry> entries = packageLists.get(packageName);
+                if (entries == null) {
+                    entries = new ArrayList<ClassEntry>();
+                    packageLists.put(packageName, entries);
+                }
+                entries.add(new ClassEntry(className.substring(slash + 1), jarNum));
+            }
+        }
+
+        Map<String, PackageEntries> packages = new HashMap<String, PackageEntries>(packageLists.size() * 2);
+        int numClasses = 0;
+        for (Map.Entry<String, List<ClassEntry>> packageList : packageLists.entrySet()) {
+            PackageEntries entries = new PackageEntries(packageList.getValue());
+            numClasses += entries._simpleNames.length;
+            packages.put(packageList.getKey(), entries);
+        }
+        return new JarIndex(jarDir, jars, packages, numClasses);
+    }
+
+    /**
+     * the names (in internal form) of the classes in a jar file, read from its
+     * central directory.
+     */
+    public static Set<String> listJarClasses(File jarFile) throws IOException {
+        Set<String> classNames = new HashSet<String>();
+        for (String entryName : JarUtil.getJarEntryNames(jarFile)) {
+            if (entryName.endsWith(".class") && !entryName.startsWith("META-INF/")) {
+                classNames.add(entryName.substring(0, entryName.length() - ".class".length()));
+            }
+        }
+        return classNames;
+    }
+
+    /**
+     * all .jar files in a directory tree, sorted by path so the index is the
+     * same from one run to the next.
+     */
+    private static List<File> listJars(File jarDir) throws FileNotFoundException {
+        List<File> jarFiles = new ArrayList<File>();
+        for (File nextFile : FileTree.get(jarDir).getFiles()) {
+            if (nextFile.getName().toLowerCase().endsWith(".jar")) {
+                jarFiles.add(nextFile);
+            }
+        }
+        Collections.sort(jarFiles);
+        return jarFiles;
+    }
+
+    /** the directory this index was built from */
+    public File getJarDir() {
+        return _jarDir;
+    }
+
+    /** all jar files in the indexed directory, sorted by path */
+    public List<File> getJars() {
+        return Collections.unmodifiableList(Arrays.asList(_jars));
+    }
+
+    /**
+     * the jar that holds a class, or null if no jar in the directory has it.
+     *
+     * @param className
+     *            the class name in internal form ("org/meandre/Foo")
+     */
+    public File getJar(String className) {
+        int slash = className.lastIndexOf('/');
+        String packageName = slash < 0 ? "" : className.substring(0, slash);
+        PackageEntries entries = _packages.get(packageName);
+        if (entries == null) {
+            return null;
+        }
+        int jarNum = entries.getJarNum(className.substring(slash + 1));
+        return jarNum < 0 ? null : _jars[jarNum];
+    }
+
+    /**
+     * the jars holding any of the input classes. classes that aren't in any
+     * jar are ignored.
+     */
+    public Set<File> getJars(Collection<String> classNames) {
+        Set<File> jars = new HashSet<File>();
+        for (String className : classNames) {
+            File jar = getJar(className);
+            if (jar != null) {
+                jars.add(jar);
+            }
+        }
+        return jars;
+    }
+
+    /** the number of classes in the index */
+    public int size() {
+        return _numClasses;
+    }
+
+    /**
+     * supplies the names (in internal form) of the classes in a jar.
+     */
+    public interface ClassLister {
+        public Collection<String> listClasses(File jarFile) throws IOException;
+    }
+
+    /** a class found while listing the jars, before it is frozen */
+    private static class ClassEntry implements Comparable<ClassEntry> {
+
+        final String _simpleName;
+        final int _jarNum;
+
+        ClassEntry(String simpleName, int jarNum) {
+            _simpleName = simpleName;
+            _jarNum = jarNum;
+        }
+
+        /** by name, then by jar so the first jar wins among duplicates */
+        public int compareTo(ClassEntry other) {
+            int cmp = _simpleName.compareTo(other._simpleName);
+            if (cmp != 0) {
+                return cmp;
+            }
+            return _jarNum - other._jarNum;
+        }
+    }
+
+    /**
+     * the classes of one package: sorted simple class names and, at the same
+     * positions, the number of the jar each one is in.
+     */
+    private static class PackageEntries {
+
+        final String[] _simpleNames;
+        final int[] _jarNums;
+
+        PackageEntries(List<ClassEntry> entries) {
+            Collections.sort(entries);
+            // drop duplicates, keeping the first (lowest numbered) jar
+            List<ClassEntry> unique = new ArrayList<ClassEntry>(entries.size());
+            for (ClassEntry entry : entries) {
+                if (unique.isEmpty() || !unique.get(unique.size() - 1)._simpleName.equals(entry._simpleName)) {
+                    unique.add(entry);
+                }
+            }
+            _simpleNames = new String[unique.size()];
+            _jarNums = new int[unique.size()];
+            for (int i = 0; i < _simpleNames.length; i++) {
+                _simpleNames[i] = unique.get(i)._simpleName;
+                _jarNums[i] = unique.get(i)._jarNum;
+            }
+        }
+
+        int getJarNum(String simpleName) {
+            int pos = Arrays.binarySearch(_simpleNames, simpleName);
+            return pos < 0 ? -1 : _jarNums[pos];
+        }
+    }
+}
@@ -151,7 +151,7 @@ public class JarJarWrapper {
 
     private static String makeJarJarClasspathFromJarDir(File jarsDir) throws IOException {
         Set<File> jarFiles = new HashSet<File>();
-        Iterator<File> jarIter = new FileTreeIterator(jarsDir);
+        Iterator<File> jarIter = new FileTreeIterator(jarsDir, ".jar");
         while (jarIter.hasNext()) {
             File nextFile = jarIter.next();
             if (nextFile.toString().endsWith(".jar")) {
@@ -1,23 +1,40 @@
 package org.meandre.tools.components.installer.util;
 
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 import java.util.Enumeration;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.JarInputStream;
 import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
 import java.util.zip.ZipInputStream;
 
+import org.meandre.tools.components.installer.util.RawZipWriter.DeflatedEntry;
+
 /**
  * Convenience functions for creating and reading the contents of jar files.
  * These methods open, modify, and close the jar file on disk with every call,
@@ -31,6 +48,47 @@ import java.util.zip.ZipInputStream;
 
 public class JarUtil {
 
+    /** size of the buffers used to read and write jar contents */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * the time given to every entry by writeJarFile, so jars don't change
+     * only because they were written at a different time. 2000-01-01.
+     */
+    private static final long ENTRY_TIME = 946684800000L;
+
+    /**
+     * the main manifest attribute in which updateJarFile keeps the digest of
+     * the inputs of a jar.
+     */
+    public static final String INPUT_DIGEST_ATTRIBUTE = "Input-Digest";
+
+    /**
+     * the threads that deflate the entries of the jars written by
+     * writeJarFile. daemons, so they don't keep the vm running.
+     */
+    private static final ExecutorService DEFLATE_POOL = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+            new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "JarUtil-deflate");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    /**
+     * how many bytes of files may be deflated ahead of the entry being
+     * written. the deflated entries are held in memory until they are
+     * written, so this bounds the memory they take.
+     */
+    private static final long MAX_PENDING_BYTES = 32 * 1024 * 1024;
+
+    /**
+     * files larger than this are not deflated ahead but as they are written,
+     * so they are never held in memory whole.
+     */
+    private static final long MAX_DEFLATED_AHEAD_SIZE = 1024 * 1024;
+
     /**
      * creates an almost empty jar file on disk. the jar file will have a
      * manifest, which will have no entries.
@@ -109,14 +167,219 @@ public class JarUtil {
     public static void addFilesToJarFile(File jarFile, Set<File> contentsFiles, File relativeBaseDir) throws IOException {
 
         JarAdder adder = new JarAdder(jarFile);
-        for (File contentFile : contentsFiles) {
-            adder.addFile(contentFile, relativeBaseDir);
-        }
+        adder.addFiles(contentsFiles, relativeBaseDir);
         adder.finish();
 
         return;
     }
 
+    /**
+     * Writes a complete jar file in one pass: the manifest and then each of
+     * the contentsFiles, named as by filenameToJarEntryName. Unlike
+     * createJarFile followed by setManifest and addFilesToJarFile, which copy
+     * the whole jar once per call, every byte is written once.
+     * 
+     * <p>
+     * The jar is reproducible: the entries are written in order of their
+     * names and all get the same timestamp, so the same manifest and files
+     * always produce the same bytes. The entries are deflated in parallel
+     * and then written in that order.
+     * 
+     * <p>
+     * The jar is written to a temporary file in the same directory, which is
+     * renamed to jarFile when it is complete. So jarFile is either the old
+     * jar or the complete new one, never a partly written one, and if
+     * writing fails jarFile is left as it was.
+     * 
+     * @param jarFile
+     *            the jar file to write. replaced if it exists.
+     * @param manifest
+     *            the manifest of the jar
+     * @param contentsFiles
+     *            the existing files to put in the jar. files with the same
+     *            entry name as another are left out.
+     * @param relativeBaseDir
+     *            the names of the files inside the jar will be their path
+     *            relative to this directory
+     * @throws IOException
+     *             if a file can't be read or the jar can't be written
+     */
+    public static void writeJarFile(File jarFile, Manifest manifest, Set<File> contentsFiles, File relativeBaseDir) throws IOException {
+        writeJarFile(jarFile, manifest, getSortedEntries(contentsFiles, relativeBaseDir));
+    }
+
+    /**
+     * same as writeJarFile, but leaves jarFile alone if it was written by
+     * this method from the same manifest and files (with the same contents)
+     * before. A digest of the inputs is kept in the jar's manifest, under
+     * INPUT_DIGEST_ATTRIBUTE, to tell.
+     * 
+     * @return true if the jar was written, false if it was up to date
+     * @throws IOException
+     *             if a file can't be read or the jar can't be written
+     */
+    public static boolean updateJarFile(File jarFile, Manifest manifest, Set<File> contentsFiles, File relativeBaseDir) throws IOException {
+        SortedMap<String, File> entries = getSortedEntries(contentsFiles, relativeBaseDir);
+        String inputDigest = getInputDigest(manifest, entries);
+
+        if (jarFile.exists()) {
+            try {
+                Manifest oldManifest = getManifest(jarFile);
+                if (oldManifest != null && inputDigest.equals(oldManifest.getMainAttributes().getValue(INPUT_DIGEST_ATTRIBUTE))) {
+                    return false;
+                }
+            }
+            catch (IOException e) {
+                // not a readable jar, so write a new one
+            }
+        }
+
+        Manifest digestedManifest = new Manifest(manifest);
+        digestedManifest.getMainAttributes().putValue(INPUT_DIGEST_ATTRIBUTE, inputDigest);
+        writeJarFile(jarFile, digestedManifest, entries);
+        return true;
+    }
+
+    /** writes the entries (by entry name) of a jar in order, see writeJarFile */
+    private static void writeJarFile(File jarFile, Manifest manifest, SortedMap<String, File> entries) throws IOException {
+
+        File tmpJarFile = File.createTempFile("JarUtilTmp", "jar", jarFile.getAbsoluteFile().getParentFile());
+        RawZipWriter out = new RawZipWriter(tmpJarFile);
+        boolean written = false;
+        try {
+            ByteArrayOutputStream manifestBytes = new ByteArrayOutputStream();
+            manifest.write(manifestBytes);
+            out.addEntry(getManifestEntryName(), manifestBytes.toByteArray(), manifestBytes.size(), ENTRY_TIME);
+
+            addEntries(out, entries, ENTRY_TIME);
+            out.close();
+            FileUtil.renameOver(tmpJarFile, jarFile);
+            written = true;
+        }
+        finally {
+            if (!written) {
+                out.abort();
+                tmpJarFile.delete();
+            }
+        }
+    }
+
+    /**
+     * deflates the files (by entry name) and adds them to the jar in the
+     * order of the map. small files are deflated on the DEFLATE_POOL, up to
+     * MAX_PENDING_BYTES of them ahead of the one being written, and written
+     * by this thread. large ones are deflated by this thread as they are
+     * written.
+     */
+    private static void addEntries(RawZipWriter out, Map<String, File> entries, long time) throws IOException {
+        LinkedList<Future<DeflatedEntry>> pending = new LinkedList<Future<DeflatedEntry>>();
+        LinkedList<Long> pendingSizes = new LinkedList<Long>();
+        long pendingBytes = 0;
+        try {
+            for (final Map.Entry<String, File> nameFile : entries.entrySet()) {
+                long size = nameFile.getValue().length();
+                boolean deflateAhead = size <= MAX_DEFLATED_AHEAD_SIZE;
+                while (!pending.isEmpty() && (!deflateAhead || pendingBytes + size > MAX_PENDING_BYTES)) {
+                    out.addEntry(getDeflated(pending.removeFirst()), time);
+                    pendingBytes -= pendingSizes.removeFirst();
+                }
+                if (!deflateAhead) {
+                    out.addEntry(nameFile.getKey(), nameFile.getValue(), time);
+                    continue;
+                }
+                pending.add(DEFLATE_POOL.submit(new Callable<DeflatedEntry>() {
+                    public DeflatedEntry call() throws IOException {
+                        return RawZipWriter.deflate(nameFile.getKey(), nameFile.getValue());
+                    }
+                }));
+                pendingSizes.add(size);
+                pendingBytes += size;
+            }
+            while (!pending.isEmpty()) {
+                out.addEntry(getDeflated(pending.removeFirst()), time);
+            }
+        }
+        finally {
+            for (Future<DeflatedEntry> future : pending) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /** waits for an entry being deflated on the DEFLATE_POOL */
+    private static DeflatedEntry getDeflated(Future<DeflatedEntry> future) throws IOException {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while writing a jar");
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException("Could not compress a jar entry: " + cause);
+        }
+    }
+
+    /**
+     * the files to put in a jar by their entry names, in order. the manifest
+     * and names that more than one of the files map to are only taken once.
+     */
+    private static SortedMap<String, File> getSortedEntries(Set<File> contentsFiles, File relativeBaseDir) throws IOException {
+        SortedMap<String, File> entries = new TreeMap<String, File>();
+        for (File contentFile : contentsFiles) {
+            String entryName = filenameToJarEntryName(contentFile, relativeBaseDir);
+            if (!entryName.equals(getManifestEntryName()) && !entries.containsKey(entryName)) {
+                entries.put(entryName, contentFile);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * a hex MD5 digest of a manifest and the names and contents of the files
+     * of a jar.
+     */
+    private static String getInputDigest(Manifest manifest, SortedMap<String, File> entries) throws IOException {
+        MessageDigest digest = FileUtil.createMD5Digest();
+        DigestOutputStream out = new DigestOutputStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }, digest);
+        manifest.write(out);
+
+        byte[] buf = new byte[BUFFER_SIZE];
+        for (Map.Entry<String, File> nameFile : entries.entrySet()) {
+            out.write(nameFile.getKey().getBytes("UTF-8"));
+            out.write(0);
+            InputStream fis = new FileInputStream(nameFile.getValue());
+            try {
+                copyStreamBytes(fis, out, buf);
+            }
+            finally {
+                fis.close();
+            }
+            // so the end of one file can't pass for the name of the next
+            out.write(0);
+            out.write(Long.toString(nameFile.getValue().length()).getBytes("UTF-8"));
+        }
+
+        return FileUtil.toHex(digest.digest());
+    }
+
     /**
      * Overwrites the manifest file in the jarFile to the values in the input
      * Manifest object.
@@ -166,6 +429,7 @@ public class JarUtil {
         FileInputStream fis = new FileInputStream(jarFile);
         ZipInputStream zis = new ZipInputStream(fis);
         ZipEntry entry;
+        byte[] buf = new byte[BUFFER_SIZE];
         while ((entry = zis.getNextEntry()) != null) {
             File outputFile = jarEntryToFilename(new JarEntry(entry), destDir);
             // log("unpackJarFile: unpacking: " + outputFile.toString());
@@ -174,7 +438,7 @@ public class JarUtil {
             parentDir.mkdirs();
             // write the file
             FileOutputStream fos = new FileOutputStream(outputFile);
-            copyStreamBytes(zis, fos);
+            copyStreamBytes(zis, fos, buf);
             fos.close();
         }
         zis.close();
@@ -295,8 +559,7 @@ public class JarUtil {
      * @throws IOException
      *             if problem with the actual read or write
      */
-    private static void copyStreamBytes(InputStream inputStream, OutputStream outputStream) throws IOException {
-        byte[] buf = new byte[1024];
+    private static void copyStreamBytes(InputStream inputStream, OutputStream outputStream, byte[] buf) throws IOException {
         int anz;
         while ((anz = inputStream.read(buf)) != -1) {
             outputStream.write(buf, 0, anz);
@@ -311,9 +574,14 @@ public class JarUtil {
 
     /**
      * JarAdder creates a temp file jar, copies all the contents of an existing
-     * jar to it, and leaves it open for "adding". The finalize() method closes
+     * jar to it, and leaves it open for "adding". The finish() method closes
      * the tmpfile and overwrites the original file with it.
      * 
+     * <p>
+     * The existing entries are copied as they are, still compressed (see
+     * RawZipWriter), so only the added files and a replaced manifest are
+     * deflated.
+     * 
      * @author pgroves
      * 
      */
@@ -322,7 +590,7 @@ public class JarUtil {
         File _originalJarFile;
         File _tmpJarFile;
         File _workingDir;
-        JarOutputStream _tmpJarOut;
+        RawZipWriter _tmpJarOut;
 
         /**
          * makes a JarAdder for adding to the input jar file, but uses the input
@@ -347,14 +615,13 @@ public class JarUtil {
          * @throws IOException
          */
         public JarAdder(File jarFile) throws IOException {
-            Manifest manifest = getManifest(jarFile);
-            realConstructor(jarFile, manifest);
+            realConstructor(jarFile, null);
         }
 
         /**
-         * work around the quirkiness of java constructors. Need to call
-         * getManifest first before calling the basic constructor, but java
-         * makes you call the basic constructor first.
+         * opens the tmp file and copies the existing entries into it. if
+         * manifest is null, the existing manifest is copied like any other
+         * entry, otherwise it is replaced.
          */
         private void realConstructor(File jarFile, Manifest manifest) throws IOException {
 
@@ -362,44 +629,47 @@ public class JarUtil {
 
             _workingDir = jarFile.getParentFile();
             _tmpJarFile = File.createTempFile("JarUtilTmp", "jar", _workingDir);
-            FileOutputStream fos = new FileOutputStream(_tmpJarFile);
-            BufferedOutputStream bos = new BufferedOutputStream(fos);
-            _tmpJarOut = new JarOutputStream(bos, manifest);
-
-            // copy the existing contents to the tmp file
-
-            // make an input stream of the existing jar
-            FileInputStream fis = new FileInputStream(jarFile);
-            JarInputStream jis = new JarInputStream(fis);
-
-            // iterate over each jar entry in the existing, and copy it's
-            // name and bytes to the tmp jar file (output stream).
-            JarEntry entry;
-            while ((entry = jis.getNextJarEntry()) != null) {
-                _tmpJarOut.putNextEntry(entry);
-                copyStreamBytes(jis, _tmpJarOut);
-                _tmpJarOut.closeEntry();
+            _tmpJarOut = new RawZipWriter(_tmpJarFile);
+            boolean copied = false;
+            try {
+                Set<String> skipNames = new HashSet<String>();
+                if (manifest != null) {
+                    ByteArrayOutputStream manifestBytes = new ByteArrayOutputStream();
+                    manifest.write(manifestBytes);
+                    _tmpJarOut.addEntry(getManifestEntryName(), manifestBytes.toByteArray(), manifestBytes.size(), System
+                            .currentTimeMillis());
+                    // the new manifest replaces the old one, and, as with
+                    // JarInputStream, the META-INF directory entry is dropped
+                    skipNames.add(getManifestEntryName());
+                    skipNames.add("META-INF/");
+                }
+                _tmpJarOut.copyEntries(jarFile, skipNames);
+                copied = true;
+            }
+            finally {
+                if (!copied) {
+                    _tmpJarOut.abort();
+                    _tmpJarFile.delete();
+                }
             }
-
-            // done with the input stream of the original, but leaving open
-            // the output stream to the tmp file
-            jis.close();
         }
 
         public void addFile(File file, File relativeBaseDir) throws IOException {
             String entryName = filenameToJarEntryName(file, relativeBaseDir);
-            JarEntry entry = new JarEntry(entryName);
-            // log("JarAdder.addFile: adding entry: " + entry.toString());
-
-            // open a reader for the file to add
-            FileInputStream fis = new FileInputStream(file);
-
-            // add the jarEntry and then write the contents of the file
-            _tmpJarOut.putNextEntry(entry);
-            copyStreamBytes(fis, _tmpJarOut);
-            _tmpJarOut.closeEntry();
-            fis.close();
+            // log("JarAdder.addFile: adding entry: " + entryName);
+            _tmpJarOut.addEntry(entryName, file, System.currentTimeMillis());
+        }
 
+        /** adds the files, deflating them in parallel (see addEntries) */
+        public void addFiles(Set<File> files, File relativeBaseDir) throws IOException {
+            Map<String, File> entries = new LinkedHashMap<String, File>();
+            for (File file : files) {
+                String entryName = filenameToJarEntryName(file, relativeBaseDir);
+                if (entries.put(entryName, file) != null) {
+                    throw new ZipException("duplicate entry: " + entryName);
+                }
+            }
+            addEntries(_tmpJarOut, entries, System.currentTimeMillis());
         }
 
         /*
@@ -0,0 +1,561 @@
+package org.meandre.tools.components.installer.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+/**
+ * Writes a zip (or jar) file whose entries are either copied from other zip
+ * files exactly as they are, or compressed from new contents. Copied entries
+ * are never inflated: their local header and compressed bytes are moved from
+ * the source file to the new one with FileChannel.transferTo, and their
+ * central directory record is reused with the new offset. So rewriting a jar
+ * with a few changes costs about as much as copying the file, and only the
+ * new entries are deflated.
+ *
+ * <p>
+ * The writer writes the central directory itself when it is closed. It
+ * handles plain zip files only: sources with zip64 records, or output that
+ * would need them (more than 65535 entries or more than 4GB), are refused
+ * with a ZipException.
+ *
+ * <p>
+ * New entries can be deflated ahead of time, on any thread, with the static
+ * deflate() methods, which hold the whole entry in memory. Large files are
+ * better added with addEntry(String, File, long), which deflates them as
+ * they are read. The writer itself is not thread safe.
+ *
+ * @see JarUtil
+ */
+class RawZipWriter {
+
+    private static final int LOCAL_HEADER_SIG = 0x04034b50;
+    private static final int DATA_DESCRIPTOR_SIG = 0x08074b50;
+    private static final int CENTRAL_HEADER_SIG = 0x02014b50;
+    private static final int END_SIG = 0x06054b50;
+
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_SIZE = 22;
+
+    /** the "version needed to extract" (and "made by") written for new entries */
+    private static final int VERSION = 20;
+
+    /** general purpose flags: the entry sizes are in a data descriptor */
+    private static final int FLAG_DATA_DESCRIPTOR = 0x0008;
+
+    /** general purpose flags: the entry name is UTF-8 */
+    private static final int FLAG_UTF8 = 0x0800;
+
+    /** size of the buffers used to read and deflate files */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final long MAX_32 = 0xffffffffL;
+    private static final int MAX_16 = 0xffff;
+
+    private final FileOutputStream _out;
+    private final FileChannel _channel;
+
+    /** where the next entry goes */
+    private long _position = 0;
+
+    /** the central directory records of the entries written so far */
+    private final ByteArrayOutputStream _centralDirectory = new ByteArrayOutputStream();
+
+    private final Set<String> _names = new HashSet<String>();
+
+    private boolean _closed = false;
+
+    /** creates (or truncates) the zip file and leaves it open for writing */
+    RawZipWriter(File zipFile) throws IOException {
+        _out = new FileOutputStream(zipFile);
+        _channel = _out.getChannel();
+    }
+
+    /** true if an entry with the name was written */
+    boolean containsEntry(String name) {
+        return _names.contains(name);
+    }
+
+    /**
+     * copies the entries of another zip file, in the order they appear in its
+     * central directory, without inflating them.
+     *
+     * @param skipNames
+     *            entries with these names are not copied
+     * @throws ZipException
+     *             if the source is not a zip file this writer can read, or
+     *             it has an entry that was already written. nothing is
+     *             written in that case.
+     */
+    void copyEntries(File zipFile, Set<String> skipNames) throws IOException {
+        FileInputStream in = new FileInputStream(zipFile);
+        try {
+            FileChannel source = in.getChannel();
+            // read all the records before writing anything, so a source that
+            // can't be copied leaves the output as it was
+            List<SourceEntry> entries = readCentralDirectory(source, zipFile);
+            List<SourceEntry> toCopy = new ArrayList<SourceEntry>();
+            for (SourceEntry entry : entries) {
+                if (skipNames.contains(entry._name)) {
+                    continue;
+                }
+                if (_names.contains(entry._name)) {
+                    throw new ZipException("duplicate entry: " + entry._name);
+                }
+                readLocalRecordSize(source, entry, zipFile);
+                toCopy.add(entry);
+            }
+
+            for (SourceEntry entry : toCopy) {
+                long offset = _position;
+                transferFully(source, entry._localOffset, entry._localSize);
+                _position += entry._localSize;
+
+                ByteBuffer record = ByteBuffer.wrap(entry._centralRecord).order(ByteOrder.LITTLE_ENDIAN);
+                record.putInt(42, (int) offset);
+                _centralDirectory.write(entry._centralRecord);
+                _names.add(entry._name);
+            }
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * deflates the contents of a file into a new entry as it is read, so the
+     * file is never held in memory whatever its size. the local header is
+     * written first, and its CRC and sizes are filled in once the data is
+     * written.
+     */
+    void addEntry(String name, File file, long time) throws IOException {
+        if (_names.contains(name)) {
+            throw new ZipException("duplicate entry: " + name);
+        }
+        byte[] nameBytes = getNameBytes(name);
+        int dosTime = toDosTime(time);
+        long offset = _position;
+        write(localHeader(nameBytes, dosTime, Deflater.DEFLATED, 0, 0, 0));
+        long dataOffset = _position;
+
+        CRC32 crc = new CRC32();
+        long size = 0;
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buf = new byte[BUFFER_SIZE];
+            byte[] compressed = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                crc.update(buf, 0, n);
+                size += n;
+                deflater.setInput(buf, 0, n);
+                while (!deflater.needsInput()) {
+                    writeDeflated(deflater, compressed);
+                }
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                writeDeflated(deflater, compressed);
+            }
+        }
+        finally {
+            in.close();
+            deflater.end();
+        }
+
+        long compressedSize = _position - dataOffset;
+        if (size > MAX_32 || compressedSize > MAX_32) {
+            throw new ZipException("file too large for a zip entry: " + file);
+        }
+        // the CRC, compressed size and size of the local header
+        ByteBuffer sizes = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+        sizes.putInt((int) crc.getValue());
+        sizes.putInt((int) compressedSize);
+        sizes.putInt((int) size);
+        sizes.flip();
+        writeAt(sizes, offset + 14);
+
+        addCentralRecord(nameBytes, dosTime, Deflater.DEFLATED, crc.getValue(), compressedSize, size, offset);
+        _names.add(name);
+    }
+
+    /** deflates the first length bytes of data into a new entry */
+    void addEntry(String name, byte[] data, int length, long time) throws IOException {
+        addEntry(deflate(name, data, length), time);
+    }
+
+    /** writes an entry that was already deflated, see deflate() */
+    void addEntry(DeflatedEntry entry, long time) throws IOException {
+        if (_names.contains(entry._name)) {
+            throw new ZipException("duplicate entry: " + entry._name);
+        }
+        writeEntry(entry._name, time, Deflater.DEFLATED, entry._crc, entry._compressed, entry._size);
+    }
+
+    /**
+     * reads and deflates the contents of a file for an entry. independent of
+     * any writer, so entries can be deflated on other threads and added
+     * later.
+     */
+    static DeflatedEntry deflate(String name, File file) throws IOException {
+        long length = file.length();
+        if (length > Integer.MAX_VALUE) {
+            throw new ZipException("file too large for a zip entry: " + file);
+        }
+        byte[] data = new byte[(int) length];
+        InputStream in = new FileInputStream(file);
+        try {
+            int numRead = 0;
+            int n;
+            while (numRead < data.length && (n = in.read(data, numRead, data.length - numRead)) != -1) {
+                numRead += n;
+            }
+            if (numRead < data.length) {
+                throw new IOException("file changed while it was read: " + file);
+            }
+        }
+        finally {
+            in.close();
+        }
+        return deflate(name, data, data.length);
+    }
+
+    /** deflates the first length bytes of data for an entry */
+    static DeflatedEntry deflate(String name, byte[] data, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 2 + 64);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(data, 0, length);
+            deflater.finish();
+            byte[] buf = new byte[Math.min(BUFFER_SIZE, length + 64)];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buf);
+                compressed.write(buf, 0, n);
+            }
+        }
+        finally {
+            deflater.end();
+        }
+        return new DeflatedEntry(name, crc.getValue(), compressed.toByteArray(), length);
+    }
+
+    /**
+     * writes the local header and data of a new entry, and keeps its central
+     * directory record for close().
+     */
+    private void writeEntry(String name, long time, int method, long crc, byte[] compressed, long size) throws IOException {
+        byte[] nameBytes = getNameBytes(name);
+        int dosTime = toDosTime(time);
+        long offset = _position;
+
+        write(localHeader(nameBytes, dosTime, method, crc, compressed.length, size));
+        write(ByteBuffer.wrap(compressed));
+        addCentralRecord(nameBytes, dosTime, method, crc, compressed.length, size, offset);
+        _names.add(name);
+    }
+
+    private static byte[] getNameBytes(String name) throws IOException {
+        byte[] nameBytes = name.getBytes("UTF-8");
+        if (nameBytes.length > MAX_16) {
+            throw new ZipException("entry name too long: " + name);
+        }
+        return nameBytes;
+    }
+
+    private static ByteBuffer localHeader(byte[] nameBytes, int dosTime, int method, long crc, long compressedSize, long size) {
+        ByteBuffer header = ByteBuffer.allocate(LOCAL_HEADER_SIZE + nameBytes.length).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(LOCAL_HEADER_SIG);
+        header.putShort((short) VERSION);
+        header.putShort((short) FLAG_UTF8);
+        header.putShort((short) method);
+        header.putInt(dosTime);
+        header.putInt((int) crc);
+        header.putInt((int) compressedSize);
+        header.putInt((int) size);
+        header.putShort((short) nameBytes.length);
+        header.putShort((short) 0);
+        header.put(nameBytes);
+        header.flip();
+        return header;
+    }
+
+    /** keeps the central directory record of a new entry for close() */
+    private void addCentralRecord(byte[] nameBytes, int dosTime, int method, long crc, long compressedSize, long size, long offset) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(CENTRAL_HEADER_SIZE + nameBytes.length).order(ByteOrder.LITTLE_ENDIAN);
+        record.putInt(CENTRAL_HEADER_SIG);
+        record.putShort((short) VERSION);
+        record.putShort((short) VERSION);
+        record.putShort((short) FLAG_UTF8);
+        record.putShort((short) method);
+        record.putInt(dosTime);
+        record.putInt((int) crc);
+        record.putInt((int) compressedSize);
+        record.putInt((int) size);
+        record.putShort((short) nameBytes.length);
+        // extra field, comment, disk, internal and external attributes
+        record.putShort((short) 0);
+        record.putShort((short) 0);
+        record.putShort((short) 0);
+        record.putShort((short) 0);
+        record.putInt(0);
+        record.putInt((int) offset);
+        record.put(nameBytes);
+        _centralDirectory.write(record.array());
+    }
+
+    /**
+     * writes the central directory and closes the file.
+     *
+     * @throws ZipException
+     *             if the zip would need zip64 records
+     */
+    void close() throws IOException {
+        if (_closed) {
+            return;
+        }
+        _closed = true;
+        try {
+            long centralOffset = _position;
+            byte[] centralDirectory = _centralDirectory.toByteArray();
+            if (_names.size() > MAX_16 || centralOffset + centralDirectory.length > MAX_32) {
+                throw new ZipException("too many entries or too large for a zip file without zip64 records");
+            }
+            write(ByteBuffer.wrap(centralDirectory));
+
+            ByteBuffer end = ByteBuffer.allocate(END_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            end.putInt(END_SIG);
+            end.putShort((short) 0);
+            end.putShort((short) 0);
+            end.putShort((short) _names.size());
+            end.putShort((short) _names.size());
+            end.putInt(centralDirectory.length);
+            end.putInt((int) centralOffset);
+            end.putShort((short) 0);
+            end.flip();
+            write(end);
+        }
+        finally {
+            _out.close();
+        }
+    }
+
+    /**
+     * aborts writing: closes the file without a central directory, leaving
+     * it unreadable. for cleaning up after a failure.
+     */
+    void abort() {
+        if (_closed) {
+            return;
+        }
+        _closed = true;
+        try {
+            _out.close();
+        }
+        catch (IOException e) {
+            // nothing to be done, the file is being thrown away
+        }
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            _position += _channel.write(buffer);
+        }
+    }
+
+    /** writes at a position before the current one, leaving it as it is */
+    private void writeAt(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += _channel.write(buffer, position);
+        }
+    }
+
+    private void writeDeflated(Deflater deflater, byte[] buf) throws IOException {
+        int n = deflater.deflate(buf);
+        write(ByteBuffer.wrap(buf, 0, n));
+    }
+
+    /** transferTo may move fewer bytes than asked for, so loop */
+    private void transferFully(FileChannel source, long offset, long count) throws IOException {
+        while (count > 0) {
+            long n = source.transferTo(offset, count, _channel);
+            if (n <= 0) {
+                throw new ZipException("unexpected end of zip file");
+            }
+            offset += n;
+            count -= n;
+        }
+    }
+
+    /**
+     * the entries of a zip file from its central directory, which is found
+     * through the end of central directory record at the end of the file.
+     */
+    private static List<SourceEntry> readCentralDirectory(FileChannel source, File zipFile) throws IOException {
+        long fileSize = source.size();
+        // the end record is followed by a comment of at most 64k
+        int tailSize = (int) Math.min(fileSize, END_SIZE + MAX_16);
+        ByteBuffer tail = readFully(source, fileSize - tailSize, tailSize);
+        int endPos = -1;
+        for (int i = tailSize - END_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == END_SIG && i + END_SIZE + (tail.getShort(i + 20) & MAX_16) == tailSize) {
+                endPos = i;
+                break;
+            }
+        }
+        if (endPos < 0) {
+            throw new ZipException("not a zip file: " + zipFile);
+        }
+        int numEntries = tail.getShort(endPos + 10) & MAX_16;
+        long centralSize = tail.getInt(endPos + 12) & MAX_32;
+        long centralOffset = tail.getInt(endPos + 16) & MAX_32;
+        if (numEntries == MAX_16 || centralSize == MAX_32 || centralOffset == MAX_32) {
+            throw new ZipException("zip64 files can't be copied: " + zipFile);
+        }
+        if (tail.getShort(endPos + 4) != 0 || numEntries != (tail.getShort(endPos + 8) & MAX_16)) {
+            throw new ZipException("multi-disk zip files can't be copied: " + zipFile);
+        }
+        if (centralOffset + centralSize > fileSize) {
+            throw new ZipException("corrupt central directory: " + zipFile);
+        }
+
+        ByteBuffer central = readFully(source, centralOffset, (int) centralSize);
+        List<SourceEntry> entries = new ArrayList<SourceEntry>(numEntries);
+        int pos = 0;
+        for (int i = 0; i < numEntries; i++) {
+            if (pos + CENTRAL_HEADER_SIZE > centralSize || central.getInt(pos) != CENTRAL_HEADER_SIG) {
+                throw new ZipException("corrupt central directory: " + zipFile);
+            }
+            int flags = central.getShort(pos + 8) & MAX_16;
+            long compressedSize = central.getInt(pos + 20) & MAX_32;
+            long size = central.getInt(pos + 24) & MAX_32;
+            int nameLength = central.getShort(pos + 28) & MAX_16;
+            int extraLength = central.getShort(pos + 30) & MAX_16;
+            int commentLength = central.getShort(pos + 32) & MAX_16;
+            long localOffset = central.getInt(pos + 42) & MAX_32;
+            if (compressedSize == MAX_32 || size == MAX_32 || localOffset == MAX_32) {
+                throw new ZipException("zip64 files can't be copied: " + zipFile);
+            }
+            int recordSize = CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+            if (pos + recordSize > centralSize) {
+                throw new ZipException("corrupt central directory: " + zipFile);
+            }
+
+            byte[] record = new byte[recordSize];
+            central.position(pos);
+            central.get(record);
+            String name = new String(record, CENTRAL_HEADER_SIZE, nameLength, (flags & FLAG_UTF8) != 0 ? "UTF-8" : "ISO-8859-1");
+            entries.add(new SourceEntry(name, flags, compressedSize, localOffset, record));
+            pos += recordSize;
+        }
+        return entries;
+    }
+
+    /**
+     * sets the size of an entry's local record: the local header, the
+     * compressed data, and the data descriptor if there is one.
+     */
+    private static void readLocalRecordSize(FileChannel source, SourceEntry entry, File zipFile) throws IOException {
+        ByteBuffer header = readFully(source, entry._localOffset, LOCAL_HEADER_SIZE);
+        if (header.getInt(0) != LOCAL_HEADER_SIG) {
+            throw new ZipException("corrupt local header for " + entry._name + ": " + zipFile);
+        }
+        int nameLength = header.getShort(26) & MAX_16;
+        int extraLength = header.getShort(28) & MAX_16;
+        long size = LOCAL_HEADER_SIZE + nameLength + extraLength + entry._compressedSize;
+        if ((entry._flags & FLAG_DATA_DESCRIPTOR) != 0) {
+            // the descriptor's signature is optional
+            ByteBuffer descriptor = readFully(source, entry._localOffset + size, 4);
+            size += descriptor.getInt(0) == DATA_DESCRIPTOR_SIG ? 16 : 12;
+        }
+        if (entry._localOffset + size > source.size()) {
+            throw new ZipException("truncated entry " + entry._name + ": " + zipFile);
+        }
+        entry._localSize = size;
+    }
+
+    private static ByteBuffer readFully(FileChannel source, long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (source.read(buffer, offset + buffer.position()) < 0) {
+                throw new ZipException("unexpected end of zip file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * a time as an MS-DOS date and time, in UTC rather than local time like
+     * ZipEntry, so the same time gives the same bytes in any time zone.
+     */
+    private static int toDosTime(long time) {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.setTimeInMillis(time);
+        int year = calendar.get(Calendar.YEAR);
+        if (year < 1980) {
+            // the earliest time there is: 1980-01-01
+            return (1 << 21) | (1 << 16);
+        }
+        return (year - 1980) << 25 | (calendar.get(Calendar.MONTH) + 1) << 21 | calendar.get(Calendar.DAY_OF_MONTH) << 16
+                | calendar.get(Calendar.HOUR_OF_DAY) << 11 | calendar.get(Calendar.MINUTE) << 5 | calendar.get(Calendar.SECOND) >> 1;
+    }
+
+    /** the compressed contents of a new entry, ready to be written */
+    static class DeflatedEntry {
+
+        final String _name;
+        final long _crc;
+        final byte[] _compressed;
+        final long _size;
+
+        DeflatedEntry(String name, long crc, byte[] compressed, long size) {
+            _name = name;
+            _crc = crc;
+            _compressed = compressed;
+            _size = size;
+        }
+    }
+
+    /** an entry of a zip file being copied */
+    private static class SourceEntry {
+
+        final String _name;
+        final int _flags;
+        final long _compressedSize;
+        final long _localOffset;
+
+        /** its central directory record, patched with the new offset */
+        final byte[] _centralRecord;
+
+        /** the size of its local header, data and data descriptor */
+        long _localSize;
+
+        SourceEntry(String name, int flags, long compressedSize, long localOffset, byte[] centralRecord) {
+            _name = name;
+            _flags = flags;
+            _compressedSize = compressedSize;
+            _localOffset = localOffset;
+            _centralRecord = centralRecord;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package org.meandre.tools.components.installer.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Answers "everything reachable from this node" queries on a directed graph
+ * whose nodes are the integers 0..numNodes-1.
+ *
+ * <p>
+ * The graph is first condensed into its strongly connected components (with
+ * an iterative version of Tarjan's algorithm, so deep class hierarchies can't
+ * overflow the stack). All nodes of a component reach the same set, so the
+ * reachable set is computed once per component, as a BitSet of node numbers,
+ * and kept for later queries. A component's set is its own nodes plus the sets
+ * of the components it has edges to, so each set costs one union per edge of
+ * the condensed graph, and only the components that are actually asked about
+ * (and the ones they reach) are ever computed.
+ *
+ * <p>
+ * The graph is given in compressed sparse row form: the successors of node n
+ * are targets[offsets[n]] .. targets[offsets[n + 1] - 1]. It must not change
+ * after the closure is created. Not thread safe; DepMap only uses it while
+ * holding its own lock.
+ */
+class TransitiveClosure {
+
+    private final int _numNodes;
+
+    /** the component number of each node */
+    private final int[] _componentOf;
+
+    /**
+     * the nodes in each component, in the same CSR layout as the graph:
+     * component c holds _members[_memberOffsets[c]] ..
+     * _members[_memberOffsets[c + 1] - 1]
+     */
+    private final int[] _memberOffsets;
+    private final int[] _members;
+
+    /** the distinct components each component has edges to, in CSR layout */
+    private final int[] _successorOffsets;
+    private final int[] _successors;
+
+    /** memoized reachable node sets, null until computed */
+    private final BitSet[] _reachable;
+
+    /**
+     * @param offsets
+     *            numNodes + 1 entries. offsets[n] is where node n's
+     *            successors start in targets.
+     * @param targets
+     *            the successors of all nodes, one after the other
+     */
+    TransitiveClosure(int[] offsets, int[] targets) {
+        _numNodes = offsets.length - 1;
+        _componentOf = new int[_numNodes];
+        int numComponents = findComponents(offsets, targets);
+
+        // group the nodes by component
+        _memberOffsets = new int[numComponents + 1];
+        for (int node = 0; node < _numNodes; node++) {
+            _memberOffsets[_componentOf[node] + 1]++;
+        }
+        for (int c = 0; c < numComponents; c++) {
+            _memberOffsets[c + 1] += _memberOffsets[c];
+        }
+        _members = new int[_numNodes];
+        int[] fill = new int[numComponents];
+        System.arraycopy(_memberOffsets, 0, fill, 0, numComponents);
+        for (int node = 0; node < _numNodes; node++) {
+            _members[fill[_componentOf[node]]++] = node;
+        }
+
+        // edges between components, without duplicates or self loops
+        List<Integer> successors = new ArrayList<Integer>();
+        _successorOffsets = new int[numComponents + 1];
+        int[] lastSeenFrom = new int[numComponents];
+        Arrays.fill(lastSeenFrom, -1);
+        for (int c = 0; c < numComponents; c++) {
+            _successorOffsets[c] = successors.size();
+            for (int m = _memberOffsets[c]; m < _memberOffsets[c + 1]; m++) {
+                int node = _members[m];
+                for (int e = offsets[node]; e < offsets[node + 1]; e++) {
+                    int target = _componentOf[targets[e]];
+                    if (target != c && lastSeenFrom[target] != c) {
+                        lastSeenFrom[target] = c;
+                        successors.add(target);
+                    }
+                }
+            }
+        }
+        _successorOffsets[numComponents] = successors.size();
+        _successors = new int[successors.size()];
+        for (int i = 0; i < _successors.length; i++) {
+            _successors[i] = successors.get(i);
+        }
+
+        _reachable = new BitSet[numComponents];
+    }
+
+    /**
+     * all nodes reachable from the node, including the node itself. the
+     * returned set is shared and must not be modified.
+     */
+    BitSet getReachable(int node) {
+        int component = _componentOf[node];
+        if (_reachable[component] == null) {
+            computeReachable(component);
+        }
+        return _reachable[component];
+    }
+
+    /**
+     * Tarjan numbers components in the order it finishes them, and a component
+     * is only finished after every component it reaches. So every edge of the
+     * condensed graph goes from a higher to a lower component number, and
+     * computing the missing sets in increasing order always finds the sets of
+     * the successors already done.
+     */
+    private void computeReachable(int start) {
+        // find the components below start that still need a set
+        BitSet pending = new BitSet();
+        int[] stack = new int[16];
+        int stackSize = 0;
+        stack[stackSize++] = start;
+        pending.set(start);
+        while (stackSize > 0) {
+            int c = stack[--stackSize];
+            for (int s = _successorOffsets[c]; s < _successorOffsets[c + 1]; s++) {
+                int successor = _successors[s];
+                if (_reachable[successor] == null && !pending.get(successor)) {
+                    pending.set(successor);
+                    if (stackSize == stack.length) {
+                        int[] newStack = new int[stackSize * 2];
+                        System.arraycopy(stack, 0, newStack, 0, stackSize);
+                        stack = newStack;
+                    }
+                    stack[stackSize++] = successor;
+                }
+            }
+        }
+
+        for (int c = pending.nextSetBit(0); c >= 0; c = pending.nextSetBit(c + 1)) {
+            BitSet reachable = new BitSet(_numNodes);
+            for (int m = _memberOffsets[c]; m < _memberOffsets[c + 1]; m++) {
+                reachable.set(_members[m]);
+            }
+            for (int s = _successorOffsets[c]; s < _successorOffsets[c + 1]; s++) {
+                reachable.or(_reachable[_successors[s]]);
+            }
+            _reachable[c] = reachable;
+        }
+    }
+
+    /**
+     * iterative Tarjan's algorithm. fills in _componentOf and returns the
+     * number of components.
+     */
+    private int findComponents(int[] offsets, int[] targets) {
+        int[] index = new int[_numNodes];
+        int[] lowLink = new int[_numNodes];
+        Arrays.fill(index, -1);
+        boolean[] onStack = new boolean[_numNodes];
+        int[] componentStack = new int[_numNodes];
+        int componentStackSize = 0;
+        // the simulated call stack: the node being visited and the position
+        // of the next edge to follow from it
+        int[] callNode = new int[_numNodes];
+        int[] callEdge = new int[_numNodes];
+        int callDepth = 0;
+        int nextIndex = 0;
+        int numComponents = 0;
+
+        for (int root = 0; root < _numNodes; root++) {
+            if (index[root] != -1) {
+                continue;
+            }
+            callNode[0] = root;
+            callEdge[0] = offsets[root];
+            callDepth = 1;
+            index[root] = lowLink[root] = nextIndex++;
+            componentStack[componentStackSize++] = root;
+            onStack[root] = true;
+
+            while (callDepth > 0) {
+                int node = callNode[callDepth - 1];
+                int edge = callEdge[callDepth - 1];
+                if (edge < offsets[node + 1]) {
+                    callEdge[callDepth - 1]++;
+                    int target = targets[edge];
+                    if (index[target] == -1) {
+                        // descend into the target
+                        index[target] = lowLink[target] = nextIndex++;
+                        componentStack[componentStackSize++] = target;
+                        onStack[target] = true;
+                        callNode[callDepth] = target;
+                        callEdge[callDepth] = offsets[target];
+                        callDepth++;
+                    } else if (onStack[target]) {
+                        lowLink[node] = Math.min(lowLink[node], index[target]);
+                    }
+                    continue;
+                }
+
+                // all edges of node are done
+                if (lowLink[node] == index[node]) {
+                    int member;
+                    do {
+                        member = componentStack[--componentStackSize];
+                        onStack[member] = false;
+                        _componentOf[member] = numComponents;
+                    } while (member != node);
+                    numComponents++;
+                }
+                callDepth--;
+                if (callDepth > 0) {
+                    int parent = callNode[callDepth - 1];
+                    lowLink[parent] = Math.min(lowLink[parent], lowLink[node]);
+                }
+            }
+        }
+        return numComponents;
+    }
+}